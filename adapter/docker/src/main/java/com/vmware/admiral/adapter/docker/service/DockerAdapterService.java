@@ -112,7 +112,7 @@ import com.vmware.admiral.compute.container.network.NetworkUtils;
 import com.vmware.admiral.compute.container.volume.VolumeBinding;
 import com.vmware.admiral.service.common.ConfigurationService.ConfigurationFactoryService;
 import com.vmware.admiral.service.common.ConfigurationService.ConfigurationState;
-import com.vmware.admiral.service.common.LogService;
+import com.vmware.admiral.service.common.ContainerLogStore;
 import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
 import com.vmware.xenon.common.DeferredResult;
 import com.vmware.xenon.common.FileUtils;
@@ -460,32 +460,18 @@ public class DockerAdapterService extends AbstractDockerAdapterService {
     }
 
     private void processContainerLogResponse(RequestContext context, byte[] log) {
-        LogService.LogServiceState logServiceState = new LogService.LogServiceState();
-        logServiceState.documentSelfLink = Service.getId(context.containerState.documentSelfLink);
-
-        // 256 bytes spare for service document data
-        int maxDocumentSize = LogService.MAX_LOG_SIZE - 256;
-        if (log.length > maxDocumentSize) {
-            log = Arrays.copyOfRange(log, log.length - maxDocumentSize, log.length);
+        // appends the new data only, the logs are kept out of the document index and apart
+        // from the logs fetched with other options
+        boolean sinceLastFetch = context.request.customProperties != null
+                && context.request.customProperties.get(SINCE) != null;
+        ContainerLogStore.getInstance(getHost()).update(ContainerLogStore.getLogKey(
+                context.containerState.documentSelfLink, context.request.customProperties),
+                log, sinceLastFetch);
+
+        if (context.request.serviceTaskCallback.isEmpty()) {
+            /* avoid logging warnings */
+            patchTaskStage(context.request, TaskStage.FINISHED, null);
         }
-
-        logServiceState.logs = log;
-        logServiceState.tenantLinks = context.containerState.tenantLinks;
-
-        sendRequest(Operation.createPost(this, LogService.FACTORY_LINK)
-                .addPragmaDirective(Operation.PRAGMA_DIRECTIVE_FORCE_INDEX_UPDATE)
-                .setBodyNoCloning(logServiceState)
-                .setContextId(context.request.getRequestId())
-                .setCompletion((o, ex) -> {
-                    if (ex != null) {
-                        fail(context.request, ex);
-                    } else {
-                        if (context.request.serviceTaskCallback.isEmpty()) {
-                            /* avoid logging warnings */
-                            patchTaskStage(context.request, TaskStage.FINISHED, null);
-                        }
-                    }
-                }));
     }
 
     private void processCreateImage(RequestContext context) {
@@ -0,0 +1,372 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.adapter.docker.service;
+
+import static com.vmware.admiral.adapter.docker.service.DockerAdapterStreamCommandExecutor.EVENT_TYPE_CONTAINER;
+import static com.vmware.admiral.adapter.docker.service.DockerAdapterStreamCommandExecutor.EVENT_TYPE_CONTAINER_CREATE;
+import static com.vmware.admiral.adapter.docker.service.DockerAdapterStreamCommandExecutor.EVENT_TYPE_CONTAINER_DESTROY;
+import static com.vmware.admiral.adapter.docker.service.DockerAdapterStreamCommandExecutor.EVENT_TYPE_CONTAINER_DIE;
+import static com.vmware.admiral.adapter.docker.service.DockerAdapterStreamCommandExecutor.EVENT_TYPE_CONTAINER_RENAME;
+import static com.vmware.admiral.adapter.docker.service.DockerAdapterStreamCommandExecutor.EVENT_TYPE_CONTAINER_START;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import com.vmware.admiral.adapter.docker.service.DockerEventsStreamMonitor.Subscription;
+import com.vmware.admiral.common.util.QueryUtil;
+import com.vmware.admiral.common.util.ServiceDocumentQuery;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState.PowerState;
+import com.vmware.admiral.compute.container.HostContainerListDataCollection;
+import com.vmware.admiral.compute.container.HostContainerListDataCollection.ContainerListCallback;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.OperationContext;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.QueryTask;
+
+/**
+ * Applies the container events of the subscribed hosts to the container states.
+ *
+ * Power state events are queued by container id and only the latest event of a container received
+ * within {@link #FLUSH_INTERVAL_MILLIS} is applied, so that a burst of restarts results in a single
+ * update per container. Container ids are resolved to container state links with a map per host,
+ * reloaded whenever host data collection subscribes for the events of the host. The ids missing
+ * from the map are resolved with a single query per host and flush.
+ *
+ * The changes of a host are sent to the host container list data collection as a single
+ * incremental container list per flush: the power states by container state link, and the
+ * created, renamed and destroyed containers, so that the containers of a host with a connected
+ * events stream do not need to be listed periodically.
+ */
+final class DockerEventsProcessor {
+
+    private static final Logger logger = Logger
+            .getLogger(DockerEventsProcessor.class.getName());
+
+    private static final long FLUSH_INTERVAL_MILLIS = Long.getLong(
+            "com.vmware.admiral.adapter.events.flush.interval.millis", 250);
+
+    private static final ObjectReader EVENTS_READER = new ObjectMapper()
+            .readerFor(Events.class);
+
+    /**
+     * Counters of the processed events since the adapter started
+     */
+    public static class EventsProcessingStats {
+        /** All events read from the events streams */
+        public long eventCount;
+        /** Container start, die, create, rename and destroy events */
+        public long containerEventCount;
+        /** Incremental container lists sent for the events, at most one per host and flush */
+        public long patchCount;
+        /** Container events of containers without a container state */
+        public long unresolvedCount;
+    }
+
+    private static class PendingEvent {
+        final Subscription subscription;
+        final String containerId;
+        final PowerState powerState;
+        final Long started;
+        final long timeNano;
+
+        PendingEvent(Subscription subscription, String containerId, PowerState powerState,
+                Long started, long timeNano) {
+            this.subscription = subscription;
+            this.containerId = containerId;
+            this.powerState = powerState;
+            this.started = started;
+            this.timeNano = timeNano;
+        }
+    }
+
+    private static class ContainerChanges {
+        Subscription subscription;
+        final Map<String, String> namesById = new HashMap<>();
+        final Set<String> removedIds = new HashSet<>();
+    }
+
+    private final ServiceHost host;
+    private final Map<String, PendingEvent> pendingEvents = new ConcurrentHashMap<>();
+    // created, renamed and destroyed containers, by compute state link of the container host
+    private final Map<String, ContainerChanges> pendingChanges = new ConcurrentHashMap<>();
+    // container id to container state link, by compute state link of the container host
+    private final Map<String, Map<String, String>> containerLinks = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private final AtomicLong eventCount = new AtomicLong();
+    private final AtomicLong containerEventCount = new AtomicLong();
+    private final AtomicLong patchCount = new AtomicLong();
+    private final AtomicLong unresolvedCount = new AtomicLong();
+
+    DockerEventsProcessor(ServiceHost host) {
+        this.host = host;
+    }
+
+    /**
+     * Parses an event read from the events stream of a host and queues the change of the
+     * container, if any
+     */
+    void process(Subscription subscription, String line) throws IOException {
+        eventCount.incrementAndGet();
+        Events event = EVENTS_READER.readValue(line);
+        if (!EVENT_TYPE_CONTAINER.equals(event.getType()) || event.getId() == null) {
+            return;
+        }
+
+        String containerId = event.getId();
+        PowerState powerState;
+        Long started = null;
+        if (EVENT_TYPE_CONTAINER_CREATE.equals(event.getAction())
+                || EVENT_TYPE_CONTAINER_RENAME.equals(event.getAction())) {
+            logger.fine(line);
+            containerEventCount.incrementAndGet();
+            String name = event.getActor() != null && event.getActor().getAttributes() != null
+                    ? event.getActor().getAttributes().getName()
+                    : null;
+            queueChange(subscription, (changes) -> changes.namesById.put(containerId, name));
+            return;
+        } else if (EVENT_TYPE_CONTAINER_DESTROY.equals(event.getAction())) {
+            logger.fine(line);
+            containerEventCount.incrementAndGet();
+            pendingEvents.remove(containerId);
+            Map<String, String> links = containerLinks.get(subscription.computeStateLink);
+            if (links != null) {
+                links.remove(containerId);
+            }
+            queueChange(subscription, (changes) -> {
+                changes.namesById.remove(containerId);
+                changes.removedIds.add(containerId);
+            });
+            return;
+        } else if (EVENT_TYPE_CONTAINER_DIE.equals(event.getAction())) {
+            powerState = PowerState.STOPPED;
+        } else if (EVENT_TYPE_CONTAINER_START.equals(event.getAction())) {
+            powerState = PowerState.RUNNING;
+            if (event.getTimeNano() != null) {
+                started = TimeUnit.NANOSECONDS.toMillis(event.getTimeNano());
+            } else if (event.getTime() != null) {
+                started = TimeUnit.SECONDS.toMillis(event.getTime());
+            }
+        } else {
+            return;
+        }
+        logger.fine(line);
+        containerEventCount.incrementAndGet();
+
+        long timeNano = event.getTimeNano() != null ? event.getTimeNano() : 0;
+        pendingEvents.merge(containerId,
+                new PendingEvent(subscription, containerId, powerState, started, timeNano),
+                (current, next) -> next.timeNano >= current.timeNano ? next : current);
+        scheduleFlush();
+    }
+
+    private void queueChange(Subscription subscription, Consumer<ContainerChanges> change) {
+        pendingChanges.compute(subscription.computeStateLink, (k, changes) -> {
+            if (changes == null) {
+                changes = new ContainerChanges();
+            }
+            changes.subscription = subscription;
+            change.accept(changes);
+            return changes;
+        });
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            host.schedule(this::flush, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Reloads the container state links of the containers of a host
+     */
+    void refreshContainerLinks(Operation op, String computeStateLink) {
+        QueryTask queryTask = QueryUtil.buildPropertyQuery(ContainerState.class,
+                ContainerState.FIELD_NAME_PARENT_LINK, computeStateLink);
+        QueryUtil.addExpandOption(queryTask);
+
+        Map<String, String> links = new ConcurrentHashMap<>();
+        runInContext(op, () -> new ServiceDocumentQuery<>(host, ContainerState.class)
+                .query(queryTask, (r) -> {
+                    if (r.hasException()) {
+                        logger.warning(String.format(
+                                "Failed to query container states of host [%s]. Error: [%s]",
+                                computeStateLink, Utils.toString(r.getException())));
+                    } else if (r.hasResult()) {
+                        if (r.getResult().id != null) {
+                            links.put(r.getResult().id, r.getDocumentSelfLink());
+                        }
+                    } else {
+                        containerLinks.put(computeStateLink, links);
+                    }
+                }));
+    }
+
+    /**
+     * Drops the container state links of the containers of a host
+     */
+    void removeContainerLinks(String computeStateLink) {
+        containerLinks.remove(computeStateLink);
+    }
+
+    EventsProcessingStats getStats() {
+        EventsProcessingStats stats = new EventsProcessingStats();
+        stats.eventCount = eventCount.get();
+        stats.containerEventCount = containerEventCount.get();
+        stats.patchCount = patchCount.get();
+        stats.unresolvedCount = unresolvedCount.get();
+        return stats;
+    }
+
+    private void flush() {
+        // events queued from now on are applied with the next flush
+        flushScheduled.set(false);
+
+        Map<String, List<PendingEvent>> eventsByHost = new HashMap<>();
+        for (String containerId : pendingEvents.keySet()) {
+            PendingEvent event = pendingEvents.remove(containerId);
+            if (event != null) {
+                eventsByHost.computeIfAbsent(event.subscription.computeStateLink,
+                        (k) -> new ArrayList<>()).add(event);
+            }
+        }
+
+        Set<String> computeStateLinks = new HashSet<>(eventsByHost.keySet());
+        computeStateLinks.addAll(pendingChanges.keySet());
+        for (String computeStateLink : computeStateLinks) {
+            flush(computeStateLink, eventsByHost.getOrDefault(computeStateLink,
+                    Collections.emptyList()), pendingChanges.remove(computeStateLink));
+        }
+    }
+
+    private void flush(String computeStateLink, List<PendingEvent> events,
+            ContainerChanges changes) {
+        Map<String, String> links = containerLinks.getOrDefault(computeStateLink,
+                Collections.emptyMap());
+        Map<String, PendingEvent> resolvedEvents = new HashMap<>();
+        Map<String, PendingEvent> unresolvedEvents = new HashMap<>();
+        for (PendingEvent event : events) {
+            String link = links.get(event.containerId);
+            if (link != null) {
+                resolvedEvents.put(link, event);
+            } else {
+                unresolvedEvents.put(event.containerId, event);
+            }
+        }
+
+        if (unresolvedEvents.isEmpty()) {
+            sendContainerChanges(computeStateLink, resolvedEvents, changes);
+            return;
+        }
+
+        // all events of the host have the same subscription
+        Subscription subscription = unresolvedEvents.values().iterator().next().subscription;
+        QueryTask queryTask = QueryUtil.buildQuery(ContainerState.class, true);
+        QueryUtil.addListValueClause(queryTask, ContainerState.FIELD_NAME_ID,
+                unresolvedEvents.keySet());
+        QueryUtil.addExpandOption(queryTask);
+
+        runInContext(subscription.op, () -> new ServiceDocumentQuery<>(host, ContainerState.class)
+                .query(queryTask, (r) -> {
+                    if (r.hasException()) {
+                        logger.warning(String.format(
+                                "Failed to query container states with ids %s. Error: [%s]",
+                                unresolvedEvents.keySet(), Utils.toString(r.getException())));
+                        sendContainerChanges(computeStateLink, resolvedEvents, changes);
+                    } else if (r.hasResult()) {
+                        PendingEvent event = unresolvedEvents.remove(r.getResult().id);
+                        if (event != null) {
+                            containerLinks.computeIfAbsent(computeStateLink,
+                                    (k) -> new ConcurrentHashMap<>())
+                                    .put(event.containerId, r.getDocumentSelfLink());
+                            resolvedEvents.put(r.getDocumentSelfLink(), event);
+                        }
+                    } else {
+                        unresolvedCount.addAndGet(unresolvedEvents.size());
+                        sendContainerChanges(computeStateLink, resolvedEvents, changes);
+                    }
+                }));
+    }
+
+    /**
+     * Sends the power states of the containers, by container state link, and the created, renamed
+     * and destroyed containers of a host in a single incremental container list
+     */
+    private void sendContainerChanges(String computeStateLink,
+            Map<String, PendingEvent> eventsByLink, ContainerChanges changes) {
+        if (eventsByLink.isEmpty() && changes == null) {
+            return;
+        }
+
+        ContainerListCallback body = new ContainerListCallback();
+        body.containerHostLink = computeStateLink;
+        body.incremental = true;
+        Operation subscriptionOp = null;
+        for (Map.Entry<String, PendingEvent> entry : eventsByLink.entrySet()) {
+            PendingEvent event = entry.getValue();
+            body.containerLinksAndState.put(entry.getKey(), event.powerState);
+            if (event.started != null) {
+                body.containerLinksAndStarted.put(entry.getKey(), event.started);
+            }
+            subscriptionOp = event.subscription.op;
+        }
+        if (changes != null) {
+            body.containerIdsAndNames.putAll(changes.namesById);
+            body.removedContainerIds.addAll(changes.removedIds);
+            subscriptionOp = changes.subscription.op;
+        }
+
+        patchCount.incrementAndGet();
+        Operation operation = Operation.createPatch(host,
+                HostContainerListDataCollection.DEFAULT_HOST_CONTAINER_LIST_DATA_COLLECTION_LINK)
+                .setBodyNoCloning(body)
+                .setReferer(host.getUri())
+                .setCompletion((o, ex) -> {
+                    if (ex != null) {
+                        logger.warning(String.format(
+                                "Error sending container changes of host [%s]. Error: [%s]",
+                                body.containerHostLink, ex.getMessage()));
+                    }
+                });
+
+        runInContext(subscriptionOp, () -> host.sendRequest(operation));
+    }
+
+    private static void runInContext(Operation op, Runnable action) {
+        OperationContext childContext = OperationContext.getOperationContext();
+        try {
+            // set system user context
+            OperationContext.setFrom(op);
+            action.run();
+        } finally {
+            OperationContext.restoreOperationContext(childContext);
+        }
+    }
+}
@@ -0,0 +1,490 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.adapter.docker.service;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.util.ByteProcessor;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Reads the docker events streams of all subscribed hosts on a few event loop threads, instead of
+ * blocking a thread per host.
+ *
+ * The events of a host are passed line by line to the event handler. The connect handler is called
+ * each time the stream of a host is connected. When the stream of a host fails, the disconnect
+ * handler is called once, until the stream is connected again, and the
+ * stream is reconnected with an exponential backoff. The stream is dropped after
+ * {@link #RECONNECT_MAX_ATTEMPTS} failed reconnects in a row, host data collection subscribes
+ * again when the host is available.
+ */
+final class DockerEventsStreamMonitor {
+
+    private static final Logger logger = Logger
+            .getLogger(DockerEventsStreamMonitor.class.getName());
+
+    private static final int READER_THREADS = Integer.getInteger(
+            "com.vmware.admiral.adapter.events.reader.threads", 2);
+    private static final int CONNECT_TIMEOUT_MILLIS = Integer.getInteger(
+            "com.vmware.admiral.adapter.events.connect.timeout.millis", 20000);
+    private static final long RECONNECT_INITIAL_DELAY_MILLIS = Long.getLong(
+            "com.vmware.admiral.adapter.events.reconnect.initial.delay.millis", 1000);
+    private static final long RECONNECT_MAX_DELAY_MILLIS = Long.getLong(
+            "com.vmware.admiral.adapter.events.reconnect.max.delay.millis",
+            TimeUnit.MINUTES.toMillis(5));
+    private static final int RECONNECT_MAX_ATTEMPTS = Integer.getInteger(
+            "com.vmware.admiral.adapter.events.reconnect.max.attempts", 10);
+    private static final int MAX_EVENT_LENGTH = Integer.getInteger(
+            "com.vmware.admiral.adapter.events.max.event.length", 1024 * 1024);
+    private static final long HEARTBEAT_INTERVAL_MILLIS = Long.getLong(
+            "com.vmware.admiral.adapter.events.heartbeat.interval.millis",
+            TimeUnit.MINUTES.toMillis(1));
+
+    /**
+     * Connection details of a subscribed host
+     */
+    static class Subscription {
+        final URI eventsUri;
+        final Operation op;
+        final String computeStateLink;
+        final SSLContext sslContext;
+        final boolean simulatedIOException;
+
+        Subscription(URI eventsUri, Operation op, String computeStateLink, SSLContext sslContext,
+                boolean simulatedIOException) {
+            this.eventsUri = eventsUri;
+            this.op = op;
+            this.computeStateLink = computeStateLink;
+            this.sslContext = sslContext;
+            this.simulatedIOException = simulatedIOException;
+        }
+    }
+
+    /**
+     * Health of the events stream of a host
+     */
+    public static class EventsStreamHealth {
+        public String hostAuthority;
+        public String computeStateLink;
+        public boolean connected;
+        public long connectedSinceMicros;
+        public long lastEventMicros;
+        public long eventCount;
+        public long reconnectCount;
+        public long failureCount;
+        public int consecutiveFailures;
+        public String lastFailure;
+    }
+
+    private final EventLoopGroup group = new NioEventLoopGroup(READER_THREADS,
+            new DefaultThreadFactory("EventsReader", true));
+    private final Map<String, HostEventsStream> streams = new ConcurrentHashMap<>();
+    private final BiConsumer<Subscription, String> eventHandler;
+    private final Consumer<Subscription> connectHandler;
+    private final Consumer<Subscription> disconnectHandler;
+    private final Consumer<Subscription> heartbeatHandler;
+
+    DockerEventsStreamMonitor(BiConsumer<Subscription, String> eventHandler,
+            Consumer<Subscription> connectHandler, Consumer<Subscription> disconnectHandler,
+            Consumer<Subscription> heartbeatHandler) {
+        this.eventHandler = eventHandler;
+        this.connectHandler = connectHandler;
+        this.disconnectHandler = disconnectHandler;
+        this.heartbeatHandler = heartbeatHandler;
+        this.group.scheduleAtFixedRate(this::sendHeartbeats, HEARTBEAT_INTERVAL_MILLIS,
+                HEARTBEAT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns true if the events stream of the host is open or being reconnected
+     */
+    boolean isSubscribed(String hostAuthority) {
+        return this.streams.containsKey(hostAuthority);
+    }
+
+    /**
+     * Opens the events stream of the host, unless already subscribed
+     */
+    void subscribe(Subscription subscription) {
+        String hostAuthority = subscription.eventsUri.getAuthority();
+        HostEventsStream stream = new HostEventsStream(hostAuthority, subscription);
+        if (this.streams.putIfAbsent(hostAuthority, stream) == null) {
+            stream.connect();
+        }
+    }
+
+    /**
+     * Reconnects right away the events stream of the host, if it is waiting to be reconnected
+     */
+    void reconnectIfDisconnected(String hostAuthority) {
+        HostEventsStream stream = this.streams.get(hostAuthority);
+        if (stream != null) {
+            stream.reconnectNow();
+        }
+    }
+
+    /**
+     * Closes the events stream of the host, without calling the disconnect handler
+     */
+    boolean unsubscribe(String hostAuthority) {
+        HostEventsStream stream = this.streams.remove(hostAuthority);
+        if (stream == null) {
+            return false;
+        }
+        stream.close();
+        return true;
+    }
+
+    List<EventsStreamHealth> getHealth() {
+        List<EventsStreamHealth> health = new ArrayList<>(this.streams.size());
+        for (HostEventsStream stream : this.streams.values()) {
+            health.add(stream.getHealth());
+        }
+        return health;
+    }
+
+    /**
+     * Calls the heartbeat handler for each connected events stream, so that the readers of the
+     * host state can tell a connected stream from one of an adapter which is gone
+     */
+    void sendHeartbeats() {
+        for (HostEventsStream stream : this.streams.values()) {
+            if (!stream.isConnected()) {
+                continue;
+            }
+            try {
+                this.heartbeatHandler.accept(stream.subscription);
+            } catch (Exception e) {
+                logger.warning(String.format("Failed to send heartbeat of host [%s]: %s",
+                        stream.hostAuthority, Utils.toString(e)));
+            }
+        }
+    }
+
+    void stop() {
+        for (String hostAuthority : new ArrayList<>(this.streams.keySet())) {
+            unsubscribe(hostAuthority);
+        }
+        this.group.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * The events stream of a single host, including its reconnects
+     */
+    private final class HostEventsStream {
+        private final String hostAuthority;
+        private final Subscription subscription;
+
+        private Channel channel;
+        private ScheduledFuture<?> reconnectFuture;
+        private boolean closed;
+        private boolean disconnectReported;
+        private final EventsStreamHealth health = new EventsStreamHealth();
+
+        HostEventsStream(String hostAuthority, Subscription subscription) {
+            this.hostAuthority = hostAuthority;
+            this.subscription = subscription;
+            this.health.hostAuthority = hostAuthority;
+            this.health.computeStateLink = subscription.computeStateLink;
+        }
+
+        synchronized void connect() {
+            if (this.closed) {
+                return;
+            }
+            this.reconnectFuture = null;
+
+            URI uri = this.subscription.eventsUri;
+            boolean secure = "https".equalsIgnoreCase(uri.getScheme());
+            int port = uri.getPort() != -1 ? uri.getPort() : (secure ? 443 : 80);
+
+            Bootstrap bootstrap = new Bootstrap()
+                    .group(DockerEventsStreamMonitor.this.group)
+                    .channel(NioSocketChannel.class)
+                    .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, CONNECT_TIMEOUT_MILLIS)
+                    .option(ChannelOption.SO_KEEPALIVE, true)
+                    .handler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel ch) {
+                            ChannelPipeline pipeline = ch.pipeline();
+                            if (secure) {
+                                SSLEngine engine = HostEventsStream.this.subscription.sslContext
+                                        .createSSLEngine(uri.getHost(), port);
+                                engine.setUseClientMode(true);
+                                pipeline.addLast(new SslHandler(engine));
+                            }
+                            pipeline.addLast(new HttpClientCodec());
+                            pipeline.addLast(new EventsStreamHandler(HostEventsStream.this));
+                        }
+                    });
+
+            this.channel = bootstrap.connect(uri.getHost(), port)
+                    .addListener(f -> {
+                        if (!f.isSuccess()) {
+                            onFailure(f.cause());
+                        }
+                    })
+                    .channel();
+        }
+
+        synchronized void reconnectNow() {
+            if (this.closed || this.reconnectFuture == null) {
+                return;
+            }
+            this.reconnectFuture.cancel(false);
+            this.health.consecutiveFailures = 0;
+            connect();
+        }
+
+        synchronized void close() {
+            this.closed = true;
+            if (this.reconnectFuture != null) {
+                this.reconnectFuture.cancel(false);
+                this.reconnectFuture = null;
+            }
+            if (this.channel != null) {
+                logger.info(String.format("Closing events stream of host [%s]",
+                        this.hostAuthority));
+                this.channel.close();
+            }
+        }
+
+        void onConnected() {
+            synchronized (this) {
+                if (this.closed) {
+                    return;
+                }
+                this.disconnectReported = false;
+                this.health.connected = true;
+                this.health.connectedSinceMicros = Utils.getSystemNowMicrosUtc();
+                this.health.consecutiveFailures = 0;
+            }
+            logger.info(String.format("Listening for events of host [%s]", this.hostAuthority));
+            DockerEventsStreamMonitor.this.connectHandler.accept(this.subscription);
+        }
+
+        void onEvent(String line) {
+            synchronized (this) {
+                if (this.closed) {
+                    return;
+                }
+                this.health.eventCount++;
+                this.health.lastEventMicros = Utils.getSystemNowMicrosUtc();
+            }
+            try {
+                DockerEventsStreamMonitor.this.eventHandler.accept(this.subscription, line);
+            } catch (Exception e) {
+                logger.warning(String.format("Failed to process event of host [%s]: %s",
+                        this.hostAuthority, Utils.toString(e)));
+            }
+        }
+
+        void onFailure(Throwable cause) {
+            boolean reportDisconnect;
+            synchronized (this) {
+                if (this.closed) {
+                    return;
+                }
+                this.health.connected = false;
+                this.health.failureCount++;
+                this.health.consecutiveFailures++;
+                this.health.lastFailure = String.valueOf(cause.getMessage());
+                reportDisconnect = !this.disconnectReported;
+                this.disconnectReported = true;
+
+                if (this.health.consecutiveFailures > RECONNECT_MAX_ATTEMPTS) {
+                    logger.warning(String.format(
+                            "Giving up events stream of host [%s] after %d reconnect attempts: %s",
+                            this.hostAuthority, this.health.consecutiveFailures - 1,
+                            cause.getMessage()));
+                    this.closed = true;
+                    DockerEventsStreamMonitor.this.streams.remove(this.hostAuthority, this);
+                } else {
+                    long delay = reconnectDelayMillis(this.health.consecutiveFailures);
+                    logger.info(String.format(
+                            "Events stream of host [%s] failed: %s. Reconnecting in %d ms",
+                            this.hostAuthority, cause.getMessage(), delay));
+                    this.health.reconnectCount++;
+                    this.reconnectFuture = DockerEventsStreamMonitor.this.group.schedule(
+                            this::connect, delay, TimeUnit.MILLISECONDS);
+                }
+            }
+
+            if (reportDisconnect) {
+                DockerEventsStreamMonitor.this.disconnectHandler.accept(this.subscription);
+            }
+        }
+
+        synchronized boolean isConnected() {
+            return !this.closed && this.health.connected;
+        }
+
+        synchronized EventsStreamHealth getHealth() {
+            EventsStreamHealth snapshot = new EventsStreamHealth();
+            snapshot.hostAuthority = this.health.hostAuthority;
+            snapshot.computeStateLink = this.health.computeStateLink;
+            snapshot.connected = this.health.connected;
+            snapshot.connectedSinceMicros = this.health.connectedSinceMicros;
+            snapshot.lastEventMicros = this.health.lastEventMicros;
+            snapshot.eventCount = this.health.eventCount;
+            snapshot.reconnectCount = this.health.reconnectCount;
+            snapshot.failureCount = this.health.failureCount;
+            snapshot.consecutiveFailures = this.health.consecutiveFailures;
+            snapshot.lastFailure = this.health.lastFailure;
+            return snapshot;
+        }
+    }
+
+    static long reconnectDelayMillis(int failures) {
+        long delay = RECONNECT_INITIAL_DELAY_MILLIS << Math.min(failures - 1, 20);
+        delay = Math.min(delay, RECONNECT_MAX_DELAY_MILLIS);
+        // spread the reconnects of hosts which failed together, e.g. on network outage
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    /**
+     * Sends the events request and splits the chunked response into events, one per line
+     */
+    private static final class EventsStreamHandler extends SimpleChannelInboundHandler<HttpObject> {
+        private final HostEventsStream stream;
+        private ByteBuf lineBuffer;
+        private boolean failed;
+
+        EventsStreamHandler(HostEventsStream stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) throws Exception {
+            this.lineBuffer = ctx.alloc().buffer();
+
+            URI uri = this.stream.subscription.eventsUri;
+            String path = uri.getRawQuery() == null ? uri.getRawPath()
+                    : uri.getRawPath() + "?" + uri.getRawQuery();
+            DefaultFullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1,
+                    HttpMethod.GET, path);
+            request.headers().set(HttpHeaderNames.HOST, uri.getAuthority());
+            request.headers().set(HttpHeaderNames.ACCEPT, HttpHeaderValues.APPLICATION_JSON);
+            request.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
+            ctx.writeAndFlush(request);
+            super.channelActive(ctx);
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, HttpObject msg) throws Exception {
+            if (msg instanceof HttpResponse) {
+                HttpResponseStatus status = ((HttpResponse) msg).status();
+                if (!HttpResponseStatus.OK.equals(status)) {
+                    fail(ctx, new IOException("Unexpected events response: " + status));
+                    return;
+                }
+                if (this.stream.subscription.simulatedIOException) {
+                    fail(ctx, new IOException("Simulated IOException from an IT test."));
+                    return;
+                }
+                this.stream.onConnected();
+            }
+
+            if (msg instanceof HttpContent && !this.failed) {
+                this.lineBuffer.writeBytes(((HttpContent) msg).content());
+                int end;
+                while ((end = this.lineBuffer.forEachByte(ByteProcessor.FIND_LF)) != -1) {
+                    int start = this.lineBuffer.readerIndex();
+                    String line = this.lineBuffer.toString(start, end - start,
+                            StandardCharsets.UTF_8).trim();
+                    this.lineBuffer.readerIndex(end + 1);
+                    if (!line.isEmpty()) {
+                        this.stream.onEvent(line);
+                    }
+                }
+                this.lineBuffer.discardReadBytes();
+                if (this.lineBuffer.readableBytes() > MAX_EVENT_LENGTH) {
+                    fail(ctx, new IOException("Event exceeds " + MAX_EVENT_LENGTH + " bytes"));
+                    return;
+                }
+
+                if (msg instanceof LastHttpContent) {
+                    fail(ctx, new IOException("Events stream closed by the host"));
+                }
+            }
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            fail(ctx, new IOException("Connection closed"));
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            fail(ctx, cause);
+        }
+
+        @Override
+        public void handlerRemoved(ChannelHandlerContext ctx) {
+            if (this.lineBuffer != null) {
+                this.lineBuffer.release();
+                this.lineBuffer = null;
+            }
+        }
+
+        private void fail(ChannelHandlerContext ctx, Throwable cause) {
+            if (this.failed) {
+                return;
+            }
+            this.failed = true;
+            ctx.close();
+            this.stream.onFailure(cause);
+        }
+    }
+}
@@ -27,11 +27,16 @@ import static com.vmware.admiral.compute.ContainerHostService.SSL_TRUST_CERT_PRO
 
 import java.net.URI;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import com.vmware.admiral.adapter.common.ContainerHostOperationType;
+import com.vmware.admiral.adapter.docker.service.DockerEventsProcessor.EventsProcessingStats;
+import com.vmware.admiral.adapter.docker.service.DockerEventsStreamMonitor.EventsStreamHealth;
 import com.vmware.admiral.common.ManagementUriParts;
 import com.vmware.admiral.common.util.ConversionUtil;
 import com.vmware.admiral.common.util.PropertyUtils;
@@ -74,6 +79,97 @@ public class DockerHostAdapterService extends AbstractDockerAdapterService {
     private static final String VCH_CPU_LIMIT = " VCH CPU limit";
     private static final String VCH_CPU_USAGE = " VCH CPU usage";
 
+    // per host health of the docker events streams, as service stats
+    static final String STAT_NAME_PREFIX_EVENTS_STREAM = "eventsStream.";
+    static final String STAT_NAME_EVENTS_STREAM_COUNT = "eventsStreamCount";
+    static final String STAT_NAME_EVENTS_STREAM_CONNECTED_COUNT = "eventsStreamConnectedCount";
+
+    // processing of the docker events, as service stats
+    static final String STAT_NAME_EVENTS_PER_SECOND = "eventsPerSecond";
+    static final String STAT_NAME_EVENTS_COALESCING_RATIO = "eventsCoalescingRatio";
+    static final String STAT_NAME_EVENTS_UNRESOLVED_COUNT = "eventsUnresolvedCount";
+
+    private final Set<String> eventsStreamStatHosts = new HashSet<>();
+    private EventsProcessingStats lastEventsProcessingStats;
+    private long lastEventsProcessingStatsMicros;
+
+    public DockerHostAdapterService() {
+        super();
+        // the events stream stats are only kept for instrumented services
+        super.toggleOption(ServiceOption.INSTRUMENTATION, true);
+    }
+
+    @Override
+    public void handlePeriodicMaintenance(Operation post) {
+        updateEventsStreamStats();
+        super.handlePeriodicMaintenance(post);
+    }
+
+    private synchronized void updateEventsStreamStats() {
+        DockerAdapterCommandExecutor executor = getCommandExecutor();
+        if (!(executor instanceof RemoteApiDockerAdapterCommandExecutorImpl)) {
+            return;
+        }
+
+        List<EventsStreamHealth> streams = ((RemoteApiDockerAdapterCommandExecutorImpl) executor)
+                .getEventsStreamHealth();
+        Set<String> hosts = new HashSet<>();
+        int connectedCount = 0;
+        for (EventsStreamHealth health : streams) {
+            String prefix = STAT_NAME_PREFIX_EVENTS_STREAM + health.hostAuthority + ".";
+            setStat(prefix + "connected", health.connected ? 1 : 0);
+            setStat(prefix + "connectedSinceMicros", health.connectedSinceMicros);
+            setStat(prefix + "lastEventMicros", health.lastEventMicros);
+            setStat(prefix + "eventCount", health.eventCount);
+            setStat(prefix + "reconnectCount", health.reconnectCount);
+            setStat(prefix + "failureCount", health.failureCount);
+            setStat(prefix + "consecutiveFailures", health.consecutiveFailures);
+            hosts.add(health.hostAuthority);
+            if (health.connected) {
+                connectedCount++;
+            }
+        }
+
+        // streams which were closed or dropped since the last update
+        this.eventsStreamStatHosts.removeAll(hosts);
+        for (String host : this.eventsStreamStatHosts) {
+            setStat(STAT_NAME_PREFIX_EVENTS_STREAM + host + ".connected", 0);
+        }
+        this.eventsStreamStatHosts.clear();
+        this.eventsStreamStatHosts.addAll(hosts);
+
+        setStat(STAT_NAME_EVENTS_STREAM_COUNT, streams.size());
+        setStat(STAT_NAME_EVENTS_STREAM_CONNECTED_COUNT, connectedCount);
+
+        updateEventsProcessingStats(
+                ((RemoteApiDockerAdapterCommandExecutorImpl) executor).getEventsProcessingStats());
+    }
+
+    /**
+     * Sets the rate of the events read since the last maintenance and the number of container
+     * events applied per container state update
+     */
+    private void updateEventsProcessingStats(EventsProcessingStats stats) {
+        long now = Utils.getSystemNowMicrosUtc();
+        EventsProcessingStats last = this.lastEventsProcessingStats;
+        if (last != null && now > this.lastEventsProcessingStatsMicros) {
+            double seconds = (now - this.lastEventsProcessingStatsMicros)
+                    / (double) TimeUnit.SECONDS.toMicros(1);
+            setStat(STAT_NAME_EVENTS_PER_SECOND, (stats.eventCount - last.eventCount) / seconds);
+
+            long patchCount = stats.patchCount - last.patchCount;
+            if (patchCount > 0) {
+                setStat(STAT_NAME_EVENTS_COALESCING_RATIO,
+                        (stats.containerEventCount - last.containerEventCount)
+                                / (double) patchCount);
+            }
+        }
+        setStat(STAT_NAME_EVENTS_UNRESOLVED_COUNT, stats.unresolvedCount);
+
+        this.lastEventsProcessingStats = stats;
+        this.lastEventsProcessingStatsMicros = now;
+    }
+
     @Override
     public void handlePatch(Operation op) {
         ContainerHostRequest request = op.getBody(ContainerHostRequest.class);
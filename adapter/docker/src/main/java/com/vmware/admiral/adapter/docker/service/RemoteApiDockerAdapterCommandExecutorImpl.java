@@ -11,14 +11,13 @@
 
 package com.vmware.admiral.adapter.docker.service;
 
+import static com.vmware.admiral.compute.ContainerHostService.EVENTS_STREAM_CONNECTED_SINCE_PROP_NAME;
+import static com.vmware.admiral.compute.ContainerHostService.EVENTS_STREAM_HEARTBEAT_PROP_NAME;
 import static com.vmware.admiral.compute.ContainerHostService.SSL_TRUST_ALIAS_PROP_NAME;
 import static com.vmware.admiral.compute.ContainerHostService.SSL_TRUST_CERT_PROP_NAME;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
-import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URL;
 import java.net.URLConnection;
@@ -29,12 +28,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
@@ -46,9 +40,11 @@ import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509ExtendedKeyManager;
 import javax.net.ssl.X509TrustManager;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.yaml.snakeyaml.util.UriEncoder;
 
+import com.vmware.admiral.adapter.docker.service.DockerEventsProcessor.EventsProcessingStats;
+import com.vmware.admiral.adapter.docker.service.DockerEventsStreamMonitor.EventsStreamHealth;
+import com.vmware.admiral.adapter.docker.service.DockerEventsStreamMonitor.Subscription;
 import com.vmware.admiral.adapter.docker.util.DockerStreamUtil;
 import com.vmware.admiral.common.util.AssertUtil;
 import com.vmware.admiral.common.util.ConfigurationUtil;
@@ -88,13 +84,6 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
             "com.vmware.admiral.adapter.ssltrust.delegate.retries", 5);
     private static final long SSL_TRUST_RETRIES_WAIT = Long.getLong(
             "com.vmware.admiral.adapter.ssltrust.delegate.retries.wait.millis", 500);
-    private static final int URL_CONNECTION_READ_TIMEOUT = Integer.getInteger(
-            "com.vmware.admiral.adapter.url.connection.read.timeout", 20000);
-    private static final String THREAD_POOL_QUEUE_SIZE_PROP_NAME = "com.vmware.admiral.adapter.thread.pool.queue.size";
-    private static final int THREAD_POOL_QUEUE_SIZE = Integer.getInteger(
-            THREAD_POOL_QUEUE_SIZE_PROP_NAME, 1000);
-    private static final int THREAD_POOL_KEEPALIVE_SECONDS = Integer.getInteger(
-            "com.vmware.admiral.adapter.thread.pool.keepalive.seconds", 30);
 
     public static final String MEDIA_TYPE_APPLICATION_TAR = "application/tar";
 
@@ -102,26 +91,16 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
 
     private static final Pattern ERROR_PATTERN = Pattern.compile("\"error\":\"(.*)\"");
 
-    private static final AtomicInteger threadCount = new AtomicInteger(0);
-    private static final ThreadFactory threadFactory =
-            (r) -> new Thread(r, "EventsReader-" + threadCount.incrementAndGet());
-
-    private static ExecutorService executor = new ThreadPoolExecutor(
-            THREAD_POOL_QUEUE_SIZE,
-            THREAD_POOL_QUEUE_SIZE,
-            THREAD_POOL_KEEPALIVE_SECONDS,
-            TimeUnit.SECONDS, new LinkedBlockingQueue<>(THREAD_POOL_QUEUE_SIZE),
-            threadFactory,
-            new ThreadPoolExecutor.AbortPolicy());
-
     private final ServiceHost host;
     private final ServiceClient serviceClient;
     // Used for commands like exec start
     private final ServiceClient attachServiceClient;
     // Used for commands like load image from tar
     private final ServiceClient largeDataClient;
-    // Used for storing the runnning threads which handles opened connections to hosts
-    private volatile Map<String, Thread> runningThreads = new HashMap<>();
+    // Reads the events streams of the subscribed hosts
+    private final DockerEventsStreamMonitor eventsStreamMonitor;
+    // Applies the events read from the events streams
+    private final DockerEventsProcessor eventsProcessor;
 
     private final DelegatingX509KeyManager keyManager = new DelegatingX509KeyManager();
     private ServerX509TrustManager trustManager;
@@ -153,6 +132,11 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
         if (trustManager instanceof ServerX509TrustManager) {
             this.trustManager = (ServerX509TrustManager) trustManager;
         }
+
+        this.eventsProcessor = new DockerEventsProcessor(host);
+        this.eventsStreamMonitor = new DockerEventsStreamMonitor(this::handleEvent,
+                this::handleEventsStreamConnect, this::handleEventsStreamDisconnect,
+                this::handleEventsStreamHeartbeat);
     }
 
     public static RemoteApiDockerAdapterCommandExecutorImpl create(ServiceHost host,
@@ -181,6 +165,7 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
         if (largeDataClient != null) {
             largeDataClient.stop();
         }
+        eventsStreamMonitor.stop();
 
         INSTANCE = null;
     }
@@ -536,8 +521,13 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
         URI baseUri = UriUtils.extendUri(input.getDockerUri(), "/events");
         logger.info("Subscribing for events: " + baseUri);
 
-        if (runningThreads.get(baseUri.getAuthority()) != null) {
+        // data collection subscribes on each run, pick up the containers it has discovered
+        eventsProcessor.refreshContainerLinks(op, computeState.documentSelfLink);
+
+        if (eventsStreamMonitor.isSubscribed(baseUri.getAuthority())) {
             logger.info("Connection is already opened: " + baseUri.getAuthority());
+            // the host is available, do not wait for the next reconnect attempt
+            eventsStreamMonitor.reconnectIfDisconnected(baseUri.getAuthority());
             return;
         }
 
@@ -564,14 +554,24 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
         URI baseUri = UriUtils.extendUri(input.getDockerUri(), "/events");
         logger.info("Unsubscribing for events: " + baseUri);
 
-        Thread runningThread = runningThreads.get(input.getDockerUri().getAuthority());
-
-        if (runningThread == null) {
+        if (!eventsStreamMonitor.unsubscribe(input.getDockerUri().getAuthority())) {
             logger.info("Connection already closed!");
-            return;
         }
+        eventsProcessor.removeContainerLinks(computeState.documentSelfLink);
+    }
 
-        runningThread.interrupt();
+    /**
+     * Returns the health of the events streams of the subscribed hosts
+     */
+    public List<EventsStreamHealth> getEventsStreamHealth() {
+        return eventsStreamMonitor.getHealth();
+    }
+
+    /**
+     * Returns the counters of the events processed from the events streams
+     */
+    public EventsProcessingStats getEventsProcessingStats() {
+        return eventsProcessor.getStats();
     }
 
     // network operations
@@ -730,30 +730,7 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
     @Override
     public URLConnection openConnection(CommandInput input, URL url) throws NoSuchAlgorithmException, KeyManagementException, IOException {
         if (isSecure(URI.create(url.toString()))) {
-
-            String clientKey = null;
-            String clientCert = null;
-
-            if (input != null && input.getCredentials() != null) {
-                clientKey = EncryptionUtils.decrypt(input.getCredentials().privateKey);
-                clientCert = input.getCredentials().publicKey;
-            }
-
-            // TODO use an LRU cache to limit the number of stored
-            // KeyManagers while minimizing time wasted repeatedly
-            // recreating them
-            KeyManager[] keytManagers = null;
-            if (clientKey != null && !clientKey.isEmpty()) {
-                X509ExtendedKeyManager delegateKeyManager;
-                delegateKeyManager = (X509ExtendedKeyManager) CertificateUtil
-                        .getKeyManagers("default", clientKey, clientCert)[0];
-                keytManagers = new KeyManager[]{delegateKeyManager};
-            }
-
-            TrustManager[] trustManagers = new TrustManager[]{ServerX509TrustManager.init(null)};
-
-            SSLContext sslContext = SSLContext.getInstance("TLS");
-            sslContext.init(keytManagers, trustManagers, new SecureRandom());
+            SSLContext sslContext = createSslContext(input);
 
             HttpsURLConnection conn = (HttpsURLConnection) url.openConnection();
             conn.setHostnameVerifier((s, sslSession) -> true);
@@ -775,6 +752,38 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
         return conn;
     }
 
+    /**
+     * SSL context with the client certificate of the host credentials, for direct connections to
+     * the docker server
+     */
+    private SSLContext createSslContext(CommandInput input)
+            throws NoSuchAlgorithmException, KeyManagementException {
+        String clientKey = null;
+        String clientCert = null;
+
+        if (input != null && input.getCredentials() != null) {
+            clientKey = EncryptionUtils.decrypt(input.getCredentials().privateKey);
+            clientCert = input.getCredentials().publicKey;
+        }
+
+        // TODO use an LRU cache to limit the number of stored
+        // KeyManagers while minimizing time wasted repeatedly
+        // recreating them
+        KeyManager[] keytManagers = null;
+        if (clientKey != null && !clientKey.isEmpty()) {
+            X509ExtendedKeyManager delegateKeyManager;
+            delegateKeyManager = (X509ExtendedKeyManager) CertificateUtil
+                    .getKeyManagers("default", clientKey, clientCert)[0];
+            keytManagers = new KeyManager[]{delegateKeyManager};
+        }
+
+        TrustManager[] trustManagers = new TrustManager[]{ServerX509TrustManager.init(null)};
+
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(keytManagers, trustManagers, new SecureRandom());
+        return sslContext;
+    }
+
     /**
      * Common settings on all outgoing requests to the docker server
      */
@@ -1038,98 +1047,8 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
         }
     }
 
-    /**
-     * Used for creation of a new thread for each host event subscription.
-     */
-    private class EventsMonitor implements Runnable {
-
-        public Operation op;
-        public URI hostUri;
-        public CommandInput input;
-        public ComputeState computeState;
-        public boolean simulatedIOException;
-
-        public EventsMonitor(Operation op,
-                URI hostUri,
-                CommandInput input,
-                ComputeState computeState,
-                boolean simulatedIOException) {
-            this.op = op;
-            this.hostUri = hostUri;
-            this.input = input;
-            this.computeState = computeState;
-            this.simulatedIOException = simulatedIOException;
-        }
-
-        @Override
-        public void run() {
-            logger.info(String.format("Simulation of IOException enabled: [%s]",
-                    simulatedIOException));
-            OperationContext childContext = OperationContext.getOperationContext();
-
-            boolean shouldRestoreContext = true;
-
-            try {
-                // set system user context
-                OperationContext.setFrom(op);
-
-                URL url = new URL(hostUri.toString());
-                URLConnection con = openConnection(input, url);
-
-                // setting "read timeout" to reset the blocking stream (reader.readLine()).
-                // Otherwise there is no way to close the connection.
-                con.setReadTimeout(URL_CONNECTION_READ_TIMEOUT);
-
-                final String hostName = url.getAuthority();
-                runningThreads.put(hostName, Thread.currentThread());
-
-                try (BufferedReader in = new BufferedReader(new InputStreamReader(
-                        con.getInputStream()))) {
-                    readData(in, simulatedIOException);
-                } catch (InterruptedException e) {
-                    logger.fine(String.format("[%s] is thrown.", e.getClass().getName()));
-                } catch (IOException e) {
-                    logger.info(String.format("IOException when listening [%s]. Error: [%s]",
-                            hostName, e.getMessage()));
-
-                    shouldRestoreContext = false;
-
-                    ComputeState state = new ComputeState();
-                    state.powerState = ComputeService.PowerState.UNKNOWN;
-
-                    patchComputeState(computeState.documentSelfLink, state)
-                            .thenCompose((ignore) -> {
-                                // changing the power state of containers to UNKNOWN
-                                return queryExistingContainerStates(computeState.documentSelfLink);
-                            })
-                            .whenComplete((o, ex) -> {
-                                OperationContext.restoreOperationContext(childContext);
-                            });
-                } catch (Exception e) {
-                    logger.warning(String.format("Exception in subscription to [%s]. Error: [%s]",
-                            hostName, e.getMessage()));
-                } finally {
-                    runningThreads.remove(hostName);
-                    closeConnection(con);
-                }
-            } catch (Throwable t) {
-                logger.warning(Utils.toString(t));
-            } finally {
-                if (shouldRestoreContext) {
-                    OperationContext.restoreOperationContext(childContext);
-                }
-            }
-        }
-    }
-
     private void makeSubscription(CommandInput input, Operation op, ComputeState computeState, URI uri,
             Boolean simulateIOExceptionPropertyValue) {
-        boolean maxAllowedNumberOfThreadsExceeded = maxAllowedNumberOfThreadsExceeded();
-
-        if (maxAllowedNumberOfThreadsExceeded) {
-            return;
-        }
-
         if (simulateIOExceptionPropertyValue == null) {
             ConfigurationUtil.getConfigProperty(host, ConfigurationUtil.THROW_IO_EXCEPTION,
                     (prop) -> {
@@ -1139,14 +1058,109 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
             return;
         }
 
-        EventsMonitor eventsMonitor = new EventsMonitor(
-                op,
-                uri,
-                input,
-                computeState,
-                simulateIOExceptionPropertyValue);
+        logger.info(String.format("Simulation of IOException enabled: [%s]",
+                simulateIOExceptionPropertyValue));
+
+        SSLContext sslContext = null;
+        try {
+            if (isSecure(uri)) {
+                sslContext = createSslContext(input);
+            }
+        } catch (Exception e) {
+            logger.warning(String.format("Exception in subscription to [%s]. Error: [%s]",
+                    uri.getAuthority(), e.getMessage()));
+            return;
+        }
+
+        eventsStreamMonitor.subscribe(new Subscription(uri, op, computeState.documentSelfLink,
+                sslContext, simulateIOExceptionPropertyValue));
+    }
 
-        executor.submit(eventsMonitor);
+    /**
+     * Handles the events stream of a host being connected. From now on the containers of the host
+     * are kept up to date by the events and host data collection lists them less often.
+     */
+    private void handleEventsStreamConnect(Subscription subscription) {
+        OperationContext childContext = OperationContext.getOperationContext();
+        try {
+            // set system user context
+            OperationContext.setFrom(subscription.op);
+
+            long now = Utils.getSystemNowMicrosUtc();
+            ComputeState state = new ComputeState();
+            state.customProperties = new HashMap<>();
+            state.customProperties.put(EVENTS_STREAM_CONNECTED_SINCE_PROP_NAME,
+                    String.valueOf(now));
+            state.customProperties.put(EVENTS_STREAM_HEARTBEAT_PROP_NAME, String.valueOf(now));
+
+            patchComputeState(subscription.computeStateLink, state);
+        } catch (Throwable t) {
+            logger.warning(Utils.toString(t));
+        } finally {
+            OperationContext.restoreOperationContext(childContext);
+        }
+    }
+
+    /**
+     * Handles the periodic heartbeat of a connected events stream, by updating the heartbeat of
+     * the host. Host data collection lists the containers of the host again when the heartbeat
+     * stops, e.g. when this node is gone without reporting the disconnect.
+     */
+    private void handleEventsStreamHeartbeat(Subscription subscription) {
+        OperationContext childContext = OperationContext.getOperationContext();
+        try {
+            // set system user context
+            OperationContext.setFrom(subscription.op);
+
+            ComputeState state = new ComputeState();
+            state.customProperties = new HashMap<>();
+            state.customProperties.put(EVENTS_STREAM_HEARTBEAT_PROP_NAME,
+                    String.valueOf(Utils.getSystemNowMicrosUtc()));
+
+            // sent periodically for each connected host, only failures are logged
+            host.sendRequest(Operation
+                    .createPatch(UriUtils.buildUri(host, subscription.computeStateLink))
+                    .setBody(state)
+                    .setReferer(host.getUri())
+                    .setCompletion((o, e) -> {
+                        if (e != null) {
+                            logger.warning(String.format(
+                                    "Failed to patch events stream heartbeat of [%s]: [%s]",
+                                    subscription.computeStateLink, Utils.toString(e)));
+                        }
+                    }));
+        } catch (Throwable t) {
+            logger.warning(Utils.toString(t));
+        } finally {
+            OperationContext.restoreOperationContext(childContext);
+        }
+    }
+
+    /**
+     * Handles the events stream of a host failing, by changing the power state of the host and its
+     * containers to UNKNOWN until the host is found available again
+     */
+    private void handleEventsStreamDisconnect(Subscription subscription) {
+        OperationContext childContext = OperationContext.getOperationContext();
+        try {
+            // set system user context
+            OperationContext.setFrom(subscription.op);
+
+            ComputeState state = new ComputeState();
+            state.powerState = ComputeService.PowerState.UNKNOWN;
+            state.customProperties = new HashMap<>();
+            state.customProperties.put(EVENTS_STREAM_CONNECTED_SINCE_PROP_NAME, "0");
+
+            patchComputeState(subscription.computeStateLink, state)
+                    .thenCompose((ignore) -> {
+                        // changing the power state of containers to UNKNOWN
+                        return queryExistingContainerStates(subscription.computeStateLink);
+                    });
+        } catch (Throwable t) {
+            logger.warning(Utils.toString(t));
+        } finally {
+            OperationContext.restoreOperationContext(childContext);
+        }
     }
 
     private DeferredResult<ComputeState> requestComputeState(String selfLink) {
@@ -1183,70 +1197,15 @@ public class RemoteApiDockerAdapterCommandExecutorImpl implements
         return host.sendWithDeferredResult(op);
     }
 
-    private void readData(BufferedReader in, boolean simulatedIOException) throws IOException, InterruptedException {
-
-        while (true) {
-            if (Thread.currentThread().isInterrupted()) {
-                throw new InterruptedException();
-            }
-
-            if (simulatedIOException) {
-                throw new IOException("Simulated IOException from an IT test.");
-            }
-
-            try {
-                String inputLine  = in.readLine();
-
-                ObjectMapper mapper = new ObjectMapper();
-                Events event = mapper.readValue(inputLine, Events.class);
-
-                if (EVENT_TYPE_CONTAINER.equals(event.getType())) {
-                    ContainerState cs = new ContainerState();
-                    if (EVENT_TYPE_CONTAINER_DIE.equals(event.getAction())) {
-                        logger.fine(inputLine);
-
-                        cs.powerState = ContainerState.PowerState.STOPPED;
-                    } else if (EVENT_TYPE_CONTAINER_START.equals(event.getAction())) {
-                        logger.fine(inputLine);
-
-                        cs.powerState = ContainerState.PowerState.RUNNING;
-                        cs.started = TimeUnit.NANOSECONDS.toMillis(event.getTimeNano());
-                    } else {
-                        continue;
-                    }
-
-                    String containerId = event.getId();
-
-                    QueryTask queryTask = QueryUtil
-                            .buildPropertyQuery(ContainerState.class, ContainerState.FIELD_NAME_ID, containerId);
-
-                    new ServiceDocumentQuery<ContainerState>(host, ContainerState.class).query(queryTask, (r) -> {
-                        if (r.hasException()) {
-                            logger.warning(String.format("Failed to query resource container state with id [%s]",
-                                    containerId));
-                        } else if (r.hasResult()) {
-                            cs.documentSelfLink = r.getDocumentSelfLink();
-                            patchContainerState(cs);
-                        }
-                    });
-                }
-            } catch (SocketTimeoutException e) {
-                logger.fine("No events have been received. Unblocking the reader.");
-            }
+    private void handleEvent(Subscription subscription, String inputLine) {
+        try {
+            eventsProcessor.process(subscription, inputLine);
+        } catch (IOException e) {
+            logger.warning(String.format("Failed to parse event from [%s]. Error: [%s]",
+                    subscription.eventsUri.getAuthority(), e.getMessage()));
         }
     }
 
-    private boolean maxAllowedNumberOfThreadsExceeded() {
-        ThreadPoolExecutor tpe = (ThreadPoolExecutor) executor;
-        if (tpe.getActiveCount() >= tpe.getMaximumPoolSize()) {
-            logger.warning(String.format("Maximum allowed number of threads exceeded! Use [\"%s\"] property to increase it.",
-                    THREAD_POOL_QUEUE_SIZE_PROP_NAME));
-            return true;
-        }
-
-        return false;
-    }
-
     private DeferredResult<Void> queryExistingContainerStates(String containerHostLink) {
         QueryTask queryTask = QueryUtil.buildPropertyQuery(ContainerState.class,
                 ContainerState.FIELD_NAME_PARENT_LINK, containerHostLink);
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.adapter.docker.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.adapter.docker.service.DockerEventsProcessor.EventsProcessingStats;
+import com.vmware.admiral.adapter.docker.service.DockerEventsStreamMonitor.Subscription;
+import com.vmware.admiral.common.test.BaseTestCase;
+import com.vmware.admiral.compute.container.ContainerFactoryService;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState.PowerState;
+import com.vmware.admiral.compute.container.HostContainerListDataCollection;
+import com.vmware.admiral.compute.container.HostContainerListDataCollection.ContainerListCallback;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.StatelessService;
+
+public class DockerEventsProcessorTest extends BaseTestCase {
+
+    private static final String COMPUTE_STATE_LINK = "/resources/compute/test-host";
+    private static final long EVENT_TIME_NANO = TimeUnit.MILLISECONDS.toNanos(1577836800000L);
+
+    private DockerEventsProcessor processor;
+    private Subscription subscription;
+    private List<ContainerListCallback> callbacks;
+
+    @Before
+    public void setUp() throws Throwable {
+        host.startServiceAndWait(ContainerFactoryService.class, ContainerFactoryService.SELF_LINK);
+
+        callbacks = new CopyOnWriteArrayList<>();
+        host.startServiceAndWait(new StatelessService() {
+            @Override
+            public void handlePatch(Operation patch) {
+                callbacks.add(patch.getBody(ContainerListCallback.class));
+                patch.complete();
+            }
+        }, HostContainerListDataCollection.DEFAULT_HOST_CONTAINER_LIST_DATA_COLLECTION_LINK, null);
+
+        Operation op = Operation.createGet(host.getUri());
+        processor = new DockerEventsProcessor(host);
+        subscription = new Subscription(URI.create("http://localhost:2375/events"), op,
+                COMPUTE_STATE_LINK, null, false);
+    }
+
+    @Test
+    public void testOnlyLatestEventOfContainerIsApplied() throws Throwable {
+        ContainerState container = createContainerState("container-1");
+        processor.refreshContainerLinks(subscription.op, COMPUTE_STATE_LINK);
+
+        processor.process(subscription, event("container-1", "start", 1));
+        processor.process(subscription, event("container-1", "die", 2));
+        processor.process(subscription, event("container-1", "start", 3));
+        processor.process(subscription, "{\"Type\":\"network\",\"Action\":\"connect\"}");
+
+        waitFor(() -> callbacks.size() == 1);
+        ContainerListCallback callback = callbacks.get(0);
+        assertTrue(callback.incremental);
+        assertEquals(COMPUTE_STATE_LINK, callback.containerHostLink);
+        assertEquals(Collections.singletonMap(container.documentSelfLink, PowerState.RUNNING),
+                callback.containerLinksAndState);
+        assertEquals(Collections.singletonMap(container.documentSelfLink,
+                TimeUnit.NANOSECONDS.toMillis(EVENT_TIME_NANO + 3)),
+                callback.containerLinksAndStarted);
+
+        EventsProcessingStats stats = processor.getStats();
+        assertEquals(4, stats.eventCount);
+        assertEquals(3, stats.containerEventCount);
+        assertEquals(1, stats.patchCount);
+        assertEquals(0, stats.unresolvedCount);
+    }
+
+    @Test
+    public void testUnknownContainerIdsAreResolved() throws Throwable {
+        ContainerState container = createContainerState("container-2");
+
+        processor.process(subscription, event("container-2", "die", 1));
+        processor.process(subscription, event("container-3", "die", 1));
+
+        waitFor(() -> callbacks.size() == 1);
+        assertEquals(Collections.singletonMap(container.documentSelfLink, PowerState.STOPPED),
+                callbacks.get(0).containerLinksAndState);
+        assertEquals(1, processor.getStats().unresolvedCount);
+        assertEquals(1, processor.getStats().patchCount);
+
+        // the resolved link is used for the next events
+        processor.process(subscription, event("container-2", "start", 2));
+        waitFor(() -> callbacks.size() == 2);
+        assertEquals(Collections.singletonMap(container.documentSelfLink, PowerState.RUNNING),
+                callbacks.get(1).containerLinksAndState);
+        assertEquals(1, processor.getStats().unresolvedCount);
+    }
+
+    @Test
+    public void testContainerChangesAreSentAsIncrementalList() throws Throwable {
+        ContainerState container = createContainerState("container-6");
+        processor.refreshContainerLinks(subscription.op, COMPUTE_STATE_LINK);
+
+        processor.process(subscription, event("container-4", "create", 1, "web"));
+        processor.process(subscription, event("container-4", "rename", 2, "web-1"));
+        processor.process(subscription, event("container-5", "create", 1, "db"));
+        processor.process(subscription, event("container-5", "destroy", 2, "db"));
+        processor.process(subscription, event("container-6", "die", 1));
+
+        // all changes of the host are sent together
+        waitFor(() -> callbacks.size() == 1);
+        ContainerListCallback callback = callbacks.get(0);
+        assertTrue(callback.incremental);
+        assertEquals(COMPUTE_STATE_LINK, callback.containerHostLink);
+        assertEquals(Collections.singletonMap("container-4", "web-1"),
+                callback.containerIdsAndNames);
+        assertEquals(Collections.singleton("container-5"), callback.removedContainerIds);
+        assertEquals(Collections.singletonMap(container.documentSelfLink, PowerState.STOPPED),
+                callback.containerLinksAndState);
+        assertEquals(5, processor.getStats().containerEventCount);
+        assertEquals(1, processor.getStats().patchCount);
+    }
+
+    private ContainerState createContainerState(String id) throws Throwable {
+        ContainerState containerState = new ContainerState();
+        containerState.id = id;
+        containerState.parentLink = COMPUTE_STATE_LINK;
+        containerState.powerState = PowerState.PROVISIONING;
+        return doPost(containerState, ContainerFactoryService.SELF_LINK);
+    }
+
+    private static String event(String id, String action, long timeNanoOffset) {
+        return event(id, action, timeNanoOffset, "test");
+    }
+
+    private static String event(String id, String action, long timeNanoOffset, String name) {
+        long timeNano = EVENT_TIME_NANO + timeNanoOffset;
+        return String.format("{\"Type\":\"container\",\"Action\":\"%s\",\"id\":\"%s\","
+                + "\"Actor\":{\"ID\":\"%s\",\"Attributes\":{\"name\":\"%s\"}},"
+                + "\"time\":%d,\"timeNano\":%d}", action, id, id, name,
+                TimeUnit.NANOSECONDS.toSeconds(timeNano), timeNano);
+    }
+}
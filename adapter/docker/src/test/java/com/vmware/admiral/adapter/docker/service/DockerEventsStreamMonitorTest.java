@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.adapter.docker.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.adapter.docker.service.DockerEventsStreamMonitor.EventsStreamHealth;
+import com.vmware.admiral.adapter.docker.service.DockerEventsStreamMonitor.Subscription;
+
+public class DockerEventsStreamMonitorTest {
+
+    private static final String COMPUTE_STATE_LINK = "/resources/compute/test-host";
+    private static final String START_EVENT =
+            "{\"Type\":\"container\",\"Action\":\"start\",\"id\":\"container-1\"}";
+    private static final String DIE_EVENT =
+            "{\"Type\":\"container\",\"Action\":\"die\",\"id\":\"container-1\"}";
+
+    private final List<String> events = new CopyOnWriteArrayList<>();
+    private final AtomicInteger connects = new AtomicInteger();
+    private final AtomicInteger disconnects = new AtomicInteger();
+    private final AtomicInteger heartbeats = new AtomicInteger();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final CountDownLatch keepOpen = new CountDownLatch(1);
+
+    private HttpServer server;
+    private DockerEventsStreamMonitor monitor;
+    private String hostAuthority;
+
+    @Before
+    public void setUp() throws Exception {
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        // streams are kept open, each one needs its own thread
+        this.server.setExecutor(Executors.newCachedThreadPool());
+        this.server.start();
+        this.hostAuthority = "localhost:" + this.server.getAddress().getPort();
+        this.monitor = new DockerEventsStreamMonitor((s, line) -> this.events.add(line),
+                (s) -> this.connects.incrementAndGet(),
+                (s) -> {
+                    assertEquals(COMPUTE_STATE_LINK, s.computeStateLink);
+                    this.disconnects.incrementAndGet();
+                },
+                (s) -> this.heartbeats.incrementAndGet());
+    }
+
+    @After
+    public void tearDown() {
+        this.keepOpen.countDown();
+        this.monitor.stop();
+        this.server.stop(0);
+    }
+
+    @Test
+    public void testEventsSplitAcrossChunksAndReconnect() throws Exception {
+        this.server.createContext("/events", (exchange) -> {
+            int request = this.requests.incrementAndGet();
+            OutputStream out = startStream(exchange);
+            // the second event arrives in two chunks
+            write(out, START_EVENT + "\n" + DIE_EVENT.substring(0, 10));
+            write(out, DIE_EVENT.substring(10) + "\n");
+            if (request == 1) {
+                // the host closes the first stream
+                out.close();
+            } else {
+                await(out);
+            }
+        });
+
+        subscribe(false);
+
+        waitFor(() -> this.requests.get() == 2 && this.events.size() == 4);
+        assertEquals(START_EVENT, this.events.get(0));
+        assertEquals(DIE_EVENT, this.events.get(1));
+        assertEquals(1, this.disconnects.get());
+
+        waitFor(() -> getHealth().connected);
+        assertEquals(2, this.connects.get());
+        EventsStreamHealth health = getHealth();
+        assertEquals(4, health.eventCount);
+        assertEquals(1, health.reconnectCount);
+        assertEquals(1, health.failureCount);
+        assertEquals(0, health.consecutiveFailures);
+    }
+
+    @Test
+    public void testDisconnectReportedOnSimulatedIOException() throws Exception {
+        this.server.createContext("/events", (exchange) -> {
+            this.requests.incrementAndGet();
+            await(startStream(exchange));
+        });
+
+        subscribe(true);
+
+        waitFor(() -> this.disconnects.get() == 1);
+        assertTrue(this.monitor.isSubscribed(this.hostAuthority));
+        assertFalse(getHealth().connected);
+
+        // failed reconnects are not reported again
+        waitFor(() -> this.requests.get() == 2);
+        assertEquals(1, this.disconnects.get());
+        assertEquals(0, this.connects.get());
+    }
+
+    @Test
+    public void testHeartbeatOfConnectedStreamsOnly() throws Exception {
+        this.server.createContext("/events", (exchange) -> {
+            this.requests.incrementAndGet();
+            await(startStream(exchange));
+        });
+
+        subscribe(true);
+        waitFor(() -> this.disconnects.get() == 1);
+        this.monitor.sendHeartbeats();
+        assertEquals(0, this.heartbeats.get());
+
+        this.monitor.unsubscribe(this.hostAuthority);
+        subscribe(false);
+        waitFor(() -> this.connects.get() == 1);
+        this.monitor.sendHeartbeats();
+        assertEquals(1, this.heartbeats.get());
+    }
+
+    @Test
+    public void testUnsubscribe() throws Exception {
+        this.server.createContext("/events", (exchange) -> {
+            this.requests.incrementAndGet();
+            OutputStream out = startStream(exchange);
+            write(out, START_EVENT + "\n");
+            await(out);
+        });
+
+        subscribe(false);
+        waitFor(() -> this.events.size() == 1);
+
+        assertTrue(this.monitor.unsubscribe(this.hostAuthority));
+        assertFalse(this.monitor.isSubscribed(this.hostAuthority));
+        assertFalse(this.monitor.unsubscribe(this.hostAuthority));
+        assertTrue(this.monitor.getHealth().isEmpty());
+
+        Thread.sleep(500);
+        assertEquals(0, this.disconnects.get());
+        assertEquals(1, this.requests.get());
+    }
+
+    private void subscribe(boolean simulatedIOException) {
+        URI uri = URI.create("http://" + this.hostAuthority
+                + "/events?filters=%7B%22type%22%3A%5B%22container%22%5D%7D");
+        this.monitor.subscribe(new Subscription(uri, null, COMPUTE_STATE_LINK, null,
+                simulatedIOException));
+    }
+
+    private EventsStreamHealth getHealth() {
+        List<EventsStreamHealth> health = this.monitor.getHealth();
+        assertEquals(1, health.size());
+        assertEquals(this.hostAuthority, health.get(0).hostAuthority);
+        return health.get(0);
+    }
+
+    private static OutputStream startStream(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, 0);
+        return exchange.getResponseBody();
+    }
+
+    private static void write(OutputStream out, String data) throws IOException {
+        out.write(data.getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private void await(OutputStream out) throws IOException {
+        try {
+            this.keepOpen.await(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        out.close();
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timeout waiting for condition", System.currentTimeMillis() < deadline);
+            Thread.sleep(50);
+        }
+    }
+}
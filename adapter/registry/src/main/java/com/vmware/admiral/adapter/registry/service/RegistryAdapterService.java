@@ -60,6 +60,8 @@ public class RegistryAdapterService extends StatelessService {
             "com.vmware.admiral.adapter.registry.service.RegistryAdapterService.default.api.version",
             ApiVersion.V1.toString());
     public static final String SEARCH_QUERY_PROP_NAME = "q";
+    // bypasses the local index of the registry when set to true
+    public static final String REFRESH_PROP_NAME = "refresh";
 
     public static final String SSL_TRUST_CERT_PROP_NAME = "sslTrustCertificate";
     public static final String SSL_TRUST_ALIAS_PROP_NAME = "sslTrustAlias";
@@ -73,6 +75,8 @@ public class RegistryAdapterService extends StatelessService {
     private static final String BEARER_REALM_WWW_AUTH_PROP = "Bearer realm";
     private static final String SERVICE_WWW_AUTH_PROP = "service";
     private static final String SCOPE_WWW_AUTH_PROP = "scope";
+    private static final String CATALOG_SCOPE = "registry:catalog:*";
+    private static final String REPOSITORY_PULL_SCOPE_FORMAT = "repository:%s:pull";
 
     private static final String DEFAULT_NAMESPACE = "library";
     private static final String V1_PING_ENDPOINT = "/v1/_ping";
@@ -81,6 +85,7 @@ public class RegistryAdapterService extends StatelessService {
     // Use catalog endpoint instead of the API Version Check endpoint (/v2) because some solutions
     // like JFrog Artifactory (cse-artifactory.eng.vmware.com) does not support it.
     private static final String V2_PING_ENDPOINT = "/v2/_catalog?n=1";
+    private static final String V2_CATALOG_ENDPOINT = "/v2/_catalog";
 
     public static final String REGISTRY_PROXY_PARAM_NAME = "registry.proxy";
     public static final String REGISTRY_NO_PROXY_LIST_PARAM_NAME = "registry.no.proxy.list";
@@ -92,6 +97,9 @@ public class RegistryAdapterService extends StatelessService {
 
     private ServerX509TrustManager trustManager;
 
+    private final RegistrySearchCache searchCache = new RegistrySearchCache();
+    private final RegistryTokenCache tokenCache = new RegistryTokenCache();
+
     public class RegistryPingResponse {
         public ApiVersion apiVersion;
     }
@@ -101,7 +109,6 @@ public class RegistryAdapterService extends StatelessService {
     }
 
     private static class TokenServiceResponse {
-        @SuppressWarnings("unused")
         String expires_in;
         @SuppressWarnings("unused")
         String issued_at;
@@ -201,6 +208,9 @@ public class RegistryAdapterService extends StatelessService {
         public ImageRequest request;
         public RegistryAuthState registryState;
         public boolean tokenAlreadyRequested;
+        // the credentials of the registry, when the request is authorized by a cached token
+        public String credentialsAuthorization;
+        public boolean cachedTokenUsed;
     }
 
     @Override
@@ -329,6 +339,17 @@ public class RegistryAdapterService extends StatelessService {
     }
 
     private void processV1SearchRequest(RequestContext context) {
+        String cacheKey = String.format("%s|%s|%s", context.registryState.address,
+                getCredentialsKey(context),
+                context.request.customProperties.get(SEARCH_QUERY_PROP_NAME));
+        RegistrySearchResponse cachedResponse = isRefreshRequested(context) ? null
+                : searchCache.getSearchResponse(cacheKey);
+        if (cachedResponse != null) {
+            context.operation.setBody(cachedResponse);
+            context.operation.complete();
+            return;
+        }
+
         try {
             URI searchUri = URI.create(context.registryState.address);
             searchUri = UriUtils.extendUri(searchUri, V1_SEARCH_ENDPOINT);
@@ -351,6 +372,7 @@ public class RegistryAdapterService extends StatelessService {
                                     result.registry = context.registryState.address;
                                     ensureNamespaceExists(result);
                                 }
+                                searchCache.putSearchResponse(cacheKey, body);
                             }
 
                             context.operation.setBody(body);
@@ -386,34 +408,82 @@ public class RegistryAdapterService extends StatelessService {
     }
 
     private void processV2SearchRequest(RequestContext context) {
-        try {
-            URI searchUri = URI.create(context.registryState.address);
-
-            searchUri = UriUtils.extendUri(searchUri, "/v2/_catalog");
-
-            String searchTerm = context.request.customProperties.get(SEARCH_QUERY_PROP_NAME)
-                    .toLowerCase();
-
-            RegistrySearchResponse response = new RegistrySearchResponse();
-            response.results = new ArrayList<>();
+        String searchTerm = context.request.customProperties.get(SEARCH_QUERY_PROP_NAME)
+                .toLowerCase();
+        String catalogKey = String.format("%s|%s|%s", context.request.resourceReference,
+                context.registryState.address, getCredentialsKey(context));
+
+        RegistrySearchCache.Catalog catalog = searchCache.getCatalog(catalogKey);
+        if (catalog != null && !isRefreshRequested(context)) {
+            if (catalog.isStale() && searchCache.startCatalogLoad(catalogKey, null)) {
+                // keep searching the stale catalog while it is reloaded
+                loadV2Catalog(catalogKey, context);
+            }
+            completeV2SearchRequest(context, catalog, searchTerm);
+            return;
+        }
 
-            logInfo("Performing registry search: %s", searchUri);
-            sendV2SearchRequest(searchUri, searchTerm, response, context);
+        boolean load = searchCache.startCatalogLoad(catalogKey, (c, ex) -> {
+            if (ex != null) {
+                context.operation.fail(ex);
+                return;
+            }
+            completeV2SearchRequest(context, c, searchTerm);
+        });
+        if (load) {
+            loadV2Catalog(catalogKey, context);
+        }
+    }
 
+    private void loadV2Catalog(String catalogKey, RequestContext context) {
+        try {
+            URI catalogUri = URI.create(context.registryState.address);
+            catalogUri = UriUtils.extendUri(catalogUri, V2_CATALOG_ENDPOINT);
+            catalogUri = UriUtils.extendUriWithQuery(catalogUri, "n",
+                    Integer.toString(RegistrySearchCache.CATALOG_PAGE_SIZE));
+
+            applyCachedToken(context, CATALOG_SCOPE);
+
+            logInfo("Loading registry catalog: %s", catalogUri);
+            sendV2CatalogRequest(catalogUri, new ArrayList<>(), context,
+                    (repositories) -> searchCache.completeCatalogLoad(catalogKey, repositories,
+                            null),
+                    (ex) -> {
+                        logWarning("Failed to load registry catalog %s: %s",
+                                context.registryState.address, Utils.toString(ex));
+                        searchCache.completeCatalogLoad(catalogKey, null, ex);
+                    });
         } catch (Exception x) {
-            context.operation.fail(x);
+            searchCache.completeCatalogLoad(catalogKey, null, x);
+        }
+    }
+
+    private void completeV2SearchRequest(RequestContext context,
+            RegistrySearchCache.Catalog catalog, String searchTerm) {
+        RegistrySearchResponse response = new RegistrySearchResponse();
+        response.results = new ArrayList<>();
+        for (String repository : catalog.search(searchTerm)) {
+            Result r = new Result();
+            r.name = repository;
+            r.registry = context.registryState.address;
+            response.results.add(r);
         }
+        response.numResults = response.results.size();
+
+        context.operation.setBody(response);
+        context.operation.complete();
     }
 
-    private void sendV2SearchRequest(URI searchUri, String searchTerm,
-            RegistrySearchResponse response, RequestContext context) {
-        Operation search = Operation.createGet(searchUri)
+    private void sendV2CatalogRequest(URI catalogUri, List<String> repositories,
+            RequestContext context, Consumer<List<String>> successCallback,
+            Consumer<Throwable> failureCallback) {
+        Operation search = Operation.createGet(catalogUri)
                 .setReferer(getHost().getPublicUri())
                 .setCompletion((o, ex) -> {
                     if (ex != null) {
                         if (o.getStatusCode() == 401) {
                             if (context.tokenAlreadyRequested) {
-                                context.operation.fail(ex);
+                                failureCallback.accept(ex);
                                 return;
                             }
 
@@ -422,45 +492,37 @@ public class RegistryAdapterService extends StatelessService {
 
                             if (isBearerTokenChallenge(wwwAuthHeader)) {
                                 requestAuthorizationToken(wwwAuthHeader, context,
-                                        () -> sendV2SearchRequest(searchUri, searchTerm, response,
-                                                context),
-                                        (t) -> context.operation.fail(t));
+                                        () -> sendV2CatalogRequest(catalogUri, repositories,
+                                                context, successCallback, failureCallback),
+                                        failureCallback);
                                 return;
                             }
                         }
 
-                        context.operation.fail(ex);
+                        failureCallback.accept(ex);
                         return;
                     } else {
                         V2RegistryCatalogResponse body = o.getBody(V2RegistryCatalogResponse.class);
 
                         if (body.repositories != null) {
-                            for (String repository : body.repositories) {
-                                if (repository.toLowerCase().contains(searchTerm)) {
-                                    Result r = new Result();
-                                    r.name = repository;
-                                    r.registry = context.registryState.address;
-                                    response.results.add(r);
-                                }
-                            }
+                            repositories.addAll(Arrays.asList(body.repositories));
                         }
 
                         String linkHeader = o.getResponseHeader(LINK_HEADER);
                         if (linkHeader != null) {
                             String nextPagePath = extractUrl(linkHeader);
                             if (nextPagePath == null) {
-                                context.operation.fail(new LocalizableValidationException(
+                                failureCallback.accept(new LocalizableValidationException(
                                         "Unexpected link header format: " + linkHeader,
                                         "adapter.link.header.format", linkHeader));
                                 return;
                             }
                             URI nextPageUri = UriUtils.extendUri(
                                     URI.create(context.registryState.address), nextPagePath);
-                            sendV2SearchRequest(nextPageUri, searchTerm, response, context);
+                            sendV2CatalogRequest(nextPageUri, repositories, context,
+                                    successCallback, failureCallback);
                         } else {
-                            response.numResults = response.results.size();
-                            context.operation.setBody(response);
-                            context.operation.complete();
+                            successCallback.accept(repositories);
                         }
                     }
                 });
@@ -637,6 +699,8 @@ public class RegistryAdapterService extends StatelessService {
             // in order for the request to succeed
             imageName = DockerImage.fromImageName(imageName).getNamespaceAndRepo();
 
+            applyCachedToken(context, String.format(REPOSITORY_PULL_SCOPE_FORMAT, imageName));
+
             URI searchUri = URI.create(context.registryState.address);
             String path = UriUtils.buildUriPath("/v2", imageName, "/tags/list");
             searchUri = UriUtils.extendUri(searchUri, path);
@@ -722,6 +786,8 @@ public class RegistryAdapterService extends StatelessService {
             URI tokenServiceUri = new URI(bearerRealm);
             tokenServiceUri = UriUtils.extendUriWithQuery(tokenServiceUri,
                     SERVICE_WWW_AUTH_PROP, service, SCOPE_WWW_AUTH_PROP, scope);
+            String credentials = context.cachedTokenUsed ? context.credentialsAuthorization
+                    : context.request.customProperties.get(AUTHORIZATION_HEADER);
 
             logInfo("Requesting token from %s", tokenServiceUri.toString());
             Operation getTokenOp = Operation.createGet(tokenServiceUri)
@@ -732,7 +798,13 @@ public class RegistryAdapterService extends StatelessService {
                             return;
                         }
 
-                        String token = getToken(op.getBody(TokenServiceResponse.class));
+                        TokenServiceResponse tokenResponse = op.getBody(TokenServiceResponse.class);
+                        String token = getToken(tokenResponse);
+                        if (context.registryState != null) {
+                            tokenCache.put(RegistryTokenCache.buildKey(
+                                    context.registryState.address, scope, credentials), token,
+                                    tokenResponse == null ? null : tokenResponse.expires_in);
+                        }
                         String authorizationHeaderValue = String.format("%s %s",
                                 BEARER_TOKEN_PREFIX, token);
                         context.request.customProperties.put(AUTHORIZATION_HEADER,
@@ -742,9 +814,8 @@ public class RegistryAdapterService extends StatelessService {
                         successCallback.run();
                     });
 
-            String authorization = context.request.customProperties.get(AUTHORIZATION_HEADER);
-            if (authorization != null) {
-                getTokenOp.addRequestHeader(AUTHORIZATION_HEADER, authorization);
+            if (credentials != null) {
+                getTokenOp.addRequestHeader(AUTHORIZATION_HEADER, credentials);
             }
 
             // Remove Xenon's auth token header from the request to the Registry
@@ -756,6 +827,36 @@ public class RegistryAdapterService extends StatelessService {
         }
     }
 
+    /**
+     * Authorizes the request with a cached token of the given scope, if there is one. A new token
+     * is requested with the registry credentials if the cached one is rejected.
+     */
+    private void applyCachedToken(RequestContext context, String scope) {
+        if (context.tokenAlreadyRequested || context.cachedTokenUsed) {
+            return;
+        }
+
+        String credentials = context.request.customProperties.get(AUTHORIZATION_HEADER);
+        String token = tokenCache.get(RegistryTokenCache.buildKey(context.registryState.address,
+                scope, credentials));
+        if (token != null) {
+            context.credentialsAuthorization = credentials;
+            context.cachedTokenUsed = true;
+            context.request.customProperties.put(AUTHORIZATION_HEADER,
+                    String.format("%s %s", BEARER_TOKEN_PREFIX, token));
+        }
+    }
+
+    private String getCredentialsKey(RequestContext context) {
+        String credentials = context.cachedTokenUsed ? context.credentialsAuthorization
+                : context.request.customProperties.get(AUTHORIZATION_HEADER);
+        return credentials == null ? null : Utils.computeHash(credentials);
+    }
+
+    private boolean isRefreshRequested(RequestContext context) {
+        return Boolean.parseBoolean(context.request.customProperties.get(REFRESH_PROP_NAME));
+    }
+
     /**
      * Get token or access_token from token response instance.
      *
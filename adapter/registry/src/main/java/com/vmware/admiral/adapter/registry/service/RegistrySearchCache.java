@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.adapter.registry.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Local index of the registries searched by {@link RegistryAdapterService}.
+ *
+ * <p>The catalog of a V2 registry is loaded once and searched locally. A catalog older than
+ * {@link #CATALOG_REFRESH_INTERVAL_MICROS} is still searched, while it is reloaded in the
+ * background. Concurrent loads of the same catalog are coalesced. V1 registries are searched by
+ * the registry itself, so only their search responses are cached, for
+ * {@link #SEARCH_RESPONSE_TTL_MICROS}.
+ */
+class RegistrySearchCache {
+    static final long CATALOG_REFRESH_INTERVAL_MICROS = TimeUnit.SECONDS.toMicros(Long.getLong(
+            "com.vmware.admiral.adapter.registry.catalog.refresh.interval.seconds", 300));
+    static final int CATALOG_PAGE_SIZE = Integer.getInteger(
+            "com.vmware.admiral.adapter.registry.catalog.page.size", 1000);
+    static final long SEARCH_RESPONSE_TTL_MICROS = TimeUnit.SECONDS.toMicros(Long.getLong(
+            "com.vmware.admiral.adapter.registry.search.cache.ttl.seconds", 60));
+
+    private static final int MAX_SEARCH_RESPONSES = 1000;
+
+    static class Catalog {
+        private final List<String> repositories;
+        private final String[] lowerCaseRepositories;
+        private final long loadedMicros = Utils.getSystemNowMicrosUtc();
+
+        private Catalog(List<String> repositories) {
+            this.repositories = repositories;
+            this.lowerCaseRepositories = new String[repositories.size()];
+            for (int i = 0; i < lowerCaseRepositories.length; i++) {
+                lowerCaseRepositories[i] = repositories.get(i).toLowerCase();
+            }
+        }
+
+        boolean isStale() {
+            return Utils.getSystemNowMicrosUtc() - loadedMicros >= CATALOG_REFRESH_INTERVAL_MICROS;
+        }
+
+        /**
+         * Returns the repositories containing the given lower case term, in catalog order.
+         */
+        List<String> search(String term) {
+            List<String> result = new ArrayList<>();
+            for (int i = 0; i < lowerCaseRepositories.length; i++) {
+                if (lowerCaseRepositories[i].contains(term)) {
+                    result.add(repositories.get(i));
+                }
+            }
+            return result;
+        }
+    }
+
+    private static class CachedResponse {
+        final RegistrySearchResponse response;
+        final long expirationMicros;
+
+        CachedResponse(RegistrySearchResponse response, long expirationMicros) {
+            this.response = response;
+            this.expirationMicros = expirationMicros;
+        }
+    }
+
+    private final Map<String, Catalog> catalogs = new ConcurrentHashMap<>();
+    private final Map<String, List<BiConsumer<Catalog, Throwable>>> catalogLoads = new HashMap<>();
+    private final Map<String, CachedResponse> searchResponses = Collections.synchronizedMap(
+            new LinkedHashMap<String, CachedResponse>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+                    return size() > MAX_SEARCH_RESPONSES;
+                }
+            });
+
+    Catalog getCatalog(String key) {
+        return catalogs.get(key);
+    }
+
+    /**
+     * Registers the waiter, if any, for the catalog with the given key. Returns {@code true} if the
+     * caller has to load the catalog and then call {@link #completeCatalogLoad}, or
+     * {@code false} if the catalog is already being loaded.
+     */
+    synchronized boolean startCatalogLoad(String key, BiConsumer<Catalog, Throwable> waiter) {
+        List<BiConsumer<Catalog, Throwable>> waiters = catalogLoads.get(key);
+        boolean load = waiters == null;
+        if (load) {
+            waiters = new ArrayList<>();
+            catalogLoads.put(key, waiters);
+        }
+        if (waiter != null) {
+            waiters.add(waiter);
+        }
+        return load;
+    }
+
+    void completeCatalogLoad(String key, List<String> repositories, Throwable failure) {
+        Catalog catalog = failure == null ? new Catalog(repositories) : null;
+        List<BiConsumer<Catalog, Throwable>> waiters;
+        synchronized (this) {
+            waiters = catalogLoads.remove(key);
+            if (catalog != null) {
+                catalogs.put(key, catalog);
+            }
+        }
+        if (waiters != null) {
+            waiters.forEach(w -> w.accept(catalog, failure));
+        }
+    }
+
+    RegistrySearchResponse getSearchResponse(String key) {
+        CachedResponse cached = searchResponses.get(key);
+        if (cached == null || cached.expirationMicros <= Utils.getSystemNowMicrosUtc()) {
+            return null;
+        }
+        // the results are updated by the callers
+        return Utils.clone(cached.response);
+    }
+
+    void putSearchResponse(String key, RegistrySearchResponse response) {
+        searchResponses.put(key, new CachedResponse(Utils.clone(response),
+                Utils.getSystemNowMicrosUtc() + SEARCH_RESPONSE_TTL_MICROS));
+    }
+}
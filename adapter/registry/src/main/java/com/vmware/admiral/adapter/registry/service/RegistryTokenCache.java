@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.adapter.registry.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Cache of the bearer tokens issued by the token services of V2 registries, keyed by registry,
+ * credentials and scope. A token is used until shortly before it expires.
+ */
+class RegistryTokenCache {
+    // the token specification defaults the expiration of tokens to 60 seconds
+    private static final long DEFAULT_EXPIRES_IN_SECONDS = 60;
+    private static final long EXPIRATION_MARGIN_SECONDS = 10;
+    private static final int MAX_SIZE = 1000;
+
+    private static class Token {
+        final String token;
+        final long expirationMicros;
+
+        Token(String token, long expirationMicros) {
+            this.token = token;
+            this.expirationMicros = expirationMicros;
+        }
+    }
+
+    private final Map<String, Token> tokens = new ConcurrentHashMap<>();
+
+    static String buildKey(String registryAddress, String scope, String credentials) {
+        return String.format("%s|%s|%s", registryAddress, scope,
+                credentials == null ? null : Utils.computeHash(credentials));
+    }
+
+    String get(String key) {
+        Token token = tokens.get(key);
+        if (token == null) {
+            return null;
+        }
+        if (token.expirationMicros <= Utils.getSystemNowMicrosUtc()) {
+            tokens.remove(key, token);
+            return null;
+        }
+        return token.token;
+    }
+
+    void put(String key, String token, String expiresIn) {
+        long expiresInSeconds = DEFAULT_EXPIRES_IN_SECONDS;
+        if (expiresIn != null) {
+            try {
+                expiresInSeconds = (long) Double.parseDouble(expiresIn);
+            } catch (NumberFormatException e) {
+                // keep the default
+            }
+        }
+
+        long ttlSeconds = expiresInSeconds - EXPIRATION_MARGIN_SECONDS;
+        if (token == null || ttlSeconds <= 0) {
+            tokens.remove(key);
+            return;
+        }
+
+        long now = Utils.getSystemNowMicrosUtc();
+        if (tokens.size() >= MAX_SIZE) {
+            tokens.values().removeIf(t -> t.expirationMicros <= now);
+        }
+        if (tokens.size() < MAX_SIZE) {
+            tokens.put(key, new Token(token, now + TimeUnit.SECONDS.toMicros(ttlSeconds)));
+        }
+    }
+}
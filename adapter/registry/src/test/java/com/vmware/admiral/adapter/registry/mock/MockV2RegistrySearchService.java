@@ -14,6 +14,8 @@ package com.vmware.admiral.adapter.registry.mock;
 import static com.vmware.admiral.adapter.registry.mock.MockRegistryPathConstants.V2_CATALOG_PATH;
 import static com.vmware.admiral.adapter.registry.mock.MockRegistryPathConstants.V2_SEARCH_PATH;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.StatelessService;
 
@@ -23,12 +25,15 @@ import com.vmware.xenon.common.StatelessService;
 public class MockV2RegistrySearchService extends StatelessService {
     public static final String SELF_LINK = V2_SEARCH_PATH;
 
+    private static final String FIRST_PAGE_QUERY_PREFIX = "n=";
     private static final String SECOND_PAGE_QUERY = "n=2&last=b";
     private static final String SECOND_PAGE_PATH =
             String.format("%s?%s", V2_CATALOG_PATH, SECOND_PAGE_QUERY);
     private static final String LINK_HEADER_VALUE =
             String.format("<%s>; rel=\"next\"", SECOND_PAGE_PATH);
 
+    public static final AtomicInteger requestCount = new AtomicInteger();
+
     static class V2CatalogResponse {
         String[] repositories;
     }
@@ -49,13 +54,19 @@ public class MockV2RegistrySearchService extends StatelessService {
                 break;
 
             default:
-                get.fail(new IllegalArgumentException("Unexpected query: " + query));
+                if (!query.startsWith(FIRST_PAGE_QUERY_PREFIX)) {
+                    get.fail(new IllegalArgumentException("Unexpected query: " + query));
+                    return;
+                }
+                response.repositories = new String[0];
+                get.getResponseHeaders().put("Link", LINK_HEADER_VALUE);
                 break;
             }
         } else {
             response.repositories = new String[0];
             get.getResponseHeaders().put("Link", LINK_HEADER_VALUE);
         }
+        requestCount.incrementAndGet();
 
         get.setBody(response);
         get.complete();
@@ -22,6 +22,7 @@ import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Consumer;
 
 import org.junit.Before;
@@ -31,6 +32,7 @@ import com.vmware.admiral.adapter.common.ImageOperationType;
 import com.vmware.admiral.adapter.common.service.mock.MockTaskFactoryService;
 import com.vmware.admiral.adapter.common.service.mock.MockTaskService.MockTaskState;
 import com.vmware.admiral.adapter.registry.mock.BaseMockRegistryTestCase;
+import com.vmware.admiral.adapter.registry.mock.MockV2RegistrySearchService;
 import com.vmware.admiral.adapter.registry.service.RegistryAdapterService.RegistryPingResponse;
 import com.vmware.admiral.adapter.registry.service.RegistrySearchResponse.Result;
 import com.vmware.admiral.common.test.CommonTestStateFactory;
@@ -242,6 +244,35 @@ public class RegistryAdapterServiceTest extends BaseMockRegistryTestCase {
         });
     }
 
+    @Test
+    public void testV2SearchUsesCatalogIndex() throws Throwable {
+        URI v2RegistryStateUri = UriUtils.buildUri(host, v2RegistryStateLink);
+        int initialRequestCount = MockV2RegistrySearchService.requestCount.get();
+
+        sendRegistrySearchRequest(v2RegistryStateUri, "v2image", (Operation op) -> {
+            RegistrySearchResponse response = op.getBody(RegistrySearchResponse.class);
+            assertEquals("Unexpected number of results", 2, response.results.size());
+        });
+        // both catalog pages are loaded
+        assertEquals(initialRequestCount + 2, MockV2RegistrySearchService.requestCount.get());
+
+        sendRegistrySearchRequest(v2RegistryStateUri, "ANOTHER", (Operation op) -> {
+            RegistrySearchResponse response = op.getBody(RegistrySearchResponse.class);
+            assertEquals("Unexpected number of results", 1, response.results.size());
+            assertEquals("results[0].name", "test/another", response.results.get(0).name);
+        });
+        assertEquals(initialRequestCount + 2, MockV2RegistrySearchService.requestCount.get());
+
+        Map<String, String> customProperties = new HashMap<>();
+        customProperties.put(RegistryAdapterService.REFRESH_PROP_NAME, Boolean.TRUE.toString());
+        sendRegistryRequest(ImageOperationType.SEARCH, v2RegistryStateUri, "test",
+                customProperties, (Operation op) -> {
+                    RegistrySearchResponse response = op.getBody(RegistrySearchResponse.class);
+                    assertEquals("Unexpected number of results", 2, response.results.size());
+                });
+        assertEquals(initialRequestCount + 4, MockV2RegistrySearchService.requestCount.get());
+    }
+
     @Test
     public void testUnsupportedRegistryVersion() throws Throwable {
 
@@ -481,11 +512,18 @@ public class RegistryAdapterServiceTest extends BaseMockRegistryTestCase {
             String searchTerm, Consumer<Operation> consumeResult)
             throws Throwable {
 
+        sendRegistryRequest(type, resourceReference, searchTerm, new HashMap<>(), consumeResult);
+    }
+
+    private void sendRegistryRequest(ImageOperationType type, URI resourceReference,
+            String searchTerm, Map<String, String> customProperties,
+            Consumer<Operation> consumeResult) throws Throwable {
+
         ImageRequest request = new ImageRequest();
         request.operationTypeId = type.id;
         request.serviceTaskCallback = ServiceTaskCallback.create(provisioningTaskLink);
         request.resourceReference = resourceReference;
-        request.customProperties = new HashMap<>();
+        request.customProperties = customProperties;
         request.customProperties.put(RegistryAdapterService.SEARCH_QUERY_PROP_NAME, searchTerm);
 
         Operation adapterOperation = Operation
@@ -11,6 +11,7 @@
 
 package com.vmware.admiral.auth;
 
+import static com.vmware.admiral.auth.util.AuthUtil.BASIC_USERS_RESOURCE_GROUP_LINK;
 import static com.vmware.admiral.auth.util.AuthUtil.BASIC_USERS_USER_GROUP_LINK;
 import static com.vmware.admiral.auth.util.AuthUtil.CLOUD_ADMINS_USER_GROUP_LINK;
 import static com.vmware.admiral.auth.util.AuthUtil.DEFAULT_IDENTIFIER;
@@ -28,6 +29,13 @@ import com.vmware.admiral.common.ManagementUriParts;
 import com.vmware.admiral.common.util.ConfigurationUtil;
 import com.vmware.admiral.service.common.AbstractInitialBootService;
 import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.QueryTask.Query;
+import com.vmware.xenon.services.common.QueryTask.Query.Occurance;
+import com.vmware.xenon.services.common.QueryTask.QueryTerm.MatchType;
+import com.vmware.xenon.services.common.ResourceGroupService;
+import com.vmware.xenon.services.common.ResourceGroupService.ResourceGroupState;
 
 /**
  * Initial boot service for creating system default documents for the auth module.
@@ -43,6 +51,15 @@ public class AuthInitialBootService extends AbstractInitialBootService {
             return;
         }
 
+        getHost().registerForServiceAvailability((o, e) -> {
+            if (e != null) {
+                logWarning("Error waiting for service: %s. Error: %s",
+                        ResourceGroupService.FACTORY_LINK, Utils.toString(e));
+                return;
+            }
+            addClosureRunnersToBasicUsersResourceGroup();
+        }, true, ResourceGroupService.FACTORY_LINK);
+
         logInfo("Creating default user/resource groups and roles.");
         initInstances(post,
                 ProjectService.buildDefaultProjectInstance(),
@@ -59,4 +76,48 @@ public class AuthInitialBootService extends AbstractInitialBootService {
                 buildBasicUsersExtendedRole(DEFAULT_IDENTIFIER, BASIC_USERS_USER_GROUP_LINK));
     }
 
-}
\ No newline at end of file
+    /**
+     * The basic users resource group created by earlier versions does not include the endpoint
+     * the closure runner containers poll, so the runners of basic users would be forbidden.
+     */
+    private void addClosureRunnersToBasicUsersResourceGroup() {
+        sendRequest(Operation.createGet(this, BASIC_USERS_RESOURCE_GROUP_LINK)
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        // not created yet, it is created with the closure runners
+                        if (o.getStatusCode() != Operation.STATUS_CODE_NOT_FOUND) {
+                            logWarning("Error getting %s. Error: %s",
+                                    BASIC_USERS_RESOURCE_GROUP_LINK, Utils.toString(e));
+                        }
+                        return;
+                    }
+
+                    ResourceGroupState state = o.getBody(ResourceGroupState.class);
+                    if (state.query == null || state.query.booleanClauses == null) {
+                        return;
+                    }
+                    for (Query clause : state.query.booleanClauses) {
+                        if (clause.term != null && ManagementUriParts.CLOSURES_RUNNERS
+                                .equals(clause.term.matchValue)) {
+                            return;
+                        }
+                    }
+
+                    logInfo("Adding %s to %s", ManagementUriParts.CLOSURES_RUNNERS,
+                            BASIC_USERS_RESOURCE_GROUP_LINK);
+                    state.query.addBooleanClause(new Query()
+                            .setTermPropertyName(ServiceDocument.FIELD_NAME_SELF_LINK)
+                            .setTermMatchValue(ManagementUriParts.CLOSURES_RUNNERS)
+                            .setTermMatchType(MatchType.TERM)
+                            .setOccurance(Occurance.SHOULD_OCCUR));
+                    sendRequest(Operation.createPut(this, BASIC_USERS_RESOURCE_GROUP_LINK)
+                            .setBody(state)
+                            .setCompletion((op, ex) -> {
+                                if (ex != null) {
+                                    logWarning("Error updating %s. Error: %s",
+                                            BASIC_USERS_RESOURCE_GROUP_LINK, Utils.toString(ex));
+                                }
+                            }));
+                }));
+    }
+}
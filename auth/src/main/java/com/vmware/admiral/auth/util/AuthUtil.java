@@ -310,6 +310,10 @@ public class AuthUtil {
                 .addFieldClause(ServiceDocument.FIELD_NAME_SELF_LINK,
                         PrincipalService.SELF_LINK,
                         MatchType.TERM, Occurance.SHOULD_OCCUR)
+                // closure runner containers poll with the token of the closure owner
+                .addFieldClause(ServiceDocument.FIELD_NAME_SELF_LINK,
+                        ManagementUriParts.CLOSURES_RUNNERS,
+                        MatchType.TERM, Occurance.SHOULD_OCCUR)
                 // TODO: Currently this breaks the UI. Remove this query, once
                 // this call is skipped for basic user.
                 .addFieldClause(ServiceDocument.FIELD_NAME_SELF_LINK,
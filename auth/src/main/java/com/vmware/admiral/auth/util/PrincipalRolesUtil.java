@@ -193,6 +193,17 @@ public class PrincipalRolesUtil {
     public static DeferredResult<PrincipalRoles> getAllRolesForPrincipal(Service requestorService,
             Operation requestorOperation, Principal principal) {
 
+        SecurityContextCache cache = SecurityContextCache.getInstance(requestorService);
+        if (cache == null) {
+            return loadAllRolesForPrincipal(requestorService, requestorOperation, principal);
+        }
+        return cache.getPrincipalRoles(principal,
+                () -> loadAllRolesForPrincipal(requestorService, requestorOperation, principal));
+    }
+
+    private static DeferredResult<PrincipalRoles> loadAllRolesForPrincipal(
+            Service requestorService, Operation requestorOperation, Principal principal) {
+
         PrincipalRoles returnRoles = new PrincipalRoles();
 
         return getRoleStatesForGroups(requestorService.getHost(), principal.groups)
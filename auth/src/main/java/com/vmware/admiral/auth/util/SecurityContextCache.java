@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.auth.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+import com.vmware.admiral.auth.idm.Principal;
+import com.vmware.admiral.auth.idm.PrincipalRoles;
+import com.vmware.admiral.auth.idm.SecurityContext;
+import com.vmware.admiral.auth.idm.local.LocalPrincipalService.LocalPrincipalState;
+import com.vmware.admiral.auth.project.ProjectService.ProjectState;
+import com.vmware.xenon.common.DeferredResult;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Operation.AuthorizationContext;
+import com.vmware.xenon.common.Service;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.ServiceSubscriptionState.ServiceSubscriber;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.QueryTask;
+import com.vmware.xenon.services.common.QueryTask.Query;
+import com.vmware.xenon.services.common.QueryTask.QuerySpecification.QueryOption;
+import com.vmware.xenon.services.common.RoleService.RoleState;
+import com.vmware.xenon.services.common.ServiceUriPaths;
+import com.vmware.xenon.services.common.UserGroupService.UserGroupState;
+
+/**
+ * Cache of the {@link SecurityContext}s and {@link PrincipalRoles} of the principals, used by
+ * {@link SecurityContextUtil} and {@link PrincipalRolesUtil}.
+ *
+ * <p>The whole cache is invalidated by a continuous query over the {@link RoleState},
+ * {@link UserGroupState}, {@link ProjectState} and {@link LocalPrincipalState} documents, on any
+ * change of them. The local index of a node may not see the changes made on other nodes (e.g.
+ * with Postgres only the owner node indexes them), so the node which is notified broadcasts the
+ * invalidation to the other nodes through {@link SecurityContextCacheService}. Nothing is cached
+ * until the continuous query is subscribed to, and a value loaded before an invalidation is not
+ * cached. Entries also expire after the TTL, which covers the principals of external identity
+ * providers.
+ *
+ * <p>Disabled by default, enable it by setting
+ * {@code com.vmware.admiral.auth.security.context.cache.ttl.millis} to a positive value.
+ */
+public class SecurityContextCache {
+    private static final long TTL_MICROS = TimeUnit.MILLISECONDS.toMicros(Long.getLong(
+            "com.vmware.admiral.auth.security.context.cache.ttl.millis", 0));
+
+    private static final long QUERY_TASK_EXPIRATION_DAYS = 5 * 365;
+
+    private static final Map<ServiceHost, SecurityContextCache> CACHES =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    public static class CacheStats {
+        /** Lookups served from the cache */
+        public long hitCount;
+        /** Lookups loaded from the documents */
+        public long missCount;
+        /** Invalidations of the cache on role, group, project or principal changes */
+        public long invalidationCount;
+    }
+
+    private static class Entry<T> {
+        final T value;
+        final long expirationMicros;
+
+        Entry(T value, long expirationMicros) {
+            this.value = value;
+            this.expirationMicros = expirationMicros;
+        }
+    }
+
+    private final Map<String, Entry<SecurityContext>> securityContexts =
+            new ConcurrentHashMap<>();
+    private final Map<String, Entry<PrincipalRoles>> principalRoles = new ConcurrentHashMap<>();
+    private final long ttlMicros;
+    private final AtomicBoolean subscribing = new AtomicBoolean();
+    private volatile boolean subscribed;
+    private long generation;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong invalidationCount = new AtomicLong();
+
+    SecurityContextCache(long ttlMicros) {
+        this.ttlMicros = ttlMicros;
+    }
+
+    /**
+     * Returns the cache of the host of the given service, or {@code null} if caching is disabled.
+     */
+    public static SecurityContextCache getInstance(Service requestorService) {
+        SecurityContextCache cache = TTL_MICROS > 0
+                ? CACHES.computeIfAbsent(requestorService.getHost(),
+                        h -> new SecurityContextCache(TTL_MICROS))
+                : CACHES.get(requestorService.getHost());
+        if (cache != null && !cache.subscribed) {
+            cache.subscribe(requestorService);
+        }
+        return cache;
+    }
+
+    /**
+     * Enables caching on the given host regardless of the configured TTL.
+     */
+    static SecurityContextCache enable(ServiceHost host, long ttlMicros) {
+        SecurityContextCache cache = new SecurityContextCache(ttlMicros);
+        CACHES.put(host, cache);
+        return cache;
+    }
+
+    /**
+     * Invalidates the cache of the given host, if any. Called on the other nodes when one of them
+     * is notified for a change.
+     */
+    static void invalidate(ServiceHost host) {
+        SecurityContextCache cache = CACHES.get(host);
+        if (cache != null) {
+            cache.invalidate();
+        }
+    }
+
+    DeferredResult<SecurityContext> getSecurityContext(String userId,
+            Supplier<DeferredResult<SecurityContext>> loader) {
+        return get(this.securityContexts, userId, loader);
+    }
+
+    DeferredResult<PrincipalRoles> getPrincipalRoles(Principal principal,
+            Supplier<DeferredResult<PrincipalRoles>> loader) {
+        String key = String.format("%s:%s:%s", principal.type, principal.id,
+                principal.groups == null ? null : new TreeSet<>(principal.groups));
+        return get(this.principalRoles, key, loader);
+    }
+
+    public CacheStats getStats() {
+        CacheStats stats = new CacheStats();
+        stats.hitCount = this.hitCount.get();
+        stats.missCount = this.missCount.get();
+        stats.invalidationCount = this.invalidationCount.get();
+        return stats;
+    }
+
+    private <T> DeferredResult<T> get(Map<String, Entry<T>> entries, String key,
+            Supplier<DeferredResult<T>> loader) {
+        Entry<T> entry = entries.get(key);
+        if (entry != null && entry.expirationMicros > Utils.getSystemNowMicrosUtc()) {
+            this.hitCount.incrementAndGet();
+            return DeferredResult.completed(Utils.clone(entry.value));
+        }
+
+        this.missCount.incrementAndGet();
+        long loadGeneration;
+        synchronized (this) {
+            loadGeneration = this.generation;
+        }
+        return loader.get().thenApply(value -> {
+            if (!this.subscribed || value == null) {
+                return value;
+            }
+            Entry<T> loaded = new Entry<>(Utils.clone(value),
+                    Utils.getSystemNowMicrosUtc() + this.ttlMicros);
+            synchronized (this) {
+                // the value may be loaded from documents changed in the meantime
+                if (loadGeneration == this.generation) {
+                    entries.put(key, loaded);
+                }
+            }
+            return value;
+        });
+    }
+
+    private synchronized void invalidate() {
+        this.generation++;
+        this.securityContexts.clear();
+        this.principalRoles.clear();
+        this.invalidationCount.incrementAndGet();
+    }
+
+    private void subscribe(Service requestorService) {
+        if (!this.subscribing.compareAndSet(false, true)) {
+            return;
+        }
+
+        ServiceHost host = requestorService.getHost();
+        AuthorizationContext systemAuthorizationContext;
+        try {
+            systemAuthorizationContext = requestorService.getSystemAuthorizationContext();
+        } catch (RuntimeException e) {
+            // only privileged services can subscribe, nothing is cached until one of them does
+            this.subscribing.set(false);
+            return;
+        }
+
+        QueryTask task = QueryTask.Builder.create()
+                .addOption(QueryOption.CONTINUOUS)
+                .setQuery(Query.Builder.create()
+                        .addInClause(ServiceDocument.FIELD_NAME_KIND, Arrays.asList(
+                                Utils.buildKind(RoleState.class),
+                                Utils.buildKind(UserGroupState.class),
+                                Utils.buildKind(ProjectState.class),
+                                Utils.buildKind(LocalPrincipalState.class)))
+                        .build())
+                .build();
+        task.documentSelfLink = "security-context-cache-" + UUID.randomUUID().toString();
+        task.documentExpirationTimeMicros = Utils.fromNowMicrosUtc(
+                TimeUnit.DAYS.toMicros(QUERY_TASK_EXPIRATION_DAYS));
+
+        Operation post = Operation.createPost(host, ServiceUriPaths.CORE_LOCAL_QUERY_TASKS)
+                .setBody(task)
+                .setReferer(host.getUri())
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        host.log(Level.WARNING, "Failed to create security context cache query:"
+                                + " %s", Utils.toString(e));
+                        this.subscribing.set(false);
+                        return;
+                    }
+
+                    Operation subscribe = Operation.createPost(host, UriUtils.buildUriPath(
+                            ServiceUriPaths.CORE_LOCAL_QUERY_TASKS, task.documentSelfLink))
+                            .setReferer(host.getUri())
+                            .setCompletion((op, ex) -> {
+                                if (ex != null) {
+                                    host.log(Level.WARNING, "Failed to subscribe security context"
+                                            + " cache: %s", Utils.toString(ex));
+                                    this.subscribing.set(false);
+                                    return;
+                                }
+                                this.subscribed = true;
+                            });
+                    requestorService.setAuthorizationContext(subscribe,
+                            systemAuthorizationContext);
+                    host.startSubscriptionService(subscribe, notification -> {
+                        notification.complete();
+                        invalidate();
+                        broadcastInvalidation(requestorService, systemAuthorizationContext);
+                    }, ServiceSubscriber.create(false));
+                });
+        requestorService.setAuthorizationContext(post, systemAuthorizationContext);
+        host.sendRequest(post);
+    }
+
+    private static void broadcastInvalidation(Service requestorService,
+            AuthorizationContext systemAuthorizationContext) {
+        ServiceHost host = requestorService.getHost();
+        Operation delete = Operation.createDelete(host, SecurityContextCacheService.SELF_LINK)
+                .setReferer(host.getUri())
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        host.log(Level.WARNING, "Failed to invalidate security context caches:"
+                                + " %s", Utils.toString(e));
+                    }
+                });
+        requestorService.setAuthorizationContext(delete, systemAuthorizationContext);
+        host.broadcastRequest(ServiceUriPaths.DEFAULT_NODE_SELECTOR, true, delete);
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.auth.util;
+
+import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Operation.AuthorizationContext;
+import com.vmware.xenon.common.StatelessService;
+
+/**
+ * Invalidates the {@link SecurityContextCache} of this node on DELETE. The node notified for a
+ * change of the roles broadcasts the DELETE to the other nodes.
+ */
+public class SecurityContextCacheService extends StatelessService {
+    public static final String SELF_LINK = ManagementUriParts.AUTH_SECURITY_CONTEXT_CACHE;
+
+    @Override
+    public void handleDelete(Operation delete) {
+        AuthorizationContext authorizationContext = delete.getAuthorizationContext();
+        if (AuthUtil.isAuthxEnabled(getHost())
+                && (authorizationContext == null || !authorizationContext.isSystemUser())) {
+            delete.fail(Operation.STATUS_CODE_FORBIDDEN);
+            return;
+        }
+
+        SecurityContextCache.invalidate(getHost());
+        delete.complete();
+    }
+}
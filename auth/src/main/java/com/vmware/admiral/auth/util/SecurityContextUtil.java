@@ -48,6 +48,16 @@ public class SecurityContextUtil {
     public static DeferredResult<SecurityContext> getSecurityContext(Service requestorService,
             Operation requestorOperation, String userId) {
 
+        SecurityContextCache cache = SecurityContextCache.getInstance(requestorService);
+        if (cache == null) {
+            return loadSecurityContext(requestorService, requestorOperation, userId);
+        }
+        return cache.getSecurityContext(userId,
+                () -> loadSecurityContext(requestorService, requestorOperation, userId));
+    }
+
+    private static DeferredResult<SecurityContext> loadSecurityContext(
+            Service requestorService, Operation requestorOperation, String userId) {
 
         return PrincipalUtil.getPrincipal(requestorService, requestorOperation, encode(userId))
                 .thenCompose(principal -> PrincipalRolesUtil.getAllRolesForPrincipal(
@@ -26,6 +26,7 @@ import com.vmware.admiral.auth.idm.SessionService;
 import com.vmware.admiral.auth.idm.content.AuthContentService;
 import com.vmware.admiral.auth.idm.local.LocalPrincipalFactoryService;
 import com.vmware.admiral.auth.project.ProjectFactoryService;
+import com.vmware.admiral.auth.util.SecurityContextCacheService;
 import com.vmware.admiral.common.util.ConfigurationUtil;
 import com.vmware.admiral.service.common.AuthBootstrapService;
 import com.vmware.photon.controller.model.util.StartServicesHelper.ServiceMetadata;
@@ -44,7 +45,8 @@ public class HostInitAuthServiceConfig extends HostInitServiceHelper {
                 service(AuthInitialBootService.class),
                 service(PrincipalService.class),
                 service(LocalPrincipalFactoryService.class),
-                service(AuthContentService.class));
+                service(AuthContentService.class),
+                service(SecurityContextCacheService.class));
 
         if (!ConfigurationUtil.isVca()) {
             services = new ArrayList<>(services);
@@ -61,7 +63,8 @@ public class HostInitAuthServiceConfig extends HostInitServiceHelper {
                 AuthInitialBootService.class,
                 PrincipalService.class,
                 LocalPrincipalFactoryService.class,
-                AuthContentService.class);
+                AuthContentService.class,
+                SecurityContextCacheService.class);
 
         if (!ConfigurationUtil.isVca()) {
             startServices(host,
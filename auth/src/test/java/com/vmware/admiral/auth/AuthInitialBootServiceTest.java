@@ -15,12 +15,19 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
 import java.security.GeneralSecurityException;
+import java.util.stream.Collectors;
 
 import org.junit.Before;
 import org.junit.Test;
 
 import com.vmware.admiral.auth.project.ProjectService;
 import com.vmware.admiral.auth.project.ProjectService.ProjectState;
+import com.vmware.admiral.auth.util.AuthUtil;
+import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.services.common.QueryTask.Query;
+import com.vmware.xenon.services.common.ResourceGroupService.ResourceGroupState;
 
 public class AuthInitialBootServiceTest extends AuthBaseTest {
 
@@ -40,4 +47,38 @@ public class AuthInitialBootServiceTest extends AuthBaseTest {
         assertEquals(ProjectService.DEFAULT_PROJECT_ID, project.name);
         assertEquals(ProjectService.DEFAULT_PROJECT_ID, project.id);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testClosureRunnersAreAddedToExistingBasicUsersResourceGroup() throws Throwable {
+        host.setSystemAuthorizationContext();
+
+        // as created by an earlier version
+        ResourceGroupState resourceGroup = getDocument(ResourceGroupState.class,
+                AuthUtil.BASIC_USERS_RESOURCE_GROUP_LINK);
+        int clauseCount = resourceGroup.query.booleanClauses.size();
+        resourceGroup.query.booleanClauses = resourceGroup.query.booleanClauses.stream()
+                .filter(clause -> !isClosureRunnersClause(clause))
+                .collect(Collectors.toList());
+        assertEquals(clauseCount - 1, resourceGroup.query.booleanClauses.size());
+        doPut(resourceGroup);
+
+        host.startServiceAndWait(AuthInitialBootService.class, AuthInitialBootService.SELF_LINK);
+        host.sendAndWaitExpectSuccess(Operation
+                .createPost(host, AuthInitialBootService.SELF_LINK)
+                .setBody(new ServiceDocument()));
+
+        waitFor(() -> getDocument(ResourceGroupState.class,
+                AuthUtil.BASIC_USERS_RESOURCE_GROUP_LINK).query.booleanClauses.stream()
+                .anyMatch(AuthInitialBootServiceTest::isClosureRunnersClause));
+        resourceGroup = getDocument(ResourceGroupState.class,
+                AuthUtil.BASIC_USERS_RESOURCE_GROUP_LINK);
+        assertEquals(clauseCount, resourceGroup.query.booleanClauses.size());
+
+        host.resetAuthorizationContext();
+    }
+
+    private static boolean isClosureRunnersClause(Query clause) {
+        return clause.term != null
+                && ManagementUriParts.CLOSURES_RUNNERS.equals(clause.term.matchValue);
+    }
+}
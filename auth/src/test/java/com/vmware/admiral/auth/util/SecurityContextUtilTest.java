@@ -14,13 +14,17 @@ package com.vmware.admiral.auth.util;
 import static com.vmware.admiral.auth.util.PrincipalUtil.encode;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.security.GeneralSecurityException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -37,6 +41,7 @@ import com.vmware.admiral.auth.idm.local.LocalPrincipalService.LocalPrincipalTyp
 import com.vmware.admiral.auth.project.ProjectFactoryService;
 import com.vmware.admiral.auth.project.ProjectRolesHandler.ProjectRoles;
 import com.vmware.admiral.auth.project.ProjectService.ProjectState;
+import com.vmware.admiral.auth.util.SecurityContextCache.CacheStats;
 import com.vmware.xenon.common.DeferredResult;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.UriUtils;
@@ -340,4 +345,98 @@ public class SecurityContextUtilTest extends AuthBaseTest {
         assertEquals(2, secondProjectEntry.roles.size());
         assertTrue(secondProjectEntry.roles.contains(AuthRole.PROJECT_MEMBER));
     }
+
+    @Test
+    public void testSecurityContextCacheIsDisabledByDefault() throws Throwable {
+        assertNull(SecurityContextCache.getInstance(privilegedTestService));
+    }
+
+    @Test
+    public void testSecurityContextIsCachedUntilRolesChange() throws Throwable {
+        Operation testOperationByAdmin = createAuthorizedOperation(
+                host.assumeIdentity(buildUserServicePath(USER_EMAIL_ADMIN)));
+        host.assumeIdentity(buildUserServicePath(USER_EMAIL_ADMIN2));
+
+        // the entries do not expire during the test, only an invalidation refreshes them
+        SecurityContextCache cache = SecurityContextCache.enable(host, TimeUnit.HOURS.toMicros(1));
+        assertSame(cache, SecurityContextCache.getInstance(privilegedTestService));
+        // wait for the cache to subscribe for changes, nothing is cached before that
+        waitFor(() -> {
+            getSecurityContext(testOperationByAdmin);
+            return cache.getStats().hitCount > 0;
+        });
+
+        CacheStats stats = cache.getStats();
+        SecurityContext securityContext = getSecurityContext(testOperationByAdmin);
+        assertEquals(stats.hitCount + 1, cache.getStats().hitCount);
+        assertEquals(stats.missCount, cache.getStats().missCount);
+        assertTrue(securityContext.projects.isEmpty());
+
+        ProjectState project = createProject("cached-project");
+        ProjectRoles projectRoles = new ProjectRoles();
+        PrincipalRoleAssignment admins = new PrincipalRoleAssignment();
+        admins.add = Collections.singletonList(USER_EMAIL_ADMIN);
+        projectRoles.administrators = admins;
+        doPatch(projectRoles, project.documentSelfLink);
+
+        waitFor(() -> cache.getStats().invalidationCount > stats.invalidationCount);
+        waitFor(() -> getSecurityContext(testOperationByAdmin).projects.size() == 1);
+        securityContext = getSecurityContext(testOperationByAdmin);
+        assertEquals(project.documentSelfLink, securityContext.projects.get(0).documentSelfLink);
+        assertTrue(securityContext.projects.get(0).roles.contains(AuthRole.PROJECT_ADMIN));
+    }
+
+    @Test
+    public void testSecurityContextCacheIsInvalidatedByOtherNodes() throws Throwable {
+        Operation testOperationByAdmin = createAuthorizedOperation(
+                host.assumeIdentity(buildUserServicePath(USER_EMAIL_ADMIN)));
+
+        SecurityContextCache cache = SecurityContextCache.enable(host, TimeUnit.HOURS.toMicros(1));
+        SecurityContextCache.getInstance(privilegedTestService);
+        waitFor(() -> {
+            getSecurityContext(testOperationByAdmin);
+            return cache.getStats().hitCount > 0;
+        });
+
+        // not allowed to anyone but the system user
+        long invalidationCount = cache.getStats().invalidationCount;
+        host.assumeIdentity(buildUserServicePath(USER_EMAIL_ADMIN));
+        try {
+            host.getTestRequestSender().sendAndWait(
+                    Operation.createDelete(host, SecurityContextCacheService.SELF_LINK));
+            fail("Only the system user can invalidate the cache");
+        } catch (RuntimeException e) {
+            // expected
+        }
+        assertEquals(invalidationCount, cache.getStats().invalidationCount);
+
+        // as broadcast by the node notified for a change
+        host.setSystemAuthorizationContext();
+        host.getTestRequestSender().sendAndWait(
+                Operation.createDelete(host, SecurityContextCacheService.SELF_LINK));
+        host.resetAuthorizationContext();
+
+        CacheStats stats = cache.getStats();
+        assertTrue(stats.invalidationCount > invalidationCount);
+        // loaded again at once, along with the principal roles it is made of
+        getSecurityContext(testOperationByAdmin);
+        assertTrue(cache.getStats().missCount > stats.missCount);
+        assertEquals(stats.hitCount, cache.getStats().hitCount);
+    }
+
+    private SecurityContext getSecurityContext(Operation op) {
+        final SecurityContext[] context = new SecurityContext[1];
+        TestContext ctx = testCreate(1);
+        SecurityContextUtil.getSecurityContext(privilegedTestService, op)
+                .whenComplete((securityContext, ex) -> {
+                    if (ex != null) {
+                        ctx.failIteration(ex);
+                        return;
+                    }
+                    context[0] = securityContext;
+                    ctx.completeIteration();
+                });
+        ctx.await();
+        return context[0];
+    }
 }
@@ -0,0 +1,400 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.closures.drivers.docker;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import com.vmware.admiral.closures.drivers.ClosureDockerClient;
+import com.vmware.admiral.closures.services.closure.Closure;
+import com.vmware.admiral.closures.util.ClosureProps;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.TaskState.TaskStage;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Pool of warm runner containers of the docker based closure runtimes.
+ *
+ * <p>A runner container started with the RUNNER_URI environment variable does not exit after
+ * running its closure, but requests the next one from {@link ClosureRunnerPoolService}. The
+ * request is held until a closure is assigned to the runner, or for
+ * {@link ClosureProps#RUNNER_POLL_TIMEOUT_SECONDS}, after which the runner requests again. An
+ * assigned closure is run with its own TASK_URI and TOKEN, the same way as in a new container.
+ *
+ * <p>Runners are pooled by runner image, resource constraints, project and owner of the closure,
+ * so a container never runs the closures of another user. A runner is retired after
+ * {@link ClosureProps#RUNNER_MAX_RUNS} closures, when a closure run by it does not finish, or
+ * when it stays idle for {@link ClosureProps#RUNNER_IDLE_TIMEOUT_SECONDS}, unless the pool would
+ * shrink below {@link ClosureProps#RUNNER_POOL_MIN_SIZE}.
+ */
+public class ClosureRunnerPool {
+
+    public static final String RUNNER_PARAM = "runner";
+    public static final String SECRET_PARAM = "secret";
+
+    /** Separates the id of the node holding a runner from the rest of the runner id */
+    private static final char NODE_ID_SEPARATOR = ':';
+
+    private static final long POLL_TIMEOUT_MICROS = TimeUnit.SECONDS
+            .toMicros(ClosureProps.RUNNER_POLL_TIMEOUT_SECONDS);
+    private static final long IDLE_TIMEOUT_MICROS = TimeUnit.SECONDS
+            .toMicros(ClosureProps.RUNNER_IDLE_TIMEOUT_SECONDS);
+    private static final long BUSY_TIMEOUT_MICROS = IDLE_TIMEOUT_MICROS + TimeUnit.SECONDS
+            .toMicros(ClosureProps.MAX_EXEC_TIMEOUT_SECONDS);
+
+    private static final Map<ServiceHost, ClosureRunnerPool> POOLS =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    public static class PoolStats {
+        /** Runner containers in the pool */
+        public long runnerCount;
+        /** Runner containers waiting for a closure */
+        public long idleRunnerCount;
+        /** Closures run in a new container */
+        public long coldStartCount;
+        /** Closures run in a warm runner container */
+        public long warmStartCount;
+        /** Runner containers retired from the pool */
+        public long retiredCount;
+    }
+
+    private enum RunnerState {
+        BUSY, IDLE, RETIRED
+    }
+
+    private static class Runner {
+        final String id;
+        final String secret = UUID.randomUUID().toString();
+        final String poolKey;
+        final ClosureDockerClient dockerClient;
+        RunnerState state = RunnerState.BUSY;
+        /** The closure run last by the runner */
+        String closureLink;
+        String containerLink;
+        int runs = 1;
+        /** The held request of the runner for its next closure */
+        Operation poll;
+        long pollMicros;
+        long busySinceMicros = Utils.getSystemNowMicrosUtc();
+        long idleSinceMicros;
+
+        Runner(String nodeId, String poolKey, ClosureDockerClient dockerClient) {
+            this.id = nodeId + NODE_ID_SEPARATOR + UUID.randomUUID().toString();
+            this.poolKey = poolKey;
+            this.dockerClient = dockerClient;
+        }
+    }
+
+    private final ServiceHost host;
+    private final Map<String, Runner> runners = new HashMap<>();
+    private final Map<String, Runner> runnersByClosureLink = new HashMap<>();
+    private boolean maintenanceScheduled;
+    private long coldStartCount;
+    private long warmStartCount;
+    private long retiredCount;
+
+    private ClosureRunnerPool(ServiceHost host) {
+        this.host = host;
+    }
+
+    public static ClosureRunnerPool getInstance(ServiceHost host) {
+        return POOLS.computeIfAbsent(host, ClosureRunnerPool::new);
+    }
+
+    /**
+     * Assigns the closure to an idle runner of the given pool. Returns {@code false} if there is
+     * no idle runner, in which case the closure has to be run in a new container.
+     */
+    public boolean assign(String poolKey, Closure closure, URI taskUri, String token) {
+        Runner runner = null;
+        Operation poll;
+        synchronized (this) {
+            for (Runner r : runners.values()) {
+                if (r.poolKey.equals(poolKey) && r.state == RunnerState.IDLE && r.poll != null) {
+                    runner = r;
+                    break;
+                }
+            }
+            if (runner == null) {
+                coldStartCount++;
+                return false;
+            }
+
+            poll = runner.poll;
+            runner.poll = null;
+            runner.state = RunnerState.BUSY;
+            runner.busySinceMicros = Utils.getSystemNowMicrosUtc();
+            runner.runs++;
+            runner.closureLink = closure.documentSelfLink;
+            runnersByClosureLink.put(closure.documentSelfLink, runner);
+            warmStartCount++;
+        }
+
+        // link the closure to the container of the runner, for its logs
+        Closure patch = new Closure();
+        patch.state = null;
+        patch.resourceLinks = Collections.singleton(runner.containerLink);
+        host.sendRequest(Operation
+                .createPatch(host, closure.documentSelfLink)
+                .setBody(patch)
+                .setReferer(host.getUri())
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        host.log(Level.WARNING, "Unable to link closure %s to container %s: %s",
+                                closure.documentSelfLink, patch.resourceLinks, Utils.toString(e));
+                    }
+                }));
+
+        host.log(Level.INFO, "Closure %s assigned to runner %s", closure.documentSelfLink,
+                runner.id);
+        poll.setContentType(Operation.MEDIA_TYPE_TEXT_PLAIN)
+                .setBody(taskUri + " " + (token == null ? "" : token))
+                .complete();
+        return true;
+    }
+
+    /**
+     * Adds a runner for the closure which is about to be run in a new container. Returns the URI
+     * the container has to request its next closure from, or {@code null} if the pool is full.
+     */
+    public URI register(String poolKey, Closure closure, URI runnersUri,
+            ClosureDockerClient dockerClient) {
+        Runner runner;
+        synchronized (this) {
+            if (countRunners(poolKey) >= ClosureProps.RUNNER_POOL_MAX_SIZE) {
+                return null;
+            }
+            runner = new Runner(host.getId(), poolKey, dockerClient);
+            runner.closureLink = closure.documentSelfLink;
+            runners.put(runner.id, runner);
+            runnersByClosureLink.put(closure.documentSelfLink, runner);
+        }
+        scheduleMaintenance();
+        return UriUtils.extendUriWithQuery(runnersUri, RUNNER_PARAM, runner.id, SECRET_PARAM,
+                runner.secret);
+    }
+
+    /**
+     * Releases the runner of the closure once the closure is done. Returns {@code true} if the
+     * container of the closure is managed by the pool and must not be removed.
+     */
+    public boolean release(Closure closure) {
+        Runner runner;
+        boolean retire;
+        synchronized (this) {
+            runner = runnersByClosureLink.remove(closure.documentSelfLink);
+            if (runner == null) {
+                return false;
+            }
+            // a closure cancelled on timeout may be still running
+            retire = runner.containerLink == null
+                    || (runner.state == RunnerState.BUSY
+                            && closure.documentSelfLink.equals(runner.closureLink)
+                            && closure.state != TaskStage.FINISHED);
+        }
+        if (retire) {
+            retire(runner);
+        }
+        return runner.containerLink != null;
+    }
+
+    /**
+     * Returns the id of the node holding the runner with the given id, or {@code null} if the
+     * runner id is not valid. The pool of a node holds only the runners registered on it.
+     */
+    public static String getNodeId(String runnerId) {
+        int separatorIndex = runnerId == null ? -1 : runnerId.lastIndexOf(NODE_ID_SEPARATOR);
+        return separatorIndex > 0 ? runnerId.substring(0, separatorIndex) : null;
+    }
+
+    /**
+     * Holds the request of a runner for its next closure.
+     */
+    void poll(Operation get, String runnerId, String secret) {
+        Runner runner;
+        synchronized (this) {
+            runner = runners.get(runnerId);
+        }
+        if (runner == null || secret == null || !MessageDigest.isEqual(
+                runner.secret.getBytes(StandardCharsets.UTF_8),
+                secret.getBytes(StandardCharsets.UTF_8))) {
+            get.fail(Operation.STATUS_CODE_NOT_FOUND);
+            return;
+        }
+
+        boolean busy;
+        synchronized (this) {
+            busy = runner.state == RunnerState.BUSY;
+        }
+        if (!busy) {
+            hold(runner, get, null);
+            return;
+        }
+
+        // the runner is done with its closure, check how it went
+        host.sendRequest(Operation
+                .createGet(host, runner.closureLink)
+                .setReferer(host.getUri())
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        host.log(Level.WARNING, "Unable to get closure %s of runner %s: %s",
+                                runner.closureLink, runner.id, Utils.toString(e));
+                    }
+                    hold(runner, get, e == null ? o.getBody(Closure.class) : null);
+                }));
+    }
+
+    public synchronized PoolStats getStats() {
+        PoolStats stats = new PoolStats();
+        stats.runnerCount = runners.size();
+        stats.idleRunnerCount = runners.values().stream()
+                .filter(r -> r.state == RunnerState.IDLE && r.poll != null)
+                .count();
+        stats.coldStartCount = coldStartCount;
+        stats.warmStartCount = warmStartCount;
+        stats.retiredCount = retiredCount;
+        return stats;
+    }
+
+    /**
+     * Holds the request of the runner, after the closure the runner has completed, if any.
+     */
+    private void hold(Runner runner, Operation get, Closure completedClosure) {
+        boolean retire = false;
+        Operation previousPoll;
+        synchronized (this) {
+            if (runner.state == RunnerState.RETIRED) {
+                retire = true;
+            } else if (runner.state == RunnerState.BUSY) {
+                if (runner.containerLink == null && completedClosure != null
+                        && completedClosure.resourceLinks != null
+                        && !completedClosure.resourceLinks.isEmpty()) {
+                    runner.containerLink = completedClosure.resourceLinks.iterator().next();
+                }
+                retire = completedClosure == null || runner.containerLink == null
+                        || completedClosure.state != TaskStage.FINISHED
+                        || runner.runs >= ClosureProps.RUNNER_MAX_RUNS;
+                runner.idleSinceMicros = Utils.getSystemNowMicrosUtc();
+            }
+            previousPoll = runner.poll;
+            if (!retire) {
+                runner.state = RunnerState.IDLE;
+                runner.poll = get;
+                runner.pollMicros = Utils.getSystemNowMicrosUtc();
+            }
+        }
+
+        if (previousPoll != null) {
+            previousPoll.complete();
+        }
+        if (retire) {
+            retire(runner);
+            get.fail(Operation.STATUS_CODE_NOT_FOUND);
+        }
+    }
+
+    private void retire(Runner runner) {
+        Operation poll;
+        synchronized (this) {
+            if (runner.state == RunnerState.RETIRED) {
+                return;
+            }
+            runner.state = RunnerState.RETIRED;
+            runners.remove(runner.id);
+            poll = runner.poll;
+            runner.poll = null;
+            retiredCount++;
+        }
+
+        host.log(Level.INFO, "Retiring closure runner %s of container %s", runner.id,
+                runner.containerLink);
+        if (poll != null) {
+            poll.fail(Operation.STATUS_CODE_NOT_FOUND);
+        }
+        if (runner.containerLink != null) {
+            runner.dockerClient.removeContainer(runner.containerLink, e -> host.log(
+                    Level.WARNING, "Unable to remove container %s of closure runner %s: %s",
+                    runner.containerLink, runner.id, Utils.toString(e)));
+        }
+    }
+
+    private int countRunners(String poolKey) {
+        int count = 0;
+        for (Runner runner : runners.values()) {
+            if (runner.poolKey.equals(poolKey)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private synchronized void scheduleMaintenance() {
+        if (maintenanceScheduled) {
+            return;
+        }
+        maintenanceScheduled = true;
+        host.schedule(this::performMaintenance, ClosureProps.RUNNER_POLL_TIMEOUT_SECONDS,
+                TimeUnit.SECONDS);
+    }
+
+    private void performMaintenance() {
+        long now = Utils.getSystemNowMicrosUtc();
+        List<Operation> expiredPolls = new ArrayList<>();
+        List<Runner> retired = new ArrayList<>();
+        synchronized (this) {
+            maintenanceScheduled = false;
+            for (Runner runner : runners.values()) {
+                if (runner.state == RunnerState.BUSY) {
+                    // e.g. the container failed to start or does not support pooling
+                    if (now - runner.busySinceMicros > BUSY_TIMEOUT_MICROS) {
+                        retired.add(runner);
+                    }
+                    continue;
+                }
+
+                if (runner.poll != null && now - runner.pollMicros >= POLL_TIMEOUT_MICROS) {
+                    expiredPolls.add(runner.poll);
+                    runner.poll = null;
+                }
+                if (runner.poll == null && now - runner.pollMicros > 3 * POLL_TIMEOUT_MICROS) {
+                    // the runner does not request closures anymore
+                    retired.add(runner);
+                } else if (now - runner.idleSinceMicros >= IDLE_TIMEOUT_MICROS
+                        && countRunners(runner.poolKey) > ClosureProps.RUNNER_POOL_MIN_SIZE) {
+                    retired.add(runner);
+                }
+            }
+        }
+
+        // the runners request again on empty responses
+        expiredPolls.forEach(Operation::complete);
+        retired.forEach(this::retire);
+
+        synchronized (this) {
+            if (!runners.isEmpty()) {
+                scheduleMaintenance();
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.closures.drivers.docker;
+
+import java.util.Map;
+
+import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.NodeGroupService.NodeGroupState;
+import com.vmware.xenon.services.common.NodeState;
+import com.vmware.xenon.services.common.ServiceUriPaths;
+
+/**
+ * Endpoint the warm runner containers of {@link ClosureRunnerPool} request their next closure
+ * from. The response is the TASK_URI and TOKEN of the next closure separated by a space, empty if
+ * there is no closure to run yet, or 404 if the runner is retired and has to exit.
+ *
+ * <p>Runners are given the configured closure callback URI, which may be load balanced between
+ * the nodes, while a runner is held by the pool of the node it was registered on. A request for
+ * a runner of another node is forwarded to that node.
+ */
+public class ClosureRunnerPoolService extends StatelessService {
+
+    public static final String SELF_LINK = ManagementUriParts.CLOSURES_RUNNERS;
+
+    @Override
+    public void handleGet(Operation get) {
+        Map<String, String> params = UriUtils.parseUriQueryParams(get.getUri());
+        String runnerId = params.get(ClosureRunnerPool.RUNNER_PARAM);
+        String nodeId = ClosureRunnerPool.getNodeId(runnerId);
+        if (nodeId == null || nodeId.equals(getHost().getId())
+                || get.hasPragmaDirective(Operation.PRAGMA_DIRECTIVE_FORWARDED)) {
+            ClosureRunnerPool.getInstance(getHost()).poll(get, runnerId,
+                    params.get(ClosureRunnerPool.SECRET_PARAM));
+            return;
+        }
+
+        Operation getNodeGroup = Operation.createGet(this, ServiceUriPaths.DEFAULT_NODE_GROUP)
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        get.fail(e);
+                        return;
+                    }
+                    NodeState node = o.getBody(NodeGroupState.class).nodes.get(nodeId);
+                    if (node == null || NodeState.isUnAvailable(node)) {
+                        // the pool of the node is gone with it, the runner has to exit
+                        logWarning("Node %s of closure runner %s is not available", nodeId,
+                                runnerId);
+                        get.fail(Operation.STATUS_CODE_NOT_FOUND);
+                        return;
+                    }
+                    forward(get, node);
+                });
+        setAuthorizationContext(getNodeGroup, getSystemAuthorizationContext());
+        sendRequest(getNodeGroup);
+    }
+
+    private void forward(Operation get, NodeState node) {
+        Operation forwardedGet = Operation
+                .createGet(UriUtils.buildUri(node.groupReference.getScheme(),
+                        node.groupReference.getHost(), node.groupReference.getPort(),
+                        get.getUri().getPath(), get.getUri().getQuery()))
+                .addPragmaDirective(Operation.PRAGMA_DIRECTIVE_FORWARDED)
+                .setExpiration(get.getExpirationMicrosUtc())
+                .setReferer(getUri())
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        logFine("Forwarded closure runner request failed: %s",
+                                Utils.toString(e));
+                        get.setStatusCode(o.getStatusCode()).fail(e);
+                        return;
+                    }
+                    get.setContentType(o.getContentType())
+                            .setBodyNoCloning(o.getBodyRaw())
+                            .complete();
+                });
+        setAuthorizationContext(forwardedGet, get.getAuthorizationContext());
+        sendRequest(forwardedGet);
+    }
+}
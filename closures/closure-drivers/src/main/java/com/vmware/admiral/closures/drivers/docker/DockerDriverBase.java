@@ -136,6 +136,7 @@ public abstract class DockerDriverBase implements ExecutionDriver {
     public void executeClosure(Closure closure, ClosureDescription closureDesc, String token,
             Consumer<Throwable> errorHandler) {
         ClosureDockerClient dockerClient = dockerClientFactory.getClient();
+        ClosureRunnerPool runnerPool = ClosureRunnerPool.getInstance(serviceHost);
 
         String containerName = generateContainerName(closure);
 
@@ -148,10 +149,6 @@ public abstract class DockerDriverBase implements ExecutionDriver {
         configuration.sourceURL = closureDesc.sourceURL;
         configuration.dependencies = closureDesc.dependencies;
 
-        List<String> vars = populateEnvs(closure, token);
-        configuration.envVars = vars.toArray(new String[vars.size()]);
-        logInfo("Creating closure with envs: %s", vars.get(0));
-
         String containerImage = getDockerImage();
 
         ImageConfiguration imageConfig = new ImageConfiguration();
@@ -164,11 +161,36 @@ public abstract class DockerDriverBase implements ExecutionDriver {
         imageConfig.registry = getConfigProperty(
                 ClosureProps.CLOSURE_RUNTIME_IMAGE_REGISTRY + closureDesc.runtime);
 
+        // the source of a closure with source URL is part of its image, which may change
+        String runnerPoolKey = ClosureUtils.isEmpty(configuration.sourceURL)
+                ? buildRunnerPoolKey(closure, imageConfig, configuration) : null;
+        if (runnerPoolKey != null && runnerPool.assign(runnerPoolKey, closure,
+                prepareCallbackUri(closure), token)) {
+            errorHandler.accept(null);
+            return;
+        }
+
+        List<String> vars = populateEnvs(closure, token);
+        if (runnerPoolKey != null) {
+            // the runner may reach another node, which forwards its requests to this one
+            URI runnerUri = runnerPool.register(runnerPoolKey, closure,
+                    prepareServiceUri(ClosureRunnerPoolService.SELF_LINK), dockerClient);
+            if (runnerUri != null) {
+                vars.add(ClosureProps.ENV_PROP_RUNNER_URI + "=" + runnerUri);
+            }
+        }
+        configuration.envVars = vars.toArray(new String[vars.size()]);
+        logInfo("Creating closure with envs: %s", vars.get(0));
+
         logInfo("Creating container with name: %s image: %s", containerName, containerImage);
         dockerClient.createAndStartContainer(closure, imageConfig, configuration, errorHandler);
         logInfo("Code execution request sent.");
     }
 
+    public ClosureRunnerPool.PoolStats getRunnerPoolStats() {
+        return ClosureRunnerPool.getInstance(serviceHost).getStats();
+    }
+
     private static String getConfigProperty(String propertyName) {
         return ConfigurationUtil.getProperty(propertyName);
     }
@@ -182,6 +204,12 @@ public abstract class DockerDriverBase implements ExecutionDriver {
             return;
         }
 
+        if (ClosureRunnerPool.getInstance(serviceHost).release(closure)) {
+            logInfo("Container of closure %s is kept by the runner pool",
+                    closure.documentSelfLink);
+            return;
+        }
+
         if (closure.resourceLinks == null || closure.resourceLinks.size() <= 0) {
             errorHandler.accept(new Exception(
                     "No resource to clean for closure: " + closure.documentSelfLink));
@@ -272,19 +300,39 @@ public abstract class DockerDriverBase implements ExecutionDriver {
     }
 
     private URI prepareCallbackUri(Closure closure) {
-        URI callbackUri = null;
+        URI callbackUri = prepareServiceUri(closure.documentSelfLink);
+        logFine("Computed closure callback URI: %s, closure: %s", callbackUri, closure
+                .documentSelfLink);
+        return callbackUri;
+    }
+
+    private URI prepareServiceUri(String link) {
+        URI serviceUri = null;
         if (CLOSURE_SERVICE_CALLBACK_URI != null) {
-            callbackUri = buildConfiguredCallbackUri(CLOSURE_SERVICE_CALLBACK_URI,
-                    closure.documentSelfLink);
+            serviceUri = buildConfiguredCallbackUri(CLOSURE_SERVICE_CALLBACK_URI, link);
         }
 
-        if (callbackUri == null) {
+        if (serviceUri == null) {
             // fallback to publicUri as defined in xenon
-            callbackUri = UriUtils.buildPublicUri(getServiceHost(), closure.documentSelfLink);
+            serviceUri = UriUtils.buildPublicUri(getServiceHost(), link);
         }
-        logFine("Computed closure callback URI: %s, closure: %s", callbackUri, closure
-                .documentSelfLink);
-        return callbackUri;
+        return serviceUri;
+    }
+
+    /**
+     * Runners are pooled by image and resource constraints, and are never shared between
+     * projects or users.
+     */
+    private String buildRunnerPoolKey(Closure closure, ImageConfiguration imageConfig,
+            ContainerConfiguration configuration) {
+        String placement = closure.customProperties == null ? null
+                : closure.customProperties.get(ClosureProps.CUSTOM_PROPERTY_PLACEMENT);
+        return ClosureUtils.calculateHash(new String[] { String.join("\n",
+                imageConfig.imageName, imageConfig.imageNameVersion,
+                String.valueOf(configuration.memoryMB), String.valueOf(configuration.cpuShares),
+                String.valueOf(configuration.logConfiguration), String.valueOf(placement),
+                String.valueOf(closure.tenantLinks),
+                String.valueOf(closure.documentAuthPrincipalLink)) });
     }
 
     public URI buildConfiguredCallbackUri(String callbackUri, String linkPath) {
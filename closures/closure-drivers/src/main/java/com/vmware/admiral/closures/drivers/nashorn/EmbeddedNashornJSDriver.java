@@ -16,12 +16,13 @@ import java.util.Calendar;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import javax.script.Bindings;
+import javax.script.CompiledScript;
 import javax.script.Invocable;
-import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
 
 import com.google.gson.JsonArray;
@@ -31,7 +32,7 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
 import jdk.nashorn.api.scripting.ScriptObjectMirror;
 
-import com.vmware.admiral.closures.drivers.DriverConstants;
+import com.vmware.admiral.closures.drivers.nashorn.NashornEnginePool.PooledEngine;
 import com.vmware.admiral.closures.services.closure.Closure;
 import com.vmware.admiral.closures.services.closuredescription.ClosureDescription;
 import com.vmware.admiral.closures.services.closuredescription.ResourceConstraints;
@@ -44,7 +45,32 @@ import com.vmware.xenon.common.Utils;
  */
 public class EmbeddedNashornJSDriver extends LocalDriverBase {
 
+    private static final int RATE_WINDOW_SECONDS = 10;
+
     private final ServiceHost serviceHost;
+    private final NashornEnginePool enginePool = new NashornEnginePool();
+
+    private final AtomicLong coldExecutionCount = new AtomicLong();
+    private final AtomicLong coldLatencyMicros = new AtomicLong();
+    private final AtomicLong warmExecutionCount = new AtomicLong();
+    private final AtomicLong warmLatencyMicros = new AtomicLong();
+    private final long[] executionsPerSecond = new long[RATE_WINDOW_SECONDS];
+    private long lastExecutionSecond;
+
+    public static class ExecutionStats {
+        /** Closures executed */
+        public long executionCount;
+        /** Closures executed per second, averaged over the last 10 seconds */
+        public double executionsPerSecond;
+        /** Executions which compiled the closure source, e.g. on a new engine */
+        public long coldExecutionCount;
+        /** Average duration of the cold executions */
+        public long coldLatencyMicros;
+        /** Executions which reused a compiled closure source */
+        public long warmExecutionCount;
+        /** Average duration of the warm executions */
+        public long warmLatencyMicros;
+    }
 
     public interface JsDateWrap {
         long getTime();
@@ -75,37 +101,93 @@ public class EmbeddedNashornJSDriver extends LocalDriverBase {
     public Closure doExecute(Closure closure, ClosureDescription taskDef) {
         logInfo("Submitting closure for execution: %s", closure.documentSelfLink);
 
+        long startMicros = Utils.getNowMicrosUtc();
+        boolean cold = false;
         Closure closureResult = new Closure();
 
         Map<String, JsonElement> outputs = new HashMap<>();
-        ScriptEngineManager manager = new ScriptEngineManager();
-        ScriptEngine engine = manager.getEngineByName(DriverConstants.RUNTIME_NASHORN);
-        if (engine == null) {
-            throw new IllegalStateException("Unable to execute script with runtime: "
-                    + taskDef.runtime);
-        }
-
+        PooledEngine engine = enginePool.borrow();
         try {
-            setBindings(closure, engine);
-            executeScript(closure, taskDef, engine);
-            closureResult.state = TaskStage.FINISHED;
-
-        } catch (ScriptException e) {
-            Utils.logWarning("Exception thrown while executing script: %s", e.getMessage());
-            closureResult.state = TaskStage.FAILED;
-            closureResult.errorMsg = e.getMessage();
-        }
+            Bindings bindings = createBindings(closure, engine.engine);
+            CompiledScript script = engine.getScript(taskDef.source);
+            try {
+                if (script == null) {
+                    cold = true;
+                    script = engine.compile(taskDef.source);
+                }
+                executeScript(closure, taskDef, script, bindings);
+                closureResult.state = TaskStage.FINISHED;
+
+            } catch (ScriptException e) {
+                Utils.logWarning("Exception thrown while executing script: %s", e.getMessage());
+                closureResult.state = TaskStage.FAILED;
+                closureResult.errorMsg = e.getMessage();
+            }
 
-        // populate outputs
-        populateOutputs(engine, taskDef.outputNames, outputs);
+            // populate outputs
+            populateOutputs(engine.engine, bindings, taskDef.outputNames, outputs);
+        } finally {
+            enginePool.release(engine);
+        }
         closureResult.outputs = outputs;
+
+        recordExecution(cold, Utils.getNowMicrosUtc() - startMicros);
         return closureResult;
 
     }
 
-    private void populateOutputs(ScriptEngine engine, List<String> outputNames, Map<String, JsonElement> outputs) {
+    public ExecutionStats getStats() {
+        ExecutionStats stats = new ExecutionStats();
+        synchronized (executionsPerSecond) {
+            advanceExecutionsPerSecond(TimeUnit.MICROSECONDS.toSeconds(Utils.getNowMicrosUtc()));
+            long executions = 0;
+            for (long count : executionsPerSecond) {
+                executions += count;
+            }
+            stats.executionsPerSecond = (double) executions / RATE_WINDOW_SECONDS;
+        }
+        stats.coldExecutionCount = coldExecutionCount.get();
+        stats.warmExecutionCount = warmExecutionCount.get();
+        stats.executionCount = stats.coldExecutionCount + stats.warmExecutionCount;
+        if (stats.coldExecutionCount > 0) {
+            stats.coldLatencyMicros = coldLatencyMicros.get() / stats.coldExecutionCount;
+        }
+        if (stats.warmExecutionCount > 0) {
+            stats.warmLatencyMicros = warmLatencyMicros.get() / stats.warmExecutionCount;
+        }
+        return stats;
+    }
+
+    private void recordExecution(boolean cold, long latencyMicros) {
+        if (cold) {
+            coldLatencyMicros.addAndGet(latencyMicros);
+            coldExecutionCount.incrementAndGet();
+        } else {
+            warmLatencyMicros.addAndGet(latencyMicros);
+            warmExecutionCount.incrementAndGet();
+        }
+
+        long second = TimeUnit.MICROSECONDS.toSeconds(Utils.getNowMicrosUtc());
+        synchronized (executionsPerSecond) {
+            advanceExecutionsPerSecond(second);
+            executionsPerSecond[(int) (second % RATE_WINDOW_SECONDS)]++;
+        }
+    }
+
+    /**
+     * Clears the counters of the seconds passed since the last execution.
+     */
+    private void advanceExecutionsPerSecond(long second) {
+        for (long s = Math.max(lastExecutionSecond + 1, second - RATE_WINDOW_SECONDS + 1);
+                s <= second; s++) {
+            executionsPerSecond[(int) (s % RATE_WINDOW_SECONDS)] = 0;
+        }
+        lastExecutionSecond = Math.max(lastExecutionSecond, second);
+    }
+
+    private void populateOutputs(ScriptEngine engine, Bindings outBindings,
+            List<String> outputNames, Map<String, JsonElement> outputs) {
         if (outputNames != null) {
-            final Bindings outBindings = engine.getBindings(ScriptContext.ENGINE_SCOPE);
             for (String name : outputNames) {
                 Object val = outBindings.get(name);
                 logInfo("Output parameter: name: %s value: %s", name, val);
@@ -115,18 +197,22 @@ public class EmbeddedNashornJSDriver extends LocalDriverBase {
         }
     }
 
-    private void executeScript(Closure closureRequest, ClosureDescription taskDef, ScriptEngine engine)
-            throws ScriptException {
+    private void executeScript(Closure closureRequest, ClosureDescription taskDef,
+            CompiledScript script, Bindings bindings) throws ScriptException {
         String scriptSource = taskDef.source;
         ResourceConstraints resConstraints = taskDef.resources;
         logInfo("Using resource constraints: cpuShares = %s, ram = %s, timeout = %s",
                 resConstraints.cpuShares, resConstraints.ramMB, resConstraints.timeoutSeconds);
         logInfo("Executing script of %s:\n%s", closureRequest.documentSelfLink, scriptSource);
 
-        engine.eval(scriptSource);
+        script.eval(bindings);
     }
 
-    private void setBindings(Closure closureRequest, ScriptEngine engine) throws ScriptException {
+    /**
+     * Creates new global bindings for the closure, so that nothing is shared with the previous
+     * executions on the same engine.
+     */
+    private Bindings createBindings(Closure closureRequest, ScriptEngine engine) {
         final Bindings inBindings = engine.createBindings();
 
         inBindings.put("result", null);
@@ -134,14 +220,55 @@ public class EmbeddedNashornJSDriver extends LocalDriverBase {
         JsonObject element = new JsonObject();
         if (inputs != null) {
             inputs.forEach(element::add);
-            inBindings.put("inputs", convertValue(engine, element));
+            inBindings.put("inputs", convertValue(inBindings, element));
+        }
+
+        return inBindings;
+    }
+
+    /**
+     * Converts the given JSON value to a script value of the given global bindings, the same way
+     * as JSON.parse would do.
+     */
+    @SuppressWarnings("restriction")
+    private Object convertValue(Bindings global, JsonElement var) {
+        if (var == null || var.isJsonNull()) {
+            return null;
+        } else if (var.isJsonPrimitive()) {
+            JsonPrimitive primitive = var.getAsJsonPrimitive();
+            if (primitive.isBoolean()) {
+                return primitive.getAsBoolean();
+            } else if (primitive.isString()) {
+                return primitive.getAsString();
+            }
+            return convertNumber(primitive);
+        } else if (var.isJsonArray()) {
+            ScriptObjectMirror array = (ScriptObjectMirror) ((ScriptObjectMirror) global
+                    .get("Array")).newObject();
+            int index = 0;
+            for (JsonElement item : var.getAsJsonArray()) {
+                array.setSlot(index++, convertValue(global, item));
+            }
+            return array;
         }
 
-        engine.setBindings(inBindings, ScriptContext.ENGINE_SCOPE);
+        ScriptObjectMirror object = (ScriptObjectMirror) ((ScriptObjectMirror) global
+                .get("Object")).newObject();
+        for (Map.Entry<String, JsonElement> entry : var.getAsJsonObject().entrySet()) {
+            object.put(entry.getKey(), convertValue(global, entry.getValue()));
+        }
+        return object;
     }
 
-    private Object convertValue(ScriptEngine engine, JsonElement var) throws ScriptException {
-        return engine.eval("JSON.parse('" + var.toString() + "')", engine.getContext());
+    private static Number convertNumber(JsonPrimitive primitive) {
+        String number = primitive.getAsString();
+        if (number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0) {
+            long value = primitive.getAsLong();
+            if (value == (int) value) {
+                return (int) value;
+            }
+        }
+        return primitive.getAsDouble();
     }
 
     @SuppressWarnings({ "restriction", "unchecked" })
@@ -180,10 +307,16 @@ public class EmbeddedNashornJSDriver extends LocalDriverBase {
                     long timestampLocalTime = jsDate.getTime();
                     Calendar calendar = Calendar.getInstance();
                     calendar.setTimeInMillis(timestampLocalTime);
-                    val = calendar.getTime();
+                    return Utils.fromJson(Utils.toJson(calendar.getTime()), JsonElement.class);
+                }
+                JsonObject jsObject = new JsonObject();
+                for (String key : m.keySet()) {
+                    Object property = m.get(key);
+                    if (property != null) {
+                        jsObject.add(key, convertToJsonElement(engine, property));
+                    }
                 }
-                String stringified = Utils.toJson(val);
-                return Utils.fromJson(stringified, JsonElement.class);
+                return jsObject;
             }
         }
 
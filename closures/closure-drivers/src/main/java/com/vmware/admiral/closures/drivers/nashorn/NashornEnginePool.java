@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.closures.drivers.nashorn;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+
+import com.vmware.admiral.closures.drivers.DriverConstants;
+import com.vmware.admiral.closures.util.ClosureProps;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Pool of Nashorn engines used by {@link EmbeddedNashornJSDriver}. Each engine keeps the
+ * {@link CompiledScript}s of the closure sources it has run, keyed by the hash of the source, so
+ * a closure run on a warm engine only needs new bindings.
+ *
+ * <p>At most {@link ClosureProps#NASHORN_ENGINE_POOL_SIZE} idle engines are kept. When all of them
+ * are in use a new engine is created rather than waiting, as a closure may hold its engine until
+ * its timeout.
+ */
+class NashornEnginePool {
+
+    static class PooledEngine {
+        final ScriptEngine engine;
+        private final Map<String, CompiledSource> scripts = new LinkedHashMap<String,
+                CompiledSource>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompiledSource> eldest) {
+                return size() > ClosureProps.NASHORN_SCRIPT_CACHE_SIZE;
+            }
+        };
+
+        private PooledEngine(ScriptEngine engine) {
+            this.engine = engine;
+        }
+
+        /**
+         * Returns the compiled script of the given source, or {@code null} if it is not compiled
+         * by this engine yet.
+         */
+        CompiledScript getScript(String source) {
+            CompiledSource compiled = scripts.get(Utils.computeHash(source));
+            return compiled != null && compiled.source.equals(source) ? compiled.script : null;
+        }
+
+        CompiledScript compile(String source) throws ScriptException {
+            CompiledScript script = ((Compilable) engine).compile(source);
+            scripts.put(Utils.computeHash(source), new CompiledSource(source, script));
+            return script;
+        }
+    }
+
+    private static class CompiledSource {
+        final String source;
+        final CompiledScript script;
+
+        CompiledSource(String source, CompiledScript script) {
+            this.source = source;
+            this.script = script;
+        }
+    }
+
+    private final ScriptEngineManager manager = new ScriptEngineManager();
+    private final Queue<PooledEngine> idleEngines = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    PooledEngine borrow() {
+        PooledEngine engine = idleEngines.poll();
+        if (engine != null) {
+            idleCount.decrementAndGet();
+            return engine;
+        }
+
+        ScriptEngine scriptEngine = manager.getEngineByName(DriverConstants.RUNTIME_NASHORN);
+        if (scriptEngine == null) {
+            throw new IllegalStateException("Unable to execute script with runtime: "
+                    + DriverConstants.RUNTIME_NASHORN);
+        }
+        return new PooledEngine(scriptEngine);
+    }
+
+    void release(PooledEngine engine) {
+        if (idleCount.incrementAndGet() > ClosureProps.NASHORN_ENGINE_POOL_SIZE) {
+            idleCount.decrementAndGet();
+            return;
+        }
+        idleEngines.add(engine);
+    }
+}
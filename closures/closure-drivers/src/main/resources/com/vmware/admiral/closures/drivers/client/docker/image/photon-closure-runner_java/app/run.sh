@@ -5,4 +5,16 @@ mkdir ./user_scripts || echo "File exits"
 [[ ! -z "${TRUST_CERTS}" ]] && echo "${TRUST_CERTS}" | base64 --decode > trusted.gz
 [[ ! -z "${TRUST_CERTS}" ]] && gzip -dc < trusted.gz > trust.pem
 
-java -cp .:\* com/vmware/admiral/closure/runner/AppRunner
\ No newline at end of file
+java -cp .:\* com/vmware/admiral/closure/runner/AppRunner
+
+# a pooled runner container runs the next closures assigned to it, until it is retired
+while [[ ! -z "${RUNNER_URI}" ]]; do
+    NEXT_CLOSURE=$(curl -sfL -H "x-xenon-auth-token: ${TOKEN}" "${RUNNER_URI}" || \
+            curl -sfL --cacert trust.pem -H "x-xenon-auth-token: ${TOKEN}" "${RUNNER_URI}") || exit 0
+    [[ -z "${NEXT_CLOSURE}" ]] && continue
+    read TASK_URI TOKEN <<< "${NEXT_CLOSURE}"
+    export TASK_URI TOKEN
+
+    rm -rf ./user_scripts/*
+    java -cp .:\* com/vmware/admiral/closure/runner/AppRunner
+done
@@ -3,12 +3,27 @@
 [[ ! -z "${TRUST_CERTS}" ]] && echo "${TRUST_CERTS}" | base64 --decode > trusted.gz
 [[ ! -z "${TRUST_CERTS}" ]] && gzip -dc < trusted.gz > trust.pem
 
-node ./appmain.js
+run_closure() {
+    node ./appmain.js
 
-#PATCH the closure with the response saved by node in file response.json
-curl -sL --request PATCH -H "Content-Type: application/json" \
-                -H "x-xenon-auth-token: ${TOKEN}" -d @response.json ${TASK_URI} > /dev/null || \
-curl -sL --cacert trust.pem \
-         --request PATCH -H "Content-Type: application/json" \
-                         -H "x-xenon-auth-token: ${TOKEN}" -d @response.json ${TASK_URI} > /dev/null
+    #PATCH the closure with the response saved by node in file response.json
+    curl -sL --request PATCH -H "Content-Type: application/json" \
+                    -H "x-xenon-auth-token: ${TOKEN}" -d @response.json ${TASK_URI} > /dev/null || \
+    curl -sL --cacert trust.pem \
+             --request PATCH -H "Content-Type: application/json" \
+                             -H "x-xenon-auth-token: ${TOKEN}" -d @response.json ${TASK_URI} > /dev/null
+}
 
+run_closure
+
+# a pooled runner container runs the next closures assigned to it, until it is retired
+while [[ ! -z "${RUNNER_URI}" ]]; do
+    NEXT_CLOSURE=$(curl -sfL -H "x-xenon-auth-token: ${TOKEN}" "${RUNNER_URI}" || \
+            curl -sfL --cacert trust.pem -H "x-xenon-auth-token: ${TOKEN}" "${RUNNER_URI}") || exit 0
+    [[ -z "${NEXT_CLOSURE}" ]] && continue
+    read TASK_URI TOKEN <<< "${NEXT_CLOSURE}"
+    export TASK_URI TOKEN
+
+    rm -f response.json
+    run_closure
+done
@@ -6,4 +6,15 @@ mkdir ./user_scripts || echo "File exits"
 [[ ! -z "${TRUST_CERTS}" ]] && gzip -dc < trusted.gz > trust.pem
 
 cd user_scripts
-python3 -u ../appmain.py
\ No newline at end of file
+python3 -u ../appmain.py
+
+# a pooled runner container runs the next closures assigned to it, until it is retired
+while [[ ! -z "${RUNNER_URI}" ]]; do
+    NEXT_CLOSURE=$(python3 -u ../runner_poll.py) || exit 0
+    [[ -z "${NEXT_CLOSURE}" ]] && continue
+    read TASK_URI TOKEN <<< "${NEXT_CLOSURE}"
+    export TASK_URI TOKEN
+
+    rm -rf ./*
+    python3 -u ../appmain.py
+done
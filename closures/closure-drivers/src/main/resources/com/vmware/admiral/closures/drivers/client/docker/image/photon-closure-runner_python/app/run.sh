@@ -8,3 +8,13 @@ mkdir ./user_scripts || echo "File exits"
 cd user_scripts
 python3 -u ../appmain.py
 
+# a pooled runner container runs the next closures assigned to it, until it is retired
+while [[ ! -z "${RUNNER_URI}" ]]; do
+    NEXT_CLOSURE=$(python3 -u ../runner_poll.py) || exit 0
+    [[ -z "${NEXT_CLOSURE}" ]] && continue
+    read TASK_URI TOKEN <<< "${NEXT_CLOSURE}"
+    export TASK_URI TOKEN
+
+    rm -rf ./*
+    python3 -u ../appmain.py
+done
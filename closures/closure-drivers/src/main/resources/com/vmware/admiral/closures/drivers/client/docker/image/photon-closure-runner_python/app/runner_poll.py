@@ -0,0 +1,31 @@
+#!/usr/bin/env python3
+
+# Requests the next closure of a pooled runner container from RUNNER_URI. Prints the TASK_URI and
+# TOKEN of the next closure, nothing if there is no closure yet, or exits with 1 if the runner is
+# retired.
+
+import os
+import sys
+import requests
+
+TRUSTED_CERTS = '/app/trust.pem'
+
+
+def main():
+    runner_uri = os.environ['RUNNER_URI']
+    headers = {'x-xenon-auth-token': os.environ.get('TOKEN', '')}
+    try:
+        response = requests.get(runner_uri, headers=headers)
+    except requests.exceptions.SSLError:
+        response = requests.get(runner_uri, headers=headers, verify=TRUSTED_CERTS)
+
+    if not response.ok:
+        sys.exit(1)
+    print(response.content.decode('utf-8'))
+
+
+if __name__ == "__main__":
+    try:
+        main()
+    except Exception:
+        sys.exit(1)
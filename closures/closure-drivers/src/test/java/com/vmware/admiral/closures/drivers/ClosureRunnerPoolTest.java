@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.closures.drivers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.closures.drivers.docker.ClosureRunnerPool;
+import com.vmware.admiral.closures.drivers.docker.ClosureRunnerPool.PoolStats;
+import com.vmware.admiral.closures.drivers.docker.ClosureRunnerPoolService;
+import com.vmware.admiral.closures.services.closure.Closure;
+import com.vmware.xenon.common.BasicReusableHostTestCase;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.TaskState.TaskStage;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.test.TestContext;
+import com.vmware.xenon.common.test.VerificationHost;
+
+public class ClosureRunnerPoolTest extends BasicReusableHostTestCase {
+
+    private static final String CONTAINER_LINK = "/resources/containers/runner";
+
+    private ClosureRunnerPool pool;
+
+    @Before
+    public void setUp() throws Throwable {
+        if (this.host.getServiceStage(ClosureRunnerPoolService.SELF_LINK) == null) {
+            this.host.startServiceAndWait(ClosureRunnerPoolService.class,
+                    ClosureRunnerPoolService.SELF_LINK);
+        }
+        pool = ClosureRunnerPool.getInstance(this.host);
+    }
+
+    @AfterClass
+    public static void clean() {
+        BasicReusableHostTestCase.tearDownOnce();
+    }
+
+    @Test
+    public void testRunnerIsReusedUntilClosureFails() throws Throwable {
+        String poolKey = UUID.randomUUID().toString();
+        ClosureDockerClient dockerClient = mock(ClosureDockerClient.class);
+        TestClosureService firstClosure = startClosure(TaskStage.FINISHED, CONTAINER_LINK);
+        TestClosureService secondClosure = startClosure(TaskStage.FAILED, null);
+        PoolStats initialStats = pool.getStats();
+
+        URI runnerUri = pool.register(poolKey, firstClosure.closure,
+                UriUtils.buildUri(this.host, ClosureRunnerPoolService.SELF_LINK), dockerClient);
+        assertNotNull(runnerUri);
+        // the runner is still running its first closure
+        assertFalse(pool.assign(poolKey, secondClosure.closure, secondClosure.getUri(), "token"));
+
+        Operation[] polls = new Operation[1];
+        this.host.testStart(1);
+        this.host.send(Operation.createGet(runnerUri).setCompletion((o, e) -> {
+            polls[0] = o;
+            this.host.completeIteration();
+        }));
+        this.host.waitFor("Runner is not idle", () -> pool.getStats().idleRunnerCount
+                == initialStats.idleRunnerCount + 1);
+
+        assertTrue(pool.assign(poolKey, secondClosure.closure, secondClosure.getUri(), "token"));
+        this.host.testWait();
+        assertEquals(Operation.STATUS_CODE_OK, polls[0].getStatusCode());
+        assertEquals(secondClosure.getUri() + " token", polls[0].getBody(String.class));
+        this.host.waitFor("Closure is not linked to the runner container",
+                () -> secondClosure.closure.resourceLinks != null);
+        assertEquals(Collections.singleton(CONTAINER_LINK), secondClosure.closure.resourceLinks);
+
+        // the container is kept for the next closures
+        assertTrue(pool.release(firstClosure.closure));
+        verify(dockerClient, never()).removeContainer(any(), any());
+
+        // the runner is retired once its closure fails
+        this.host.testStart(1);
+        this.host.send(Operation.createGet(runnerUri).setCompletion((o, e) -> {
+            polls[0] = o;
+            this.host.completeIteration();
+        }));
+        this.host.testWait();
+        assertEquals(Operation.STATUS_CODE_NOT_FOUND, polls[0].getStatusCode());
+        verify(dockerClient).removeContainer(eq(CONTAINER_LINK), any());
+        assertTrue(pool.release(secondClosure.closure));
+
+        PoolStats stats = pool.getStats();
+        assertEquals(initialStats.runnerCount, stats.runnerCount);
+        assertEquals(initialStats.coldStartCount + 1, stats.coldStartCount);
+        assertEquals(initialStats.warmStartCount + 1, stats.warmStartCount);
+        assertEquals(initialStats.retiredCount + 1, stats.retiredCount);
+    }
+
+    @Test
+    public void testPollWithInvalidSecretFails() throws Throwable {
+        TestClosureService closure = startClosure(TaskStage.FINISHED, CONTAINER_LINK);
+        URI runnerUri = pool.register(UUID.randomUUID().toString(), closure.closure,
+                UriUtils.buildUri(this.host, ClosureRunnerPoolService.SELF_LINK),
+                mock(ClosureDockerClient.class));
+        Map<String, String> params = UriUtils.parseUriQueryParams(runnerUri);
+
+        URI invalidUri = UriUtils.extendUriWithQuery(
+                UriUtils.buildUri(this.host, ClosureRunnerPoolService.SELF_LINK),
+                ClosureRunnerPool.RUNNER_PARAM, params.get(ClosureRunnerPool.RUNNER_PARAM),
+                ClosureRunnerPool.SECRET_PARAM, "invalid");
+        Operation[] polls = new Operation[1];
+        this.host.testStart(1);
+        this.host.send(Operation.createGet(invalidUri).setCompletion((o, e) -> {
+            polls[0] = o;
+            this.host.completeIteration();
+        }));
+        this.host.testWait();
+
+        assertEquals(Operation.STATUS_CODE_NOT_FOUND, polls[0].getStatusCode());
+        // the runner never started, so it has no container to keep
+        assertFalse(pool.release(closure.closure));
+    }
+
+    @Test
+    public void testPollIsForwardedToRegisteringNode() throws Throwable {
+        VerificationHost clusterHost = VerificationHost.create(0);
+        clusterHost.start();
+        try {
+            clusterHost.setUpPeerHosts(2);
+            clusterHost.joinNodesAndVerifyConvergence(2);
+            for (VerificationHost peer : clusterHost.getInProcessHostMap().values()) {
+                peer.addPrivilegedService(ClosureRunnerPoolService.class);
+                peer.startServiceAndWait(ClosureRunnerPoolService.class,
+                        ClosureRunnerPoolService.SELF_LINK);
+            }
+            Iterator<VerificationHost> peers = clusterHost.getInProcessHostMap().values()
+                    .iterator();
+            VerificationHost registeringPeer = peers.next();
+            VerificationHost otherPeer = peers.next();
+            ClosureRunnerPool registeringPool = ClosureRunnerPool.getInstance(registeringPeer);
+
+            TestClosureService firstClosure = new TestClosureService();
+            TestClosureService secondClosure = new TestClosureService();
+            for (TestClosureService closure : Arrays.asList(firstClosure, secondClosure)) {
+                closure.closure.state = TaskStage.FINISHED;
+                closure.closure.resourceLinks = Collections.singleton(CONTAINER_LINK);
+                closure.closure.documentSelfLink = UriUtils.buildUriPath("test-closures",
+                        UUID.randomUUID().toString());
+                registeringPeer.startServiceAndWait(closure, closure.closure.documentSelfLink,
+                        null);
+            }
+
+            // the runner reaches the other node, e.g. through a load balancer
+            String poolKey = UUID.randomUUID().toString();
+            URI runnerUri = registeringPool.register(poolKey, firstClosure.closure,
+                    UriUtils.buildUri(otherPeer, ClosureRunnerPoolService.SELF_LINK),
+                    mock(ClosureDockerClient.class));
+            assertEquals(registeringPeer.getId(), ClosureRunnerPool.getNodeId(
+                    UriUtils.parseUriQueryParams(runnerUri).get(ClosureRunnerPool.RUNNER_PARAM)));
+
+            Operation[] polls = new Operation[1];
+            TestContext ctx = clusterHost.testCreate(1);
+            clusterHost.send(Operation.createGet(runnerUri).setCompletion((o, e) -> {
+                polls[0] = o;
+                ctx.completeIteration();
+            }));
+            clusterHost.waitFor("Runner is not idle on the registering node",
+                    () -> registeringPool.getStats().idleRunnerCount == 1);
+            assertEquals(0, ClosureRunnerPool.getInstance(otherPeer).getStats().runnerCount);
+
+            assertTrue(registeringPool.assign(poolKey, secondClosure.closure,
+                    secondClosure.getUri(), "token"));
+            ctx.await();
+            assertEquals(Operation.STATUS_CODE_OK, polls[0].getStatusCode());
+            assertEquals(secondClosure.getUri() + " token", polls[0].getBody(String.class));
+
+            // the runner of an unknown node has to exit
+            URI unknownRunnerUri = UriUtils.extendUriWithQuery(
+                    UriUtils.buildUri(otherPeer, ClosureRunnerPoolService.SELF_LINK),
+                    ClosureRunnerPool.RUNNER_PARAM, "unknown-node:runner",
+                    ClosureRunnerPool.SECRET_PARAM, "secret");
+            TestContext unknownCtx = clusterHost.testCreate(1);
+            clusterHost.send(Operation.createGet(unknownRunnerUri).setCompletion((o, e) -> {
+                polls[0] = o;
+                unknownCtx.completeIteration();
+            }));
+            unknownCtx.await();
+            assertEquals(Operation.STATUS_CODE_NOT_FOUND, polls[0].getStatusCode());
+        } finally {
+            clusterHost.tearDownInProcessPeers();
+            clusterHost.tearDown();
+        }
+    }
+
+    private TestClosureService startClosure(TaskStage state, String containerLink)
+            throws Throwable {
+        TestClosureService service = new TestClosureService();
+        service.closure.state = state;
+        service.closure.documentSelfLink = UriUtils.buildUriPath("test-closures",
+                UUID.randomUUID().toString());
+        if (containerLink != null) {
+            service.closure.resourceLinks = Collections.singleton(containerLink);
+        }
+        this.host.startServiceAndWait(service, service.closure.documentSelfLink, null);
+        return service;
+    }
+
+    private static class TestClosureService extends StatelessService {
+        final Closure closure = new Closure();
+
+        @Override
+        public void handleGet(Operation get) {
+            get.setBody(closure).complete();
+        }
+
+        @Override
+        public void handlePatch(Operation patch) {
+            closure.resourceLinks = patch.getBody(Closure.class).resourceLinks;
+            patch.complete();
+        }
+    }
+}
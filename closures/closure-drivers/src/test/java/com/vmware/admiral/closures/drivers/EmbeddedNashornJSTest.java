@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2016 VMware, Inc. All Rights Reserved.
+ * Copyright (c) 2016-2020 VMware, Inc. All Rights Reserved.
  *
  * This product is licensed to you under the Apache License, Version 2.0 (the "License").
  * You may not use this product except in compliance with the License.
@@ -11,12 +11,26 @@
 
 package com.vmware.admiral.closures.drivers;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import org.junit.Test;
 
 import com.vmware.admiral.closures.drivers.nashorn.EmbeddedNashornJSDriver;
+import com.vmware.admiral.closures.drivers.nashorn.EmbeddedNashornJSDriver.ExecutionStats;
+import com.vmware.admiral.closures.services.closure.Closure;
+import com.vmware.admiral.closures.services.closuredescription.ClosureDescription;
+import com.vmware.admiral.closures.services.closuredescription.ResourceConstraints;
 import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.TaskState.TaskStage;
+import com.vmware.xenon.common.Utils;
 
 /**
  */
@@ -29,4 +43,57 @@ public class EmbeddedNashornJSTest {
         ExecutionDriver execDriver = new EmbeddedNashornJSDriver(host);
 
     }
+
+    @Test
+    public void testCompiledScriptIsReusedWithIsolatedBindings() {
+        EmbeddedNashornJSDriver driver = new EmbeddedNashornJSDriver(mock(ServiceHost.class));
+
+        ClosureDescription closureDescription = new ClosureDescription();
+        closureDescription.source = "var runs = typeof runs === 'undefined' ? 1 : runs + 1;"
+                + " inputs.a.items.push(inputs.b); result = inputs.a;";
+        closureDescription.resources = new ResourceConstraints();
+        closureDescription.outputNames = Arrays.asList("result", "runs");
+
+        for (int i = 0; i < 2; i++) {
+            Closure closure = new Closure();
+            closure.inputs = new HashMap<>();
+            closure.inputs.put("a", Utils.fromJson(
+                    "{\"name\":\"test\",\"count\":1,\"ratio\":0.5,\"items\":[true]}",
+                    JsonElement.class));
+            closure.inputs.put("b", Utils.fromJson("\"item\"", JsonElement.class));
+
+            Closure result = driver.doExecute(closure, closureDescription);
+
+            assertEquals(TaskStage.FINISHED, result.state);
+            assertEquals(1, result.outputs.get("runs").getAsInt());
+            JsonObject output = result.outputs.get("result").getAsJsonObject();
+            assertEquals("test", output.get("name").getAsString());
+            assertEquals("1", output.get("count").toString());
+            assertEquals("0.5", output.get("ratio").toString());
+            assertEquals(Utils.fromJson("[true,\"item\"]", JsonElement.class),
+                    output.get("items"));
+        }
+
+        ExecutionStats stats = driver.getStats();
+        assertEquals(2, stats.executionCount);
+        assertEquals(1, stats.coldExecutionCount);
+        assertEquals(1, stats.warmExecutionCount);
+        assertTrue(stats.executionsPerSecond > 0);
+    }
+
+    @Test
+    public void testInvalidScriptFails() {
+        EmbeddedNashornJSDriver driver = new EmbeddedNashornJSDriver(mock(ServiceHost.class));
+
+        ClosureDescription closureDescription = new ClosureDescription();
+        closureDescription.source = "var a = ;";
+        closureDescription.resources = new ResourceConstraints();
+        closureDescription.outputNames = Collections.singletonList("result");
+
+        Closure result = driver.doExecute(new Closure(), closureDescription);
+
+        assertEquals(TaskStage.FAILED, result.state);
+        assertTrue(result.errorMsg.contains("Expected an operand"));
+        assertTrue(result.outputs.get("result").isJsonNull());
+    }
 }
@@ -62,6 +62,34 @@ public class ClosureProps {
             .getInteger("com.vmware.admiral.closures.container.description.expiration.seconds",
                     120);
 
+    // Nashorn engines kept for reuse by the embedded JS driver
+    public static final int NASHORN_ENGINE_POOL_SIZE = Integer
+            .getInteger("com.vmware.admiral.closures.nashorn.engine.pool.size", 10);
+
+    // compiled closure sources kept by each Nashorn engine
+    public static final int NASHORN_SCRIPT_CACHE_SIZE = Integer
+            .getInteger("com.vmware.admiral.closures.nashorn.script.cache.size", 64);
+
+    // warm runner containers kept per runner image, resource constraints and owner, 0 disables
+    public static final int RUNNER_POOL_MAX_SIZE = Integer
+            .getInteger("com.vmware.admiral.closures.runner.pool.max.size", 2);
+
+    // warm runner containers kept even when idle
+    public static final int RUNNER_POOL_MIN_SIZE = Integer
+            .getInteger("com.vmware.admiral.closures.runner.pool.min.size", 0);
+
+    // closures run by a runner container before it is retired
+    public static final int RUNNER_MAX_RUNS = Integer
+            .getInteger("com.vmware.admiral.closures.runner.max.runs", 20);
+
+    // idle time after which a runner container is retired
+    public static final long RUNNER_IDLE_TIMEOUT_SECONDS = Long
+            .getLong("com.vmware.admiral.closures.runner.idle.timeout.seconds", 5 * 60L);
+
+    // how long the request of a runner container for its next closure is held
+    public static final long RUNNER_POLL_TIMEOUT_SECONDS = Long
+            .getLong("com.vmware.admiral.closures.runner.poll.timeout.seconds", 20L);
+
     /**
      * Publicly/Externally accessible URI of Admiral services. In case it exits the propery will be
      * used by closure runtime execution to callback Admiral services instead of xenon publicUri
@@ -77,6 +105,7 @@ public class ClosureProps {
 
     public static final String ENV_PROP_TASK_URI = "TASK_URI";
     public static final String ENV_PROP_TOKEN = "TOKEN";
+    public static final String ENV_PROP_RUNNER_URI = "RUNNER_URI";
     public static final String ENV_TRUST_CERTS = "TRUST_CERTS";
 
     // Custom properties
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.service.common;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.common.test.BaseTestCase;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.TaskState;
+import com.vmware.xenon.common.TaskState.TaskStage;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.test.TestContext;
+
+public class InMemorySubStagesTaskServiceTest extends BaseTestCase {
+
+    @Before
+    public void setUp() throws Throwable {
+        host.startFactory(new InMemorySubStagesTaskService());
+        waitForServiceAvailability(InMemorySubStagesTaskService.FACTORY_LINK);
+    }
+
+    @Test
+    public void testQueryDuringInMemorySubStage() throws Throwable {
+        InMemorySubStagesTaskState task = startTask();
+
+        // GET returns the in-memory state of the owner, queries the persisted one
+        assertEquals(SubStage.WAITING,
+                getDocument(InMemorySubStagesTaskState.class, task.documentSelfLink)
+                        .taskSubStage);
+        assertEquals(SubStage.CREATED, queryTask(task.documentSelfLink).taskSubStage);
+
+        resume(task);
+        assertEquals(SubStage.COMPLETED, queryTask(task.documentSelfLink).taskSubStage);
+    }
+
+    @Test
+    public void testRestartDuringInMemorySubStage() throws Throwable {
+        InMemorySubStagesTaskState task = startTask();
+
+        // stop the task and start it again from the persisted state, as a new owner would
+        InMemorySubStagesTaskState persisted = queryTask(task.documentSelfLink);
+        TestContext ctx = testCreate(1);
+        host.send(Operation.createDelete(UriUtils.buildUri(host, task.documentSelfLink))
+                .addPragmaDirective(Operation.PRAGMA_DIRECTIVE_NO_INDEX_UPDATE)
+                .setReplicationDisabled(true)
+                .setReferer(host.getUri())
+                .setCompletion(ctx.getCompletion()));
+        ctx.await();
+        host.startServiceAndWait(new InMemorySubStagesTaskService(), task.documentSelfLink,
+                persisted);
+
+        // the subStages applied in memory are executed again from the last persisted one
+        waitFor(() -> getExecutedSubStages(task).size() == 6);
+        assertEquals(Arrays.asList(SubStage.CREATED, SubStage.PREPARED, SubStage.WAITING,
+                SubStage.CREATED, SubStage.PREPARED, SubStage.WAITING),
+                getExecutedSubStages(task));
+        assertEquals(SubStage.WAITING,
+                getDocument(InMemorySubStagesTaskState.class, task.documentSelfLink)
+                        .taskSubStage);
+
+        resume(task);
+    }
+
+    private InMemorySubStagesTaskState startTask() throws Throwable {
+        InMemorySubStagesTaskState task = doPost(new InMemorySubStagesTaskState(),
+                InMemorySubStagesTaskService.FACTORY_LINK);
+        waitFor(() -> getExecutedSubStages(task).contains(SubStage.WAITING));
+        return task;
+    }
+
+    private void resume(InMemorySubStagesTaskState task) throws Throwable {
+        InMemorySubStagesTaskState patch = new InMemorySubStagesTaskState();
+        patch.taskInfo = TaskState.create();
+        patch.taskInfo.stage = TaskStage.STARTED;
+        patch.taskSubStage = SubStage.RESUMED;
+        doPatch(patch, task.documentSelfLink);
+        waitForTaskSuccess(task.documentSelfLink, InMemorySubStagesTaskState.class);
+    }
+
+    private InMemorySubStagesTaskState queryTask(String taskLink) throws Throwable {
+        for (InMemorySubStagesTaskState state : getDocumentsOfType(
+                InMemorySubStagesTaskState.class)) {
+            if (taskLink.equals(state.documentSelfLink)) {
+                return state;
+            }
+        }
+        return null;
+    }
+
+    private static List<SubStage> getExecutedSubStages(InMemorySubStagesTaskState task) {
+        List<SubStage> subStages = InMemorySubStagesTaskService.EXECUTED_SUB_STAGES
+                .get(task.documentSelfLink);
+        if (subStages == null) {
+            return Collections.emptyList();
+        }
+        synchronized (subStages) {
+            return new ArrayList<>(subStages);
+        }
+    }
+
+    public static enum SubStage {
+        CREATED, PREPARED, WAITING, RESUMED, COMPLETED, ERROR
+    }
+
+    public static class InMemorySubStagesTaskState extends TaskServiceDocument<SubStage> {
+    }
+
+    /**
+     * Moves through two subStages in memory and then waits for a PATCH to the checkpoint
+     * subStage, as a task waiting for a sub task callback would.
+     */
+    public static class InMemorySubStagesTaskService extends
+            AbstractTaskStatefulService<InMemorySubStagesTaskState, SubStage> {
+
+        public static final String FACTORY_LINK = "/test/in-memory-sub-stages-tasks";
+
+        static final Map<String, List<SubStage>> EXECUTED_SUB_STAGES = new ConcurrentHashMap<>();
+
+        public InMemorySubStagesTaskService() {
+            super(InMemorySubStagesTaskState.class, SubStage.class, "In-memory subStages task");
+            super.toggleOption(ServiceOption.PERSISTENCE, true);
+            super.toggleOption(ServiceOption.REPLICATION, true);
+            super.toggleOption(ServiceOption.OWNER_SELECTION, true);
+            super.checkpointSubStages = EnumSet.of(SubStage.RESUMED);
+            super.inMemorySubStages = true;
+        }
+
+        @Override
+        protected void handleStartedStagePatch(InMemorySubStagesTaskState state) {
+            EXECUTED_SUB_STAGES.computeIfAbsent(state.documentSelfLink,
+                    k -> Collections.synchronizedList(new ArrayList<>()))
+                    .add(state.taskSubStage);
+            switch (state.taskSubStage) {
+            case CREATED:
+                proceedTo(SubStage.PREPARED);
+                break;
+            case PREPARED:
+                proceedTo(SubStage.WAITING);
+                break;
+            case RESUMED:
+                complete();
+                break;
+            default:
+                break;
+            }
+        }
+    }
+}
@@ -65,6 +65,7 @@ public interface ManagementUriParts {
 
     String RESOURCES = URI_PREFIX + "/resources";
     String RESOURCE_GROUP_PLACEMENTS = RESOURCES + "/group-placements";
+    String RESOURCE_GROUP_PLACEMENT_RESERVATIONS = RESOURCE_GROUP_PLACEMENTS + "-reservations";
     String RESOURCE_NAME_PREFIXES = RESOURCES + "/name-prefixes";
     String DEPLOYMENT_POLICIES = RESOURCES + "/deployment-policies";
     String HOST_PORT_PROFILES = RESOURCES + "/host-port-profiles";
@@ -83,6 +84,7 @@ public interface ManagementUriParts {
     String AUTH = URI_PREFIX + "/auth";
     String AUTH_CONTENT = AUTH + "/content";
     String AUTH_SESSION = AUTH + "/session";
+    String AUTH_SECURITY_CONTEXT_CACHE = AUTH + "/security-context-cache";
     String AUTH_LOGOUT = AUTH_SESSION + "/logout";
     String AUTH_IDM = AUTH + "/idm";
     String AUTH_PRINCIPALS = AUTH_IDM + "/principals";
@@ -110,6 +112,7 @@ public interface ManagementUriParts {
     String CLOSURES = RESOURCES + "/closures";
     String CLOSURES_DESC = RESOURCES + "/closure" + DESCRIPTION_SUFFIX;
     String CLOSURES_IMAGES = RESOURCES + "/closure-images";
+    String CLOSURES_RUNNERS = RESOURCES + "/closure-runners";
     String CLOSURES_CONTAINER_DESC = CONTAINER_DESC + "/closure-container-desc";
 
     String CONTAINER_HOSTS = RESOURCES + "/hosts";
@@ -191,6 +194,7 @@ public interface ManagementUriParts {
     String REQUEST_PROVISION_COMPOSITE_KUBERNETES_TASKS = REQUEST
             + "/provision-composite-kubernetes-tasks";
     String REQUEST_PROVISION_PLACEMENT_TASKS = REQUEST + "/placement-tasks";
+    String REQUEST_PLACEMENT_FILTER_STATS = REQUEST + "/placement-filter-stats";
     String REQUEST_PROVISION_NAME_PREFIXES_TASKS = REQUEST + "/resource-prefix-tasks";
     String REQUEST_CALLBACK_HANDLER_TASKS = REQUEST + "/callback-handler/";
     String REQUEST_CONTAINER_PORTS_ALLOCATION_TASKS = REQUEST + "/container-ports-allocation-tasks";
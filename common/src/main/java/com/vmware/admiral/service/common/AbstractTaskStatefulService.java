@@ -29,6 +29,9 @@ import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 
+import com.esotericsoftware.kryo.serializers.VersionFieldSerializer.Since;
+
+import com.vmware.admiral.common.serialization.ReleaseConstants;
 import com.vmware.admiral.common.util.OperationUtil;
 import com.vmware.admiral.common.util.QueryUtil;
 import com.vmware.admiral.common.util.ServiceUtils;
@@ -64,6 +67,9 @@ public abstract class AbstractTaskStatefulService<T extends TaskServiceDocument<
     private static final Level DEFAULT_LOG_LEVEL = Level.parse(System.getProperty(
             "com.vmware.admiral.service.tasks.log.level", Level.INFO.getName()));
     public static final int MAX_STATE_SIZE = 1024 * 224;
+    private static final boolean IN_MEMORY_SUB_STAGES_ENABLED = Boolean.parseBoolean(
+            System.getProperty("com.vmware.admiral.service.tasks.in.memory.substages.enabled",
+                    Boolean.FALSE.toString()));
 
     private ExtensibilitySubscriptionManager extensibilityManager;
 
@@ -86,6 +92,36 @@ public abstract class AbstractTaskStatefulService<T extends TaskServiceDocument<
      */
     protected EnumSet<E> subscriptionSubStages;
 
+    /**
+     * SubStages that are persisted when the task proceeds to them. When set, proceeding to any
+     * other subStage of the STARTED stage is applied to an in-memory copy of the task state
+     * instead of sending a self PATCH. The in-memory state is merged into the persisted one with
+     * the next PATCH to the task, e.g. a callback from a sub task or a checkpoint subStage. The
+     * checkpoints should include the subStages the task has to be recoverable from, e.g. after
+     * creating resources. Subscription subStages and the final stages are always persisted.
+     *
+     * <p>
+     * Only the owner instance of the task has the in-memory state. Queries return the persisted
+     * state, and after a restart or an owner change the task resumes from the last persisted
+     * subStage, so the subStages since are executed again. Only used if
+     * {@link #inMemorySubStages} is set.
+     */
+    protected Set<E> checkpointSubStages;
+
+    /**
+     * Whether the subStages other than the {@link #checkpointSubStages} are applied in memory.
+     * Disabled by default, see {@code com.vmware.admiral.service.tasks.in.memory.substages.enabled}.
+     */
+    protected boolean inMemorySubStages = IN_MEMORY_SUB_STAGES_ENABLED;
+
+    /**
+     * The task state including the subStages applied in memory since the last persisted PATCH, and
+     * the version of the persisted state it was copied from.
+     */
+    private final Object inMemoryStateLock = new Object();
+    private T inMemoryState;
+    private long inMemoryStateVersion;
+
     private volatile String locale;
 
     public static class TaskStatusState extends MultiTenantDocument {
@@ -129,6 +165,13 @@ public abstract class AbstractTaskStatefulService<T extends TaskServiceDocument<
          * Set of resource links provisioned or performed operation on them.
          */
         public Set<String> resourceLinks;
+
+        /**
+         * Status updates of several tasks, applied in order instead of this one. Only set in the
+         * PATCH requests sent by {@link RequestTrackerUpdateAggregator}.
+         */
+        @Since(ReleaseConstants.RELEASE_VERSION_1_4_3)
+        public List<TaskStatusState> updates;
     }
 
     public AbstractTaskStatefulService(Class<? extends TaskServiceDocument<E>> stateType,
@@ -240,6 +283,7 @@ public abstract class AbstractTaskStatefulService<T extends TaskServiceDocument<
         startPost.setBody(state);
         startPost.complete();
 
+        updateInMemoryState(state);
         checkAndHandleSubscriptions(state, startPost);
     }
 
@@ -327,10 +371,16 @@ public abstract class AbstractTaskStatefulService<T extends TaskServiceDocument<
         T patchBody = getBody(patch);
         T state = getState(patch);
 
-        // validates AND transitions the stage to the next state by using the patchBody
-        if (validateStageTransitionAndState(patch, patchBody, state)) {
-            // the patch operation is assumed to be already completed/failed in this case
-            return;
+        synchronized (this.inMemoryStateLock) {
+            state = mergeInMemoryState(patch, state);
+
+            // validates AND transitions the stage to the next state by using the patchBody
+            if (validateStageTransitionAndState(patch, patchBody, state)) {
+                // the patch operation is assumed to be already completed/failed in this case
+                return;
+            }
+
+            updateInMemoryState(state);
         }
 
         patch.complete();
@@ -338,6 +388,104 @@ public abstract class AbstractTaskStatefulService<T extends TaskServiceDocument<
         checkAndHandleSubscriptions(state, patch);
     }
 
+    @Override
+    public void handleGet(Operation get) {
+        T state = getState(get);
+        T inMemory = null;
+        synchronized (this.inMemoryStateLock) {
+            if (this.inMemoryState != null && state != null
+                    && isInMemoryStateCurrent(state.documentVersion)) {
+                inMemory = Utils.clone(this.inMemoryState);
+            }
+        }
+        if (inMemory == null) {
+            super.handleGet(get);
+            return;
+        }
+        state.copyTo(inMemory);
+        get.setBody(inMemory).complete();
+    }
+
+    private boolean isInMemoryExecution() {
+        return this.inMemorySubStages && this.checkpointSubStages != null;
+    }
+
+    private boolean isInMemoryStateCurrent(long persistedVersion) {
+        // the persisted version is the same or one more, once the PATCH it was copied from is
+        // applied, as long as the state is not updated elsewhere
+        return persistedVersion == this.inMemoryStateVersion
+                || persistedVersion == this.inMemoryStateVersion + 1;
+    }
+
+    /**
+     * Returns the persisted state of the given PATCH, updated with the subStages applied in memory
+     * since, if any.
+     */
+    private T mergeInMemoryState(Operation patch, T state) {
+        if (this.inMemoryState == null) {
+            return state;
+        }
+        if (!isInMemoryStateCurrent(state.documentVersion)) {
+            logFine("Discarding in-memory state of version %d, persisted version is %d",
+                    this.inMemoryStateVersion, state.documentVersion);
+            this.inMemoryState = null;
+            return state;
+        }
+        T merged = Utils.clone(this.inMemoryState);
+        state.copyTo(merged);
+        setState(patch, merged);
+        return merged;
+    }
+
+    private void updateInMemoryState(T state) {
+        synchronized (this.inMemoryStateLock) {
+            if (isInMemoryExecution() && state.taskInfo.stage == TaskStage.STARTED) {
+                this.inMemoryState = Utils.clone(state);
+                this.inMemoryStateVersion = state.documentVersion;
+            } else {
+                this.inMemoryState = null;
+            }
+        }
+    }
+
+    /**
+     * Applies the given transition to the in-memory state if the task executes its subStages in
+     * memory and the subStage is not a checkpoint. Returns whether the transition was handled.
+     */
+    private boolean proceedInMemory(T body) {
+        if (!isInMemoryExecution() || body.taskInfo.stage != TaskStage.STARTED
+                || body.taskSubStage == null
+                || this.checkpointSubStages.contains(body.taskSubStage)
+                || this.subscriptionSubStages.contains(body.taskSubStage)) {
+            return false;
+        }
+
+        Operation patch = Operation.createPatch(getUri())
+                .setReferer(getUri())
+                .setBody(body)
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        logWarning("Moving task to %s:%s failed: %s", body.taskInfo.stage,
+                                body.taskSubStage, e.getMessage());
+                    }
+                });
+
+        T state;
+        synchronized (this.inMemoryStateLock) {
+            if (this.inMemoryState == null) {
+                return false;
+            }
+            if (validateStageTransitionAndState(patch, body, this.inMemoryState)) {
+                // rejected transition, same as a rejected self PATCH
+                return true;
+            }
+            state = Utils.clone(this.inMemoryState);
+        }
+
+        getHost().run(() -> handleStagePatch(state));
+        return true;
+    }
+
     // Check if there are subscriptions and run them or resume the task
     private void checkAndHandleSubscriptions(T state, Operation op) {
         if (isExtensibilityResponse(op)) {
@@ -461,10 +609,9 @@ public abstract class AbstractTaskStatefulService<T extends TaskServiceDocument<
 
     protected void updateRequestTracker(T state, int retryCount) {
         if (state != null && state.requestTrackerLink != null) {
-            sendRequest(Operation
-                    .createPatch(this, state.requestTrackerLink)
-                    .setBody(fromTask(state))
-                    .setCompletion((o, ex) -> {
+            RequestTrackerUpdateAggregator.getInstance(getHost())
+                    .update(this, state.requestTrackerLink, fromTask(state))
+                    .whenComplete((o, ex) -> {
                         if (ex != null) {
                             // log but don't fail the task
                             if (ex instanceof CancellationException) {
@@ -485,7 +632,7 @@ public abstract class AbstractTaskStatefulService<T extends TaskServiceDocument<
                                         state.requestTrackerLink, Utils.toString(ex));
                             }
                         }
-                    }));
+                    });
 
         } else if (state != null && state.documentSelfLink != null) {
             logFine("Task doesn't have a requestTrackerLink set: %s ", state.documentSelfLink);
@@ -811,6 +958,10 @@ public abstract class AbstractTaskStatefulService<T extends TaskServiceDocument<
             patchBodyConfigurator.accept(body);
         }
 
+        if (proceedInMemory(body)) {
+            return;
+        }
+
         sendRequest(Operation.createPatch(getUri())
                 .setBody(body)
                 .setCompletion((o, e) -> {
@@ -0,0 +1,460 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.service.common;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * In-memory store of the container logs fetched by the adapters, kept outside the document
+ * index. The log of a container is kept as a ring of chunks bounded by {@link #MAX_LOG_SIZE}
+ * bytes, the oldest chunks are dropped first. The adapters pass the whole log they fetched and
+ * only the data not seen before is appended as a new chunk, stamped with the time it was
+ * appended. Logs which are neither read nor updated for {@link #EXPIRATION_MICROS} are dropped.
+ * The logs of all containers are bounded by {@link #MAX_TOTAL_SIZE} bytes, the least recently
+ * used ones are dropped first.
+ *
+ * <p>The logs fetched with different options, e.g. with or without timestamps, are kept apart
+ * under the keys returned by {@link #getLogKey(String, Map)}, so they are never mixed.
+ *
+ * <p>The store is local to the node. Callers keep the logs of a container on the node owning
+ * the container link, see {@code ContainerLogService}.
+ */
+public class ContainerLogStore {
+    public static final int MAX_LOG_SIZE = Integer.getInteger(
+            "com.vmware.admiral.service.common.container.log.store.max.size", 1024 * 1024);
+    public static final int MAX_CONTAINERS = Integer.getInteger(
+            "com.vmware.admiral.service.common.container.log.store.max.containers", 1000);
+    public static final long MAX_TOTAL_SIZE = Long.getLong(
+            "com.vmware.admiral.service.common.container.log.store.max.total.size",
+            64L * 1024 * 1024);
+    public static final long EXPIRATION_MICROS = LogService.DEFAULT_EXPIRATION_MICROS;
+
+    /** Options of the Docker logs API, which change the content of the fetched log */
+    public static final String STDOUT_OPTION = "stdout";
+    public static final String STDERR_OPTION = "stderr";
+    public static final String TIMESTAMPS_OPTION = "timestamps";
+
+    /** Separates the container link from the fetch options in a log key */
+    private static final char OPTIONS_SEPARATOR = '?';
+
+    /** Length of the end of the previous log looked up in the next log to find the new data. */
+    private static final int OVERLAP_SIZE = 64;
+
+    private static final Map<ServiceHost, ContainerLogStore> STORES =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Result of a read, with the time of the latest returned chunk to read the following chunks.
+     */
+    public static class LogRead {
+        public final byte[] logs;
+        public final long cursorMicros;
+
+        LogRead(byte[] logs, long cursorMicros) {
+            this.logs = logs;
+            this.cursorMicros = cursorMicros;
+        }
+    }
+
+    private static class Chunk {
+        final long timeMicros;
+        final byte[] data;
+
+        Chunk(long timeMicros, byte[] data) {
+            this.timeMicros = timeMicros;
+            this.data = data;
+        }
+    }
+
+    private static class ContainerLog {
+        final ArrayDeque<Chunk> chunks = new ArrayDeque<>();
+        long size;
+        long lastChunkMicros;
+        long lastAccessMicros;
+        long lastFetchMicros;
+        /** Length and end of the last log passed by the adapter */
+        int lastLogLength;
+        byte[] lastLogEnd;
+        final List<Runnable> followers = new ArrayList<>();
+    }
+
+    private final ServiceHost host;
+    private final LinkedHashMap<String, ContainerLog> logs = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxTotalSize;
+    private long totalSize;
+
+    ContainerLogStore(ServiceHost host) {
+        this(host, MAX_TOTAL_SIZE);
+    }
+
+    ContainerLogStore(ServiceHost host, long maxTotalSize) {
+        this.host = host;
+        this.maxTotalSize = maxTotalSize;
+    }
+
+    public static ContainerLogStore getInstance(ServiceHost host) {
+        return STORES.computeIfAbsent(host, ContainerLogStore::new);
+    }
+
+    /**
+     * Returns the key of the log of the given container fetched with the given options. The log
+     * fetched with the default options, stdout and stderr without timestamps, is kept under the
+     * container link.
+     */
+    public static String getLogKey(String containerLink, Map<String, String> options) {
+        boolean stdout = getOption(options, STDOUT_OPTION, true);
+        boolean stderr = getOption(options, STDERR_OPTION, true);
+        boolean timestamps = getOption(options, TIMESTAMPS_OPTION, false);
+        if (stdout && stderr && !timestamps) {
+            return containerLink;
+        }
+        return containerLink + OPTIONS_SEPARATOR + STDOUT_OPTION + '=' + stdout
+                + '&' + STDERR_OPTION + '=' + stderr + '&' + TIMESTAMPS_OPTION + '=' + timestamps;
+    }
+
+    private static boolean getOption(Map<String, String> options, String name,
+            boolean defaultValue) {
+        String value = options == null ? null : options.get(name);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    /**
+     * Updates the log with the given key with the log fetched by an adapter. Only the data
+     * following the end of the previously fetched log is appended. If that end is not found,
+     * e.g. the log has been rotated, the log is replaced.
+     */
+    public void update(String logKey, byte[] log) {
+        update(logKey, log, false);
+    }
+
+    /**
+     * Updates the log with the given key with the log fetched by an adapter.
+     *
+     * @param sinceLastFetch whether the log has been fetched from a time before the
+     *        {@link #getLastFetchMicros(String) last fetch}. Such a log is appended as a whole if
+     *        the end of the previously fetched log is not found in it.
+     */
+    public void update(String logKey, byte[] log, boolean sinceLastFetch) {
+        List<Runnable> followers;
+        synchronized (this) {
+            expire();
+            ContainerLog containerLog = logs.get(logKey);
+            if (containerLog == null) {
+                containerLog = new ContainerLog();
+                logs.put(logKey, containerLog);
+                if (logs.size() > MAX_CONTAINERS) {
+                    Iterator<ContainerLog> it = logs.values().iterator();
+                    drop(it.next());
+                    it.remove();
+                }
+            }
+            containerLog.lastAccessMicros = Utils.getSystemNowMicrosUtc();
+            containerLog.lastFetchMicros = containerLog.lastAccessMicros;
+
+            int newDataOffset = findNewDataOffset(containerLog, log, sinceLastFetch);
+            byte[] previousEnd = containerLog.lastLogEnd;
+            if (newDataOffset < 0) {
+                containerLog.chunks.clear();
+                totalSize -= containerLog.size;
+                containerLog.size = 0;
+                newDataOffset = 0;
+                previousEnd = null;
+            }
+            containerLog.lastLogLength = log.length;
+            containerLog.lastLogEnd = getEnd(previousEnd, log, newDataOffset);
+            if (newDataOffset >= log.length) {
+                return;
+            }
+
+            append(containerLog, Arrays.copyOfRange(log,
+                    Math.max(newDataOffset, log.length - MAX_LOG_SIZE), log.length));
+            evict(containerLog);
+            followers = new ArrayList<>(containerLog.followers);
+            containerLog.followers.clear();
+        }
+        followers.forEach(Runnable::run);
+    }
+
+    /**
+     * Returns the log with the given key, or {@code null} if it is not in the store.
+     *
+     * @param sinceMicros if set, only the chunks appended after that time are returned
+     * @param tailLines if set, only that many lines from the end are returned
+     */
+    public LogRead read(String logKey, Long sinceMicros, Integer tailLines) {
+        synchronized (this) {
+            expire();
+            ContainerLog containerLog = logs.get(logKey);
+            if (containerLog == null || containerLog.lastLogEnd == null) {
+                // not fetched yet
+                return null;
+            }
+            containerLog.lastAccessMicros = Utils.getSystemNowMicrosUtc();
+
+            List<Chunk> chunks = new ArrayList<>();
+            for (Iterator<Chunk> it = containerLog.chunks.descendingIterator(); it.hasNext();) {
+                Chunk chunk = it.next();
+                if (sinceMicros != null && chunk.timeMicros <= sinceMicros) {
+                    break;
+                }
+                chunks.add(chunk);
+            }
+            Collections.reverse(chunks);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int[] start = tailLines == null ? new int[] { 0, 0 } : findTail(chunks, tailLines);
+            for (int i = start[0]; i < chunks.size(); i++) {
+                byte[] data = chunks.get(i).data;
+                int from = i == start[0] ? start[1] : 0;
+                out.write(data, from, data.length - from);
+            }
+            long cursorMicros = sinceMicros != null && chunks.isEmpty()
+                    ? sinceMicros : containerLog.lastChunkMicros;
+            return new LogRead(out.toByteArray(), cursorMicros);
+        }
+    }
+
+    /**
+     * Returns the time the log with the given key was last fetched, or {@code null} if it is not
+     * in the store.
+     */
+    public synchronized Long getLastFetchMicros(String logKey) {
+        ContainerLog containerLog = logs.get(logKey);
+        if (containerLog == null || containerLog.lastLogEnd == null) {
+            return null;
+        }
+        return containerLog.lastFetchMicros;
+    }
+
+    /**
+     * Calls the given callback when data is appended to the log with the given key after the
+     * given time, or when the timeout elapses, whatever happens first.
+     */
+    public void follow(String logKey, long afterMicros, long timeoutMicros,
+            Runnable callback) {
+        Runnable once = new Runnable() {
+            private boolean called;
+
+            @Override
+            public void run() {
+                synchronized (this) {
+                    if (called) {
+                        return;
+                    }
+                    called = true;
+                }
+                callback.run();
+            }
+        };
+
+        synchronized (this) {
+            ContainerLog containerLog = logs.get(logKey);
+            if (containerLog == null) {
+                containerLog = new ContainerLog();
+                containerLog.lastAccessMicros = Utils.getSystemNowMicrosUtc();
+                logs.put(logKey, containerLog);
+            }
+            if (containerLog.lastChunkMicros <= afterMicros) {
+                ContainerLog followed = containerLog;
+                followed.followers.add(once);
+                host.schedule(() -> {
+                    synchronized (this) {
+                        followed.followers.remove(once);
+                    }
+                    once.run();
+                }, timeoutMicros, TimeUnit.MICROSECONDS);
+                return;
+            }
+        }
+        once.run();
+    }
+
+    /**
+     * Removes the logs of the given container, fetched with any options.
+     */
+    public synchronized void remove(String containerLink) {
+        for (Iterator<Entry<String, ContainerLog>> it = logs.entrySet().iterator();
+                it.hasNext();) {
+            Entry<String, ContainerLog> entry = it.next();
+            String key = entry.getKey();
+            if (key.equals(containerLink) || (key.startsWith(containerLink)
+                    && key.charAt(containerLink.length()) == OPTIONS_SEPARATOR)) {
+                drop(entry.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the size in bytes of all logs in the store.
+     */
+    public synchronized long getTotalSize() {
+        return totalSize;
+    }
+
+    private void append(ContainerLog containerLog, byte[] data) {
+        long now = Math.max(Utils.getSystemNowMicrosUtc(), containerLog.lastChunkMicros + 1);
+        containerLog.chunks.addLast(new Chunk(now, data));
+        containerLog.lastChunkMicros = now;
+        containerLog.size += data.length;
+        totalSize += data.length;
+        while (containerLog.size > MAX_LOG_SIZE && containerLog.chunks.size() > 1) {
+            int removed = containerLog.chunks.removeFirst().data.length;
+            containerLog.size -= removed;
+            totalSize -= removed;
+        }
+    }
+
+    /**
+     * Drops the least recently used logs, other than the given one, while the store is over its
+     * total size.
+     */
+    private void evict(ContainerLog updated) {
+        for (Iterator<ContainerLog> it = logs.values().iterator();
+                totalSize > maxTotalSize && it.hasNext();) {
+            ContainerLog containerLog = it.next();
+            if (containerLog != updated) {
+                drop(containerLog);
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Releases the given log, which is removed from the store by the caller.
+     */
+    private void drop(ContainerLog containerLog) {
+        totalSize -= containerLog.size;
+        containerLog.followers.forEach(r -> host.run(r));
+    }
+
+    /**
+     * Returns the offset of the data following the previous log in the given log, or -1 if the
+     * previous log end is not found. A log fetched since the last fetch may start within the
+     * previous log end, or else holds new data only.
+     */
+    private static int findNewDataOffset(ContainerLog containerLog, byte[] log,
+            boolean sinceLastFetch) {
+        byte[] end = containerLog.lastLogEnd;
+        if (end == null || end.length == 0) {
+            return containerLog.chunks.isEmpty() || sinceLastFetch ? 0 : -1;
+        }
+        // the log has only grown since the previous fetch
+        int expected = containerLog.lastLogLength;
+        if (!sinceLastFetch && expected <= log.length
+                && regionMatches(log, expected - end.length, end)) {
+            return expected;
+        }
+        // the beginning of the log has been trimmed, or the log starts from the given time
+        for (int i = log.length - end.length; i >= 0; i--) {
+            if (regionMatches(log, i, end)) {
+                return i + end.length;
+            }
+        }
+        if (!sinceLastFetch) {
+            return -1;
+        }
+        // the log starts at one of the lines of the previous log end
+        for (int i = 1; i < end.length; i++) {
+            if (end[i - 1] == '\n' && regionMatches(log, 0,
+                    Arrays.copyOfRange(end, i, end.length))) {
+                return end.length - i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the end of the stored log after appending the data at the given offset of the given
+     * log to the previous log end.
+     */
+    private static byte[] getEnd(byte[] previousEnd, byte[] log, int offset) {
+        int newLength = log.length - offset;
+        if (previousEnd == null || newLength >= OVERLAP_SIZE) {
+            return Arrays.copyOfRange(log, Math.max(offset, log.length - OVERLAP_SIZE),
+                    log.length);
+        }
+        int previousLength = Math.min(previousEnd.length, OVERLAP_SIZE - newLength);
+        byte[] end = new byte[previousLength + newLength];
+        System.arraycopy(previousEnd, previousEnd.length - previousLength, end, 0,
+                previousLength);
+        System.arraycopy(log, offset, end, previousLength, newLength);
+        return end;
+    }
+
+    private static boolean regionMatches(byte[] log, int offset, byte[] region) {
+        if (offset < 0 || offset + region.length > log.length) {
+            return false;
+        }
+        for (int i = 0; i < region.length; i++) {
+            if (log[offset + i] != region[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the chunk index and the offset in that chunk of the first of the last given number
+     * of lines. A line break at the very end does not start a new line.
+     */
+    private static int[] findTail(List<Chunk> chunks, int lines) {
+        if (lines <= 0) {
+            return new int[] { chunks.size(), 0 };
+        }
+        int breaks = 0;
+        boolean last = true;
+        for (int c = chunks.size() - 1; c >= 0; c--) {
+            byte[] data = chunks.get(c).data;
+            for (int i = data.length - 1; i >= 0; i--) {
+                if (data[i] == '\n' && !last) {
+                    breaks++;
+                    if (breaks >= lines) {
+                        return i + 1 < data.length ? new int[] { c, i + 1 }
+                                : new int[] { c + 1, 0 };
+                    }
+                }
+                last = false;
+            }
+        }
+        return new int[] { 0, 0 };
+    }
+
+    private void expire() {
+        long now = Utils.getSystemNowMicrosUtc();
+        for (Iterator<ContainerLog> it = logs.values().iterator(); it.hasNext();) {
+            ContainerLog containerLog = it.next();
+            // access ordered, the rest have been accessed later
+            if (now - containerLog.lastAccessMicros < EXPIRATION_MICROS) {
+                break;
+            }
+            if (containerLog.followers.isEmpty()) {
+                totalSize -= containerLog.size;
+                it.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.service.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.vmware.admiral.service.common.AbstractTaskStatefulService.TaskStatusState;
+import com.vmware.xenon.common.DeferredResult;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Service;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.TaskState.TaskStage;
+
+/**
+ * Coalesces the {@link TaskStatusState} updates sent by the tasks of a request to its request
+ * tracker. The updates of a request tracker are collected for a short window and then sent as a
+ * single PATCH, keeping only the latest update of each task. An update to a final stage is sent
+ * immediately, together with the updates collected before it.
+ */
+public class RequestTrackerUpdateAggregator {
+
+    private static final long WINDOW_MILLIS = Long.getLong(
+            "com.vmware.admiral.service.tasks.request.tracker.update.window.millis", 250);
+
+    private static final Map<ServiceHost, RequestTrackerUpdateAggregator> AGGREGATORS =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    public static class UpdateStats {
+        /** Task status updates sent to the aggregator */
+        public long updateCount;
+        /** PATCH requests sent to request trackers */
+        public long patchCount;
+    }
+
+    private static class PendingUpdate {
+        TaskStatusState status;
+        final List<DeferredResult<Void>> results = new ArrayList<>(1);
+    }
+
+    private static class PendingUpdates {
+        final Service sender;
+        /** The latest update of each task, in the order of the updates */
+        final Map<String, PendingUpdate> updatesByTask = new LinkedHashMap<>();
+        /** The first name and resource links reported, as they are only set once */
+        String name;
+        Set<String> resourceLinks;
+        boolean flushScheduled;
+
+        PendingUpdates(Service sender) {
+            this.sender = sender;
+        }
+    }
+
+    private final ServiceHost host;
+    private final Map<String, PendingUpdates> pendingUpdates = new HashMap<>();
+    private final AtomicLong updateCount = new AtomicLong();
+    private final AtomicLong patchCount = new AtomicLong();
+
+    private RequestTrackerUpdateAggregator(ServiceHost host) {
+        this.host = host;
+    }
+
+    public static RequestTrackerUpdateAggregator getInstance(ServiceHost host) {
+        return AGGREGATORS.computeIfAbsent(host, RequestTrackerUpdateAggregator::new);
+    }
+
+    /**
+     * Sends the given task status to the request tracker. Completes when the PATCH containing the
+     * status, or a later status of the same task, completes.
+     */
+    public DeferredResult<Void> update(Service sender, String requestTrackerLink,
+            TaskStatusState status) {
+        this.updateCount.incrementAndGet();
+        DeferredResult<Void> result = new DeferredResult<>();
+        boolean finalStage = status.taskInfo != null && status.taskInfo.stage != null
+                && status.taskInfo.stage.ordinal() > TaskStage.STARTED.ordinal();
+        String taskKey = status.phase + ":" + status.documentSelfLink;
+
+        PendingUpdates flush = null;
+        boolean scheduleFlush = false;
+        synchronized (this.pendingUpdates) {
+            PendingUpdates pending = this.pendingUpdates.computeIfAbsent(requestTrackerLink,
+                    link -> new PendingUpdates(sender));
+
+            // the latest update of the task goes last, the progress is never decreased
+            PendingUpdate update = pending.updatesByTask.remove(taskKey);
+            if (update == null) {
+                update = new PendingUpdate();
+            } else if (update.status.progress != null && (status.progress == null
+                    || status.progress < update.status.progress)) {
+                status.progress = update.status.progress;
+            }
+            update.status = status;
+            update.results.add(result);
+            pending.updatesByTask.put(taskKey, update);
+            if (pending.name == null) {
+                pending.name = status.name;
+            }
+            if (pending.resourceLinks == null || pending.resourceLinks.isEmpty()) {
+                pending.resourceLinks = status.resourceLinks;
+            }
+
+            if (finalStage || WINDOW_MILLIS <= 0) {
+                this.pendingUpdates.remove(requestTrackerLink);
+                flush = pending;
+            } else if (!pending.flushScheduled) {
+                pending.flushScheduled = true;
+                scheduleFlush = true;
+            }
+        }
+
+        if (flush != null) {
+            send(requestTrackerLink, flush);
+        } else if (scheduleFlush) {
+            this.host.schedule(() -> flush(requestTrackerLink), WINDOW_MILLIS,
+                    TimeUnit.MILLISECONDS);
+        }
+        return result;
+    }
+
+    public UpdateStats getStats() {
+        UpdateStats stats = new UpdateStats();
+        stats.updateCount = this.updateCount.get();
+        stats.patchCount = this.patchCount.get();
+        return stats;
+    }
+
+    private void flush(String requestTrackerLink) {
+        PendingUpdates pending;
+        synchronized (this.pendingUpdates) {
+            pending = this.pendingUpdates.remove(requestTrackerLink);
+        }
+        if (pending != null) {
+            send(requestTrackerLink, pending);
+        }
+    }
+
+    private void send(String requestTrackerLink, PendingUpdates pending) {
+        List<PendingUpdate> updates = new ArrayList<>(pending.updatesByTask.values());
+        TaskStatusState body;
+        if (updates.size() == 1) {
+            body = updates.get(0).status;
+        } else {
+            body = new TaskStatusState();
+            body.name = pending.name;
+            body.resourceLinks = pending.resourceLinks;
+            body.updates = new ArrayList<>(updates.size());
+            for (PendingUpdate update : updates) {
+                body.updates.add(update.status);
+            }
+        }
+
+        this.patchCount.incrementAndGet();
+        pending.sender.sendRequest(Operation
+                .createPatch(pending.sender, requestTrackerLink)
+                .setBody(body)
+                .setCompletion((o, e) -> {
+                    for (PendingUpdate update : updates) {
+                        for (DeferredResult<Void> result : update.results) {
+                            if (e != null) {
+                                result.fail(e);
+                            } else {
+                                result.complete(null);
+                            }
+                        }
+                    }
+                }));
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.service.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.service.common.ContainerLogStore.LogRead;
+
+public class ContainerLogStoreTest {
+    private static final String CONTAINER_LINK = "/resources/containers/test";
+
+    private ContainerLogStore store;
+
+    @Before
+    public void setUp() {
+        store = new ContainerLogStore(null);
+    }
+
+    @Test
+    public void testReadNotFetched() {
+        assertNull(store.read(CONTAINER_LINK, null, null));
+    }
+
+    @Test
+    public void testUpdateAppendsNewData() {
+        store.update(CONTAINER_LINK, "line1\nline2\n".getBytes());
+        LogRead first = store.read(CONTAINER_LINK, null, null);
+        assertEquals("line1\nline2\n", new String(first.logs));
+
+        store.update(CONTAINER_LINK, "line1\nline2\nline3\n".getBytes());
+        assertEquals("line1\nline2\nline3\n",
+                new String(store.read(CONTAINER_LINK, null, null).logs));
+
+        LogRead since = store.read(CONTAINER_LINK, first.cursorMicros, null);
+        assertEquals("line3\n", new String(since.logs));
+        assertTrue(since.cursorMicros > first.cursorMicros);
+
+        // nothing new
+        store.update(CONTAINER_LINK, "line1\nline2\nline3\n".getBytes());
+        LogRead none = store.read(CONTAINER_LINK, since.cursorMicros, null);
+        assertEquals(0, none.logs.length);
+        assertEquals(since.cursorMicros, none.cursorMicros);
+    }
+
+    @Test
+    public void testUpdateTrimmedLog() {
+        String log = repeat("a", 100) + "\n" + repeat("b", 100) + "\n";
+        store.update(CONTAINER_LINK, log.getBytes());
+        // the beginning of the log is not returned any more
+        String trimmedLog = log.substring(50) + "c\n";
+        store.update(CONTAINER_LINK, trimmedLog.getBytes());
+        assertEquals(log + "c\n", new String(store.read(CONTAINER_LINK, null, null).logs));
+    }
+
+    @Test
+    public void testUpdateRotatedLog() {
+        store.update(CONTAINER_LINK, "old1\nold2\n".getBytes());
+        store.update(CONTAINER_LINK, "new1\n".getBytes());
+        assertEquals("new1\n", new String(store.read(CONTAINER_LINK, null, null).logs));
+    }
+
+    @Test
+    public void testUpdateSinceLastFetch() {
+        assertNull(store.getLastFetchMicros(CONTAINER_LINK));
+        store.update(CONTAINER_LINK, "line1\nline2\n".getBytes());
+        assertNotNull(store.getLastFetchMicros(CONTAINER_LINK));
+
+        // the log fetched since the last fetch overlaps the previous log
+        store.update(CONTAINER_LINK, "line2\nline3\n".getBytes(), true);
+        assertEquals("line1\nline2\nline3\n",
+                new String(store.read(CONTAINER_LINK, null, null).logs));
+
+        // no new data, the end of the previous logs is kept
+        store.update(CONTAINER_LINK, new byte[0], true);
+        store.update(CONTAINER_LINK, "line3\n".getBytes(), true);
+        assertEquals("line1\nline2\nline3\n",
+                new String(store.read(CONTAINER_LINK, null, null).logs));
+
+        // no overlap, all data is new
+        store.update(CONTAINER_LINK, "line4\n".getBytes(), true);
+        store.update(CONTAINER_LINK, "line5\n".getBytes(), true);
+        assertEquals("line1\nline2\nline3\nline4\nline5\n",
+                new String(store.read(CONTAINER_LINK, null, null).logs));
+
+        // the end of the previous logs spans several short fetches
+        store.update(CONTAINER_LINK, "line3\nline4\nline5\nline6\n".getBytes(), true);
+        assertEquals("line1\nline2\nline3\nline4\nline5\nline6\n",
+                new String(store.read(CONTAINER_LINK, null, null).logs));
+    }
+
+    @Test
+    public void testReadTail() {
+        store.update(CONTAINER_LINK, "line1\nline2\n".getBytes());
+        store.update(CONTAINER_LINK, "line1\nline2\nline3\nline4".getBytes());
+
+        assertEquals("line4", new String(store.read(CONTAINER_LINK, null, 1).logs));
+        assertEquals("line2\nline3\nline4",
+                new String(store.read(CONTAINER_LINK, null, 3).logs));
+        assertEquals("line1\nline2\nline3\nline4",
+                new String(store.read(CONTAINER_LINK, null, 10).logs));
+        assertEquals(0, store.read(CONTAINER_LINK, null, 0).logs.length);
+
+        store.update(CONTAINER_LINK, "line1\nline2\nline3\nline4\n".getBytes());
+        assertEquals("line3\nline4\n", new String(store.read(CONTAINER_LINK, null, 2).logs));
+    }
+
+    @Test
+    public void testLogSizeIsBounded() {
+        StringBuilder log = new StringBuilder();
+        String line = repeat("x", 1023) + "\n";
+        for (int i = 0; i < ContainerLogStore.MAX_LOG_SIZE / line.length() * 2; i++) {
+            log.append(line);
+            if (i % 64 == 0) {
+                store.update(CONTAINER_LINK, log.toString().getBytes());
+            }
+        }
+        store.update(CONTAINER_LINK, log.toString().getBytes());
+        byte[] logs = store.read(CONTAINER_LINK, null, null).logs;
+        assertTrue(logs.length <= ContainerLogStore.MAX_LOG_SIZE);
+        // the oldest chunk, of up to 64 lines, is dropped as a whole
+        assertTrue(logs.length >= ContainerLogStore.MAX_LOG_SIZE - 64 * line.length());
+        assertEquals(line, new String(Arrays.copyOfRange(logs, logs.length - line.length(),
+                logs.length)));
+    }
+
+    @Test
+    public void testRemove() {
+        String timestampsKey = ContainerLogStore.getLogKey(CONTAINER_LINK,
+                Collections.singletonMap(ContainerLogStore.TIMESTAMPS_OPTION, "true"));
+        String otherLink = CONTAINER_LINK + "-other";
+        store.update(CONTAINER_LINK, "line1\n".getBytes());
+        store.update(timestampsKey, "ts line1\n".getBytes());
+        store.update(otherLink, "other1\n".getBytes());
+
+        // the logs fetched with any options are removed, the logs of other containers are kept
+        store.remove(CONTAINER_LINK);
+        assertNull(store.read(CONTAINER_LINK, null, null));
+        assertNull(store.read(timestampsKey, null, null));
+        assertNotNull(store.read(otherLink, null, null));
+        assertEquals("other1\n".length(), store.getTotalSize());
+    }
+
+    @Test
+    public void testLogsFetchedWithOtherOptionsAreKeptApart() {
+        Map<String, String> options = new HashMap<>();
+        assertEquals(CONTAINER_LINK, ContainerLogStore.getLogKey(CONTAINER_LINK, null));
+        options.put(ContainerLogStore.STDOUT_OPTION, "true");
+        options.put(ContainerLogStore.TIMESTAMPS_OPTION, "false");
+        assertEquals(CONTAINER_LINK, ContainerLogStore.getLogKey(CONTAINER_LINK, options));
+
+        options.put(ContainerLogStore.TIMESTAMPS_OPTION, "true");
+        String timestampsKey = ContainerLogStore.getLogKey(CONTAINER_LINK, options);
+        options.put(ContainerLogStore.STDERR_OPTION, "false");
+        String stdoutKey = ContainerLogStore.getLogKey(CONTAINER_LINK, options);
+        assertNotEquals(CONTAINER_LINK, timestampsKey);
+        assertNotEquals(timestampsKey, stdoutKey);
+
+        store.update(CONTAINER_LINK, "line1\n".getBytes());
+        store.update(timestampsKey, "2020-01-01T00:00:00Z line1\n".getBytes());
+        assertNull(store.read(stdoutKey, null, null));
+        assertEquals("line1\n", new String(store.read(CONTAINER_LINK, null, null).logs));
+        assertEquals("2020-01-01T00:00:00Z line1\n",
+                new String(store.read(timestampsKey, null, null).logs));
+    }
+
+    @Test
+    public void testTotalSizeIsBounded() {
+        store = new ContainerLogStore(null, 25);
+        store.update(CONTAINER_LINK + "1", "0123456789\n".getBytes());
+        store.update(CONTAINER_LINK + "2", "0123456789\n".getBytes());
+        // the least recently used log is dropped first
+        assertNotNull(store.read(CONTAINER_LINK + "1", null, null));
+        store.update(CONTAINER_LINK + "3", "0123456789\n".getBytes());
+        assertNull(store.read(CONTAINER_LINK + "2", null, null));
+        assertNotNull(store.read(CONTAINER_LINK + "1", null, null));
+        assertNotNull(store.read(CONTAINER_LINK + "3", null, null));
+        assertEquals(22, store.getTotalSize());
+
+        // the updated log is kept, even if over the total size alone
+        store.update(CONTAINER_LINK + "1", "0123456789\n0123456789\n0123456789\n".getBytes());
+        assertNull(store.read(CONTAINER_LINK + "3", null, null));
+        assertEquals(33, store.getTotalSize());
+    }
+
+    private static String repeat(String s, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+}
@@ -104,6 +104,14 @@ public class ContainerHostService extends StatelessService {
     public static final String NUMBER_OF_CONTAINERS_PER_HOST_PROP_NAME = "__Containers";
     public static final String NUMBER_OF_SYSTEM_CONTAINERS_PROP_NAME = "__systemContainers";
     public static final String RETRIES_COUNT_PROP_NAME = "__retriesCount";
+    /** Time in micros since the events stream of the host is connected, 0 when disconnected */
+    public static final String EVENTS_STREAM_CONNECTED_SINCE_PROP_NAME =
+            "__eventsStreamConnectedSince";
+    /**
+     * Time in micros of the last heartbeat of the connected events stream of the host. Set on
+     * the clock of the adapter node, so only compare it with earlier values of its own.
+     */
+    public static final String EVENTS_STREAM_HEARTBEAT_PROP_NAME = "__eventsStreamHeartbeat";
 
     public static final String DOCKER_HOST_PORT_PROP_NAME = "__dockerHostPort";
     public static final String DOCKER_HOST_PATH_PROP_NAME = "__dockerHostPath";
@@ -16,6 +16,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -27,9 +28,11 @@ import java.util.logging.Logger;
 
 import com.vmware.admiral.common.util.AssertUtil;
 import com.vmware.admiral.common.util.ConfigurationUtil;
+import com.vmware.admiral.common.util.ServiceDocumentQuery;
 import com.vmware.admiral.common.util.VersionUtil;
 import com.vmware.admiral.compute.ContainerHostService.ContainerHostType;
 import com.vmware.admiral.compute.container.ContainerDescriptionService.ContainerDescription;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState;
 import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
 import com.vmware.xenon.common.DeferredResult;
 import com.vmware.xenon.common.LocalizableValidationException;
@@ -39,6 +42,10 @@ import com.vmware.xenon.common.Service;
 import com.vmware.xenon.common.ServiceHost;
 import com.vmware.xenon.common.UriUtils;
 import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.QueryTask;
+import com.vmware.xenon.services.common.QueryTask.Query;
+import com.vmware.xenon.services.common.QueryTask.QuerySpecification.QueryOption;
+import com.vmware.xenon.services.common.ServiceUriPaths;
 
 public class ContainerHostUtil {
 
@@ -224,6 +231,75 @@ public class ContainerHostUtil {
         return true;
     }
 
+    /**
+     * Counts the containers of each of the given hosts.
+     *
+     * @see #countContainersPerHost(ServiceHost, Collection, Query)
+     */
+    public static DeferredResult<Map<String, Long>> countContainersPerHost(
+            ServiceHost serviceHost, Collection<String> hostLinks) {
+        return countContainersPerHost(serviceHost, hostLinks, null);
+    }
+
+    /**
+     * Counts the containers of each of the given hosts which also match the given query, if any.
+     * A single query selects only the parent link of the matching containers, the container
+     * documents themselves are not loaded. The counts follow the document index, so created,
+     * removed and discovered containers are always accounted for.
+     *
+     * @return map of host link to number of containers, hosts without containers are mapped to 0
+     */
+    public static DeferredResult<Map<String, Long>> countContainersPerHost(
+            ServiceHost serviceHost, Collection<String> hostLinks, Query filter) {
+        Map<String, Long> counts = new HashMap<>();
+        for (String hostLink : hostLinks) {
+            counts.put(hostLink, 0L);
+        }
+        if (hostLinks.isEmpty()) {
+            return DeferredResult.completed(counts);
+        }
+
+        Query.Builder queryBuilder = Query.Builder.create()
+                .addKindFieldClause(ContainerState.class)
+                .addInClause(ContainerState.FIELD_NAME_PARENT_LINK, hostLinks);
+        if (filter != null) {
+            queryBuilder.addClause(filter);
+        }
+        QueryTask queryTask = QueryTask.Builder.createDirectTask()
+                .setQuery(queryBuilder.build())
+                .addOption(QueryOption.SELECT_LINKS)
+                .addLinkTerm(ContainerState.FIELD_NAME_PARENT_LINK)
+                .setResultLimit(ServiceDocumentQuery.DEFAULT_QUERY_RESULT_LIMIT)
+                .build();
+        queryTask.documentExpirationTimeMicros = ServiceDocumentQuery.getDefaultQueryExpiration();
+
+        return serviceHost.sendWithDeferredResult(Operation
+                .createPost(serviceHost, ServiceUriPaths.CORE_QUERY_TASKS)
+                .setBodyNoCloning(queryTask)
+                .setReferer(serviceHost.getUri()), QueryTask.class)
+                .thenCompose(page -> countContainersPerHost(serviceHost, page, counts));
+    }
+
+    private static DeferredResult<Map<String, Long>> countContainersPerHost(
+            ServiceHost serviceHost, QueryTask page, Map<String, Long> counts) {
+        if (page.results == null) {
+            return DeferredResult.completed(counts);
+        }
+        if (page.results.selectedLinksPerDocument != null) {
+            for (Map<String, String> links : page.results.selectedLinksPerDocument.values()) {
+                counts.computeIfPresent(links.get(ContainerState.FIELD_NAME_PARENT_LINK),
+                        (hostLink, count) -> count + 1);
+            }
+        }
+        if (page.results.nextPageLink == null) {
+            return DeferredResult.completed(counts);
+        }
+        return serviceHost.sendWithDeferredResult(Operation
+                .createGet(serviceHost, page.results.nextPageLink)
+                .setReferer(serviceHost.getUri()), QueryTask.class)
+                .thenCompose(nextPage -> countContainersPerHost(serviceHost, nextPage, counts));
+    }
+
     /**
      * Check if host is running Kubernetes.
      *
@@ -27,6 +27,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -110,12 +111,81 @@ public class ContainerHostDataCollectionService extends StatefulService {
             "com.vmware.admiral.compute.container.host.frequency.interval.micros",
             TimeUnit.SECONDS.toMicros(20));
 
+    private static final long FULL_CONTAINER_LIST_INTERVAL_MICROS = Long.getLong(
+            "com.vmware.admiral.compute.container.host.full.list.interval.micros",
+            TimeUnit.HOURS.toMicros(1));
+
+    private static final long EVENTS_STREAM_HEARTBEAT_TIMEOUT_MICROS = Long.getLong(
+            "com.vmware.admiral.compute.container.host.events.heartbeat.timeout.micros",
+            TimeUnit.MINUTES.toMicros(3));
+
     public static final String RESOURCE_POOL_CPU_USAGE_CUSTOM_PROP = "__cpuUsage";
     public static final String RESOURCE_POOL_AVAILABLE_MEMORY_CUSTOM_PROP = "__availableMemory";
 
     protected volatile AtomicBoolean scheduled = new AtomicBoolean(false);
     protected long maintenanceIntervalInitial = TimeUnit.SECONDS.toMicros(90);
 
+    // events streams of the hosts listed while their stream was connected, by host link
+    private final Map<String, EventsStreamObservation> eventsStreams = new ConcurrentHashMap<>();
+
+    /**
+     * The events stream of a host as seen from its full container lists. The stream properties
+     * of the host are set on the clock of the adapter node, so they are only compared with the
+     * values seen before and the time is taken from the clock of this node.
+     */
+    static final class EventsStreamObservation {
+        private final long connectedSinceMicros;
+        private final long listMicros;
+        private long heartbeat;
+        private long heartbeatSeenMicros;
+
+        private EventsStreamObservation(long connectedSinceMicros, long heartbeat, long now) {
+            this.connectedSinceMicros = connectedSinceMicros;
+            this.listMicros = now;
+            this.heartbeat = heartbeat;
+            this.heartbeatSeenMicros = now;
+        }
+
+        /**
+         * Returns the stream of the host listed at the given time, or null if its events stream
+         * is not connected
+         */
+        static EventsStreamObservation create(ComputeState cs, long now) {
+            long connectedSinceMicros = getConnectedSinceMicros(cs);
+            if (connectedSinceMicros <= 0) {
+                return null;
+            }
+            return new EventsStreamObservation(connectedSinceMicros, getHeartbeat(cs), now);
+        }
+
+        /**
+         * Returns true if events may have been missed since the list, i.e. the stream got
+         * reconnected or disconnected, its heartbeat stopped or the list is too old
+         */
+        synchronized boolean isListOutdated(ComputeState cs, long now) {
+            if (getConnectedSinceMicros(cs) != this.connectedSinceMicros) {
+                return true;
+            }
+            long heartbeat = getHeartbeat(cs);
+            if (heartbeat != this.heartbeat) {
+                this.heartbeat = heartbeat;
+                this.heartbeatSeenMicros = now;
+            }
+            return now - this.heartbeatSeenMicros >= EVENTS_STREAM_HEARTBEAT_TIMEOUT_MICROS
+                    || now - this.listMicros >= FULL_CONTAINER_LIST_INTERVAL_MICROS;
+        }
+
+        private static long getConnectedSinceMicros(ComputeState cs) {
+            return PropertyUtils.getPropertyLong(cs.customProperties,
+                    ContainerHostService.EVENTS_STREAM_CONNECTED_SINCE_PROP_NAME).orElse(0L);
+        }
+
+        private static long getHeartbeat(ComputeState cs) {
+            return PropertyUtils.getPropertyLong(cs.customProperties,
+                    ContainerHostService.EVENTS_STREAM_HEARTBEAT_PROP_NAME).orElse(0L);
+        }
+    }
+
     public static ServiceDocument buildDefaultStateInstance() {
         ContainerHostDataCollectionState state = new ContainerHostDataCollectionState();
         state.documentSelfLink = HOST_INFO_DATA_COLLECTION_LINK;
@@ -820,7 +890,9 @@ public class ContainerHostDataCollectionService extends StatefulService {
                 if (ContainerHostUtil.isKubernetesHost(compute)) {
                     updateKubernetesEntities(compute.documentSelfLink);
                 } else {
-                    updateContainerHostContainers(compute);
+                    if (isContainerListOutdated(compute)) {
+                        updateContainerHostContainers(compute);
+                    }
                     updateContainerHostNetworks(compute);
                     updateContainerHostVolumes(compute.documentSelfLink);
                 }
@@ -960,7 +1032,30 @@ public class ContainerHostDataCollectionService extends StatefulService {
                 }));
     }
 
+    /**
+     * The containers of a host with a connected events stream are kept up to date by the docker
+     * adapter from the container events, the full container list is only needed every
+     * {@link #FULL_CONTAINER_LIST_INTERVAL_MICROS} to catch up with missed events.
+     */
+    private boolean isContainerListOutdated(ComputeState cs) {
+        EventsStreamObservation stream = eventsStreams.get(cs.documentSelfLink);
+        if (stream != null && !stream.isListOutdated(cs, Utils.getSystemNowMicrosUtc())) {
+            logFine("Skipping container list of host %s, the events stream is connected",
+                    cs.documentSelfLink);
+            return false;
+        }
+        return true;
+    }
+
     private void updateContainerHostContainers(ComputeState cs) {
+        EventsStreamObservation stream = EventsStreamObservation.create(cs,
+                Utils.getSystemNowMicrosUtc());
+        if (stream != null) {
+            eventsStreams.put(cs.documentSelfLink, stream);
+        } else {
+            eventsStreams.remove(cs.documentSelfLink);
+        }
+
         ContainerListCallback body = new ContainerListCallback();
         body.containerHostLink = cs.documentSelfLink;
         body.hostAdapterReference = cs.endpointLink == null ? cs.adapterManagementReference
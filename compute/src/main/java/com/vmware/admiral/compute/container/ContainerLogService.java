@@ -13,26 +13,74 @@ package com.vmware.admiral.compute.container;
 
 import static com.vmware.admiral.common.util.ServiceUtils.addServiceRequestRoute;
 
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import com.vmware.admiral.adapter.common.AdapterRequest;
 import com.vmware.admiral.adapter.common.ContainerOperationType;
 import com.vmware.admiral.common.ManagementUriParts;
 import com.vmware.admiral.compute.container.ContainerService.ContainerState;
+import com.vmware.admiral.service.common.ContainerLogStore;
 import com.vmware.admiral.service.common.LogService;
 import com.vmware.admiral.service.common.LogService.LogServiceState;
 import com.vmware.admiral.service.common.ServiceTaskCallback;
 import com.vmware.xenon.common.LocalizableValidationException;
+import com.vmware.xenon.common.NodeSelectorService.SelectOwnerResponse;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.Service;
 import com.vmware.xenon.common.ServiceDocument;
 import com.vmware.xenon.common.StatelessService;
 import com.vmware.xenon.common.UriUtils;
 import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.ServiceUriPaths;
 
+/**
+ * Returns the logs of a container and requests the adapter to fetch them again. The logs are
+ * returned from the {@link ContainerLogStore}, where the adapter appends the fetched logs, or
+ * from the {@link LogService} document of the container if the store has no logs for it.
+ *
+ * <p>In follow mode the response is sent when the fetched logs have new data after the given
+ * cursor, or when {@link #FOLLOW_TIMEOUT_MICROS} elapses. The cursor for the next request is
+ * returned as the documentUpdateTimeMicros of the response, or in the {@link #CURSOR_HEADER}
+ * header of raw responses, which contain the logs as plain text.
+ *
+ * <p>The store is local to each node, so requests are handled on the node owning the container
+ * link, which also requests the adapter to fetch the logs. The adapter fetches the logs written
+ * since the last fetch, less {@link #SINCE_OVERLAP_SECONDS} for the clock differences with the
+ * Docker host, and the store drops the overlap. A DELETE drops the stored logs of a container.
+ */
 public class ContainerLogService extends StatelessService {
     public static final String SELF_LINK = ManagementUriParts.CONTAINER_LOGS;
     public static final String CONTAINER_ID_QUERY_PARAM = "id";
+    public static final String SINCE_QUERY_PARAM = "since";
+    public static final String TAIL_QUERY_PARAM = "tail";
+    public static final String FOLLOW_QUERY_PARAM = "follow";
+    public static final String CURSOR_QUERY_PARAM = "cursor";
+    public static final String RAW_QUERY_PARAM = "raw";
+
+    public static final String CURSOR_HEADER = "x-log-cursor";
+
+    public static final long FOLLOW_TIMEOUT_MICROS = TimeUnit.SECONDS.toMicros(Long.getLong(
+            "com.vmware.admiral.compute.container.log.follow.timeout.seconds", 30));
+
+    public static final long SINCE_OVERLAP_SECONDS = Long.getLong(
+            "com.vmware.admiral.compute.container.log.since.overlap.seconds", 60);
+
+    private static class LogRequest {
+        String containerId;
+        String containerLink;
+        /** Key of the log fetched with the requested options in the {@link ContainerLogStore} */
+        String logKey;
+        /** Options which change the content of the fetched log, e.g. timestamps */
+        Map<String, String> fetchOptions = new HashMap<>();
+        Long sinceMicros;
+        Integer tailLines;
+        boolean follow;
+        long cursorMicros;
+        boolean raw;
+    }
 
     @Override
     public void handleGet(Operation get) {
@@ -44,47 +92,142 @@ public class ContainerLogService extends StatelessService {
             return;
         }
 
-        final String containerLogsLink = UriUtils.buildUriPath(LogService.FACTORY_LINK,
+        LogRequest request = new LogRequest();
+        request.containerId = containerId;
+        request.containerLink = UriUtils.buildUriPath(ContainerFactoryService.SELF_LINK,
                 containerId);
+        request.follow = Boolean.parseBoolean(params.remove(FOLLOW_QUERY_PARAM));
+        request.raw = Boolean.parseBoolean(params.remove(RAW_QUERY_PARAM));
+        String cursor = params.remove(CURSOR_QUERY_PARAM);
+        // since and tail are applied to the stored log, the adapter gets them from the request
+        String since = params.remove(SINCE_QUERY_PARAM);
+        String tail = params.remove(TAIL_QUERY_PARAM);
+        try {
+            if (cursor != null && !cursor.isEmpty()) {
+                request.cursorMicros = Long.parseLong(cursor);
+            }
+            if (since != null && !since.isEmpty()) {
+                request.sinceMicros = TimeUnit.MILLISECONDS.toMicros(
+                        (long) (Double.parseDouble(since) * 1000));
+            }
+            if (tail != null && !tail.isEmpty() && !"all".equals(tail)) {
+                request.tailLines = Integer.parseInt(tail);
+            }
+        } catch (NumberFormatException e) {
+            get.fail(new IllegalArgumentException("Invalid URL parameter: " + e.getMessage()));
+            return;
+        }
+        // the logs fetched with different options are stored apart, any other parameters are
+        // not passed to the adapter as they would be applied to the stored log of all readers
+        for (String option : Arrays.asList(ContainerLogStore.STDOUT_OPTION,
+                ContainerLogStore.STDERR_OPTION, ContainerLogStore.TIMESTAMPS_OPTION)) {
+            String value = params.get(option);
+            if (value != null && !value.isEmpty()) {
+                request.fetchOptions.put(option, String.valueOf(Boolean.parseBoolean(value)));
+            }
+        }
+        request.logKey = ContainerLogStore.getLogKey(request.containerLink, request.fetchOptions);
+
+        // get the container first, as it authorizes the access to its logs
+        handleOnOwner(get, request.containerLink, () -> requestLog(get, request));
+    }
+
+    @Override
+    public void handleDelete(Operation delete) {
+        String containerId = UriUtils.parseUriQueryParams(delete.getUri())
+                .get(CONTAINER_ID_QUERY_PARAM);
+        if (containerId == null || containerId.isEmpty()) {
+            delete.fail(new IllegalArgumentException(
+                    "URL parameter 'id' expected with container id as value."));
+            return;
+        }
+        String containerLink = UriUtils.buildUriPath(ContainerFactoryService.SELF_LINK,
+                containerId);
+
+        // the logs of a removed container, or of a container the caller can get, are dropped
+        handleOnOwner(delete, containerLink, () -> sendRequest(Operation
+                .createGet(this, containerLink)
+                .setCompletion((o, e) -> {
+                    if (e != null && o.getStatusCode() != Operation.STATUS_CODE_NOT_FOUND) {
+                        delete.fail(e);
+                        return;
+                    }
+                    ContainerLogStore.getInstance(getHost()).remove(containerLink);
+                    delete.complete();
+                })));
+    }
+
+    @Override
+    protected void handleDeleteCompletion(Operation delete) {
+        // a DELETE drops the logs of a container, the service keeps running
+        delete.complete();
+    }
 
-        sendRequest(Operation.createGet(this, containerLogsLink)
+    /**
+     * Handles the given request on the node owning the given container link, where its logs are
+     * stored, or on this node if the request has already been forwarded.
+     */
+    private void handleOnOwner(Operation op, String containerLink, Runnable handler) {
+        SelectOwnerResponse owner = op.isForwarded() ? null : getHost().findOwnerNode(
+                ServiceUriPaths.DEFAULT_NODE_SELECTOR, containerLink);
+        if (owner == null || owner.isLocalHostOwner) {
+            handler.run();
+            return;
+        }
+        sendRequest(op.clone()
+                .setUri(SelectOwnerResponse.buildUriToOwner(owner, op))
+                .addPragmaDirective(Operation.PRAGMA_DIRECTIVE_FORWARDED)
                 .setCompletion((o, e) -> {
+                    op.transferResponseHeadersFrom(o)
+                            .setStatusCode(o.getStatusCode())
+                            .setContentType(o.getContentType())
+                            .setBodyNoCloning(o.getBodyRaw());
                     if (e != null) {
-                        requestLog(get, containerId, params);
-                    } else {
-                        get.setBody(o.getBody(LogServiceState.class)).complete();
-                        requestLog(null, containerId, params);
+                        op.fail(e);
+                        return;
                     }
+                    op.complete();
                 }));
     }
 
-    private void requestLog(Operation get, String containerId, Map<String, String> params) {
-        sendRequest(Operation.createGet(this,
-                UriUtils.buildUriPath(ContainerFactoryService.SELF_LINK, containerId))
+    private void requestLog(Operation get, LogRequest request) {
+        String containerId = request.containerId;
+        sendRequest(Operation.createGet(this, request.containerLink)
                 .setCompletion((o, e) -> {
                     if (e != null) {
                         logWarning("Can't get container %s. Error: %s", containerId,
                                 Utils.toString(e));
-                        if (get != null) {
-                            String errMsg = String.format("Can't get container %s. Error: %s",
-                                    containerId, Utils.toString(e));
-                            get.fail(new LocalizableValidationException(errMsg,
-                                    "compute.container.log.container.unavailable",
-                                    containerId, Utils.toString(e)));
-                        }
+                        String errMsg = String.format("Can't get container %s. Error: %s",
+                                containerId, Utils.toString(e));
+                        get.fail(new LocalizableValidationException(errMsg,
+                                "compute.container.log.container.unavailable",
+                                containerId, Utils.toString(e)));
                         return;
                     }
                     ContainerState container = o.getBody(ContainerState.class);
-                    if (get != null) {
-                        LogServiceState logBody = new LogServiceState();
-                        logBody.logs = "--".getBytes();
-                        logBody.tenantLinks = container.tenantLinks;
-                        get.setBody(logBody).complete();
+                    ContainerLogStore store = ContainerLogStore.getInstance(getHost());
+
+                    if (request.follow) {
+                        long timeoutMicros = Math.min(FOLLOW_TIMEOUT_MICROS,
+                                get.getExpirationMicrosUtc() - Utils.getSystemNowMicrosUtc()
+                                        - TimeUnit.SECONDS.toMicros(1));
+                        store.follow(request.logKey, request.cursorMicros,
+                                Math.max(timeoutMicros, 0), () -> completeFromStore(get,
+                                        container, request, store.read(request.logKey,
+                                                request.cursorMicros, request.tailLines)));
+                    } else {
+                        ContainerLogStore.LogRead read = store.read(request.logKey,
+                                request.sinceMicros, request.tailLines);
+                        if (read != null) {
+                            completeFromStore(get, container, request, read);
+                        } else {
+                            completeFromLogService(get, container, request);
+                        }
                     }
 
                     if (container.powerState != null && !container.powerState.isUnmanaged()
                             && container.powerState != ContainerState.PowerState.UNKNOWN) {
-                        createAdapterRequest(container, params);
+                        createAdapterRequest(container, request);
                     } else {
                         logWarning("Can't get logs for container %s. Container power state is %s",
                                 containerId, container.powerState);
@@ -92,17 +235,75 @@ public class ContainerLogService extends StatelessService {
                 }));
     }
 
-    private void createAdapterRequest(ContainerState container, Map<String, String> params) {
+    private void completeFromStore(Operation get, ContainerState container, LogRequest request,
+            ContainerLogStore.LogRead read) {
+        byte[] logs = read != null ? read.logs : new byte[0];
+        long cursorMicros = read != null ? read.cursorMicros : request.cursorMicros;
+        if (request.raw) {
+            get.addResponseHeader(CURSOR_HEADER, String.valueOf(cursorMicros));
+            get.setBodyNoCloning(logs)
+                    .setContentType(Operation.MEDIA_TYPE_TEXT_PLAIN)
+                    .complete();
+            return;
+        }
+        LogServiceState logBody = new LogServiceState();
+        logBody.documentSelfLink = UriUtils.buildUriPath(LogService.FACTORY_LINK,
+                request.containerId);
+        logBody.logs = logs;
+        logBody.tenantLinks = container.tenantLinks;
+        logBody.documentUpdateTimeMicros = cursorMicros;
+        get.setBodyNoCloning(logBody).complete();
+    }
+
+    /**
+     * Completes the request with the log document written by an adapter which does not use the
+     * {@link ContainerLogStore}.
+     */
+    private void completeFromLogService(Operation get, ContainerState container,
+            LogRequest request) {
+        sendRequest(Operation.createGet(this, UriUtils.buildUriPath(LogService.FACTORY_LINK,
+                request.containerId))
+                .setCompletion((o, e) -> {
+                    LogServiceState logBody;
+                    if (e != null) {
+                        logBody = new LogServiceState();
+                        logBody.logs = "--".getBytes();
+                        logBody.tenantLinks = container.tenantLinks;
+                    } else {
+                        logBody = o.getBody(LogServiceState.class);
+                    }
+                    if (request.raw) {
+                        get.setBodyNoCloning(logBody.logs)
+                                .setContentType(Operation.MEDIA_TYPE_TEXT_PLAIN)
+                                .complete();
+                        return;
+                    }
+                    get.setBody(logBody).complete();
+                }));
+    }
+
+    private void createAdapterRequest(ContainerState container, LogRequest logRequest) {
         if (container.adapterManagementReference == null) {
             logWarning("Container adapterManagementReference is null for container: %s",
                     container.documentSelfLink);
             return;
         }
+        // fetch the logs written since the last fetch only, or the tail on the first fetch, as
+        // a tail of the new logs could leave a gap in the stored log
+        Long lastFetchMicros = ContainerLogStore.getInstance(getHost())
+                .getLastFetchMicros(logRequest.logKey);
+        Map<String, String> params = new HashMap<>(logRequest.fetchOptions);
+        if (lastFetchMicros != null) {
+            params.put(SINCE_QUERY_PARAM, String.valueOf(Math.max(0,
+                    TimeUnit.MICROSECONDS.toSeconds(lastFetchMicros) - SINCE_OVERLAP_SECONDS)));
+        } else if (logRequest.tailLines != null) {
+            params.put(TAIL_QUERY_PARAM, String.valueOf(logRequest.tailLines));
+        }
         AdapterRequest request = new AdapterRequest();
         request.resourceReference = UriUtils.buildPublicUri(getHost(), container.documentSelfLink);
         request.operationTypeId = ContainerOperationType.FETCH_LOGS.id;
         request.serviceTaskCallback = ServiceTaskCallback.createEmpty();
-        request.customProperties = params; // additional request params like since, tail ...
+        request.customProperties = params; // fetch options and since or tail
         sendRequest(Operation
                 .createPatch(getHost(), container.adapterManagementReference.toString())
                 .setBody(request)
@@ -121,8 +322,20 @@ public class ContainerLogService extends StatelessService {
         ServiceDocument d = super.getDocumentTemplate();
         addServiceRequestRoute(d, Action.GET,
                 String.format("Get container logs. Provide the ContainerState id in URI query "
-                        + "parameter with key \"%s\".", CONTAINER_ID_QUERY_PARAM),
+                        + "parameter with key \"%s\". Optional parameters: \"%s\" (seconds), "
+                        + "\"%s\" (lines), \"%s\" and \"%s\" (wait for new logs after the "
+                        + "returned cursor), \"%s\" (plain text response), \"%s\", \"%s\" "
+                        + "and \"%s\" (log content).",
+                        CONTAINER_ID_QUERY_PARAM, SINCE_QUERY_PARAM, TAIL_QUERY_PARAM,
+                        FOLLOW_QUERY_PARAM, CURSOR_QUERY_PARAM, RAW_QUERY_PARAM,
+                        ContainerLogStore.STDOUT_OPTION, ContainerLogStore.STDERR_OPTION,
+                        ContainerLogStore.TIMESTAMPS_OPTION),
                 LogServiceState.class);
+        addServiceRequestRoute(d, Action.DELETE,
+                String.format("Drop the stored logs of a container. Provide the ContainerState "
+                        + "id in URI query parameter with key \"%s\".",
+                        CONTAINER_ID_QUERY_PARAM),
+                null);
         return d;
     }
 
@@ -0,0 +1,303 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.container;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import com.vmware.admiral.adapter.common.AdapterRequest;
+import com.vmware.admiral.adapter.common.ContainerOperationType;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState;
+import com.vmware.admiral.service.common.ServiceTaskCallback;
+import com.vmware.xenon.common.DeferredResult;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Service.ProcessingStage;
+import com.vmware.xenon.common.ServiceStats;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Samples the stats of the containers that are watched, i.e. whose stats have been read in the
+ * last {@link #WATCH_TIMEOUT_MICROS}. The watched containers are sampled every
+ * {@link #SAMPLING_INTERVAL_MICROS}, host by host in batches, and the latest
+ * {@link #HISTORY_SIZE} samples of each container are kept in memory. Readers get the samples
+ * from memory, so the number of readers does not affect the load on the Docker hosts. Only the
+ * first read of a container waits for a sample to be taken.
+ *
+ * <p>The requests are sent by the given service with the system authorization context, so the
+ * service has to be privileged. Readers are expected to be authorized to read the container.
+ */
+class ContainerStatsSampler {
+    static final long SAMPLING_INTERVAL_MICROS = TimeUnit.SECONDS.toMicros(Long.getLong(
+            "com.vmware.admiral.compute.container.stats.sampling.interval.seconds", 10));
+    static final int HISTORY_SIZE = Integer.getInteger(
+            "com.vmware.admiral.compute.container.stats.history.size", 30);
+    static final long WATCH_TIMEOUT_MICROS = TimeUnit.SECONDS.toMicros(Long.getLong(
+            "com.vmware.admiral.compute.container.stats.watch.timeout.seconds", 60));
+    static final int HOST_BATCH_SIZE = Integer.getInteger(
+            "com.vmware.admiral.compute.container.stats.host.batch.size", 5);
+
+    private static final long INSPECT_INTERVAL_MICROS = TimeUnit.SECONDS.toMicros(70);
+
+    private static class WatchedContainer {
+        final String containerLink;
+        ContainerState containerState;
+        long lastReadMicros;
+        long lastInspectMicros;
+        final ServiceStats[] history;
+        int historyStart;
+        int historyCount;
+        DeferredResult<Void> firstSample;
+
+        WatchedContainer(ContainerState containerState, int historySize) {
+            this.containerLink = containerState.documentSelfLink;
+            this.containerState = containerState;
+            this.history = new ServiceStats[historySize];
+        }
+
+        void add(ServiceStats stats) {
+            int index = (historyStart + historyCount) % history.length;
+            history[index] = stats;
+            if (historyCount < history.length) {
+                historyCount++;
+            } else {
+                historyStart = (historyStart + 1) % history.length;
+            }
+        }
+
+        ServiceStats latest() {
+            if (historyCount == 0) {
+                return null;
+            }
+            return history[(historyStart + historyCount - 1) % history.length];
+        }
+
+        List<ServiceStats> samples() {
+            List<ServiceStats> samples = new ArrayList<>(historyCount);
+            for (int i = 0; i < historyCount; i++) {
+                samples.add(history[(historyStart + i) % history.length]);
+            }
+            return samples;
+        }
+    }
+
+    private final StatelessService service;
+    private final long samplingIntervalMicros;
+    private final int historySize;
+    private final long watchTimeoutMicros;
+    private final Map<String, WatchedContainer> watched = new HashMap<>();
+    private boolean collectionScheduled;
+
+    ContainerStatsSampler(StatelessService service) {
+        this(service, SAMPLING_INTERVAL_MICROS, HISTORY_SIZE, WATCH_TIMEOUT_MICROS);
+    }
+
+    ContainerStatsSampler(StatelessService service, long samplingIntervalMicros,
+            int historySize, long watchTimeoutMicros) {
+        this.service = service;
+        this.samplingIntervalMicros = samplingIntervalMicros;
+        this.historySize = historySize;
+        this.watchTimeoutMicros = watchTimeoutMicros;
+    }
+
+    /**
+     * Returns the latest stats sample of the given container and starts watching it.
+     */
+    DeferredResult<ServiceStats> getStats(ContainerState containerState) {
+        return watch(containerState).thenApply(c -> {
+            synchronized (this) {
+                return c.latest();
+            }
+        });
+    }
+
+    /**
+     * Returns the kept stats samples of the given container, the oldest first, and starts
+     * watching it.
+     */
+    DeferredResult<List<ServiceStats>> getHistory(ContainerState containerState) {
+        return watch(containerState).thenApply(c -> {
+            synchronized (this) {
+                return c.samples();
+            }
+        });
+    }
+
+    synchronized int getWatchedCount() {
+        return watched.size();
+    }
+
+    private DeferredResult<WatchedContainer> watch(ContainerState containerState) {
+        WatchedContainer container;
+        boolean sample = false;
+        synchronized (this) {
+            container = watched.get(containerState.documentSelfLink);
+            if (container == null) {
+                container = new WatchedContainer(containerState, historySize);
+                container.firstSample = new DeferredResult<>();
+                watched.put(container.containerLink, container);
+                sample = true;
+            }
+            container.containerState = containerState;
+            container.lastReadMicros = Utils.getSystemNowMicrosUtc();
+            if (container.historyCount > 0) {
+                return DeferredResult.completed(container);
+            }
+        }
+
+        WatchedContainer c = container;
+        if (sample) {
+            sample(c).whenComplete((v, e) -> {
+                if (e != null) {
+                    c.firstSample.fail(e);
+                } else {
+                    c.firstSample.complete(null);
+                }
+                scheduleCollection();
+            });
+        }
+        return c.firstSample.thenApply(v -> c);
+    }
+
+    /**
+     * Samples all watched containers and stops watching the ones which have not been read
+     * recently. The containers of a host are sampled {@link #HOST_BATCH_SIZE} at a time.
+     */
+    DeferredResult<Void> collect() {
+        long now = Utils.getSystemNowMicrosUtc();
+        Map<String, List<WatchedContainer>> containersByHost = new HashMap<>();
+        synchronized (this) {
+            for (Iterator<WatchedContainer> it = watched.values().iterator(); it.hasNext();) {
+                WatchedContainer container = it.next();
+                if (now - container.lastReadMicros > watchTimeoutMicros) {
+                    it.remove();
+                    continue;
+                }
+                if (container.historyCount == 0) {
+                    // the first sample is still being taken
+                    continue;
+                }
+                containersByHost.computeIfAbsent(String.valueOf(
+                        container.containerState.parentLink), k -> new ArrayList<>())
+                        .add(container);
+            }
+        }
+
+        List<DeferredResult<Void>> hosts = new ArrayList<>();
+        for (List<WatchedContainer> containers : containersByHost.values()) {
+            hosts.add(sampleBatches(containers, 0));
+        }
+        return DeferredResult.allOf(hosts).thenApply(ignore -> (Void) null);
+    }
+
+    private DeferredResult<Void> sampleBatches(List<WatchedContainer> containers, int from) {
+        if (from >= containers.size()) {
+            return DeferredResult.completed(null);
+        }
+        int to = Math.min(from + HOST_BATCH_SIZE, containers.size());
+        List<DeferredResult<Void>> batch = new ArrayList<>();
+        for (WatchedContainer container : containers.subList(from, to)) {
+            batch.add(sample(container).exceptionally(e -> null));
+        }
+        return DeferredResult.allOf(batch).thenCompose(ignore -> sampleBatches(containers, to));
+    }
+
+    private DeferredResult<Void> sample(WatchedContainer container) {
+        ContainerState containerState;
+        boolean inspect;
+        synchronized (this) {
+            containerState = container.containerState;
+            long now = Utils.getSystemNowMicrosUtc();
+            inspect = now - container.lastInspectMicros >= INSPECT_INTERVAL_MICROS;
+            if (inspect) {
+                container.lastInspectMicros = now;
+            }
+        }
+
+        DeferredResult<Void> inspected = inspect
+                ? sendAdapterRequest(containerState, ContainerOperationType.INSPECT)
+                : DeferredResult.completed(null);
+        return inspected
+                .thenCompose(v -> sendAdapterRequest(containerState, ContainerOperationType.STATS))
+                .thenCompose(v -> send(Operation.createGet(UriUtils.buildStatsUri(
+                        service.getHost(), containerState.documentSelfLink))))
+                .thenAccept(o -> {
+                    ServiceStats stats = o.getBody(ServiceStats.class);
+                    stats.documentUpdateTimeMicros = Utils.getSystemNowMicrosUtc();
+                    synchronized (this) {
+                        container.add(stats);
+                    }
+                })
+                .whenComplete((v, e) -> {
+                    if (e != null) {
+                        // e.g. the container has been removed
+                        synchronized (this) {
+                            watched.remove(container.containerLink, container);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Sends the given request to the adapter of the container. Failures are logged only, the
+     * container stats are read anyway.
+     */
+    private DeferredResult<Void> sendAdapterRequest(ContainerState containerState,
+            ContainerOperationType operationType) {
+        AdapterRequest request = new AdapterRequest();
+        request.resourceReference = operationType == ContainerOperationType.INSPECT
+                ? UriUtils.buildPublicUri(service.getHost(), containerState.documentSelfLink)
+                : UriUtils.buildUri(service.getHost(), containerState.documentSelfLink);
+        request.operationTypeId = operationType.id;
+        request.serviceTaskCallback = ServiceTaskCallback.createEmpty();
+        return send(Operation
+                .createPatch(service.getHost(), containerState.adapterManagementReference.toString())
+                .setBodyNoCloning(request))
+                .handle((o, e) -> {
+                    if (e != null) {
+                        service.getHost().log(Level.WARNING,
+                                "Error in %s request for container: %s. Error: %s",
+                                operationType, containerState.documentSelfLink,
+                                Utils.toString(e));
+                    }
+                    return null;
+                });
+    }
+
+    private DeferredResult<Operation> send(Operation op) {
+        op.setReferer(service.getUri());
+        service.setAuthorizationContext(op, service.getSystemAuthorizationContext());
+        return service.sendWithDeferredResult(op);
+    }
+
+    private void scheduleCollection() {
+        synchronized (this) {
+            if (collectionScheduled || watched.isEmpty()
+                    || service.getProcessingStage() != ProcessingStage.AVAILABLE) {
+                return;
+            }
+            collectionScheduled = true;
+        }
+        service.getHost().schedule(() -> {
+            synchronized (this) {
+                collectionScheduled = false;
+            }
+            collect().whenComplete((v, e) -> scheduleCollection());
+        }, samplingIntervalMicros, TimeUnit.MICROSECONDS);
+    }
+}
@@ -13,23 +13,23 @@ package com.vmware.admiral.compute.container;
 
 import static com.vmware.admiral.common.util.ServiceUtils.addServiceRequestRoute;
 
-import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
 
-import com.vmware.admiral.adapter.common.AdapterRequest;
-import com.vmware.admiral.adapter.common.ContainerOperationType;
 import com.vmware.admiral.common.ManagementUriParts;
 import com.vmware.admiral.common.util.ServiceUtils;
 import com.vmware.admiral.compute.container.ContainerService.ContainerState;
 import com.vmware.admiral.compute.container.maintenance.ContainerStats;
-import com.vmware.admiral.service.common.ServiceTaskCallback;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.ServiceStats;
 import com.vmware.xenon.common.StatelessService;
 import com.vmware.xenon.common.UriUtils;
-import com.vmware.xenon.common.Utils;
 
+/**
+ * Returns the stats of a container. The stats of the containers being read are sampled
+ * periodically by a {@link ContainerStatsSampler} and served from memory.
+ */
 public class ContainerStatsService extends StatelessService {
     public static final String SELF_LINK = ManagementUriParts.CONTAINER_STATS;
 
@@ -37,16 +37,26 @@ public class ContainerStatsService extends StatelessService {
 
     public static final String CONTAINER_ID_QUERY_PARAM = "id";
 
-    private static final long INSPECT_INTERVAL = TimeUnit.SECONDS.toMicros(70);
-    private static final int MAX_SIZE = 10;
+    public static final String HISTORY_QUERY_PARAM = "history";
 
-    @SuppressWarnings("unchecked")
-    private static Map<String, Long> inspectCache = new LinkedHashMap(16, 0.75f, true) {
-        @Override
-        protected boolean removeEldestEntry(Map.Entry eldest) {
-            return size() > MAX_SIZE;
-        }
-    };
+    /**
+     * Response to a request with the {@link #HISTORY_QUERY_PARAM} query parameter set.
+     */
+    public static class ContainerStatsHistory {
+        /**
+         * The kept stats samples of the container, the oldest first. The time of each sample is
+         * set as its documentUpdateTimeMicros.
+         */
+        public List<ServiceStats> samples;
+    }
+
+    private ContainerStatsSampler sampler;
+
+    @Override
+    public void handleStart(Operation start) {
+        sampler = new ContainerStatsSampler(this);
+        start.complete();
+    }
 
     @Override
     public void handleGet(Operation get) {
@@ -57,14 +67,16 @@ public class ContainerStatsService extends StatelessService {
                     "URL parameter 'id' expected with container id as value."));
             return;
         }
+        boolean history = Boolean.parseBoolean(params.remove(HISTORY_QUERY_PARAM));
 
-        getContainerStateAndProcess(get, containerId);
+        getContainerStateAndProcess(get, containerId, history);
     }
 
     /**
-     * start processing the request - first fetch the ContainerState
+     * start processing the request - first fetch the ContainerState, which also checks that the
+     * caller is authorized to read the container
      */
-    private void getContainerStateAndProcess(Operation op, String id) {
+    private void getContainerStateAndProcess(Operation op, String id, boolean history) {
         final String containerLink = UriUtils.buildUriPath(ContainerFactoryService.SELF_LINK, id);
 
         sendRequest(Operation
@@ -77,81 +89,38 @@ public class ContainerStatsService extends StatelessService {
                     }
                     ServiceUtils.handleExceptions(op, () -> {
                         ContainerState containerState = o.getBody(ContainerState.class);
-                        processInspect(containerState, () ->
-                                processStatsRequest(op, containerState));
+                        if (history) {
+                            processHistoryRequest(op, containerState);
+                        } else {
+                            processStatsRequest(op, containerState);
+                        }
                     });
                 }));
     }
 
     /**
-     * Request getting stats through the adapter and then return /stats as body response
+     * Returns the latest stats of the container sampled by the {@link ContainerStatsSampler}.
      */
     private void processStatsRequest(Operation op, ContainerState containerState) {
-        AdapterRequest request = new AdapterRequest();
-        request.resourceReference = UriUtils.buildUri(getHost(), containerState.documentSelfLink);
-        request.operationTypeId = ContainerOperationType.STATS.id;
-        request.serviceTaskCallback = ServiceTaskCallback.createEmpty();
-        sendRequest(Operation
-                .createPatch(this, containerState.adapterManagementReference.toString())
-                .setBodyNoCloning(request)
-                .setCompletion((o, ex) -> {
-                    if (ex != null) {
-                        // do not return, just log warning, previous /stats will be returned
-                        logWarning("Exception in stats request for container: %s. Error: %s",
-                                containerState.documentSelfLink, Utils.toString(ex));
-                    }
-                    forwardStatsResponse(op, containerState);
-                }));
-    }
-
-    /**
-     * Executes /stats request to the container state and copy its response to the GET operation.
-     */
-    private void forwardStatsResponse(Operation op, ContainerState containerState) {
-        sendRequest(Operation
-                .createGet(UriUtils.buildStatsUri(getHost(), containerState.documentSelfLink))
-                .setExpiration(op.getExpirationMicrosUtc())
-                .setCompletion((o, e) -> {
-                    op.setBodyNoCloning(o.getBodyRaw());
-                    op.setStatusCode(o.getStatusCode());
-                    op.transferResponseHeadersFrom(o);
-                    if (e != null) {
-                        op.fail(e);
-                    } else {
-                        op.complete();
-                    }
-                }));
-    }
-
-    private void processInspect(ContainerState container, Runnable callback) {
-        if (!isInspectionNeeded(container)) {
-            callback.run();
-            return;
-        }
-
-        AdapterRequest request = new AdapterRequest();
-        request.resourceReference = UriUtils.buildPublicUri(getHost(), container.documentSelfLink);
-        request.operationTypeId = ContainerOperationType.INSPECT.id;
-        request.serviceTaskCallback = ServiceTaskCallback.createEmpty();
-        sendRequest(Operation
-                .createPatch(getHost(), container.adapterManagementReference.toString())
-                .setBodyNoCloning(request)
-                .setCompletion((o, ex) -> {
-                    if (ex != null) {
-                        logWarning("Error while inspect request for container: %s. Error: %s",
-                                container.documentSelfLink, Utils.toString(ex));
-                    }
-                    callback.run();
-                }));
+        sampler.getStats(containerState).whenComplete((stats, e) -> {
+            if (e != null) {
+                op.fail(e);
+                return;
+            }
+            op.setBodyNoCloning(stats).complete();
+        });
     }
 
-    private boolean isInspectionNeeded(ContainerState container) {
-        Long lastInspect = inspectCache.get(container.documentSelfLink);
-        if (lastInspect == null || lastInspect < Utils.fromNowMicrosUtc(-INSPECT_INTERVAL)) {
-            inspectCache.put(container.documentSelfLink, Utils.getNowMicrosUtc());
-            return true;
-        }
-        return false;
+    private void processHistoryRequest(Operation op, ContainerState containerState) {
+        sampler.getHistory(containerState).whenComplete((samples, e) -> {
+            if (e != null) {
+                op.fail(e);
+                return;
+            }
+            ContainerStatsHistory response = new ContainerStatsHistory();
+            response.samples = samples;
+            op.setBodyNoCloning(response).complete();
+        });
     }
 
     @Override
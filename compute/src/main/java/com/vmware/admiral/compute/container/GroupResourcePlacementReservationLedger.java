@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.container;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.WeakHashMap;
+
+import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.admiral.compute.container.GroupResourcePlacementService.GroupResourcePlacementState;
+import com.vmware.admiral.compute.container.GroupResourcePlacementService.ResourcePlacementReservationFailure;
+import com.vmware.admiral.compute.container.GroupResourcePlacementService.ResourcePlacementReservationRequest;
+import com.vmware.admiral.compute.container.GroupResourcePlacementService.ResourcePlacementReservationResponse;
+import com.vmware.xenon.common.DeferredResult;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Sends the {@link ResourcePlacementReservationRequest}s of a host to the
+ * {@link GroupResourcePlacementService}. While a reservation PATCH to a placement is in progress,
+ * the requests for the same placement are queued and then sent together as a single batch, so
+ * that concurrent reservations do not wait for each other in the queue of the placement service.
+ * The placement service admits or rejects each request of a batch on its own.
+ *
+ * <p>
+ * A batch mixes the requests of different tasks, so the ledger sends it on behalf of the system
+ * and needs to be started as a privileged service.
+ */
+public class GroupResourcePlacementReservationLedger extends StatelessService {
+    public static final String SELF_LINK = ManagementUriParts.RESOURCE_GROUP_PLACEMENT_RESERVATIONS;
+
+    private static final int MAX_BATCH_SIZE = Integer.getInteger(
+            "com.vmware.admiral.compute.placements.reservation.batch.size", 100);
+
+    private static final Map<ServiceHost, GroupResourcePlacementReservationLedger> LEDGERS =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    private static class PendingReservation {
+        final ResourcePlacementReservationRequest request;
+        final DeferredResult<GroupResourcePlacementState> result = new DeferredResult<>();
+
+        PendingReservation(ResourcePlacementReservationRequest request) {
+            this.request = request;
+        }
+    }
+
+    /**
+     * Requests waiting for the PATCH in progress, per placement link. A placement has an entry
+     * only while a PATCH to it is in progress.
+     */
+    private final Map<String, Queue<PendingReservation>> pendingReservations = new HashMap<>();
+
+    /**
+     * Returns the ledger started on the given host.
+     */
+    public static GroupResourcePlacementReservationLedger getInstance(ServiceHost host) {
+        GroupResourcePlacementReservationLedger ledger = LEDGERS.get(host);
+        if (ledger == null) {
+            throw new IllegalStateException("Service not started: " + SELF_LINK);
+        }
+        return ledger;
+    }
+
+    @Override
+    public void handleStart(Operation start) {
+        LEDGERS.put(getHost(), this);
+        start.complete();
+    }
+
+    @Override
+    public void handleStop(Operation stop) {
+        LEDGERS.remove(getHost(), this);
+        super.handleStop(stop);
+    }
+
+    /**
+     * Reserves (or releases, for a negative resource count) resources of the given placement.
+     * Completes with the state of the placement after the reservation or fails if the reservation
+     * is rejected.
+     */
+    public DeferredResult<GroupResourcePlacementState> reserve(String placementLink,
+            ResourcePlacementReservationRequest request) {
+        request.requestTimeMicros = Utils.getSystemNowMicrosUtc();
+        PendingReservation reservation = new PendingReservation(request);
+
+        synchronized (this.pendingReservations) {
+            Queue<PendingReservation> pending = this.pendingReservations.get(placementLink);
+            if (pending != null) {
+                pending.add(reservation);
+                return reservation.result;
+            }
+            this.pendingReservations.put(placementLink, new ArrayDeque<>());
+        }
+
+        send(placementLink, Collections.singletonList(reservation));
+        return reservation.result;
+    }
+
+    private void send(String placementLink, List<PendingReservation> batch) {
+        PendingReservation first = batch.get(0);
+        Operation patch = Operation.createPatch(this, placementLink);
+        if (batch.size() == 1) {
+            patch.setBody(first.request)
+                    .setCompletion((o, e) -> {
+                        sendNext(placementLink);
+                        if (e != null) {
+                            first.result.fail(e);
+                            return;
+                        }
+                        first.result.complete(o.getBody(GroupResourcePlacementState.class));
+                    });
+        } else {
+            ResourcePlacementReservationRequest request = new ResourcePlacementReservationRequest();
+            request.referer = first.request.referer;
+            request.batch = new ArrayList<>(batch.size());
+            for (PendingReservation reservation : batch) {
+                request.batch.add(reservation.request);
+            }
+
+            patch.setBody(request)
+                    .setCompletion((o, e) -> {
+                        sendNext(placementLink);
+                        if (e != null) {
+                            batch.forEach(r -> r.result.fail(e));
+                            return;
+                        }
+                        ResourcePlacementReservationResponse response = o
+                                .getBody(ResourcePlacementReservationResponse.class);
+                        for (int i = 0; i < batch.size(); i++) {
+                            ResourcePlacementReservationFailure failure = response.failures.get(i);
+                            if (failure != null) {
+                                batch.get(i).result.fail(failure.toException());
+                            } else {
+                                batch.get(i).result.complete(response.placement);
+                            }
+                        }
+                    });
+        }
+
+        try {
+            setAuthorizationContext(patch, getSystemAuthorizationContext());
+            sendRequest(patch);
+        } catch (Throwable e) {
+            // the completion is not called, so the next batch has to be sent from here
+            logWarning("Failure sending reservations to %s: %s", placementLink, Utils.toString(e));
+            batch.forEach(r -> r.result.fail(e));
+            sendNext(placementLink);
+        }
+    }
+
+    private void sendNext(String placementLink) {
+        List<PendingReservation> batch = new ArrayList<>();
+        synchronized (this.pendingReservations) {
+            Queue<PendingReservation> pending = this.pendingReservations.get(placementLink);
+            while (!pending.isEmpty() && batch.size() < MAX_BATCH_SIZE) {
+                batch.add(pending.poll());
+            }
+            if (batch.isEmpty()) {
+                this.pendingReservations.remove(placementLink);
+                return;
+            }
+        }
+        send(placementLink, batch);
+    }
+}
@@ -15,10 +15,16 @@ import static com.vmware.admiral.common.util.AssertUtil.assertNotEmpty;
 
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import com.vmware.admiral.common.ManagementUriParts;
@@ -30,13 +36,18 @@ import com.vmware.admiral.compute.container.ContainerService.ContainerState;
 import com.vmware.admiral.service.common.MultiTenantDocument;
 import com.vmware.photon.controller.model.resources.ResourcePoolService;
 import com.vmware.photon.controller.model.resources.ResourcePoolService.ResourcePoolState;
+import com.vmware.xenon.common.DeferredResult;
 import com.vmware.xenon.common.LocalizableValidationException;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.ServiceDocument;
 import com.vmware.xenon.common.ServiceDocumentDescription.PropertyIndexingOption;
 import com.vmware.xenon.common.ServiceDocumentDescription.PropertyUsageOption;
+import com.vmware.xenon.common.ServiceStats.ServiceStat;
+import com.vmware.xenon.common.ServiceStats.TimeSeriesStats;
+import com.vmware.xenon.common.ServiceStats.TimeSeriesStats.AggregationType;
 import com.vmware.xenon.common.StatefulService;
 import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
 import com.vmware.xenon.services.common.QueryTask;
 
 /**
@@ -69,6 +80,13 @@ public class GroupResourcePlacementService extends StatefulService {
     // Docker minimum memory limit is 4MB
     public static final long MIN_MEMORY_LIMIT_BYTES = 4_194_304;
 
+    public static final String STAT_NAME_RESERVATION_REQUEST_COUNT = "reservationRequestCount";
+    public static final String STAT_NAME_RESERVATION_BATCH_SIZE = "reservationBatchSize";
+    public static final String STAT_NAME_RESERVATION_WAIT_MICROS = "reservationWaitMicros";
+
+    private static final int STATS_BIN_COUNT = 60;
+    private static final long STATS_BIN_DURATION_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
     public static ResourcePoolState buildDefaultResourcePool() {
         return buildResourcePool(DEFAULT_RESOURCE_POOL_ID);
     }
@@ -219,6 +237,53 @@ public class GroupResourcePlacementService extends StatefulService {
         public long resourceCount;
         public String resourceDescriptionLink;
         public String referer;
+
+        /** Time the reservation was requested, used for the reservation wait time stats. */
+        public long requestTimeMicros;
+
+        /**
+         * Requests to apply with a single PATCH instead of this request. Each request is admitted
+         * or rejected on its own and the PATCH completes with a
+         * {@link ResourcePlacementReservationResponse}.
+         */
+        public List<ResourcePlacementReservationRequest> batch;
+    }
+
+    /**
+     * Response of a PATCH with a batch of {@link ResourcePlacementReservationRequest}s.
+     */
+    public static class ResourcePlacementReservationResponse {
+        /** The placement after applying the admitted requests. */
+        public GroupResourcePlacementState placement;
+
+        /**
+         * The failure of each request of the batch in the same order, or {@code null} for the
+         * admitted requests.
+         */
+        public List<ResourcePlacementReservationFailure> failures;
+    }
+
+    /**
+     * Rejection of a request of a batch, with what is needed to rebuild the
+     * {@link LocalizableValidationException} the request was rejected with.
+     */
+    public static class ResourcePlacementReservationFailure {
+        public String message;
+        public String messageId;
+        public Object[] arguments;
+
+        static ResourcePlacementReservationFailure of(LocalizableValidationException e) {
+            ResourcePlacementReservationFailure failure = new ResourcePlacementReservationFailure();
+            failure.message = e.getMessage();
+            failure.messageId = e.getErrorMessageCode();
+            failure.arguments = e.getArguments();
+            return failure;
+        }
+
+        public LocalizableValidationException toException() {
+            return new LocalizableValidationException(message, messageId,
+                    arguments != null ? arguments : new Object[0]);
+        }
     }
 
     /**
@@ -262,6 +327,7 @@ public class GroupResourcePlacementService extends StatefulService {
         super.toggleOption(ServiceOption.REPLICATION, true);
         super.toggleOption(ServiceOption.OWNER_SELECTION, true);
         super.toggleOption(ServiceOption.IDEMPOTENT_POST, true);
+        super.toggleOption(ServiceOption.INSTRUMENTATION, true);
     }
 
     @Override
@@ -390,9 +456,49 @@ public class GroupResourcePlacementService extends StatefulService {
 
         ResourcePlacementReservationRequest request = patch
                 .getBody(ResourcePlacementReservationRequest.class);
+        List<ResourcePlacementReservationRequest> requests = request.batch != null
+                ? request.batch : Collections.singletonList(request);
 
         GroupResourcePlacementState state = getState(patch);
         adjustStat(ResourcePlacementReservationRequest.class.getSimpleName(), 1);
+        updateReservationStats(requests);
+
+        Map<String, Long> memoryLimits = Collections.synchronizedMap(new HashMap<>());
+        Map<String, Throwable> memoryLimitFailures = new ConcurrentHashMap<>();
+        getMemoryLimits(requests, memoryLimits, memoryLimitFailures).whenComplete((o, e) -> {
+            // all requests are admitted against the same state, one after the other
+            List<ResourcePlacementReservationFailure> failures = new ArrayList<>(requests.size());
+            LocalizableValidationException failure = null;
+            for (ResourcePlacementReservationRequest r : requests) {
+                failure = reserve(state, r, memoryLimits, memoryLimitFailures);
+                failures.add(failure != null ? ResourcePlacementReservationFailure.of(failure)
+                        : null);
+            }
+
+            if (request.batch == null) {
+                if (failure != null) {
+                    patch.fail(failure);
+                } else {
+                    patch.setBody(state).complete();
+                }
+                return;
+            }
+
+            ResourcePlacementReservationResponse response =
+                    new ResourcePlacementReservationResponse();
+            response.placement = state;
+            response.failures = failures;
+            patch.setBody(response).complete();
+        });
+    }
+
+    /**
+     * Applies the given request to the state. Returns the reason for rejecting the request, in
+     * which case the state is not modified, or {@code null} if the request is admitted.
+     */
+    private LocalizableValidationException reserve(GroupResourcePlacementState state,
+            ResourcePlacementReservationRequest request, Map<String, Long> memoryLimits,
+            Map<String, Throwable> memoryLimitFailures) {
 
         final long currentCount = state.maxNumberInstances != UNLIMITED_NUMBER_INSTANCES
                 ? state.availableInstancesCount - request.resourceCount
@@ -402,72 +508,91 @@ public class GroupResourcePlacementService extends StatefulService {
                 request.resourceDescriptionLink);
 
         if (currentCount < 0) {
-            patch.fail(new LocalizableValidationException(
+            return new LocalizableValidationException(
                     "Requested instances are more than the available resource placement: "
                             + state.availableInstancesCount,
                     "compute.placements.requested.too.many.instances",
-                    state.availableInstancesCount));
-            return;
+                    state.availableInstancesCount);
         } else if (currentCount > state.maxNumberInstances) {
             logWarning(
                     "Releasing the requested resource placement of %d is more than the max %d "
                             + "for the current available %d",
                     request.resourceCount, state.maxNumberInstances, state.availableInstancesCount);
-            patch.complete();
-            return;
+            return null;
         } else if (request.resourceDescriptionLink == null
                 || request.resourceDescriptionLink.isEmpty()) {
-            patch.fail(new LocalizableValidationException("'resourceDescriptionLink' is required.",
-                    "compute.placements.resource-desc.required"));
-            return;
+            return new LocalizableValidationException("'resourceDescriptionLink' is required.",
+                    "compute.placements.resource-desc.required");
+        } else if (memoryLimitFailures.containsKey(request.resourceDescriptionLink)) {
+            return new LocalizableValidationException(
+                    "Unable to get the resource description with link: "
+                            + request.resourceDescriptionLink,
+                    "compute.resource-placement.unavailable",
+                    request.resourceDescriptionLink);
+        }
+
+        Long memoryBytes = memoryLimits.get(request.resourceDescriptionLink);
+        LocalizableValidationException failure = reserveMemory(request, state, memoryBytes);
+        if (failure != null) {
+            return failure;
         }
 
         state.availableInstancesCount = currentCount;
         state.allocatedInstancesCount += request.resourceCount;
+        return null;
+    }
 
-        sendRequest(Operation
-                .createGet(this, request.resourceDescriptionLink)
-                .setCompletion(
-                        (o, e) -> {
-                            if (Operation.STATUS_CODE_NOT_FOUND == o.getStatusCode()
-                                    || e instanceof CancellationException) {
-                                logWarning(
-                                        "Resource description %s not found. There might be "
-                                                + "some inconsistencies with memory allocations",
-                                        request.resourceDescriptionLink);
-                                patch.setBody(state).complete();
-                                return;
-                            }
-                            if (e != null) {
-                                patch.fail(new LocalizableValidationException(
-                                        "Unable to get the resource description with link: "
-                                                + request.resourceDescriptionLink,
-                                        "compute.resource-placement.unavailable",
-                                        request.resourceDescriptionLink));
-                                return;
-                            }
-
-                            ContainerDescriptionService.ContainerDescription desc = o.getBody(
-                                    ContainerDescriptionService.ContainerDescription.class);
-                            Long memoryBytes = desc.memoryLimit;
+    /**
+     * Retrieves the memory limit of the resource descriptions of the given requests. Descriptions
+     * which are not found have a {@code null} memory limit.
+     */
+    private DeferredResult<Void> getMemoryLimits(
+            List<ResourcePlacementReservationRequest> requests, Map<String, Long> memoryLimits,
+            Map<String, Throwable> failures) {
+        Set<String> descriptionLinks = new HashSet<>();
+        for (ResourcePlacementReservationRequest request : requests) {
+            if (request.resourceDescriptionLink != null
+                    && !request.resourceDescriptionLink.isEmpty()) {
+                descriptionLinks.add(request.resourceDescriptionLink);
+            }
+        }
 
-                            if (reserveMemory(patch, request, state, memoryBytes)) {
-                                /*
-                                 * The reserveMemory method will fail the patch if the requested
-                                 * memory is not right
-                                 */
-                                patch.setBody(state).complete();
-                            }
-                        }));
+        List<DeferredResult<Void>> results = new ArrayList<>(descriptionLinks.size());
+        for (String descriptionLink : descriptionLinks) {
+            DeferredResult<Void> result = new DeferredResult<>();
+            sendRequest(Operation
+                    .createGet(this, descriptionLink)
+                    .setCompletion(
+                            (o, e) -> {
+                                if (Operation.STATUS_CODE_NOT_FOUND == o.getStatusCode()
+                                        || e instanceof CancellationException) {
+                                    logWarning(
+                                            "Resource description %s not found. There might be "
+                                                    + "some inconsistencies with memory allocations",
+                                            descriptionLink);
+                                    memoryLimits.put(descriptionLink, null);
+                                } else if (e != null) {
+                                    failures.put(descriptionLink, e);
+                                } else {
+                                    ContainerDescriptionService.ContainerDescription desc = o
+                                            .getBody(ContainerDescriptionService.ContainerDescription.class);
+                                    memoryLimits.put(descriptionLink, desc.memoryLimit);
+                                }
+                                result.complete(null);
+                            }));
+            results.add(result);
+        }
+        return DeferredResult.allOf(results).thenAccept(ignore -> {
+        });
     }
 
-    private boolean reserveMemory(Operation patch,
+    private LocalizableValidationException reserveMemory(
             ResourcePlacementReservationRequest request,
             GroupResourcePlacementState state, Long memoryBytes) {
 
         // TODO what do we do in this case?
         if (memoryBytes == null) {
-            return true;
+            return null;
         }
 
         long requestedMemory = memoryBytes * request.resourceCount;
@@ -475,17 +600,43 @@ public class GroupResourcePlacementService extends StatefulService {
 
         if (state.memoryLimit != 0) {
             if (currentMemory < 0) {
-                patch.fail(new LocalizableValidationException(
+                return new LocalizableValidationException(
                         "Requested memory is more than the available memory placement: "
                                 + state.availableMemory,
-                        "compute.placements.too.much.memory.requested", state.availableMemory));
-                return false;
+                        "compute.placements.too.much.memory.requested", state.availableMemory);
             }
 
             state.availableMemory = currentMemory;
         }
 
-        return true;
+        return null;
+    }
+
+    private void updateReservationStats(List<ResourcePlacementReservationRequest> requests) {
+        ServiceStat countStat = getTimeSeriesStat(STAT_NAME_RESERVATION_REQUEST_COUNT,
+                EnumSet.of(AggregationType.SUM));
+        adjustStat(countStat, requests.size());
+        setStat(STAT_NAME_RESERVATION_BATCH_SIZE, requests.size());
+
+        ServiceStat waitStat = getTimeSeriesStat(STAT_NAME_RESERVATION_WAIT_MICROS,
+                EnumSet.of(AggregationType.AVG, AggregationType.MAX));
+        long nowMicros = Utils.getSystemNowMicrosUtc();
+        for (ResourcePlacementReservationRequest request : requests) {
+            if (request.requestTimeMicros > 0) {
+                setStat(waitStat, Math.max(0, nowMicros - request.requestTimeMicros));
+            }
+        }
+    }
+
+    private ServiceStat getTimeSeriesStat(String name, EnumSet<AggregationType> aggregations) {
+        ServiceStat stat = getStat(name);
+        synchronized (stat) {
+            if (stat.timeSeriesStats == null) {
+                stat.timeSeriesStats = new TimeSeriesStats(STATS_BIN_COUNT,
+                        STATS_BIN_DURATION_MILLIS, aggregations);
+            }
+        }
+        return stat;
     }
 
     @Override
@@ -677,6 +828,15 @@ public class GroupResourcePlacementService extends StatefulService {
         ResourcePlacementReservationRequest request = patch
                 .getBody(ResourcePlacementReservationRequest.class);
 
+        if (request.batch != null) {
+            return !request.batch.isEmpty()
+                    && request.batch.stream().allMatch(r -> isReservationServiceTaskReferer(r));
+        }
+        return isReservationServiceTaskReferer(request);
+    }
+
+    private static boolean isReservationServiceTaskReferer(
+            ResourcePlacementReservationRequest request) {
         return request.referer != null
                 && (request.referer
                         .startsWith(ManagementUriParts.REQUEST_RESERVATION_TASKS)
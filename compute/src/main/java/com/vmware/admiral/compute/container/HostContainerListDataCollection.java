@@ -110,6 +110,19 @@ public class HostContainerListDataCollection extends StatefulService {
         public Map<String, String> containerIdsAndImage = new HashMap<>();
         public Map<String, PowerState> containerIdsAndState = new HashMap<>();
         public boolean unlockDataCollectionForHost;
+        /**
+         * Set when only the containers changed since the last data collection are listed, as
+         * reported by the events of the host. The created and renamed containers are in
+         * containerIdsAndNames, the destroyed ones in removedContainerIds.
+         */
+        public boolean incremental;
+        public Set<String> removedContainerIds = new HashSet<>();
+        /**
+         * Set with incremental callbacks only: the power states reported by the events of the
+         * host, by container state link, and the start time of the started containers.
+         */
+        public Map<String, PowerState> containerLinksAndState = new HashMap<>();
+        public Map<String, Long> containerLinksAndStarted = new HashMap<>();
 
         public void addIdAndNames(String id, String[] names) {
             AssertUtil.assertNotNull(id, "containerId");
@@ -327,6 +340,13 @@ public class HostContainerListDataCollection extends StatefulService {
 
         AssertUtil.assertNotNull(body.containerIdsAndNames, "containerIdsAndNames");
 
+        if (body.incremental) {
+            op.complete();
+            applyPowerStates(body);
+            applyContainerChanges(body);
+            return;
+        }
+
         logFine("Host container list callback invoked for host [%s] with container IDs: %s",
                 containerHostLink, body.containerIdsAndNames.keySet());
 
@@ -351,6 +371,117 @@ public class HostContainerListDataCollection extends StatefulService {
         queryExistingContainerStates(body);
     }
 
+    /**
+     * Applies the power states of an incremental callback to the container states. The container
+     * states are resolved by the adapter already, so no query is needed.
+     */
+    private void applyPowerStates(ContainerListCallback body) {
+        if (body.containerLinksAndState == null) {
+            return;
+        }
+        body.containerLinksAndState.forEach((containerLink, powerState) -> {
+            ContainerState patch = new ContainerState();
+            patch.powerState = powerState;
+            if (body.containerLinksAndStarted != null) {
+                patch.started = body.containerLinksAndStarted.get(containerLink);
+            }
+            sendRequest(Operation
+                    .createPatch(this, containerLink)
+                    .setBodyNoCloning(patch)
+                    .setCompletion((o, ex) -> {
+                        if (ex != null) {
+                            logWarning("Error patching power state of container [%s]: %s",
+                                    containerLink, ex.getMessage());
+                        }
+                    }));
+        });
+    }
+
+    /**
+     * Applies the changes of an incremental callback to the existing container states of the host.
+     * Containers unknown to Admiral are discovered with a full data collection of the host.
+     */
+    private void applyContainerChanges(ContainerListCallback body) {
+        String containerHostLink = body.containerHostLink;
+        Set<String> containerIds = new HashSet<>(body.containerIdsAndNames.keySet());
+        if (body.removedContainerIds != null) {
+            containerIds.addAll(body.removedContainerIds);
+        }
+        if (containerIds.isEmpty()) {
+            return;
+        }
+
+        logFine("Host container list changes for host [%s], changed: %s, removed: %s",
+                containerHostLink, body.containerIdsAndNames.keySet(), body.removedContainerIds);
+
+        QueryTask queryTask = QueryUtil.buildPropertyQuery(ContainerState.class,
+                ContainerState.FIELD_NAME_PARENT_LINK, containerHostLink);
+        QueryUtil.addListValueClause(queryTask, ContainerState.FIELD_NAME_ID, containerIds);
+        QueryUtil.addExpandOption(queryTask);
+        QueryUtil.addBroadcastOption(queryTask);
+
+        Map<String, ContainerState> existingContainerStates = new HashMap<>();
+        new ServiceDocumentQuery<ContainerState>(getHost(), ContainerState.class)
+                .query(queryTask, (r) -> {
+                    if (r.hasException()) {
+                        logWarning("Failed to query for changed ContainerState instances: %s",
+                                r.getException() instanceof CancellationException
+                                        ? r.getException().getMessage()
+                                        : Utils.toString(r.getException()));
+                    } else if (r.hasResult()) {
+                        existingContainerStates.put(r.getResult().id, r.getResult());
+                    } else {
+                        applyContainerChanges(body, existingContainerStates);
+                    }
+                });
+    }
+
+    private void applyContainerChanges(ContainerListCallback body,
+            Map<String, ContainerState> existingContainerStates) {
+        if (body.removedContainerIds != null) {
+            for (String containerId : body.removedContainerIds) {
+                ContainerState containerState = existingContainerStates.get(containerId);
+                if (containerState != null && (containerState.powerState == PowerState.RUNNING
+                        || containerState.powerState == PowerState.STOPPED
+                        || containerState.powerState == PowerState.PAUSED)) {
+                    handleMissingContainer(containerState);
+                }
+            }
+        }
+
+        boolean unknownContainers = false;
+        for (Entry<String, String> entry : body.containerIdsAndNames.entrySet()) {
+            ContainerState containerState = existingContainerStates.get(entry.getKey());
+            if (containerState == null) {
+                unknownContainers = true;
+            } else if (entry.getValue() != null
+                    && !entry.getValue().equals(containerNamesToString(containerState.names))) {
+                ContainerState patch = new ContainerState();
+                patch.names = new ArrayList<>(Arrays.asList(entry.getValue()
+                        .split(ContainerListCallback.NAME_SEPARATOR)));
+                sendRequest(Operation
+                        .createPatch(this, containerState.documentSelfLink)
+                        .setBodyNoCloning(patch));
+            }
+        }
+
+        if (unknownContainers) {
+            // discovering containers needs the full container list of the host
+            ContainerListCallback listBody = new ContainerListCallback();
+            listBody.containerHostLink = body.containerHostLink;
+            listBody.hostAdapterReference = body.hostAdapterReference;
+            sendRequest(Operation
+                    .createPatch(getUri())
+                    .setBodyNoCloning(listBody)
+                    .setCompletion((o, ex) -> {
+                        if (ex != null) {
+                            logWarning("Failed request host container list dc: %s",
+                                    Utils.toString(ex));
+                        }
+                    }));
+        }
+    }
+
     private void queryExistingContainerStates(ContainerListCallback body) {
         String containerHostLink = body.containerHostLink;
         QueryTask queryTask = QueryUtil.buildPropertyQuery(ContainerState.class,
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.container;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import com.vmware.admiral.compute.container.HostPortProfileService.HostPortProfileState;
+
+/**
+ * Port allocation of a host, built from a {@link HostPortProfileState}. The used ports are kept
+ * in a bitmap, so that the next free port is found a word at a time, and the ports of each
+ * container in a per-container bitmap. The ports of a container are persisted as a list of port
+ * ranges, e.g. "20000-20003,20010".
+ */
+class HostPortAllocation {
+    static final int MAX_PORT = 65535;
+
+    private final BitSet used = new BitSet(MAX_PORT + 1);
+    private final Map<String, BitSet> portsByContainer = new HashMap<>();
+    private final Set<String> changedContainers = new HashSet<>();
+
+    /**
+     * Builds the allocation of the given profile, including the legacy reserved ports.
+     */
+    static HostPortAllocation of(HostPortProfileState state) {
+        HostPortAllocation allocation = new HostPortAllocation();
+        if (state.allocatedPortRanges != null) {
+            for (Entry<String, String> entry : state.allocatedPortRanges.entrySet()) {
+                BitSet ports = decode(entry.getValue());
+                allocation.portsByContainer.put(entry.getKey(), ports);
+                allocation.used.or(ports);
+            }
+        }
+        if (state.reservedPorts != null) {
+            for (Entry<Long, String> entry : state.reservedPorts.entrySet()) {
+                allocation.allocate(entry.getValue(), entry.getKey());
+            }
+        }
+        return allocation;
+    }
+
+    /**
+     * Returns the ports of the given container in the given profile without building the
+     * allocation of the whole profile.
+     */
+    static Set<Long> getPorts(HostPortProfileState state, String containerLink) {
+        Set<Long> result = new HashSet<>();
+        String ranges = state.allocatedPortRanges == null ? null
+                : state.allocatedPortRanges.get(containerLink);
+        if (ranges != null) {
+            BitSet ports = decode(ranges);
+            for (int p = ports.nextSetBit(0); p >= 0; p = ports.nextSetBit(p + 1)) {
+                result.add((long) p);
+            }
+        }
+        if (state.reservedPorts != null) {
+            state.reservedPorts.forEach((port, link) -> {
+                if (containerLink.equals(link)) {
+                    result.add(port);
+                }
+            });
+        }
+        return result;
+    }
+
+    Set<Long> getPorts(String containerLink) {
+        Set<Long> result = new HashSet<>();
+        BitSet ports = portsByContainer.get(containerLink);
+        if (ports != null) {
+            for (int p = ports.nextSetBit(0); p >= 0; p = ports.nextSetBit(p + 1)) {
+                result.add((long) p);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Allocates the given port to the given container. A port allocated to another container is
+     * moved to the given one.
+     */
+    void allocate(String containerLink, long port) {
+        if (port < 0 || port > MAX_PORT) {
+            throw new IllegalArgumentException("Invalid port: " + port);
+        }
+        int p = (int) port;
+        if (used.get(p)) {
+            for (Entry<String, BitSet> entry : portsByContainer.entrySet()) {
+                if (entry.getValue().get(p)) {
+                    entry.getValue().clear(p);
+                    changedContainers.add(entry.getKey());
+                    break;
+                }
+            }
+        }
+        used.set(p);
+        portsByContainer.computeIfAbsent(containerLink, k -> new BitSet()).set(p);
+        changedContainers.add(containerLink);
+    }
+
+    /**
+     * Allocates the first free port in [fromPort, endPort) to the given container and returns
+     * it, or returns -1 if there is no free port left.
+     */
+    long allocateNext(String containerLink, long fromPort, long endPort) {
+        int from = (int) Math.max(0, fromPort);
+        int end = (int) Math.min(endPort, MAX_PORT + 1);
+        if (from >= end) {
+            return -1;
+        }
+        int p = used.nextClearBit(from);
+        if (p >= end) {
+            return -1;
+        }
+        allocate(containerLink, p);
+        return p;
+    }
+
+    void release(String containerLink) {
+        BitSet ports = portsByContainer.remove(containerLink);
+        if (ports != null) {
+            used.andNot(ports);
+            changedContainers.add(containerLink);
+        }
+    }
+
+    /**
+     * Writes the changed containers to the given profile and drops its legacy reserved ports.
+     */
+    void writeTo(HostPortProfileState state) {
+        if (state.allocatedPortRanges == null) {
+            state.allocatedPortRanges = new HashMap<>();
+        }
+        if (state.reservedPorts != null) {
+            changedContainers.addAll(state.reservedPorts.values());
+            state.reservedPorts = null;
+        }
+        for (String containerLink : changedContainers) {
+            BitSet ports = portsByContainer.get(containerLink);
+            if (ports == null || ports.isEmpty()) {
+                state.allocatedPortRanges.remove(containerLink);
+            } else {
+                state.allocatedPortRanges.put(containerLink, encode(ports));
+            }
+        }
+        changedContainers.clear();
+    }
+
+    static String encode(BitSet ports) {
+        StringBuilder sb = new StringBuilder();
+        for (int start = ports.nextSetBit(0); start >= 0;
+                start = ports.nextSetBit(start + 1)) {
+            int end = ports.nextClearBit(start) - 1;
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(start);
+            if (end > start) {
+                sb.append('-').append(end);
+            }
+            start = end;
+        }
+        return sb.toString();
+    }
+
+    static BitSet decode(String ranges) {
+        BitSet ports = new BitSet();
+        if (ranges == null || ranges.isEmpty()) {
+            return ports;
+        }
+        for (String range : ranges.split(",")) {
+            int dash = range.indexOf('-');
+            if (dash < 0) {
+                ports.set(Integer.parseInt(range.trim()));
+            } else {
+                ports.set(Integer.parseInt(range.substring(0, dash).trim()),
+                        Integer.parseInt(range.substring(dash + 1).trim()) + 1);
+            }
+        }
+        return ports;
+    }
+}
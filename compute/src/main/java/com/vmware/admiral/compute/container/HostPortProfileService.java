@@ -14,11 +14,11 @@ package com.vmware.admiral.compute.container;
 import static com.vmware.admiral.common.util.AssertUtil.assertNotEmpty;
 import static com.vmware.admiral.common.util.AssertUtil.assertNotNull;
 
+import java.util.BitSet;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 import com.vmware.admiral.common.ManagementUriParts;
 import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
@@ -35,8 +35,9 @@ import com.vmware.xenon.common.Utils;
 /**
  * Host port profile service reserves host ports for a container.
  *
- * It tracks reserved port in the port to container map.
- * When port is released, it is removed from the map.
+ * It tracks the reserved ports of each container as a list of port ranges. When the ports are
+ * released, the container is removed from the map. Profiles with ports in the legacy port to
+ * container map are migrated when they are updated.
  */
 public class HostPortProfileService extends StatefulService {
     public static final String FACTORY_LINK = ManagementUriParts.HOST_PORT_PROFILES;
@@ -65,8 +66,16 @@ public class HostPortProfileService extends StatefulService {
         @UsageOption(option = ServiceDocumentDescription.PropertyUsageOption.REQUIRED)
         public long endPort;
 
-        /** Host port to container link map. */
-        @ServiceDocument.Documentation(description = "Host port to container link map.")
+        /** Container link to reserved host port ranges map, e.g. "20000-20003,20010". */
+        @ServiceDocument.Documentation(description = "Container link to reserved host port ranges"
+                + " map.")
+        public Map<String, String> allocatedPortRanges;
+
+        /**
+         * Host port to container link map of profiles created by previous versions. The ports are
+         * moved to {@link #allocatedPortRanges} when the profile is updated.
+         */
+        @ServiceDocument.Documentation(description = "Legacy host port to container link map.")
         public Map<Long, String> reservedPorts;
     }
 
@@ -92,6 +101,11 @@ public class HostPortProfileService extends StatefulService {
         /** Specific host ports to allocate. */
         public Set<Long> specificHostPorts;
 
+        /**
+         * Requests for other containers to apply in the same PATCH, after this one. The
+         * containerLink of this request is optional when they are set.
+         */
+        public List<HostPortProfileReservationRequest> containerRequests;
     }
 
     public HostPortProfileService() {
@@ -110,6 +124,7 @@ public class HostPortProfileService extends StatefulService {
 
         if (patch.getBodyRaw() instanceof HostPortProfileState) {
             HostPortProfileState hostPortProfileState = patch.getBody(HostPortProfileState.class);
+            HostPortAllocation.of(hostPortProfileState).writeTo(hostPortProfileState);
             validate(hostPortProfileState);
             setState(patch, hostPortProfileState);
             patch.setBody(null).complete();
@@ -118,24 +133,38 @@ public class HostPortProfileService extends StatefulService {
 
         HostPortProfileReservationRequest request = patch.getBody(HostPortProfileReservationRequest.class);
 
+        HostPortProfileState hostPortProfileState = getState(patch);
+        HostPortAllocation allocation = HostPortAllocation.of(hostPortProfileState);
+        if (request.containerLink != null || request.containerRequests == null) {
+            applyReservationRequest(hostPortProfileState, allocation, request);
+        }
+        if (request.containerRequests != null) {
+            for (HostPortProfileReservationRequest containerRequest : request.containerRequests) {
+                applyReservationRequest(hostPortProfileState, allocation, containerRequest);
+            }
+        }
+        allocation.writeTo(hostPortProfileState);
+        patch.setBody(hostPortProfileState);
+        patch.complete();
+    }
+
+    private void applyReservationRequest(HostPortProfileState state,
+            HostPortAllocation allocation, HostPortProfileReservationRequest request) {
         assertNotEmpty(request.containerLink, "containerLink");
         assertNotNull(request.mode, "mode");
-        HostPortProfileState hostPortProfileState = getState(patch);
         switch (request.mode) {
         case ALLOCATE:
-            allocatePorts(hostPortProfileState, request);
+            allocatePorts(state, allocation, request);
             break;
         case RELEASE:
-            releasePorts(hostPortProfileState, request);
+            releasePorts(state, allocation, request);
             break;
         case UPDATE_ALLOCATION:
-            updatePortAllocationForContainer(hostPortProfileState, request);
+            updatePortAllocationForContainer(state, allocation, request);
             break;
         default:
             throw new UnsupportedOperationException("This operation is not supported: " + request.mode);
         }
-        patch.setBody(hostPortProfileState);
-        patch.complete();
     }
 
     public static String getHostPortProfileLink(String hostLink) {
@@ -144,87 +173,97 @@ public class HostPortProfileService extends StatefulService {
     }
 
     public static Set<Long> getAllocatedPorts(HostPortProfileState profile, String containerLink) {
-        return profile.reservedPorts.entrySet()
-                .stream()
-                .filter(p -> p.getValue().equals(containerLink))
-                .map(k -> k.getKey())
-                .collect(Collectors.toSet());
+        return HostPortAllocation.getPorts(profile, containerLink);
+    }
+
+    /**
+     * Returns the host port to container link map of all reserved ports of the given profile.
+     */
+    public static Map<Long, String> getReservedPorts(HostPortProfileState profile) {
+        Map<Long, String> reservedPorts = new HashMap<>();
+        if (profile.allocatedPortRanges != null) {
+            profile.allocatedPortRanges.forEach((containerLink, ranges) -> {
+                BitSet ports = HostPortAllocation.decode(ranges);
+                for (int p = ports.nextSetBit(0); p >= 0; p = ports.nextSetBit(p + 1)) {
+                    reservedPorts.put((long) p, containerLink);
+                }
+            });
+        }
+        if (profile.reservedPorts != null) {
+            reservedPorts.putAll(profile.reservedPorts);
+        }
+        return reservedPorts;
     }
 
     /**
      * Update container port allocation.
      * Mark container ports as allocated and release ports that are not used anymore
      */
-    private void updatePortAllocationForContainer(HostPortProfileState state, HostPortProfileReservationRequest request) {
-        Set<Long> previousPorts = getAllocatedPorts(state, request.containerLink);
+    private void updatePortAllocationForContainer(HostPortProfileState state,
+            HostPortAllocation allocation, HostPortProfileReservationRequest request) {
+        Set<Long> previousPorts = allocation.getPorts(request.containerLink);
         // First remove all ports, this will remove ports that are not allocated anymore
-        releasePorts(state, request);
+        releasePorts(state, allocation, request);
         // Second mark ports allocated
-        allocateSpecificPorts(state, request);
+        allocateSpecificPorts(allocation, request);
         logInfo("Updating port allocation from [%s] to [%s] for container [%s] and profile [%s]",
                 previousPorts,
-                getAllocatedPorts(state, request.containerLink),
+                allocation.getPorts(request.containerLink),
                 request.containerLink,
                 state.documentSelfLink);
     }
 
     /** Release all ports for HostPortProfileReservationRequest. */
-    private void releasePorts(HostPortProfileState state, HostPortProfileReservationRequest request) {
+    private void releasePorts(HostPortProfileState state, HostPortAllocation allocation,
+            HostPortProfileReservationRequest request) {
         logInfo("Releasing ports [%s] for container [%s] and profile [%s].",
-                getAllocatedPorts(state, request.containerLink),
+                allocation.getPorts(request.containerLink),
                 request.containerLink,
                 state.documentSelfLink);
         // remove container host ports from reserved ports
-        state.reservedPorts.entrySet()
-                .removeIf(p -> request.containerLink.equals(p.getValue()));
+        allocation.release(request.containerLink);
     }
 
     /** Allocate all ports for HostPortProfileReservationRequest. */
-    private void allocatePorts(HostPortProfileState state,
+    private void allocatePorts(HostPortProfileState state, HostPortAllocation allocation,
                                HostPortProfileReservationRequest request) {
-        allocateSpecificPorts(state, request);
-        allocateAdditionalPorts(state, request);
+        allocateSpecificPorts(allocation, request);
+        allocateAdditionalPorts(state, allocation, request);
 
         logInfo("Allocating ports [%s] for container [%s] and profile [%s].",
-                getAllocatedPorts(state, request.containerLink),
+                allocation.getPorts(request.containerLink),
                 request.containerLink,
                 state.documentSelfLink);
     }
 
     /** Allocate a number of any available ports. */
     private void allocateAdditionalPorts(HostPortProfileState state,
-                                         HostPortProfileReservationRequest request) {
+            HostPortAllocation allocation, HostPortProfileReservationRequest request) {
         long statIndex = state.startPort;
 
         for (long i = 0; i < request.additionalHostPortCount; i++) {
-            Long allocatedPort = null;
-            for (long k = statIndex; k < state.endPort; k++) {
-                if (!state.reservedPorts.containsKey(k)) {
-                    allocatedPort = k;
-                    state.reservedPorts.put(allocatedPort, request.containerLink);
-                    // start from the next index for the next allocation
-                    statIndex = k + 1;
-                    break;
-                }
-            }
-            if (allocatedPort == null) {
+            long allocatedPort = allocation.allocateNext(request.containerLink, statIndex,
+                    state.endPort);
+            if (allocatedPort < 0) {
                 LocalizableValidationException exception =
                         new LocalizableValidationException(
                                 "Unable to allocate hostPort. There are no available ports left.",
                                 "compute.host.port.unavailable");
                 throw exception;
             }
+            // start from the next index for the next allocation
+            statIndex = allocatedPort + 1;
         }
     }
 
     /** Allocate specific ports. */
-    private void allocateSpecificPorts(HostPortProfileState state,
+    private void allocateSpecificPorts(HostPortAllocation allocation,
                                        HostPortProfileReservationRequest request) {
         if (request.specificHostPorts == null) {
             return;
         }
 
-        request.specificHostPorts.forEach(p -> state.reservedPorts.put(p, request.containerLink));
+        request.specificHostPorts.forEach(p -> allocation.allocate(request.containerLink, p));
     }
 
     @Override
@@ -244,9 +283,7 @@ public class HostPortProfileService extends StatefulService {
             state.endPort = HostPortProfileState.PROFILE_RANGE_END_PORT;
         }
 
-        if (state.reservedPorts == null) {
-            state.reservedPorts = new LinkedHashMap<>();
-        }
+        HostPortAllocation.of(state).writeTo(state);
 
         validate(state);
         start.complete();
@@ -266,6 +303,7 @@ public class HostPortProfileService extends StatefulService {
         }
 
         HostPortProfileState hostPortProfileState = op.getBody(HostPortProfileState.class);
+        HostPortAllocation.of(hostPortProfileState).writeTo(hostPortProfileState);
         validate(hostPortProfileState);
         hostPortProfileState.copyTenantLinks(getState(op));
 
@@ -277,6 +315,7 @@ public class HostPortProfileService extends StatefulService {
     public ServiceDocument getDocumentTemplate() {
         HostPortProfileState template = (HostPortProfileState) super.getDocumentTemplate();
         com.vmware.photon.controller.model.ServiceUtils.setRetentionLimit(template);
+        template.allocatedPortRanges = new HashMap<>();
         template.reservedPorts = new HashMap<>();
 
         return template;
@@ -46,6 +46,7 @@ import com.vmware.admiral.compute.container.ContainerService.ContainerState;
 import com.vmware.admiral.compute.container.ContainerShellService;
 import com.vmware.admiral.compute.container.ContainerStatsService;
 import com.vmware.admiral.compute.container.DeploymentPolicyService;
+import com.vmware.admiral.compute.container.GroupResourcePlacementReservationLedger;
 import com.vmware.admiral.compute.container.GroupResourcePlacementService;
 import com.vmware.admiral.compute.container.HostContainerListDataCollection;
 import com.vmware.admiral.compute.container.HostNetworkListDataCollection;
@@ -95,6 +96,7 @@ import com.vmware.admiral.image.service.FavoriteImagesService;
 import com.vmware.photon.controller.model.resources.ComputeDescriptionService;
 import com.vmware.photon.controller.model.resources.ComputeService;
 import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
+import com.vmware.photon.controller.model.util.StartServicesHelper;
 import com.vmware.photon.controller.model.util.StartServicesHelper.ServiceMetadata;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.ServiceDocument;
@@ -139,6 +141,7 @@ public class HostInitComputeServicesConfig extends HostInitServiceHelper {
                     service(PKSCreateEndpointService.class),
                     service(FavoriteImagePopulateInEmbeddedService.class),
                     service(ContainerHostService.class),
+                    service(GroupResourcePlacementReservationLedger.class),
 
                     factoryService(CaSigningCertService.class),
                     factoryService(GroupResourcePlacementService.class),
@@ -215,6 +218,10 @@ public class HostInitComputeServicesConfig extends HostInitServiceHelper {
 
         startServices(host, ContainerHostService.class);
 
+        // the test hosts make the ledger privileged here, the management host does on its own
+        StartServicesHelper.startServices(host, new ServiceMetadata[] {
+                service(GroupResourcePlacementReservationLedger.class).requirePrivileged(true) });
+
         // start initialization of system documents
         host.sendRequest(Operation.createPost(
                 UriUtils.buildUri(host, ComputeInitialBootService.class))
@@ -44,6 +44,7 @@ public abstract class ComputeBaseTest extends BaseTestCase {
     @Before
     public void beforeForComputeBase() throws Throwable {
         host.addPrivilegedService(ContainerHostDataCollectionService.class);
+        host.addPrivilegedService(ContainerStatsService.class);
         startServices(host);
         waitForInitialBootServiceToBeSelfStopped(ComputeInitialBootService.SELF_LINK);
     }
@@ -11,6 +11,9 @@
 
 package com.vmware.admiral.compute.container;
 
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.net.URI;
@@ -22,6 +25,7 @@ import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
@@ -39,6 +43,7 @@ import com.vmware.admiral.common.util.ServiceDocumentQuery;
 import com.vmware.admiral.compute.ComputeConstants;
 import com.vmware.admiral.compute.ContainerHostService;
 import com.vmware.admiral.compute.container.ContainerHostDataCollectionService.ContainerHostDataCollectionState;
+import com.vmware.admiral.compute.container.ContainerHostDataCollectionService.EventsStreamObservation;
 import com.vmware.admiral.compute.container.ContainerService.ContainerState;
 import com.vmware.admiral.compute.container.ContainerService.ContainerState.PowerState;
 import com.vmware.admiral.service.test.MockDockerAdapterService;
@@ -982,6 +987,50 @@ public class ContainerHostDataCollectionServiceTest extends ComputeBaseTest {
         return cd;
     }
 
+    @Test
+    public void testEventsStreamObservation() {
+        // the adapter clock is far behind, only its own values are compared
+        long adapterNow = 1000;
+        long now = TimeUnit.DAYS.toMicros(1);
+        ComputeState cs = new ComputeState();
+        cs.customProperties = new HashMap<>();
+        assertNull(EventsStreamObservation.create(cs, now));
+
+        setEventsStream(cs, adapterNow, adapterNow);
+        EventsStreamObservation stream = EventsStreamObservation.create(cs, now);
+        assertFalse(stream.isListOutdated(cs, now + TimeUnit.MINUTES.toMicros(2)));
+
+        // the heartbeat goes on
+        setEventsStream(cs, adapterNow, adapterNow + TimeUnit.MINUTES.toMicros(1));
+        assertFalse(stream.isListOutdated(cs, now + TimeUnit.MINUTES.toMicros(4)));
+
+        // the heartbeat stopped, e.g. the adapter node is gone without resetting the stream
+        assertTrue(stream.isListOutdated(cs, now + TimeUnit.MINUTES.toMicros(7)));
+
+        // reconnected or disconnected since the list
+        setEventsStream(cs, adapterNow + 1, adapterNow + 1);
+        assertTrue(stream.isListOutdated(cs, now));
+        assertFalse(EventsStreamObservation.create(cs, now).isListOutdated(cs, now));
+        setEventsStream(cs, 0, adapterNow + 1);
+        assertNull(EventsStreamObservation.create(cs, now));
+
+        // the full list is still done periodically
+        setEventsStream(cs, adapterNow, adapterNow);
+        stream = EventsStreamObservation.create(cs, now);
+        for (int i = 1; i <= 60; i++) {
+            setEventsStream(cs, adapterNow, adapterNow + i);
+            assertFalse(stream.isListOutdated(cs, now + TimeUnit.MINUTES.toMicros(i) - 1));
+        }
+        assertTrue(stream.isListOutdated(cs, now + TimeUnit.HOURS.toMicros(1)));
+    }
+
+    private static void setEventsStream(ComputeState cs, long connectedSince, long heartbeat) {
+        cs.customProperties.put(ContainerHostService.EVENTS_STREAM_CONNECTED_SINCE_PROP_NAME,
+                String.valueOf(connectedSince));
+        cs.customProperties.put(ContainerHostService.EVENTS_STREAM_HEARTBEAT_PROP_NAME,
+                String.valueOf(heartbeat));
+    }
+
     public static class MockInspectAdapterService extends StatelessService {
         public static final String SELF_LINK = ManagementUriParts.ADAPTER_DOCKER;
 
@@ -13,15 +13,20 @@ package com.vmware.admiral.compute.container;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Test;
 
 import com.vmware.admiral.compute.container.ContainerService.ContainerState;
+import com.vmware.admiral.service.common.ContainerLogStore;
 import com.vmware.admiral.service.common.LogService;
 import com.vmware.admiral.service.common.LogService.LogServiceState;
 import com.vmware.xenon.common.Operation;
@@ -62,20 +67,94 @@ public class ContainerLogServiceTest extends ComputeBaseTest {
         assertEquals(TEST_LOG_CONTENT, new String(currentLogState.logs));
     }
 
-    private LogServiceState getContainerLog() throws Throwable {
-        LogServiceState[] result = new LogServiceState[] { null };
+    @Test
+    public void testLogFromStore() throws Throwable {
+        logState = doPost(logState, LogService.FACTORY_LINK);
+        ContainerLogStore.getInstance(host).update(container.documentSelfLink,
+                "line1\nline2\n".getBytes());
+
+        LogServiceState currentLogState = getContainerLog();
+        assertEquals("line1\nline2\n", new String(currentLogState.logs));
+
+        currentLogState = getContainerLog(ContainerLogService.TAIL_QUERY_PARAM + "=1");
+        assertEquals("line2\n", new String(currentLogState.logs));
+
+        Operation raw = getContainerLogOperation(ContainerLogService.RAW_QUERY_PARAM + "=true");
+        assertEquals(Operation.MEDIA_TYPE_TEXT_PLAIN, raw.getContentType());
+        assertEquals("line1\nline2\n", new String(raw.getBody(byte[].class)));
+    }
+
+    @Test
+    public void testLogWithOptionsFromStore() throws Throwable {
+        ContainerLogStore store = ContainerLogStore.getInstance(host);
+        store.update(container.documentSelfLink, "line1\n".getBytes());
+        store.update(ContainerLogStore.getLogKey(container.documentSelfLink,
+                Collections.singletonMap(ContainerLogStore.TIMESTAMPS_OPTION, "true")),
+                "2020-01-01T00:00:00Z line1\n".getBytes());
+
+        // the logs fetched with other options are not mixed
+        assertEquals("2020-01-01T00:00:00Z line1\n", new String(getContainerLog(
+                ContainerLogStore.TIMESTAMPS_OPTION + "=true").logs));
+        assertEquals("line1\n", new String(getContainerLog(
+                ContainerLogStore.TIMESTAMPS_OPTION + "=false").logs));
+    }
+
+    @Test
+    public void testFollowLog() throws Throwable {
+        ContainerLogStore store = ContainerLogStore.getInstance(host);
+        store.update(container.documentSelfLink, "line1\n".getBytes());
+        long cursor = getContainerLog().documentUpdateTimeMicros;
+
+        host.schedule(() -> store.update(container.documentSelfLink,
+                "line1\nline2\n".getBytes()), 500, TimeUnit.MILLISECONDS);
+        LogServiceState currentLogState = getContainerLog(
+                ContainerLogService.FOLLOW_QUERY_PARAM + "=true&"
+                        + ContainerLogService.CURSOR_QUERY_PARAM + "=" + cursor);
+        assertEquals("line2\n", new String(currentLogState.logs));
+        assertTrue(currentLogState.documentUpdateTimeMicros > cursor);
+    }
+
+    @Test
+    public void testDeleteLog() throws Throwable {
+        ContainerLogStore store = ContainerLogStore.getInstance(host);
+        store.update(container.documentSelfLink, "line1\n".getBytes());
+
+        host.testStart(1);
+        host.send(Operation.createDelete(UriUtils.buildUri(host, ContainerLogService.SELF_LINK,
+                ContainerLogService.CONTAINER_ID_QUERY_PARAM + "="
+                        + extractId(container.documentSelfLink)))
+                .setCompletion(host.getCompletion()));
+        host.testWait();
+
+        assertNull(store.read(container.documentSelfLink, null, null));
+        // the service is still running
+        assertEquals("--", new String(getContainerLog().logs));
+    }
+
+    private LogServiceState getContainerLog(String... params) throws Throwable {
+        LogServiceState result = getContainerLogOperation(params).getBody(LogServiceState.class);
+        assertNotNull(result);
+        return result;
+    }
+
+    private Operation getContainerLogOperation(String... params) throws Throwable {
+        Operation[] result = new Operation[] { null };
+
+        StringBuilder query = new StringBuilder(ContainerLogService.CONTAINER_ID_QUERY_PARAM
+                + "=" + extractId(container.documentSelfLink));
+        for (String param : params) {
+            query.append('&').append(param);
+        }
 
         host.testStart(1);
         host.send(Operation.createGet(
-                UriUtils.buildUri(host, ContainerLogService.SELF_LINK,
-                        ContainerLogService.CONTAINER_ID_QUERY_PARAM + "="
-                                + extractId(container.documentSelfLink)))
+                UriUtils.buildUri(host, ContainerLogService.SELF_LINK, query.toString()))
                 .setCompletion((o, e) -> {
                     if (e != null) {
                         host.failIteration(e);
                         return;
                     }
-                    result[0] = o.getBody(LogServiceState.class);
+                    result[0] = o;
                     host.completeIteration();
                 }));
         host.testWait();
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.compute.container;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState;
+import com.vmware.admiral.compute.container.ContainerStatsServiceTest.MockAdapterService;
+import com.vmware.photon.controller.model.resources.ComputeService;
+import com.vmware.xenon.common.DeferredResult;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceStats;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.UriUtils;
+
+public class ContainerStatsSamplerTest extends ComputeBaseTest {
+    private static final long INTERVAL_MICROS = TimeUnit.HOURS.toMicros(1);
+
+    private MockAdapterService mockAdapterService;
+    private SamplingService samplingService;
+
+    public static class SamplingService extends StatelessService {
+        public static final String SELF_LINK = "/test/container-stats-sampling";
+    }
+
+    @Before
+    public void setUp() throws Throwable {
+        mockAdapterService = new MockAdapterService();
+        host.startService(Operation.createPost(
+                UriUtils.buildUri(host, ManagementUriParts.ADAPTER_DOCKER)), mockAdapterService);
+        waitForServiceAvailability(ManagementUriParts.ADAPTER_DOCKER);
+
+        host.addPrivilegedService(SamplingService.class);
+        samplingService = new SamplingService();
+        host.startService(Operation.createPost(
+                UriUtils.buildUri(host, SamplingService.SELF_LINK)), samplingService);
+        waitForServiceAvailability(SamplingService.SELF_LINK);
+        waitForServiceAvailability(ContainerFactoryService.SELF_LINK);
+    }
+
+    @After
+    public void tearDown() throws Throwable {
+        stopService(mockAdapterService);
+        stopService(samplingService);
+    }
+
+    @Test
+    public void testStatsAreServedFromMemory() throws Throwable {
+        ContainerStatsSampler sampler = new ContainerStatsSampler(samplingService,
+                INTERVAL_MICROS, 3, INTERVAL_MICROS);
+        ContainerState container = createContainer("host1");
+
+        ServiceStats stats = await(sampler.getStats(container));
+        assertNotNull(stats);
+        assertEquals(ServiceStats.KIND, stats.documentKind);
+        assertTrue(mockAdapterService.isInspectInvokedForResource(container.documentSelfLink));
+        assertTrue(mockAdapterService.isStatsInvokedForResource(container.documentSelfLink));
+
+        mockAdapterService.reset();
+        assertEquals(stats.documentUpdateTimeMicros,
+                await(sampler.getStats(container)).documentUpdateTimeMicros);
+        assertFalse(mockAdapterService.isStatsInvokedForResource(container.documentSelfLink));
+        assertEquals(1, sampler.getWatchedCount());
+    }
+
+    @Test
+    public void testHistoryIsBounded() throws Throwable {
+        ContainerStatsSampler sampler = new ContainerStatsSampler(samplingService,
+                INTERVAL_MICROS, 3, INTERVAL_MICROS);
+        ContainerState container1 = createContainer("host1");
+        ContainerState container2 = createContainer("host1");
+        ContainerState container3 = createContainer("host2");
+        await(sampler.getStats(container1));
+        await(sampler.getStats(container2));
+        await(sampler.getStats(container3));
+
+        mockAdapterService.reset();
+        for (int i = 0; i < 5; i++) {
+            await(sampler.collect());
+        }
+        assertTrue(mockAdapterService.isStatsInvokedForResource(container1.documentSelfLink));
+        assertTrue(mockAdapterService.isStatsInvokedForResource(container2.documentSelfLink));
+        assertTrue(mockAdapterService.isStatsInvokedForResource(container3.documentSelfLink));
+        // inspected on the first sample only
+        assertFalse(mockAdapterService.isInspectInvokedForResource(container1.documentSelfLink));
+
+        List<ServiceStats> samples = await(sampler.getHistory(container1));
+        assertEquals(3, samples.size());
+        for (int i = 1; i < samples.size(); i++) {
+            assertTrue(samples.get(i - 1).documentUpdateTimeMicros
+                    <= samples.get(i).documentUpdateTimeMicros);
+        }
+        assertEquals(samples.get(2).documentUpdateTimeMicros,
+                await(sampler.getStats(container1)).documentUpdateTimeMicros);
+    }
+
+    @Test
+    public void testContainersNotReadAreNotSampled() throws Throwable {
+        ContainerStatsSampler sampler = new ContainerStatsSampler(samplingService,
+                INTERVAL_MICROS, 3, 0);
+        ContainerState container = createContainer("host1");
+        await(sampler.getStats(container));
+        assertEquals(1, sampler.getWatchedCount());
+
+        mockAdapterService.reset();
+        Thread.sleep(1);
+        await(sampler.collect());
+        assertFalse(mockAdapterService.isStatsInvokedForResource(container.documentSelfLink));
+        assertEquals(0, sampler.getWatchedCount());
+    }
+
+    @Test
+    public void testRemovedContainersAreNotWatched() throws Throwable {
+        ContainerStatsSampler sampler = new ContainerStatsSampler(samplingService,
+                INTERVAL_MICROS, 3, INTERVAL_MICROS);
+        ContainerState container = createContainer("host1");
+        await(sampler.getStats(container));
+
+        delete(container.documentSelfLink);
+        await(sampler.collect());
+        assertEquals(0, sampler.getWatchedCount());
+    }
+
+    private ContainerState createContainer(String hostId) throws Throwable {
+        ContainerState container = new ContainerState();
+        container.image = "test-image";
+        container.parentLink = UriUtils.buildUriPath(ComputeService.FACTORY_LINK, hostId);
+        container.adapterManagementReference = UriUtils.buildUri(ManagementUriParts.ADAPTER_DOCKER);
+        container.status = ContainerState.CONTAINER_RUNNING_STATUS;
+        return doPost(container, ContainerFactoryService.SELF_LINK);
+    }
+
+    private static <T> T await(DeferredResult<T> result) throws Throwable {
+        return result.toCompletionStage().toCompletableFuture().get(30, TimeUnit.SECONDS);
+    }
+}
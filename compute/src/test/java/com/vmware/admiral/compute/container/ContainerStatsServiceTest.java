@@ -32,6 +32,7 @@ import com.vmware.admiral.common.ManagementUriParts;
 import com.vmware.admiral.compute.container.ContainerDescriptionService.ContainerDescription;
 import com.vmware.admiral.compute.container.ContainerService.ContainerState;
 import com.vmware.admiral.compute.container.ContainerService.ContainerState.PowerState;
+import com.vmware.admiral.compute.container.ContainerStatsService.ContainerStatsHistory;
 import com.vmware.admiral.compute.container.HealthChecker.HealthConfig;
 import com.vmware.admiral.compute.container.HealthChecker.HealthConfig.HttpVersion;
 import com.vmware.admiral.compute.container.HealthChecker.HealthConfig.RequestProtocol;
@@ -243,8 +244,15 @@ public class ContainerStatsServiceTest extends ComputeBaseTest {
             stats = response.getBody(ServiceStats.class);
             assertNotNull(stats);
             assertEquals(ServiceStats.KIND, stats.documentKind);
-            assertTrue(mockAdapterService.isStatsInvokedForResource(containerLink));
+            // served by the sampler, until the next collection
+            assertFalse(mockAdapterService.isStatsInvokedForResource(containerLink));
             assertFalse(mockAdapterService.isInspectInvokedForResource(containerLink));
+
+            response = sender.sendAndWait(Operation.createGet(UriUtils.buildUri(host,
+                    ContainerStatsService.SELF_LINK, query + "&"
+                            + ContainerStatsService.HISTORY_QUERY_PARAM + "=true")));
+            ContainerStatsHistory history = response.getBody(ContainerStatsHistory.class);
+            assertEquals(1, history.samples.size());
         } finally {
             stopService(mockAdapterService);
         }
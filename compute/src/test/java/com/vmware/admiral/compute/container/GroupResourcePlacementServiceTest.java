@@ -24,6 +24,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
@@ -44,12 +45,14 @@ import com.vmware.admiral.compute.container.ContainerService.ContainerState;
 import com.vmware.admiral.compute.container.GroupResourcePlacementService.GroupResourcePlacementPoolState;
 import com.vmware.admiral.compute.container.GroupResourcePlacementService.GroupResourcePlacementState;
 import com.vmware.admiral.compute.container.GroupResourcePlacementService.ResourcePlacementReservationRequest;
+import com.vmware.admiral.compute.container.GroupResourcePlacementService.ResourcePlacementReservationResponse;
 import com.vmware.photon.controller.model.resources.ResourcePoolService;
 import com.vmware.photon.controller.model.resources.ResourcePoolService.ResourcePoolState;
 import com.vmware.xenon.common.FactoryService;
 import com.vmware.xenon.common.LocalizableValidationException;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.Service.Action;
+import com.vmware.xenon.common.ServiceStats.ServiceStat;
 import com.vmware.xenon.common.UriUtils;
 import com.vmware.xenon.common.Utils;
 import com.vmware.xenon.common.test.VerificationHost;
@@ -459,6 +462,145 @@ public class GroupResourcePlacementServiceTest extends ComputeBaseTest {
         doDelete(UriUtils.buildUri(host, noLimitsContainerDescription.documentSelfLink), false);
     }
 
+    @Test
+    public void testBatchedReservationRequest() throws Throwable {
+        GroupResourcePlacementState placementState = createAndStoreGroupResourcePlacement();
+        String descLink = containerDescription.documentSelfLink;
+
+        // the second request does not fit after the first one, the third one does
+        ResourcePlacementReservationRequest batchRequest = new ResourcePlacementReservationRequest();
+        batchRequest.referer = requestReservationTaskURI.getPath();
+        batchRequest.batch = Arrays.asList(
+                createReservationRequest(6, descLink),
+                createReservationRequest(5, descLink),
+                createReservationRequest(2, descLink));
+
+        ResourcePlacementReservationResponse[] response =
+                new ResourcePlacementReservationResponse[1];
+        host.testStart(1);
+        host.send(Operation
+                .createPatch(UriUtils.buildUri(host, placementState.documentSelfLink))
+                .setBody(batchRequest)
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        host.failIteration(e);
+                        return;
+                    }
+                    response[0] = o.getBody(ResourcePlacementReservationResponse.class);
+                    host.completeIteration();
+                }));
+        host.testWait();
+
+        assertEquals(3, response[0].failures.size());
+        assertEquals(null, response[0].failures.get(0));
+        assertNotNull(response[0].failures.get(1));
+        assertEquals(null, response[0].failures.get(2));
+        assertEquals(8, response[0].placement.allocatedInstancesCount);
+
+        placementState = getDocument(GroupResourcePlacementState.class,
+                placementState.documentSelfLink);
+        assertEquals(2, placementState.availableInstancesCount);
+        assertEquals(8, placementState.allocatedInstancesCount);
+        assertEquals(CONTAINER_MEMORY / 2, placementState.availableMemory);
+
+        releasePlacement(placementState, descLink, 8);
+    }
+
+    @Test
+    public void testConcurrentReservationsThroughLedger() throws Throwable {
+        int count = 200;
+        String descLink = containerDescription.documentSelfLink;
+        waitForServiceAvailability(GroupResourcePlacementReservationLedger.SELF_LINK);
+
+        // reservations sent directly, each one a PATCH to the placement
+        GroupResourcePlacementState placementState = savePlacement(createPlacement("direct",
+                0L, 0L, 0, 0, resourcePool.documentSelfLink, count), false);
+        long startMicros = Utils.getSystemNowMicrosUtc();
+        host.testStart(count);
+        for (int i = 0; i < count; i++) {
+            host.send(Operation
+                    .createPatch(UriUtils.buildUri(host, placementState.documentSelfLink))
+                    .setBody(createReservationRequest(1, descLink))
+                    .setCompletion(host.getCompletion()));
+        }
+        host.testWait();
+        logReservationRate("direct", count, startMicros, placementState.documentSelfLink);
+        placementState = getDocument(GroupResourcePlacementState.class,
+                placementState.documentSelfLink);
+        assertEquals(count, placementState.allocatedInstancesCount);
+
+        // the same reservations through the ledger, batched while a PATCH is in progress
+        placementState = savePlacement(createPlacement("ledger",
+                0L, 0L, 0, 0, resourcePool.documentSelfLink, count), false);
+        GroupResourcePlacementReservationLedger ledger = GroupResourcePlacementReservationLedger
+                .getInstance(host);
+        startMicros = Utils.getSystemNowMicrosUtc();
+        host.testStart(count);
+        for (int i = 0; i < count; i++) {
+            ledger.reserve(placementState.documentSelfLink,
+                    createReservationRequest(1, descLink))
+                    .whenComplete((p, e) -> {
+                        if (e != null) {
+                            host.failIteration(e);
+                            return;
+                        }
+                        host.completeIteration();
+                    });
+        }
+        host.testWait();
+        Map<String, ServiceStat> stats = logReservationRate("ledger", count, startMicros,
+                placementState.documentSelfLink);
+        placementState = getDocument(GroupResourcePlacementState.class,
+                placementState.documentSelfLink);
+        assertEquals(count, placementState.allocatedInstancesCount);
+        assertEquals(0, placementState.availableInstancesCount);
+        assertEquals(count, (long) stats.get(
+                GroupResourcePlacementService.STAT_NAME_RESERVATION_REQUEST_COUNT).latestValue);
+        assertTrue(stats.get(ResourcePlacementReservationRequest.class.getSimpleName())
+                .latestValue < count);
+
+        // a reservation over the limit is rejected
+        host.testStart(1);
+        ledger.reserve(placementState.documentSelfLink,
+                createReservationRequest(1, descLink))
+                .whenComplete((p, e) -> {
+                    if (!(e instanceof LocalizableValidationException)) {
+                        host.failIteration(new IllegalStateException(
+                                "Expected validation failure but got: " + e));
+                        return;
+                    }
+                    host.completeIteration();
+                });
+        host.testWait();
+    }
+
+    private Map<String, ServiceStat> logReservationRate(String name, int count,
+            long startMicros, String placementLink) {
+        long durationMicros = Utils.getSystemNowMicrosUtc() - startMicros;
+        Map<String, ServiceStat> stats = host.getServiceStats(
+                UriUtils.buildUri(host, placementLink));
+        host.log("%s: %d reservations in %d ms (%.0f/s), %d PATCHes, average wait %.0f us",
+                name, count, TimeUnit.MICROSECONDS.toMillis(durationMicros),
+                count * 1_000_000.0 / durationMicros,
+                (long) stats.get(ResourcePlacementReservationRequest.class.getSimpleName())
+                        .latestValue,
+                stats.get(GroupResourcePlacementService.STAT_NAME_RESERVATION_WAIT_MICROS)
+                        .accumulatedValue / stats.get(
+                                GroupResourcePlacementService.STAT_NAME_RESERVATION_WAIT_MICROS)
+                        .version);
+        return stats;
+    }
+
+    private ResourcePlacementReservationRequest createReservationRequest(int count,
+            String descLink) {
+        ResourcePlacementReservationRequest rsrvRequest = new ResourcePlacementReservationRequest();
+        rsrvRequest.resourceCount = count;
+        rsrvRequest.resourceDescriptionLink = descLink;
+        rsrvRequest.referer = requestReservationTaskURI.getPath();
+        rsrvRequest.requestTimeMicros = Utils.getSystemNowMicrosUtc();
+        return rsrvRequest;
+    }
+
     private void releasePlacement(
             com.vmware.admiral.compute.container.GroupResourcePlacementService.GroupResourcePlacementState placementState,
             String descLink, int count)
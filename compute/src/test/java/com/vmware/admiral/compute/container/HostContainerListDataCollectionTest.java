@@ -304,6 +304,81 @@ public class HostContainerListDataCollectionTest extends ComputeBaseTest {
         assertEquals(PowerState.RETIRED, cs.powerState);
     }
 
+    @Test
+    public void testIncrementalContainerChanges() throws Throwable {
+        ContainerState removed = new ContainerState();
+        removed.id = UUID.randomUUID().toString();
+        removed.names = new ArrayList<>(Collections.singletonList("name_" + removed.id));
+        removed.parentLink = COMPUTE_HOST_LINK;
+        removed.powerState = ContainerState.PowerState.RUNNING;
+        removed = doPost(removed, ContainerFactoryService.SELF_LINK);
+
+        ContainerState renamed = new ContainerState();
+        renamed.id = UUID.randomUUID().toString();
+        renamed.names = new ArrayList<>(Collections.singletonList("name_" + renamed.id));
+        renamed.parentLink = COMPUTE_HOST_LINK;
+        renamed.powerState = ContainerState.PowerState.RUNNING;
+        renamed = doPost(renamed, ContainerFactoryService.SELF_LINK);
+
+        ContainerListCallback body = new ContainerListCallback();
+        body.containerHostLink = COMPUTE_HOST_LINK;
+        body.incremental = true;
+        body.containerIdsAndNames.put(renamed.id, "renamed");
+        body.removedContainerIds.add(removed.id);
+        host.testStart(1);
+        host.sendRequest(Operation
+                .createPatch(UriUtils.buildUri(host,
+                        DEFAULT_HOST_CONTAINER_LIST_DATA_COLLECTION_LINK))
+                .setBody(body)
+                .setReferer(host.getUri())
+                .setCompletion(host.getCompletion()));
+        host.testWait();
+
+        waitForPropertyValue(removed.documentSelfLink, ContainerState.class,
+                ContainerState.FIELD_NAME_POWER_STATE, PowerState.RETIRED);
+        String renamedLink = renamed.documentSelfLink;
+        waitFor(() -> Collections.singletonList("renamed").equals(
+                getDocument(ContainerState.class, renamedLink).names));
+    }
+
+    @Test
+    public void testIncrementalPowerStates() throws Throwable {
+        ContainerState stopped = new ContainerState();
+        stopped.id = UUID.randomUUID().toString();
+        stopped.names = new ArrayList<>(Collections.singletonList("name_" + stopped.id));
+        stopped.parentLink = COMPUTE_HOST_LINK;
+        stopped.powerState = ContainerState.PowerState.RUNNING;
+        stopped = doPost(stopped, ContainerFactoryService.SELF_LINK);
+
+        ContainerState started = new ContainerState();
+        started.id = UUID.randomUUID().toString();
+        started.names = new ArrayList<>(Collections.singletonList("name_" + started.id));
+        started.parentLink = COMPUTE_HOST_LINK;
+        started.powerState = ContainerState.PowerState.STOPPED;
+        started = doPost(started, ContainerFactoryService.SELF_LINK);
+
+        ContainerListCallback body = new ContainerListCallback();
+        body.containerHostLink = COMPUTE_HOST_LINK;
+        body.incremental = true;
+        body.containerLinksAndState.put(stopped.documentSelfLink, PowerState.STOPPED);
+        body.containerLinksAndState.put(started.documentSelfLink, PowerState.RUNNING);
+        body.containerLinksAndStarted.put(started.documentSelfLink, 1577836800000L);
+        host.testStart(1);
+        host.sendRequest(Operation
+                .createPatch(UriUtils.buildUri(host,
+                        DEFAULT_HOST_CONTAINER_LIST_DATA_COLLECTION_LINK))
+                .setBody(body)
+                .setReferer(host.getUri())
+                .setCompletion(host.getCompletion()));
+        host.testWait();
+
+        waitForPropertyValue(stopped.documentSelfLink, ContainerState.class,
+                ContainerState.FIELD_NAME_POWER_STATE, PowerState.STOPPED);
+        started = waitForPropertyValue(started.documentSelfLink, ContainerState.class,
+                ContainerState.FIELD_NAME_POWER_STATE, PowerState.RUNNING);
+        assertEquals(Long.valueOf(1577836800000L), started.started);
+    }
+
     @Test
     public void testStoppedContainer() throws Throwable {
         String image = "image:ver";
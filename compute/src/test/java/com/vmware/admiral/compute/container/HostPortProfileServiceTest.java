@@ -13,9 +13,14 @@ package com.vmware.admiral.compute.container;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Set;
 import java.util.UUID;
 import java.util.logging.Level;
 
@@ -46,7 +51,7 @@ public class HostPortProfileServiceTest extends ComputeBaseTest {
                     HostPortProfileService.HostPortProfileState profile =
                             (HostPortProfileService.HostPortProfileState) serviceDocument;
                     assertNotNull(profile.hostLink);
-                    assertNotNull(profile.reservedPorts);
+                    assertNotNull(profile.allocatedPortRanges);
                     assertTrue(profile.startPort >= HostPortProfileService.HostPortProfileState.PROFILE_RANGE_START_PORT
                              && profile.startPort < HostPortProfileService.HostPortProfileState.PROFILE_RANGE_START_PORT + 1000);
                     assertEquals(
@@ -100,17 +105,17 @@ public class HostPortProfileServiceTest extends ComputeBaseTest {
         request.additionalHostPortCount = 5;
 
         HostPortProfileService.HostPortProfileState result = patch(profile, request, false);
-        assertEquals(6, result.reservedPorts.size());
-        assertTrue(result.reservedPorts
+        assertEquals(6, HostPortProfileService.getReservedPorts(result).size());
+        assertTrue(HostPortProfileService.getReservedPorts(result)
                 .entrySet()
                 .stream()
                 .allMatch(p -> request.containerLink.equals(p.getValue())));
-        assertTrue(result.reservedPorts.containsKey(new Long(34567)));
+        assertTrue(HostPortProfileService.getReservedPorts(result).containsKey(new Long(34567)));
 
         request.containerLink = UUID.randomUUID().toString();
         result = patch(profile, request, false);
-        assertEquals(11, result.reservedPorts.size());
-        assertTrue(result.reservedPorts
+        assertEquals(11, HostPortProfileService.getReservedPorts(result).size());
+        assertTrue(HostPortProfileService.getReservedPorts(result)
                 .entrySet()
                 .stream()
                 .anyMatch(p -> p.getKey() == 34567 && request.containerLink.equals(p.getValue())));
@@ -161,8 +166,8 @@ public class HostPortProfileServiceTest extends ComputeBaseTest {
         releaseRequest.mode = HostPortProfileService.HostPortProfileReservationRequestMode.RELEASE;
 
         HostPortProfileService.HostPortProfileState result = patch(profile, releaseRequest, false);
-        assertEquals(1, result.reservedPorts.size());
-        assertTrue(result.reservedPorts
+        assertEquals(1, HostPortProfileService.getReservedPorts(result).size());
+        assertTrue(HostPortProfileService.getReservedPorts(result)
                 .entrySet()
                 .stream()
                 .noneMatch(p -> releaseRequest.containerLink.equals(p.getValue())));
@@ -191,9 +196,9 @@ public class HostPortProfileServiceTest extends ComputeBaseTest {
         allocateRequest.specificHostPorts.add(new Long(34568));
 
         HostPortProfileService.HostPortProfileState result = patch(profile, updateRequest, false);
-        assertEquals(2, result.reservedPorts.size());
-        assertEquals(updateRequest.containerLink, result.reservedPorts.get(new Long(34567)));
-        assertEquals(updateRequest.containerLink, result.reservedPorts.get(new Long(34568)));
+        assertEquals(2, HostPortProfileService.getReservedPorts(result).size());
+        assertEquals(updateRequest.containerLink, HostPortProfileService.getReservedPorts(result).get(new Long(34567)));
+        assertEquals(updateRequest.containerLink, HostPortProfileService.getReservedPorts(result).get(new Long(34568)));
     }
 
     @Test
@@ -219,10 +224,83 @@ public class HostPortProfileServiceTest extends ComputeBaseTest {
         allocateRequest.specificHostPorts.add(new Long(34568));
 
         HostPortProfileService.HostPortProfileState result = patch(profile, updateRequest, false);
-        assertEquals(3, result.reservedPorts.size());
-        assertEquals(updateRequest.containerLink, result.reservedPorts.get(new Long(34567)));
-        assertEquals(updateRequest.containerLink, result.reservedPorts.get(new Long(34568)));
-        assertTrue(result.reservedPorts.containsValue(allocateRequest.containerLink));
+        assertEquals(3, HostPortProfileService.getReservedPorts(result).size());
+        assertEquals(updateRequest.containerLink, HostPortProfileService.getReservedPorts(result).get(new Long(34567)));
+        assertEquals(updateRequest.containerLink, HostPortProfileService.getReservedPorts(result).get(new Long(34568)));
+        assertTrue(HostPortProfileService.getReservedPorts(result).containsValue(allocateRequest.containerLink));
+    }
+
+    @Test
+    public void testPatchBatchAllocateAndRelease() throws Throwable {
+        HostPortProfileService.HostPortProfileState profile = createHostPortProfile();
+        profile = doPost(profile, HostPortProfileService.FACTORY_LINK);
+
+        HostPortProfileService.HostPortProfileReservationRequest request =
+                new HostPortProfileService.HostPortProfileReservationRequest();
+        request.containerRequests = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            HostPortProfileService.HostPortProfileReservationRequest containerRequest =
+                    new HostPortProfileService.HostPortProfileReservationRequest();
+            containerRequest.containerLink = UUID.randomUUID().toString();
+            containerRequest.mode = HostPortProfileService.HostPortProfileReservationRequestMode.ALLOCATE;
+            containerRequest.additionalHostPortCount = 2;
+            request.containerRequests.add(containerRequest);
+        }
+
+        HostPortProfileService.HostPortProfileState result = patch(profile, request, false);
+        assertEquals(6, HostPortProfileService.getReservedPorts(result).size());
+        assertEquals(3, result.allocatedPortRanges.size());
+        for (HostPortProfileService.HostPortProfileReservationRequest r : request.containerRequests) {
+            Set<Long> ports = HostPortProfileService.getAllocatedPorts(result, r.containerLink);
+            assertEquals(2, ports.size());
+            assertTrue(ports.stream().allMatch(p -> p >= result.startPort && p < result.endPort));
+        }
+
+        HostPortProfileService.HostPortProfileReservationRequest releaseRequest =
+                new HostPortProfileService.HostPortProfileReservationRequest();
+        releaseRequest.containerRequests = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            HostPortProfileService.HostPortProfileReservationRequest containerRequest =
+                    new HostPortProfileService.HostPortProfileReservationRequest();
+            containerRequest.containerLink = request.containerRequests.get(i).containerLink;
+            containerRequest.mode = HostPortProfileService.HostPortProfileReservationRequestMode.RELEASE;
+            releaseRequest.containerRequests.add(containerRequest);
+        }
+
+        HostPortProfileService.HostPortProfileState released =
+                patch(profile, releaseRequest, false);
+        assertEquals(1, released.allocatedPortRanges.size());
+        assertEquals(HostPortProfileService.getAllocatedPorts(result,
+                request.containerRequests.get(2).containerLink),
+                HostPortProfileService.getAllocatedPorts(released,
+                        request.containerRequests.get(2).containerLink));
+    }
+
+    @Test
+    public void testLegacyReservedPortsMigration() throws Throwable {
+        String containerLink = UUID.randomUUID().toString();
+        HostPortProfileService.HostPortProfileState profile = createHostPortProfile();
+        profile.startPort = 20000;
+        profile.reservedPorts = new HashMap<>();
+        for (long port = 20000; port < 20004; port++) {
+            profile.reservedPorts.put(port, containerLink);
+        }
+        profile.reservedPorts.put(20010L, containerLink);
+        profile = doPost(profile, HostPortProfileService.FACTORY_LINK);
+
+        assertNull(profile.reservedPorts);
+        assertEquals("20000-20003,20010", profile.allocatedPortRanges.get(containerLink));
+
+        HostPortProfileService.HostPortProfileReservationRequest request =
+                new HostPortProfileService.HostPortProfileReservationRequest();
+        request.containerLink = UUID.randomUUID().toString();
+        request.mode = HostPortProfileService.HostPortProfileReservationRequestMode.ALLOCATE;
+        request.additionalHostPortCount = 2;
+
+        HostPortProfileService.HostPortProfileState result = patch(profile, request, false);
+        assertEquals(new HashSet<>(Arrays.asList(20004L, 20005L)),
+                HostPortProfileService.getAllocatedPorts(result, request.containerLink));
+        assertEquals(5, HostPortProfileService.getAllocatedPorts(result, containerLink).size());
     }
 
     private HostPortProfileService.HostPortProfileState createHostPortProfile() {
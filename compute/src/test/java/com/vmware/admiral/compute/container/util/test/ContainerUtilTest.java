@@ -144,7 +144,7 @@ public class ContainerUtilTest extends ComputeBaseTest {
             HostPortProfileService.HostPortProfileState document = getDocument(
                     HostPortProfileService.HostPortProfileState.class, profileDescrLink);
 
-            return document.reservedPorts.containsKey(new Long(20080));
+            return HostPortProfileService.getReservedPorts(document).containsKey(new Long(20080));
         });
 
         Map<Long, String> actualPorts = new HashMap<>();
@@ -163,7 +163,7 @@ public class ContainerUtilTest extends ComputeBaseTest {
                 assertEquals("port", expectedMapping.getKey(), actualMapping.getKey());
                 assertEquals("containerLink", expectedMapping.getValue(), actualMapping.getValue());
             }
-        }.arrayEquals(null, document.reservedPorts.entrySet(), actualPorts.entrySet());
+        }.arrayEquals(null, HostPortProfileService.getReservedPorts(document).entrySet(), actualPorts.entrySet());
     }
 
     @Test
@@ -193,7 +193,7 @@ public class ContainerUtilTest extends ComputeBaseTest {
             HostPortProfileService.HostPortProfileState document = getDocument(
                     HostPortProfileService.HostPortProfileState.class, profileDescrLink);
 
-            return document.reservedPorts.isEmpty();
+            return HostPortProfileService.getReservedPorts(document).isEmpty();
         });
     }
 
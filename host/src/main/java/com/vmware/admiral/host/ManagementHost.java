@@ -35,6 +35,7 @@ import com.vmware.admiral.auth.idm.SessionService;
 import com.vmware.admiral.auth.project.ProjectFactoryService;
 import com.vmware.admiral.auth.project.ProjectService;
 import com.vmware.admiral.auth.util.AuthUtil;
+import com.vmware.admiral.closures.drivers.docker.ClosureRunnerPoolService;
 import com.vmware.admiral.common.SwaggerDocumentation;
 import com.vmware.admiral.common.serialization.ReleaseConstants;
 import com.vmware.admiral.common.util.AuthUtils;
@@ -42,6 +43,8 @@ import com.vmware.admiral.common.util.ConfigurationUtil;
 import com.vmware.admiral.common.util.SecurityUtils;
 import com.vmware.admiral.common.util.ServerX509TrustManager;
 import com.vmware.admiral.compute.container.ContainerHostDataCollectionService;
+import com.vmware.admiral.compute.container.ContainerStatsService;
+import com.vmware.admiral.compute.container.GroupResourcePlacementReservationLedger;
 import com.vmware.admiral.host.interceptor.AuthCredentialsInterceptor;
 import com.vmware.admiral.host.interceptor.InUsePlacementZoneInterceptor;
 import com.vmware.admiral.host.interceptor.OperationInterceptorRegistry;
@@ -58,6 +61,7 @@ import com.vmware.admiral.service.common.harbor.HostInitHarborServices;
 import com.vmware.admiral.upgrade.transformation.ProjectsTransformationBootstrapService;
 import com.vmware.photon.controller.model.security.util.CertificateUtil;
 import com.vmware.photon.controller.model.security.util.EncryptionUtils;
+import com.vmware.photon.controller.model.tasks.helpers.ResourcePoolMembershipIndexService;
 import com.vmware.photon.controller.model.util.StartServicesHelper.ServiceMetadata;
 import com.vmware.xenon.common.CommandLineArgumentParser;
 import com.vmware.xenon.common.FactoryService;
@@ -494,6 +498,22 @@ public class ManagementHost extends PostgresServiceHost implements IExtensibilit
         // behalf of those principals.
         addPrivilegedService(ContainerHostDataCollectionService.class);
 
+        // ContainerStatsService samples the stats of the containers read by any principal, so it
+        // needs to collect them on behalf of the system.
+        addPrivilegedService(ContainerStatsService.class);
+
+        // ResourcePoolMembershipIndexService keeps the membership of all resource pools, so it
+        // needs to query them on behalf of the system. Readers apply their own authorization.
+        addPrivilegedService(ResourcePoolMembershipIndexService.class);
+
+        // GroupResourcePlacementReservationLedger batches the reservations of different tasks
+        // into a single request, so it sends them on behalf of the system.
+        addPrivilegedService(GroupResourcePlacementReservationLedger.class);
+
+        // ClosureRunnerPoolService looks up the node holding a closure runner in the node group,
+        // on behalf of the runner containers polling it with the token of a closure owner.
+        addPrivilegedService(ClosureRunnerPoolService.class);
+
         // NodeMigrationService needs to be privileged in order to not get forbidden during the
         // migration process.
         addPrivilegedService(NodeMigrationService.class);
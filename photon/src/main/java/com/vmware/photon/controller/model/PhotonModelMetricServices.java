@@ -12,8 +12,10 @@
 package com.vmware.photon.controller.model;
 
 import static com.vmware.photon.controller.model.util.StartServicesHelper.ServiceMetadata.factoryService;
+import static com.vmware.photon.controller.model.util.StartServicesHelper.ServiceMetadata.service;
 
 import com.vmware.photon.controller.model.monitoring.ResourceMetricsService;
+import com.vmware.photon.controller.model.monitoring.ResourceMetricsStoreService;
 import com.vmware.photon.controller.model.util.StartServicesHelper.ServiceMetadata;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.Service;
@@ -27,15 +29,18 @@ import com.vmware.xenon.common.UriUtils;
 public class PhotonModelMetricServices {
 
     public static final ServiceMetadata[] SERVICES_METADATA = {
-            factoryService(ResourceMetricsService.class)
+            factoryService(ResourceMetricsService.class),
+            service(ResourceMetricsStoreService.class)
     };
 
     public static final String[] LINKS = {
-            ResourceMetricsService.FACTORY_LINK};
+            ResourceMetricsService.FACTORY_LINK,
+            ResourceMetricsStoreService.SELF_LINK};
 
     public static void startServices(ServiceHost host) throws Throwable {
         host.startFactory(ResourceMetricsService.class, ResourceMetricsService::createFactory);
         setFactoryToAvailable(host, ResourceMetricsService.FACTORY_LINK);
+        host.startService(new ResourceMetricsStoreService());
     }
 
     /** @see #setFactoryToAvailable(ServiceHost, String, Operation.CompletionHandler) */
@@ -13,9 +13,9 @@ package com.vmware.photon.controller.model.monitoring;
 
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.concurrent.TimeUnit;
 
 import com.vmware.photon.controller.model.UriPaths;
+import com.vmware.photon.controller.model.tasks.monitoring.StatsUtil;
 import com.vmware.xenon.common.FactoryService;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.ServiceDocument;
@@ -62,17 +62,36 @@ public class InMemoryResourceMetricService extends StatefulService {
             if (currentStats == null) {
                 currentState.timeSeriesStats.put(tsStats.getKey(), tsStats.getValue());
             } else {
-                for (Entry<Long, TimeBin> bin : tsStats.getValue().bins.entrySet()) {
-                    for (int i = 0; i < bin.getValue().count; i++) {
-                        currentStats.add(TimeUnit.MILLISECONDS.toMicros(bin.getKey()), bin.getValue().avg, bin.getValue().avg);
-                    }
-                }
+                mergeTimeSeriesStats(currentStats, tsStats.getValue());
             }
         }
         setState(put, currentState);
         put.setBody(null).complete();
     }
 
+    /**
+     * Merges the bins of the given time series stats into the current ones, a bin at a time.
+     * Bins older than the ones kept by the current stats are ignored.
+     */
+    private static void mergeTimeSeriesStats(TimeSeriesStats currentStats,
+            TimeSeriesStats updatedStats) {
+        for (Entry<Long, TimeBin> bin : updatedStats.bins.entrySet()) {
+            TimeBin currentBin = currentStats.bins.get(bin.getKey());
+            if (currentBin != null) {
+                StatsUtil.mergeTimeBin(currentBin, bin.getValue(), currentStats.aggregationType);
+                continue;
+            }
+            if (currentStats.bins.size() >= currentStats.numBins
+                    && currentStats.bins.firstKey() > bin.getKey()) {
+                continue;
+            }
+            currentStats.bins.put(bin.getKey(), bin.getValue());
+            while (currentStats.bins.size() > currentStats.numBins) {
+                currentStats.bins.remove(currentStats.bins.firstKey());
+            }
+        }
+    }
+
     @Override
     public ServiceDocument getDocumentTemplate() {
         ServiceDocument template = super.getDocumentTemplate();
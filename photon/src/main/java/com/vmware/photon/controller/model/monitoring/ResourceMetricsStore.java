@@ -0,0 +1,514 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.photon.controller.model.monitoring;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import com.vmware.photon.controller.model.UriPaths;
+import com.vmware.photon.controller.model.tasks.monitoring.SingleResourceStatsCollectionTaskService;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Append-only store of the raw resource metrics, used instead of one
+ * {@link ResourceMetricsService.ResourceMetrics} document per sample when
+ * {@link #PROPERTY_ENABLED} is set.
+ *
+ * <p>Samples are partitioned by their timestamp into segments of
+ * {@link #SEGMENT_DURATION_MICROS}. Within a segment every metric of a resource is a column of
+ * its own: timestamps are encoded as deltas of deltas and values are XOR-ed with the previous
+ * value, so samples collected at a regular interval take a few bytes each. Segments are saved
+ * under the given directory on {@link #flush()} and retention drops whole segments.
+ *
+ * @see ResourceMetricsStoreService
+ */
+public class ResourceMetricsStore {
+
+    public static final String PROPERTY_ENABLED = UriPaths.PROPERTY_PREFIX
+            + "ResourceMetricsStore.enabled";
+    public static final boolean ENABLED = Boolean.getBoolean(PROPERTY_ENABLED);
+
+    public static final String SEGMENT_DURATION_HOURS = UriPaths.PROPERTY_PREFIX
+            + "ResourceMetricsStore.segmentDurationHours";
+    private static final int DEFAULT_SEGMENT_DURATION_HOURS = 24;
+    public static final long SEGMENT_DURATION_MICROS = TimeUnit.HOURS.toMicros(
+            Integer.getInteger(SEGMENT_DURATION_HOURS, DEFAULT_SEGMENT_DURATION_HOURS));
+
+    private static final long RETENTION_MICROS = TimeUnit.DAYS.toMicros(
+            SingleResourceStatsCollectionTaskService.EXPIRATION_INTERVAL);
+
+    private static final String SEGMENT_FILE_SUFFIX = ".segment";
+    private static final int SEGMENT_FORMAT_VERSION = 1;
+
+    /**
+     * Consumer of the samples of a single metric.
+     */
+    @FunctionalInterface
+    public interface SampleConsumer {
+        void accept(long timestampMicros, double value);
+    }
+
+    /**
+     * Store statistics.
+     */
+    public static class StoreStats {
+        public long segmentCount;
+        public long columnCount;
+        public long sampleCount;
+        public long encodedBytes;
+        public long droppedSegmentCount;
+    }
+
+    private final ServiceHost host;
+    private final Path directory;
+    private final NavigableMap<Long, Segment> segments = new TreeMap<>();
+    private long droppedSegmentCount;
+
+    public ResourceMetricsStore(ServiceHost host, Path directory) {
+        this.host = host;
+        this.directory = directory;
+    }
+
+    /**
+     * Loads the segments saved in the store directory.
+     */
+    public void load() {
+        if (!Files.isDirectory(this.directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory,
+                "*" + SEGMENT_FILE_SUFFIX)) {
+            for (Path file : files) {
+                try (DataInputStream in = new DataInputStream(
+                        new ByteArrayInputStream(Files.readAllBytes(file)))) {
+                    Segment segment = Segment.read(in);
+                    synchronized (this) {
+                        this.segments.put(segment.startMicros, segment);
+                    }
+                } catch (IOException e) {
+                    this.host.log(Level.WARNING, "Failed to load metrics segment %s: %s", file,
+                            Utils.toString(e));
+                }
+            }
+        } catch (IOException e) {
+            this.host.log(Level.WARNING, "Failed to load metrics segments from %s: %s",
+                    this.directory, Utils.toString(e));
+        }
+        dropExpiredSegments();
+    }
+
+    public synchronized void append(String resourceId, String metricKey, long timestampMicros,
+            double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        long startMicros = timestampMicros - Math.floorMod(timestampMicros,
+                SEGMENT_DURATION_MICROS);
+        Segment segment = this.segments.computeIfAbsent(startMicros, Segment::new);
+        segment.columns.computeIfAbsent(resourceId, k -> new HashMap<>())
+                .computeIfAbsent(metricKey, k -> new Column())
+                .append(timestampMicros, value);
+        segment.dirty = true;
+    }
+
+    /**
+     * Passes the samples of the given metric with timestamps in {@code [beginMicros, endMicros)}
+     * to the consumer, segment by segment.
+     */
+    public synchronized void scan(String resourceId, String metricKey, long beginMicros,
+            long endMicros, SampleConsumer consumer) {
+        if (beginMicros >= endMicros) {
+            return;
+        }
+        Long fromKey = this.segments.floorKey(beginMicros);
+        NavigableMap<Long, Segment> range = this.segments.subMap(
+                fromKey != null ? fromKey : Long.MIN_VALUE, true, endMicros, false);
+        for (Segment segment : range.values()) {
+            Column column = segment.getColumn(resourceId, metricKey);
+            if (column != null) {
+                column.scan(beginMicros, endMicros, consumer);
+            }
+        }
+    }
+
+    /**
+     * Passes the latest sample of the given metric, if any, to the consumer.
+     */
+    public synchronized boolean latest(String resourceId, String metricKey,
+            SampleConsumer consumer) {
+        for (Segment segment : this.segments.descendingMap().values()) {
+            Column column = segment.getColumn(resourceId, metricKey);
+            if (column != null) {
+                consumer.accept(column.latestTimestamp, column.latestValue);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Drops the segments which only hold samples older than the retention limit.
+     */
+    public void dropExpiredSegments() {
+        long expirationMicros = Utils.getNowMicrosUtc() - RETENTION_MICROS;
+        List<Long> dropped = new ArrayList<>();
+        synchronized (this) {
+            NavigableMap<Long, Segment> expired = this.segments.headMap(
+                    expirationMicros - SEGMENT_DURATION_MICROS, true);
+            dropped.addAll(expired.keySet());
+            expired.clear();
+            this.droppedSegmentCount += dropped.size();
+        }
+        for (Long startMicros : dropped) {
+            try {
+                Files.deleteIfExists(getSegmentFile(startMicros));
+            } catch (IOException e) {
+                this.host.log(Level.WARNING, "Failed to delete metrics segment %s: %s",
+                        startMicros, Utils.toString(e));
+            }
+        }
+    }
+
+    /**
+     * Saves the segments updated since the previous flush.
+     */
+    public void flush() {
+        Map<Long, byte[]> updated = new HashMap<>();
+        synchronized (this) {
+            for (Segment segment : this.segments.values()) {
+                if (!segment.dirty) {
+                    continue;
+                }
+                try {
+                    updated.put(segment.startMicros, segment.toBytes());
+                    segment.dirty = false;
+                } catch (IOException e) {
+                    this.host.log(Level.WARNING, "Failed to encode metrics segment %s: %s",
+                            segment.startMicros, Utils.toString(e));
+                }
+            }
+        }
+        if (updated.isEmpty()) {
+            return;
+        }
+        try {
+            Files.createDirectories(this.directory);
+        } catch (IOException e) {
+            this.host.log(Level.WARNING, "Failed to create metrics store directory %s: %s",
+                    this.directory, Utils.toString(e));
+            return;
+        }
+        for (Entry<Long, byte[]> entry : updated.entrySet()) {
+            Path file = getSegmentFile(entry.getKey());
+            Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+            try {
+                Files.write(tmpFile, entry.getValue());
+                Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                this.host.log(Level.WARNING, "Failed to save metrics segment %s: %s", file,
+                        Utils.toString(e));
+                markDirty(entry.getKey());
+            }
+        }
+    }
+
+    public synchronized StoreStats getStats() {
+        StoreStats stats = new StoreStats();
+        stats.segmentCount = this.segments.size();
+        stats.droppedSegmentCount = this.droppedSegmentCount;
+        for (Segment segment : this.segments.values()) {
+            for (Map<String, Column> metrics : segment.columns.values()) {
+                for (Column column : metrics.values()) {
+                    stats.columnCount++;
+                    stats.sampleCount += column.count;
+                    stats.encodedBytes += column.timestamps.size + column.values.size;
+                }
+            }
+        }
+        return stats;
+    }
+
+    private synchronized void markDirty(long startMicros) {
+        Segment segment = this.segments.get(startMicros);
+        if (segment != null) {
+            segment.dirty = true;
+        }
+    }
+
+    private Path getSegmentFile(long startMicros) {
+        return this.directory.resolve(startMicros + SEGMENT_FILE_SUFFIX);
+    }
+
+    private static class Segment {
+        final long startMicros;
+        final Map<String, Map<String, Column>> columns = new HashMap<>();
+        boolean dirty;
+
+        Segment(long startMicros) {
+            this.startMicros = startMicros;
+        }
+
+        Column getColumn(String resourceId, String metricKey) {
+            Map<String, Column> metrics = this.columns.get(resourceId);
+            return metrics == null ? null : metrics.get(metricKey);
+        }
+
+        byte[] toBytes() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeInt(SEGMENT_FORMAT_VERSION);
+                out.writeLong(this.startMicros);
+                out.writeInt(this.columns.size());
+                for (Entry<String, Map<String, Column>> resource : this.columns.entrySet()) {
+                    out.writeUTF(resource.getKey());
+                    out.writeInt(resource.getValue().size());
+                    for (Entry<String, Column> metric : resource.getValue().entrySet()) {
+                        out.writeUTF(metric.getKey());
+                        metric.getValue().write(out);
+                    }
+                }
+            }
+            return bytes.toByteArray();
+        }
+
+        static Segment read(DataInputStream in) throws IOException {
+            int version = in.readInt();
+            if (version != SEGMENT_FORMAT_VERSION) {
+                throw new IOException("Unsupported segment format version " + version);
+            }
+            Segment segment = new Segment(in.readLong());
+            int resourceCount = in.readInt();
+            for (int i = 0; i < resourceCount; i++) {
+                String resourceId = in.readUTF();
+                int metricCount = in.readInt();
+                Map<String, Column> metrics = new HashMap<>();
+                for (int j = 0; j < metricCount; j++) {
+                    String metricKey = in.readUTF();
+                    metrics.put(metricKey, Column.read(in));
+                }
+                segment.columns.put(resourceId, metrics);
+            }
+            return segment;
+        }
+    }
+
+    /**
+     * Samples of a single metric of a resource. The timestamps and the values are kept in two
+     * separate byte streams.
+     */
+    private static class Column {
+        final ByteStream timestamps = new ByteStream();
+        final ByteStream values = new ByteStream();
+        int count;
+        long lastTimestamp;
+        long lastDelta;
+        long lastValueBits;
+        long latestTimestamp;
+        double latestValue;
+
+        void append(long timestampMicros, double value) {
+            if (this.count == 0) {
+                this.timestamps.writeVarLong(timestampMicros);
+            } else {
+                long delta = timestampMicros - this.lastTimestamp;
+                this.timestamps.writeVarLong(this.count == 1 ? delta : delta - this.lastDelta);
+                this.lastDelta = delta;
+            }
+            this.lastTimestamp = timestampMicros;
+
+            long valueBits = Double.doubleToRawLongBits(value);
+            if (this.count == 0) {
+                this.values.writeLong(valueBits);
+            } else {
+                writeXor(valueBits ^ this.lastValueBits);
+            }
+            this.lastValueBits = valueBits;
+
+            if (this.count == 0 || timestampMicros >= this.latestTimestamp) {
+                this.latestTimestamp = timestampMicros;
+                this.latestValue = value;
+            }
+            this.count++;
+        }
+
+        /**
+         * Writes the bytes of the XOR between two consecutive values, leaving out the leading and
+         * trailing zero bytes. Equal consecutive values take a single byte.
+         */
+        private void writeXor(long xor) {
+            if (xor == 0) {
+                this.values.write(0);
+                return;
+            }
+            int leadingBytes = Long.numberOfLeadingZeros(xor) / Byte.SIZE;
+            int trailingBytes = Long.numberOfTrailingZeros(xor) / Byte.SIZE;
+            this.values.write(0x80 | leadingBytes << 3 | trailingBytes);
+            for (int i = Long.BYTES - leadingBytes - 1; i >= trailingBytes; i--) {
+                this.values.write((int) (xor >>> (i * Byte.SIZE)));
+            }
+        }
+
+        void scan(long beginMicros, long endMicros, SampleConsumer consumer) {
+            ByteReader timestampReader = new ByteReader(this.timestamps);
+            ByteReader valueReader = new ByteReader(this.values);
+            long timestamp = 0;
+            long delta = 0;
+            long valueBits = 0;
+            for (int i = 0; i < this.count; i++) {
+                if (i == 0) {
+                    timestamp = timestampReader.readVarLong();
+                    valueBits = valueReader.readLong();
+                } else {
+                    delta = i == 1 ? timestampReader.readVarLong()
+                            : delta + timestampReader.readVarLong();
+                    timestamp += delta;
+                    valueBits ^= readXor(valueReader);
+                }
+                if (timestamp >= beginMicros && timestamp < endMicros) {
+                    consumer.accept(timestamp, Double.longBitsToDouble(valueBits));
+                }
+            }
+        }
+
+        private static long readXor(ByteReader reader) {
+            int header = reader.read();
+            if (header == 0) {
+                return 0;
+            }
+            int leadingBytes = (header >>> 3) & 0x7;
+            int trailingBytes = header & 0x7;
+            long xor = 0;
+            for (int i = Long.BYTES - leadingBytes - trailingBytes; i > 0; i--) {
+                xor = (xor << Byte.SIZE) | reader.read();
+            }
+            return xor << (trailingBytes * Byte.SIZE);
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(this.count);
+            out.writeLong(this.lastTimestamp);
+            out.writeLong(this.lastDelta);
+            out.writeLong(this.lastValueBits);
+            out.writeLong(this.latestTimestamp);
+            out.writeDouble(this.latestValue);
+            this.timestamps.write(out);
+            this.values.write(out);
+        }
+
+        static Column read(DataInputStream in) throws IOException {
+            Column column = new Column();
+            column.count = in.readInt();
+            column.lastTimestamp = in.readLong();
+            column.lastDelta = in.readLong();
+            column.lastValueBits = in.readLong();
+            column.latestTimestamp = in.readLong();
+            column.latestValue = in.readDouble();
+            column.timestamps.read(in);
+            column.values.read(in);
+            return column;
+        }
+    }
+
+    /**
+     * Growable byte array. Longs are written as zig-zag encoded variable length integers, so
+     * small deltas of either sign take a single byte.
+     */
+    private static class ByteStream {
+        byte[] bytes = new byte[16];
+        int size;
+
+        void write(int b) {
+            if (this.size == this.bytes.length) {
+                this.bytes = Arrays.copyOf(this.bytes, this.size * 2);
+            }
+            this.bytes[this.size++] = (byte) b;
+        }
+
+        void writeLong(long v) {
+            for (int i = Long.BYTES - 1; i >= 0; i--) {
+                write((int) (v >>> (i * Byte.SIZE)));
+            }
+        }
+
+        void writeVarLong(long v) {
+            long zigZag = (v << 1) ^ (v >> 63);
+            while ((zigZag & ~0x7FL) != 0) {
+                write((int) ((zigZag & 0x7F) | 0x80));
+                zigZag >>>= 7;
+            }
+            write((int) zigZag);
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(this.size);
+            out.write(this.bytes, 0, this.size);
+        }
+
+        void read(DataInputStream in) throws IOException {
+            this.size = in.readInt();
+            this.bytes = new byte[Math.max(this.size, 16)];
+            in.readFully(this.bytes, 0, this.size);
+        }
+    }
+
+    private static class ByteReader {
+        final byte[] bytes;
+        int position;
+
+        ByteReader(ByteStream buffer) {
+            this.bytes = buffer.bytes;
+        }
+
+        int read() {
+            return this.bytes[this.position++] & 0xFF;
+        }
+
+        long readLong() {
+            long v = 0;
+            for (int i = 0; i < Long.BYTES; i++) {
+                v = (v << Byte.SIZE) | read();
+            }
+            return v;
+        }
+
+        long readVarLong() {
+            long zigZag = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = read();
+                zigZag |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return (zigZag >>> 1) ^ -(zigZag & 1);
+        }
+    }
+}
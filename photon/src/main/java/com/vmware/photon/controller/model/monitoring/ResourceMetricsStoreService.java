@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.photon.controller.model.monitoring;
+
+import java.net.URI;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.vmware.photon.controller.model.UriPaths;
+import com.vmware.photon.controller.model.monitoring.ResourceMetricsService.ResourceMetrics;
+import com.vmware.photon.controller.model.tasks.monitoring.StatsUtil;
+import com.vmware.photon.controller.model.util.ClusterUtil;
+import com.vmware.photon.controller.model.util.ClusterUtil.ServiceTypeCluster;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.services.common.ServiceUriPaths;
+
+/**
+ * Front end of the {@link ResourceMetricsStore} of the host. Raw metrics are appended and scanned
+ * in the shape of {@link ResourceMetrics}, so that callers can switch between the store and the
+ * {@link ResourceMetricsService} documents. A GET returns the store statistics.
+ *
+ * <p>Each node of the metrics cluster has a store of its own. The samples of a resource are
+ * kept on the node owning the resource id, so requests are split by resource and forwarded to
+ * the owner with {@link #createRequests(ServiceHost, ResourceMetricsStoreRequest)}. Samples are
+ * not moved when the node group changes: the samples appended before on another owner are not
+ * returned until that node owns the resource again, and expire with its segments.
+ */
+public class ResourceMetricsStoreService extends StatelessService {
+
+    public static final String SELF_LINK = UriPaths.MONITORING + "/resource-metrics-store";
+
+    public static final String FLUSH_INTERVAL_SECONDS = UriPaths.PROPERTY_PREFIX
+            + "ResourceMetricsStore.flushIntervalSeconds";
+    private static final long DEFAULT_FLUSH_INTERVAL_SECONDS = 60;
+
+    private static final String STORE_DIRECTORY = "resource-metrics-store";
+
+    public enum RequestType {
+        APPEND, SCAN
+    }
+
+    public static class ResourceMetricsStoreRequest {
+        public RequestType requestType;
+
+        /**
+         * Metrics to append. The resource is taken from the resource link custom property, or
+         * else from the metric link.
+         */
+        public List<ResourceMetrics> metrics;
+
+        /**
+         * Metric keys to scan, by resource id.
+         */
+        public Map<String, Set<String>> metricKeysByResourceId;
+
+        /**
+         * Optional lower bound of the scanned timestamps, by metric key.
+         */
+        public Map<String, Long> beginMicrosByMetricKey;
+
+        /**
+         * Whether to return the latest sample of each metric only.
+         */
+        public boolean latestOnly;
+
+        /**
+         * Optional limit of the returned metrics, the latest ones are kept.
+         */
+        public Integer resultLimit;
+    }
+
+    public static class ResourceMetricsStoreResponse {
+        /**
+         * Scanned metrics, sorted by timestamp in descending order. Samples of the same resource
+         * with the same timestamp are returned as a single metric.
+         */
+        public List<ResourceMetrics> metrics;
+    }
+
+    private ResourceMetricsStore store;
+
+    public ResourceMetricsStoreService() {
+        super.toggleOption(ServiceOption.PERIODIC_MAINTENANCE, true);
+        super.setMaintenanceIntervalMicros(TimeUnit.SECONDS.toMicros(
+                Long.getLong(FLUSH_INTERVAL_SECONDS, DEFAULT_FLUSH_INTERVAL_SECONDS)));
+    }
+
+    @Override
+    public void handleStart(Operation start) {
+        if (ResourceMetricsStore.ENABLED) {
+            this.store = new ResourceMetricsStore(getHost(),
+                    Paths.get(getHost().getStorageSandbox()).resolve(STORE_DIRECTORY));
+            this.store.load();
+        }
+        start.complete();
+    }
+
+    @Override
+    public void handleStop(Operation delete) {
+        if (this.store != null) {
+            this.store.flush();
+        }
+        delete.complete();
+    }
+
+    @Override
+    public void handleMaintenance(Operation post) {
+        if (this.store != null) {
+            this.store.dropExpiredSegments();
+            this.store.flush();
+        }
+        post.complete();
+    }
+
+    @Override
+    public void handleGet(Operation get) {
+        if (this.store == null) {
+            get.fail(new IllegalStateException("Resource metrics store is not enabled"));
+            return;
+        }
+        get.setBody(this.store.getStats()).complete();
+    }
+
+    @Override
+    public void handlePost(Operation post) {
+        if (this.store == null) {
+            post.fail(new IllegalStateException("Resource metrics store is not enabled"));
+            return;
+        }
+        if (!post.hasBody()) {
+            post.fail(new IllegalArgumentException("body is required"));
+            return;
+        }
+        ResourceMetricsStoreRequest request = post.getBody(ResourceMetricsStoreRequest.class);
+        if (request.requestType == RequestType.APPEND && request.metrics != null) {
+            append(request.metrics);
+            post.setBody(null).complete();
+        } else if (request.requestType == RequestType.SCAN
+                && request.metricKeysByResourceId != null) {
+            ResourceMetricsStoreResponse response = new ResourceMetricsStoreResponse();
+            response.metrics = scan(request);
+            post.setBody(response).complete();
+        } else {
+            post.fail(new IllegalArgumentException("Unsupported request"));
+        }
+    }
+
+    /**
+     * Returns the POST requests to the stores owning the resources of the given request, one per
+     * resource, forwarded through the default node selector of the metrics cluster.
+     */
+    public static List<Operation> createRequests(ServiceHost host,
+            ResourceMetricsStoreRequest request) {
+        Map<String, ResourceMetricsStoreRequest> requestsByResourceId = new HashMap<>();
+        if (request.metrics != null) {
+            for (ResourceMetrics metric : request.metrics) {
+                requestsByResourceId.computeIfAbsent(getResourceId(metric),
+                        id -> copyOptions(request)).metrics.add(metric);
+            }
+        }
+        if (request.metricKeysByResourceId != null) {
+            request.metricKeysByResourceId.forEach((resourceId, metricKeys) ->
+                    requestsByResourceId.computeIfAbsent(resourceId, id -> copyOptions(request))
+                            .metricKeysByResourceId.put(resourceId, metricKeys));
+        }
+
+        URI storeUri = UriUtils.buildUri(
+                ClusterUtil.getClusterUri(host, ServiceTypeCluster.METRIC_SERVICE), SELF_LINK);
+        List<Operation> operations = new ArrayList<>();
+        requestsByResourceId.forEach((resourceId, resourceRequest) -> operations.add(
+                Operation.createPost(UriUtils.buildForwardRequestUri(storeUri, resourceId,
+                        ServiceUriPaths.DEFAULT_NODE_SELECTOR))
+                        .setBodyNoCloning(resourceRequest)));
+        return operations;
+    }
+
+    /**
+     * Merges the responses of the scan requests created by
+     * {@link #createRequests(ServiceHost, ResourceMetricsStoreRequest)}.
+     */
+    public static List<ResourceMetrics> mergeResponses(Collection<Operation> responses,
+            Integer resultLimit) {
+        List<ResourceMetrics> result = new ArrayList<>();
+        for (Operation response : responses) {
+            List<ResourceMetrics> metrics = response
+                    .getBody(ResourceMetricsStoreResponse.class).metrics;
+            if (metrics != null) {
+                result.addAll(metrics);
+            }
+        }
+        return sortAndLimit(result, resultLimit);
+    }
+
+    private static ResourceMetricsStoreRequest copyOptions(ResourceMetricsStoreRequest request) {
+        ResourceMetricsStoreRequest copy = new ResourceMetricsStoreRequest();
+        copy.requestType = request.requestType;
+        copy.metrics = request.metrics == null ? null : new ArrayList<>();
+        copy.metricKeysByResourceId = request.metricKeysByResourceId == null ? null
+                : new HashMap<>();
+        copy.beginMicrosByMetricKey = request.beginMicrosByMetricKey;
+        copy.latestOnly = request.latestOnly;
+        copy.resultLimit = request.resultLimit;
+        return copy;
+    }
+
+    private static String getResourceId(ResourceMetrics metric) {
+        String resourceLink = metric.customProperties == null ? null
+                : metric.customProperties.get(ResourceMetrics.PROPERTY_RESOURCE_LINK);
+        return resourceLink != null ? UriUtils.getLastPathSegment(resourceLink)
+                : StatsUtil.getResourceId(metric.documentSelfLink);
+    }
+
+    private static List<ResourceMetrics> sortAndLimit(List<ResourceMetrics> metrics,
+            Integer resultLimit) {
+        metrics.sort(Comparator.comparing((ResourceMetrics m) -> m.timestampMicrosUtc)
+                .reversed());
+        if (resultLimit != null && metrics.size() > resultLimit) {
+            return new ArrayList<>(metrics.subList(0, resultLimit));
+        }
+        return metrics;
+    }
+
+    private void append(List<ResourceMetrics> metrics) {
+        for (ResourceMetrics metric : metrics) {
+            if (metric.entries == null || metric.timestampMicrosUtc == null) {
+                continue;
+            }
+            String resourceId = getResourceId(metric);
+            for (Entry<String, Double> entry : metric.entries.entrySet()) {
+                if (entry.getValue() != null) {
+                    this.store.append(resourceId, entry.getKey(), metric.timestampMicrosUtc,
+                            entry.getValue());
+                }
+            }
+        }
+    }
+
+    private List<ResourceMetrics> scan(ResourceMetricsStoreRequest request) {
+        Map<String, ResourceMetrics> metricsByLink = new HashMap<>();
+        for (Entry<String, Set<String>> entry : request.metricKeysByResourceId.entrySet()) {
+            String resourceId = entry.getKey();
+            for (String metricKey : entry.getValue()) {
+                ResourceMetricsStore.SampleConsumer consumer = (timestampMicros, value) -> {
+                    String link = UriUtils.buildUriPath(ResourceMetricsService.FACTORY_LINK,
+                            StatsUtil.getMetricKey(resourceId, timestampMicros));
+                    ResourceMetrics metric = metricsByLink.computeIfAbsent(link, l -> {
+                        ResourceMetrics m = new ResourceMetrics();
+                        m.documentSelfLink = l;
+                        m.timestampMicrosUtc = timestampMicros;
+                        m.entries = new HashMap<>();
+                        return m;
+                    });
+                    metric.entries.put(metricKey, value);
+                };
+                if (request.latestOnly) {
+                    this.store.latest(resourceId, metricKey, consumer);
+                    continue;
+                }
+                Long beginMicros = request.beginMicrosByMetricKey == null ? null
+                        : request.beginMicrosByMetricKey.get(metricKey);
+                this.store.scan(resourceId, metricKey,
+                        beginMicros != null ? beginMicros : Long.MIN_VALUE, Long.MAX_VALUE,
+                        consumer);
+            }
+        }
+
+        return sortAndLimit(new ArrayList<>(metricsByLink.values()), request.resultLimit);
+    }
+}
@@ -12,11 +12,14 @@
 package com.vmware.photon.controller.model.tasks;
 
 import static com.vmware.photon.controller.model.util.StartServicesHelper.ServiceMetadata.factoryService;
+import static com.vmware.photon.controller.model.util.StartServicesHelper.ServiceMetadata.service;
 
+import com.vmware.photon.controller.model.tasks.helpers.ResourcePoolMembershipIndexService;
 import com.vmware.photon.controller.model.tasks.monitoring.SingleResourceStatsAggregationTaskService;
 import com.vmware.photon.controller.model.tasks.monitoring.SingleResourceStatsCollectionTaskService;
 import com.vmware.photon.controller.model.tasks.monitoring.StatsAggregationTaskService;
 import com.vmware.photon.controller.model.tasks.monitoring.StatsCollectionTaskService;
+import com.vmware.photon.controller.model.util.StartServicesHelper;
 import com.vmware.photon.controller.model.util.StartServicesHelper.ServiceMetadata;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.ServiceHost;
@@ -44,7 +47,8 @@ public class PhotonModelTaskServices {
             factoryService(StatsAggregationTaskService.class),
             factoryService(EndpointAllocationTaskService.class),
             factoryService(SingleResourceStatsAggregationTaskService.class),
-            factoryService(SubTaskService.class)
+            factoryService(SubTaskService.class),
+            service(ResourcePoolMembershipIndexService.class).requirePrivileged(true)
     };
 
     public static final String[] LINKS = {
@@ -65,7 +69,8 @@ public class PhotonModelTaskServices {
             StatsAggregationTaskService.FACTORY_LINK,
             EndpointAllocationTaskService.FACTORY_LINK,
             SingleResourceStatsAggregationTaskService.FACTORY_LINK,
-            SubTaskService.FACTORY_LINK
+            SubTaskService.FACTORY_LINK,
+            ResourcePoolMembershipIndexService.SELF_LINK
     };
 
     public static void startServices(ServiceHost host) throws Throwable {
@@ -109,5 +114,8 @@ public class PhotonModelTaskServices {
                 () -> StatsCollectionTaskService.createFactory());
         host.startFactory(SubTaskService.class,
                 () -> TaskFactoryService.create(SubTaskService.class));
+        // started as privileged by hosts exposing addPrivilegedService, such as test hosts
+        StartServicesHelper.startServices(host, new ServiceMetadata[] {
+                service(ResourcePoolMembershipIndexService.class).requirePrivileged(true) });
     }
 }
@@ -0,0 +1,383 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.photon.controller.model.tasks.helpers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+import com.vmware.photon.controller.model.UriPaths;
+import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
+import com.vmware.photon.controller.model.resources.ResourcePoolService.ResourcePoolState;
+import com.vmware.xenon.common.DeferredResult;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Service.Action;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.ServiceDocumentDescription;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.QueryFilter;
+import com.vmware.xenon.services.common.QueryFilter.QueryFilterException;
+import com.vmware.xenon.services.common.QueryTask;
+import com.vmware.xenon.services.common.QueryTask.NumericRange;
+import com.vmware.xenon.services.common.QueryTask.Query;
+import com.vmware.xenon.services.common.QueryTask.QuerySpecification.QueryOption;
+import com.vmware.xenon.services.common.ServiceUriPaths;
+
+/**
+ * Resource pool membership of the computes of the local document index, i.e. the links of the
+ * computes matching the query of every resource pool, used by {@link ResourcePoolQueryHelper} to
+ * resolve membership without running the query of every resource pool. Only the links and the
+ * resource pool queries are kept, not the documents.
+ *
+ * <p>The index is loaded on first use and is not available until loading completes. Afterwards,
+ * every {@link #sync()} first applies the documents updated or deleted since the previous sync,
+ * so the membership is as fresh as the document index at the time of the call. Updated computes
+ * are matched in memory against the resource pool queries, resource pools whose query is new or
+ * changed, or cannot be evaluated in memory, run their query again. A full reload is done
+ * periodically to recover from updates indexed later than {@link #UPDATE_MARGIN_MICROS} after
+ * their update time.
+ *
+ * <p>The index is maintained by the {@link ResourcePoolMembershipIndexService} of the host with
+ * the system authorization context, so it covers all documents. Readers have to retrieve the
+ * resource pools and, unless they run as the system user, the computes themselves, so that their
+ * own authorization applies.
+ */
+public class ResourcePoolMembershipIndex {
+    static final boolean ENABLED = Boolean.parseBoolean(System.getProperty(
+            UriPaths.PROPERTY_PREFIX + "rp.membership.index.enabled", "false"));
+    static final long UPDATE_MARGIN_MICROS = Long.getLong(
+            UriPaths.PROPERTY_PREFIX + "rp.membership.index.update.margin.micros",
+            TimeUnit.SECONDS.toMicros(10));
+    static final long RELOAD_INTERVAL_MICROS = Long.getLong(
+            UriPaths.PROPERTY_PREFIX + "rp.membership.index.reload.interval.micros",
+            TimeUnit.MINUTES.toMicros(10));
+    private static final int PAGE_SIZE = Integer
+            .getInteger(UriPaths.PROPERTY_PREFIX + "rp.query.helper.page.size", 1024);
+
+    private static final Map<ServiceHost, ResourcePoolMembershipIndex> INDEXES =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    private static final ServiceDocumentDescription COMPUTE_DESCRIPTION =
+            ServiceDocumentDescription.Builder.create().buildDescription(ComputeState.class);
+
+    /**
+     * The compute links of a resource pool.
+     */
+    static class Membership {
+        final String queryJson;
+        /** The query evaluated in memory, {@code null} if it cannot be */
+        final QueryFilter filter;
+        final Set<String> computeLinks = ConcurrentHashMap.newKeySet();
+
+        Membership(Query query) {
+            this.queryJson = Utils.toJson(query);
+            QueryFilter filter = null;
+            try {
+                filter = QueryFilter.create(query);
+            } catch (QueryFilterException e) {
+                // the pool query is run again on every compute update
+            }
+            this.filter = filter;
+        }
+    }
+
+    /**
+     * The membership of all resource pools and the links of all computes, up to date with the
+     * documents updated before {@link #syncedMicros}.
+     */
+    static class Snapshot {
+        final Map<String, Membership> membershipByPoolLink = new ConcurrentHashMap<>();
+        final Set<String> allComputeLinks = ConcurrentHashMap.newKeySet();
+        final long loadedMicros;
+        long syncedMicros;
+
+        Snapshot(long loadedMicros) {
+            this.loadedMicros = loadedMicros;
+            this.syncedMicros = loadedMicros;
+        }
+
+        /**
+         * Returns the compute links of the given resource pool, or {@code null} if the pool is
+         * not in the index.
+         */
+        Set<String> getComputeLinks(String resourcePoolLink) {
+            Membership membership = this.membershipByPoolLink.get(resourcePoolLink);
+            return membership == null ? null : membership.computeLinks;
+        }
+
+        /**
+         * Returns the links of the resource pools the given compute is a member of.
+         */
+        Set<String> getResourcePoolLinks(String computeLink) {
+            Set<String> poolLinks = new HashSet<>();
+            this.membershipByPoolLink.forEach((poolLink, membership) -> {
+                if (membership.computeLinks.contains(computeLink)) {
+                    poolLinks.add(poolLink);
+                }
+            });
+            return poolLinks;
+        }
+
+        synchronized void advance(long syncedMicros) {
+            this.syncedMicros = Math.max(this.syncedMicros, syncedMicros);
+        }
+    }
+
+    private final StatelessService service;
+    private final long updateMarginMicros;
+    private final long reloadIntervalMicros;
+    private final AtomicBoolean loading = new AtomicBoolean();
+    private volatile Snapshot snapshot;
+
+    ResourcePoolMembershipIndex(StatelessService service) {
+        this(service, UPDATE_MARGIN_MICROS, RELOAD_INTERVAL_MICROS);
+    }
+
+    ResourcePoolMembershipIndex(StatelessService service, long updateMarginMicros,
+            long reloadIntervalMicros) {
+        this.service = service;
+        this.updateMarginMicros = updateMarginMicros;
+        this.reloadIntervalMicros = reloadIntervalMicros;
+    }
+
+    /**
+     * Returns the index of the given host, or {@code null} if the index is disabled or its
+     * service is not started.
+     */
+    public static ResourcePoolMembershipIndex getInstance(ServiceHost host) {
+        return INDEXES.get(host);
+    }
+
+    static void register(ServiceHost host, ResourcePoolMembershipIndex index) {
+        INDEXES.put(host, index);
+    }
+
+    static void unregister(ServiceHost host, ResourcePoolMembershipIndex index) {
+        INDEXES.remove(host, index);
+    }
+
+    /**
+     * Brings the index up to date with the document index. Completes with {@code null} while the
+     * index is still loading.
+     */
+    DeferredResult<Snapshot> sync() {
+        Snapshot current = this.snapshot;
+        if (current == null
+                || Utils.getSystemNowMicrosUtc() - current.loadedMicros
+                        > this.reloadIntervalMicros) {
+            load();
+        }
+        if (current == null) {
+            return DeferredResult.completed(null);
+        }
+
+        long syncMicros = Utils.getSystemNowMicrosUtc();
+        long sinceMicros;
+        synchronized (current) {
+            sinceMicros = current.syncedMicros - this.updateMarginMicros;
+        }
+
+        List<ResourcePoolState> updatedPools = new ArrayList<>();
+        List<ComputeState> updatedComputes = new ArrayList<>();
+        return DeferredResult.allOf(
+                queryDocuments(updatedSince(ResourcePoolState.class, sinceMicros),
+                        ResourcePoolState.class, true, updatedPools::add),
+                queryDocuments(updatedSince(ComputeState.class, sinceMicros),
+                        ComputeState.class, true, updatedComputes::add))
+                .thenCompose(ignore -> applyPools(current, updatedPools))
+                .thenCompose(ignore -> applyComputes(current, updatedComputes))
+                .thenApply(ignore -> {
+                    current.advance(syncMicros);
+                    return current;
+                });
+    }
+
+    /**
+     * Loads the membership of all resource pools into a new snapshot in the background. The
+     * current snapshot, if any, keeps being used until loading completes.
+     */
+    private void load() {
+        if (!this.loading.compareAndSet(false, true)) {
+            return;
+        }
+
+        Snapshot loaded = new Snapshot(Utils.getSystemNowMicrosUtc());
+        List<ResourcePoolState> pools = new ArrayList<>();
+        Query poolQuery = Query.Builder.create()
+                .addKindFieldClause(ResourcePoolState.class)
+                .build();
+        Query computeQuery = Query.Builder.create()
+                .addKindFieldClause(ComputeState.class)
+                .build();
+        DeferredResult.allOf(
+                queryDocuments(poolQuery, ResourcePoolState.class, false, pools::add),
+                queryLinks(computeQuery, loaded.allComputeLinks::add))
+                .thenCompose(ignore -> applyPools(loaded, pools))
+                .whenComplete((ignore, e) -> {
+                    if (e != null) {
+                        this.service.getHost().log(Level.WARNING,
+                                "Failed to load resource pool membership index: %s",
+                                e.getMessage());
+                    } else {
+                        this.service.getHost().log(Level.FINE,
+                                "Loaded resource pool membership index: %d pools",
+                                loaded.membershipByPoolLink.size());
+                        this.snapshot = loaded;
+                    }
+                    this.loading.set(false);
+                });
+    }
+
+    /**
+     * Drops the deleted resource pools and runs the query of the new resource pools and the ones
+     * whose query changed.
+     */
+    private DeferredResult<Void> applyPools(Snapshot snapshot, List<ResourcePoolState> pools) {
+        List<DeferredResult<Void>> queries = new ArrayList<>();
+        for (ResourcePoolState rp : pools) {
+            if (Action.DELETE.name().equals(rp.documentUpdateAction) || rp.query == null) {
+                snapshot.membershipByPoolLink.remove(rp.documentSelfLink);
+                continue;
+            }
+            Membership current = snapshot.membershipByPoolLink.get(rp.documentSelfLink);
+            if (current != null && current.queryJson.equals(Utils.toJson(rp.query))) {
+                continue;
+            }
+            Membership membership = new Membership(rp.query);
+            queries.add(queryLinks(rp.query, membership.computeLinks::add)
+                    .thenAccept(ignore -> snapshot.membershipByPoolLink
+                            .put(rp.documentSelfLink, membership)));
+        }
+        return DeferredResult.allOf(queries).thenApply(ignore -> null);
+    }
+
+    /**
+     * Matches the updated computes against the resource pool queries. The resource pools whose
+     * query cannot be evaluated in memory run their query again.
+     */
+    private DeferredResult<Void> applyComputes(Snapshot snapshot,
+            List<ComputeState> computes) {
+        if (computes.isEmpty()) {
+            return DeferredResult.completed(null);
+        }
+
+        for (ComputeState compute : computes) {
+            if (Action.DELETE.name().equals(compute.documentUpdateAction)) {
+                snapshot.allComputeLinks.remove(compute.documentSelfLink);
+            } else {
+                snapshot.allComputeLinks.add(compute.documentSelfLink);
+            }
+        }
+
+        List<DeferredResult<Void>> queries = new ArrayList<>();
+        for (Membership membership : snapshot.membershipByPoolLink.values()) {
+            if (membership.filter == null) {
+                Query query = Utils.fromJson(membership.queryJson, Query.class);
+                Set<String> computeLinks = ConcurrentHashMap.newKeySet();
+                queries.add(queryLinks(query, computeLinks::add).thenAccept(ignore -> {
+                    membership.computeLinks.retainAll(computeLinks);
+                    membership.computeLinks.addAll(computeLinks);
+                }));
+                continue;
+            }
+            for (ComputeState compute : computes) {
+                if (!Action.DELETE.name().equals(compute.documentUpdateAction)
+                        && membership.filter.evaluate(compute, COMPUTE_DESCRIPTION)) {
+                    membership.computeLinks.add(compute.documentSelfLink);
+                } else {
+                    membership.computeLinks.remove(compute.documentSelfLink);
+                }
+            }
+        }
+        return DeferredResult.allOf(queries).thenApply(ignore -> null);
+    }
+
+    private static Query updatedSince(Class<? extends ServiceDocument> type, long sinceMicros) {
+        return Query.Builder.create()
+                .addKindFieldClause(type)
+                .addRangeClause(ServiceDocument.FIELD_NAME_UPDATE_TIME_MICROS,
+                        NumericRange.createGreaterThanOrEqualRange(sinceMicros))
+                .build();
+    }
+
+    private DeferredResult<Void> queryLinks(Query query, Consumer<String> linkConsumer) {
+        return query(query, EnumSet.noneOf(QueryOption.class),
+                qt -> qt.results.documentLinks.forEach(linkConsumer));
+    }
+
+    /**
+     * Queries the documents of the given type, including the deleted ones if requested, which
+     * are needed to drop them from the index.
+     */
+    private <T extends ServiceDocument> DeferredResult<Void> queryDocuments(Query query,
+            Class<T> type, boolean includeDeleted, Consumer<T> documentConsumer) {
+        EnumSet<QueryOption> options = EnumSet.of(QueryOption.EXPAND_CONTENT);
+        if (includeDeleted) {
+            options.add(QueryOption.INCLUDE_DELETED);
+        }
+        return query(query, options, qt -> {
+            if (qt.results.documents != null) {
+                qt.results.documents.values()
+                        .forEach(json -> documentConsumer.accept(Utils.fromJson(json, type)));
+            }
+        });
+    }
+
+    private DeferredResult<Void> query(Query query, EnumSet<QueryOption> options,
+            Consumer<QueryTask> pageConsumer) {
+        QueryTask queryTask = QueryTask.Builder.createDirectTask()
+                .setQuery(query)
+                .setResultLimit(PAGE_SIZE)
+                .build();
+        queryTask.querySpec.options.addAll(options);
+        queryTask.documentExpirationTimeMicros = Utils.getSystemNowMicrosUtc()
+                + TimeUnit.MINUTES.toMicros(10);
+
+        return send(Operation.createPost(UriUtils.buildUri(this.service.getHost(),
+                ServiceUriPaths.CORE_LOCAL_QUERY_TASKS)).setBody(queryTask))
+                .thenCompose(o -> queryPage(o.getBody(QueryTask.class).results.nextPageLink,
+                        pageConsumer));
+    }
+
+    private DeferredResult<Void> queryPage(String pageLink, Consumer<QueryTask> pageConsumer) {
+        if (pageLink == null) {
+            return DeferredResult.completed(null);
+        }
+        return send(Operation.createGet(UriUtils.buildUri(this.service.getHost(), pageLink)))
+                .thenCompose(o -> {
+                    QueryTask page = o.getBody(QueryTask.class);
+                    pageConsumer.accept(page);
+                    return queryPage(page.results.nextPageLink, pageConsumer);
+                });
+    }
+
+    private DeferredResult<Operation> send(Operation op) {
+        op.setReferer(this.service.getUri());
+        this.service.setAuthorizationContext(op,
+                this.service.getSystemAuthorizationContext());
+        return this.service.sendWithDeferredResult(op);
+    }
+
+}
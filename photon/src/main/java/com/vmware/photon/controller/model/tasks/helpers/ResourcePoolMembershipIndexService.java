@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.photon.controller.model.tasks.helpers;
+
+import com.vmware.photon.controller.model.UriPaths;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.StatelessService;
+
+/**
+ * Owner of the {@link ResourcePoolMembershipIndex} of the host. The index queries the document
+ * index with the system authorization context, so this service has to be privileged.
+ */
+public class ResourcePoolMembershipIndexService extends StatelessService {
+
+    public static final String SELF_LINK = UriPaths.RESOURCES + "/resource-pool-membership-index";
+
+    private ResourcePoolMembershipIndex index;
+
+    @Override
+    public void handleStart(Operation start) {
+        if (ResourcePoolMembershipIndex.ENABLED) {
+            this.index = new ResourcePoolMembershipIndex(this);
+            ResourcePoolMembershipIndex.register(getHost(), this.index);
+        }
+        start.complete();
+    }
+
+    @Override
+    public void handleStop(Operation delete) {
+        if (this.index != null) {
+            ResourcePoolMembershipIndex.unregister(getHost(), this.index);
+        }
+        delete.complete();
+    }
+}
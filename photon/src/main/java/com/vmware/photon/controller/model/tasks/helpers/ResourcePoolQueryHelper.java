@@ -22,6 +22,7 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
+import java.util.logging.Level;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -31,6 +32,8 @@ import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
 import com.vmware.photon.controller.model.resources.ResourcePoolService.ResourcePoolState;
 import com.vmware.photon.controller.model.tasks.helpers.ResourcePoolQueryHelper.QueryResult.ResourcePoolData;
 import com.vmware.xenon.common.DeferredResult;
+import com.vmware.xenon.common.Operation.AuthorizationContext;
+import com.vmware.xenon.common.OperationContext;
 import com.vmware.xenon.common.ServiceDocument;
 import com.vmware.xenon.common.ServiceHost;
 import com.vmware.xenon.services.common.QueryTask.Query;
@@ -57,6 +60,11 @@ import com.vmware.xenon.services.common.QueryTask.Query;
  *
  * <p>By default computes are not expanded and values in {@link QueryResult#computesByLink} are
  * {@code null}. Use {@link ResourcePoolQueryHelper#setExpandComputes(boolean)} to change this.
+ *
+ * <p>Once the {@link ResourcePoolMembershipIndex} of the host is loaded, the computes are
+ * assigned to the resource pools from the membership kept in the index, instead of running the
+ * query of every resource pool. The computes are then retrieved with a single query, only if
+ * their documents, additional query clauses or the authorization of the caller are needed.
  */
 public class ResourcePoolQueryHelper {
     private static final int PAGE_SIZE = Integer
@@ -184,22 +192,164 @@ public class ResourcePoolQueryHelper {
      * Perform the actual retrieval and returns to the client DeferredResult with actual QueryResult.
      */
     public DeferredResult<QueryResult> query() {
+        ResourcePoolMembershipIndex index = ResourcePoolMembershipIndex.getInstance(this.host);
+        if (index == null) {
+            return queryDocumentIndex();
+        }
+
+        return index.sync()
+                .exceptionally(e -> {
+                    this.host.log(Level.WARNING,
+                            "Failed to sync resource pool membership index: %s", e.getMessage());
+                    return null;
+                })
+                .thenCompose(snapshot -> snapshot != null
+                        ? queryMembershipIndex(snapshot)
+                        // the index is still loading
+                        : queryDocumentIndex());
+    }
+
+    /**
+     * Perform the actual retrieval and notifies the client through the given completionHandler.
+     */
+    public void query(Consumer<QueryResult> completionHandler) {
+        query().thenAccept(completionHandler);
+    }
+
+    /**
+     * Retrieves the resource pools and their computes by running the resource pool queries.
+     */
+    private DeferredResult<QueryResult> queryDocumentIndex() {
 
         this.result = new QueryResult();
 
         // start by retrieving the requested resource pools
         return retrieveResourcePools()
-                .thenCompose(ignore -> executeRpQueries())
-                .thenCompose(ignore -> findComputesWithoutPool())
+                .thenCompose(ignore -> executeRpQueries(this.result.resourcesPools.values()))
+                .thenCompose(ignore -> findComputesWithoutPool(null))
                 .thenCompose(this::handleMissingComputes)
                 .handle((ignore, exc) -> exc != null ? QueryResult.forError(exc) : this.result);
     }
 
     /**
-     * Perform the actual retrieval and notifies the client through the given completionHandler.
+     * Same as {@link #queryDocumentIndex()} but with the computes of the resource pools taken
+     * from the given membership index snapshot. The computes are only queried when their
+     * documents are expanded, they are narrowed down by additional query clauses or the
+     * authorization of the caller applies.
      */
-    public void query(Consumer<QueryResult> completionHandler) {
-        query().thenAccept(completionHandler);
+    private DeferredResult<QueryResult> queryMembershipIndex(
+            ResourcePoolMembershipIndex.Snapshot snapshot) {
+
+        this.result = new QueryResult();
+        boolean queryComputes = this.expandComputes || this.additionalQueryClausesProvider != null
+                || !isSystemCaller();
+
+        return retrieveResourcePools()
+                .thenCompose(ignore -> queryComputes ? retrieveMembers(snapshot)
+                        : assignMembers(snapshot))
+                .thenCompose(this::findComputesWithoutPool)
+                .thenCompose(this::handleMissingComputes)
+                .handle((ignore, exc) -> exc != null ? QueryResult.forError(exc) : this.result);
+    }
+
+    /**
+     * Retrieves the computes of the resource pools with a single compute query, and assigns them
+     * to the resource pools they are members of in the given snapshot. As the resource pools, the
+     * computes are retrieved with the authorization of the caller. Resource pools which are not
+     * in the snapshot yet run their own query.
+     *
+     * @return the links of all retrieved computes
+     */
+    private DeferredResult<Collection<String>> retrieveMembers(
+            ResourcePoolMembershipIndex.Snapshot snapshot) {
+        Map<String, Set<String>> membersByRpLink = new HashMap<>();
+        List<ResourcePoolData> notIndexed = new ArrayList<>();
+        for (ResourcePoolData rpData : this.result.resourcesPools.values()) {
+            String rpLink = rpData.resourcePoolState.documentSelfLink;
+            Set<String> members = snapshot.getComputeLinks(rpLink);
+            if (members == null) {
+                notIndexed.add(rpData);
+            } else {
+                membersByRpLink.put(rpLink, new HashSet<>(members));
+            }
+        }
+
+        Query.Builder queryBuilder = Query.Builder.create()
+                .addKindFieldClause(ComputeState.class);
+        if (this.computeLinks != null && !this.computeLinks.isEmpty()) {
+            queryBuilder.addInClause(ServiceDocument.FIELD_NAME_SELF_LINK, this.computeLinks);
+        } else {
+            if (this.resourcePoolLinks != null && !this.resourcePoolLinks.isEmpty()) {
+                Set<String> members = new HashSet<>();
+                membersByRpLink.values().forEach(members::addAll);
+                if (members.isEmpty()) {
+                    return executeRpQueries(notIndexed)
+                            .thenApply(ignore -> Collections.emptyList());
+                }
+                queryBuilder.addInClause(ServiceDocument.FIELD_NAME_SELF_LINK, members);
+            }
+            if (this.additionalQueryClausesProvider != null) {
+                this.additionalQueryClausesProvider.accept(queryBuilder);
+            }
+        }
+
+        return queryComputes(queryBuilder.build())
+                .thenCompose(computesMap -> {
+                    membersByRpLink.forEach((rpLink, members) -> {
+                        Map<String, ComputeState> rpComputes = new HashMap<>();
+                        for (String member : members) {
+                            if (computesMap.containsKey(member)) {
+                                rpComputes.put(member, computesMap.get(member));
+                            }
+                        }
+                        storeComputes(rpLink, rpComputes);
+                    });
+                    return executeRpQueries(notIndexed)
+                            .thenApply(ignore -> (Collection<String>) computesMap.keySet());
+                });
+    }
+
+    /**
+     * Assigns the computes to the resource pools they are members of in the given snapshot,
+     * without retrieving them. Resource pools which are not in the snapshot yet run their own
+     * query.
+     *
+     * @return the links of all computes in the snapshot
+     */
+    private DeferredResult<Collection<String>> assignMembers(
+            ResourcePoolMembershipIndex.Snapshot snapshot) {
+        Set<String> computeLinks = this.computeLinks != null && !this.computeLinks.isEmpty()
+                ? new HashSet<>(this.computeLinks) : null;
+        List<ResourcePoolData> notIndexed = new ArrayList<>();
+        for (ResourcePoolData rpData : this.result.resourcesPools.values()) {
+            String rpLink = rpData.resourcePoolState.documentSelfLink;
+            Set<String> members = snapshot.getComputeLinks(rpLink);
+            if (members == null) {
+                notIndexed.add(rpData);
+                continue;
+            }
+            Map<String, ComputeState> rpComputes = new HashMap<>();
+            for (String member : members) {
+                if (computeLinks == null || computeLinks.contains(member)) {
+                    rpComputes.put(member, null);
+                }
+            }
+            storeComputes(rpLink, rpComputes);
+        }
+        return executeRpQueries(notIndexed)
+                .thenApply(ignore -> new ArrayList<>(snapshot.allComputeLinks));
+    }
+
+    /**
+     * Returns whether the caller runs as the system user, so that the links of the computes the
+     * index keeps with the system authorization context can be returned as they are.
+     */
+    private boolean isSystemCaller() {
+        if (!this.host.isAuthorizationEnabled()) {
+            return true;
+        }
+        AuthorizationContext authContext = OperationContext.getAuthorizationContext();
+        return authContext != null && authContext.isSystemUser();
     }
 
     /**
@@ -222,10 +372,10 @@ public class ResourcePoolQueryHelper {
     /**
      * Executes the resource pool queries in parallel and then collects the result.
      */
-    private DeferredResult<Void> executeRpQueries() {
-        List<DeferredResult<Void>> rpQueryDRs = new ArrayList<>(this.result.resourcesPools.size());
+    private DeferredResult<Void> executeRpQueries(Collection<ResourcePoolData> rpDatas) {
+        List<DeferredResult<Void>> rpQueryDRs = new ArrayList<>(rpDatas.size());
         Map<String, Map<String, ComputeState>> computeMapByRpLink = new ConcurrentHashMap<>();
-        for (ResourcePoolData rpData : this.result.resourcesPools.values()) {
+        for (ResourcePoolData rpData : rpDatas) {
             String rpLink = rpData.resourcePoolState.documentSelfLink;
             Query rpQuery = rpData.resourcePoolState.query;
 
@@ -236,22 +386,7 @@ public class ResourcePoolQueryHelper {
                 this.additionalQueryClausesProvider.accept(queryBuilder);
             }
 
-            QueryByPages<ComputeState> computeQuery =
-                    new QueryByPages<>(this.host, queryBuilder.build(), ComputeState.class, null)
-                            .setMaxPageSize(PAGE_SIZE);
-            DeferredResult<Map<String, ComputeState>> rpQueryDR;
-            if (this.expandComputes) {
-                rpQueryDR = computeQuery
-                        .collectDocuments(Collectors.toMap(cs -> cs.documentSelfLink, cs -> cs));
-            } else {
-                // manually collect links since Collectors.toMap() does not allow null values
-                Map<String, ComputeState> computesMap = new HashMap<>();
-                rpQueryDR = computeQuery
-                        .queryLinks(csLink -> computesMap.put(csLink, null))
-                        .thenApply(ignore -> computesMap);
-            }
-
-            rpQueryDRs.add(rpQueryDR
+            rpQueryDRs.add(queryComputes(queryBuilder.build())
                     .thenAccept(computesMap -> computeMapByRpLink.put(rpLink, computesMap)));
         }
 
@@ -260,14 +395,34 @@ public class ResourcePoolQueryHelper {
                 .thenApply(ignore -> (Void)null);
     }
 
+    /**
+     * Queries the computes matching the given query, expanded if requested.
+     */
+    private DeferredResult<Map<String, ComputeState>> queryComputes(Query query) {
+        QueryByPages<ComputeState> computeQuery =
+                new QueryByPages<>(this.host, query, ComputeState.class, null)
+                        .setMaxPageSize(PAGE_SIZE);
+        if (this.expandComputes) {
+            return computeQuery
+                    .collectDocuments(Collectors.toMap(cs -> cs.documentSelfLink, cs -> cs));
+        }
+        // manually collect links since Collectors.toMap() does not allow null values
+        Map<String, ComputeState> computesMap = new HashMap<>();
+        return computeQuery
+                .queryLinks(csLink -> computesMap.put(csLink, null))
+                .thenApply(ignore -> computesMap);
+    }
+
     /**
      * Finds computes that are not part of any resource pool.
      *
      * - If we have input resource pool(s), don't do anything.
      * - If we have input computeLinks, check them.
      * - Otherwise, get all computes and check which are missing in the already collected result.
+     *   The links of all computes may be given if they are already retrieved.
      */
-    private DeferredResult<Collection<String>> findComputesWithoutPool() {
+    private DeferredResult<Collection<String>> findComputesWithoutPool(
+            Collection<String> allComputeLinks) {
         if (this.resourcePoolLinks != null && !this.resourcePoolLinks.isEmpty()) {
             return DeferredResult.completed(Collections.emptyList());
         }
@@ -281,6 +436,10 @@ public class ResourcePoolQueryHelper {
             return DeferredResult.completed(this.computeLinks);
         }
 
+        if (allComputeLinks != null) {
+            return DeferredResult.completed(allComputeLinks);
+        }
+
         // query for all computes (without expanding the documents)
         Query.Builder queryBuilder = Query.Builder.create()
                 .addKindFieldClause(ComputeState.class);
@@ -32,6 +32,10 @@ import com.vmware.photon.controller.model.monitoring.InMemoryResourceMetricServi
 import com.vmware.photon.controller.model.monitoring.InMemoryResourceMetricService.InMemoryResourceMetric;
 import com.vmware.photon.controller.model.monitoring.ResourceMetricsService;
 import com.vmware.photon.controller.model.monitoring.ResourceMetricsService.ResourceMetrics;
+import com.vmware.photon.controller.model.monitoring.ResourceMetricsStore;
+import com.vmware.photon.controller.model.monitoring.ResourceMetricsStoreService;
+import com.vmware.photon.controller.model.monitoring.ResourceMetricsStoreService.RequestType;
+import com.vmware.photon.controller.model.monitoring.ResourceMetricsStoreService.ResourceMetricsStoreRequest;
 import com.vmware.photon.controller.model.query.QueryUtils;
 import com.vmware.photon.controller.model.resources.util.PhotonModelUtils;
 import com.vmware.photon.controller.model.tasks.TaskUtils;
@@ -71,9 +75,9 @@ import com.vmware.xenon.services.common.TaskService;
  * instances. Aggregate metrics are identified using a key that is a combination of the resourceId, metricKey and a timestamp.
  * Queries for aggregate metrics need to issue a prefix query on resourceId and metric Key to obtain all documents and filter by date.
  *
- * Aggregation operations can run multiple time within a time window. This will result in multiple documents for the time window.
- * The first document, sorted by documentSelfLink in DESC order, represents the aggregate value after the time interval has closed. All
- * other documents represent point in time aggregates for the collection interval.
+ * Aggregation operations can run multiple time within a time window. Rollups are computed incrementally: the running aggregates of
+ * the in-memory metrics are merged bin by bin and only the raw metrics after the last rollup time are read. An aggregate is published
+ * only once its time window has closed, {@link #ROLLUP_COMPLETION_DELAY_MINUTES} after its end, so there is one document per window.
  *
  * All aggregate metrics have a timestamp that represents the end of the interval. For example if the aggregation is for hourly
  * data and the interval is 10-11, the aggregate value will have a timestamp of 11
@@ -118,6 +122,12 @@ public class SingleResourceStatsAggregationTaskService extends
     private static final int RAW_METRICS_LIMIT = Integer
             .getInteger(RAW_METRICS_RESULT_LIMIT, DEFAULT_RAW_METRICS_RESULT_LIMIT);
 
+    public static final String ROLLUP_COMPLETION_DELAY_MINUTES = UriPaths.PROPERTY_PREFIX
+            + "SingleResourceStatsAggregationTaskService.rollup.completionDelayMinutes";
+    private static final int DEFAULT_ROLLUP_COMPLETION_DELAY_MINUTES = 10;
+    static final long ROLLUP_COMPLETION_DELAY_MICROS = TimeUnit.MINUTES.toMicros(Integer
+            .getInteger(ROLLUP_COMPLETION_DELAY_MINUTES, DEFAULT_ROLLUP_COMPLETION_DELAY_MINUTES));
+
     public static class SingleResourceStatsAggregationTaskState
             extends TaskService.TaskServiceState {
 
@@ -585,17 +595,16 @@ public class SingleResourceStatsAggregationTaskService extends
                 continue;
             }
 
-            // TODO VSYM-3190 - Change normalized interval boundary to beginning of the rollup period
-            // Currently, xenon's time interval boundary 1 hour before than photon
-            // model's aggregate metrics.
-            Long earliestBinId = TimeUnit.MILLISECONDS.toMicros(timeSeriesStats.bins.firstKey());
-            earliestBinId += TimeUnit.MILLISECONDS.toMicros(timeSeriesStats.binDurationMillis);
+            // The bins after the last rollup time begin at the last rollup time, check if they
+            // are all in memory.
+            Long earliestBinBegin = TimeUnit.MILLISECONDS
+                    .toMicros(timeSeriesStats.bins.firstKey());
 
             Long lastRollupTime = metricEntry.getValue();
 
             // Check if we have any last rollup time or if rollup time is older than what we
             // have in memory.
-            if (lastRollupTime == null || lastRollupTime < earliestBinId) {
+            if (lastRollupTime == null || lastRollupTime < earliestBinBegin) {
                 Set<String> metricList = metricsToBeQueried.get(resourceId);
                 if (metricList == null) {
                     metricList = new HashSet<>();
@@ -627,7 +636,8 @@ public class SingleResourceStatsAggregationTaskService extends
             Long binId = TimeUnit.MILLISECONDS.toMicros(binEntry.getKey());
             binId += TimeUnit.MILLISECONDS.toMicros(timeSeriesStats.binDurationMillis);
 
-            if (binId < lastRollupTime) {
+            // the bin ending at the last rollup time has already been published
+            if (binId <= lastRollupTime) {
                 continue;
             }
 
@@ -689,22 +699,32 @@ public class SingleResourceStatsAggregationTaskService extends
             return;
         }
 
+        // create a set of rollup metric keys we are interested in and the timestamp
+        // to rollup from for each
+        Set<RollupMetricHolder> rollupMetricHolder = new HashSet<>();
+        for (Entry<String, Long> metricEntry : currentState.lastRollupTimeForMetric
+                .entrySet()) {
+            RollupMetricHolder metric = new RollupMetricHolder();
+            metric.rollupKey = metricEntry.getKey();
+            if (metricEntry.getValue() != null && metricEntry.getValue() != 0) {
+                metric.beginTimestampMicros = StatsUtil.computeIntervalBeginMicros(
+                        metricEntry.getValue(), lookupBinSize(metricEntry.getKey()));
+            }
+            rollupMetricHolder.add(metric);
+        }
+
+        if (ResourceMetricsStore.ENABLED) {
+            getRawMetricsFromStore(currentState, resourceQueryTask, metricsToBeQueried,
+                    inMemoryStats, rollupMetricHolder);
+            return;
+        }
+
         Query.Builder overallQueryBuilder = Query.Builder.create();
         for (Entry<String, Set<String>> entry : metricsToBeQueried.entrySet()) {
             String resourceId = entry.getKey();
             for (String metricKey : entry.getValue()) {
                 logFine(() -> String.format("Querying raw metrics from disk for %s", metricKey));
-                Long range = null;
-                int binSize = 0;
-                for (Entry<String, Long> metricEntry : currentState.lastRollupTimeForMetric
-                        .entrySet()) {
-                    if (metricEntry.getKey().startsWith(metricKey)) {
-                        if (range == null || range > metricEntry.getValue()) {
-                            binSize = lookupBinSize(metricEntry.getKey());
-                            range = metricEntry.getValue();
-                        }
-                    }
-                }
+                Long beginMicros = getRawMetricsBeginMicros(currentState, metricKey);
                 Query.Builder builder = Query.Builder.create(Occurance.SHOULD_OCCUR);
                 builder.addKindFieldClause(ResourceMetrics.class);
                 builder.addFieldClause(ServiceDocument.FIELD_NAME_SELF_LINK,
@@ -713,30 +733,14 @@ public class SingleResourceStatsAggregationTaskService extends
                 builder.addRangeClause(QuerySpecification
                         .buildCompositeFieldName(ResourceMetrics.FIELD_NAME_ENTRIES, metricKey),
                         NumericRange.createDoubleRange(0.0, Double.MAX_VALUE, true, true));
-                if (range != null && range != 0) {
+                if (beginMicros != null) {
                     builder.addRangeClause(ResourceMetrics.FIELD_NAME_TIMESTAMP,
-                            NumericRange.createGreaterThanOrEqualRange(
-                                    StatsUtil.computeIntervalBeginMicros(range - 1, binSize)));
+                            NumericRange.createGreaterThanOrEqualRange(beginMicros));
                 }
                 overallQueryBuilder.addClause(builder.build());
             }
         }
 
-        // create a set of rollup metric keys we are interested in and the timestamp
-        // to rollup from for each
-        Set<RollupMetricHolder> rollupMetricHolder = new HashSet<>();
-        for (Entry<String, Long> metricEntry : currentState.lastRollupTimeForMetric
-                .entrySet()) {
-            RollupMetricHolder metric = new RollupMetricHolder();
-            metric.rollupKey = metricEntry.getKey();
-            if (metricEntry.getValue() != null && metricEntry.getValue() != 0) {
-                metric.beginTimestampMicros = StatsUtil.computeIntervalBeginMicros(
-                        metricEntry.getValue() - 1,
-                        lookupBinSize(metricEntry.getKey()));
-            }
-            rollupMetricHolder.add(metric);
-        }
-
         QueryTask task = QueryTask.Builder.createDirectTask()
                 .addOption(QueryOption.EXPAND_CONTENT)
                 .addOption(QueryOption.TOP_RESULTS)
@@ -753,33 +757,108 @@ public class SingleResourceStatsAggregationTaskService extends
                         sendSelfFailurePatch(currentState, queryEx.getMessage());
                         return;
                     }
-                    Map<String, List<ResourceMetrics>> rawMetricsForKey = new HashMap<>();
+                    List<ResourceMetrics> rawMetrics = new ArrayList<>();
                     for (Object obj : response.results.documents.values()) {
-                        ResourceMetrics rawMetric = Utils.fromJson(obj, ResourceMetrics.class);
-                        for (RollupMetricHolder metric : rollupMetricHolder) {
-                            for (String rawMetricKey : rawMetric.entries.keySet()) {
-                                if (!rawMetricKey.contains(stripRollupKey(metric.rollupKey))) {
-                                    continue;
-                                }
-                                // we want to consider raw metrics with the specified key and the appropriate timestamp
-                                if ((metric.beginTimestampMicros == null ||
-                                        rawMetric.timestampMicrosUtc >= metric.beginTimestampMicros)) {
-                                    List<ResourceMetrics> rawMetricResultSet = rawMetricsForKey
-                                            .get(metric.rollupKey);
-                                    if (rawMetricResultSet == null) {
-                                        rawMetricResultSet = new ArrayList<>();
-                                        rawMetricsForKey.put(metric.rollupKey, rawMetricResultSet);
-                                    }
-                                    rawMetricResultSet.add(rawMetric);
-                                }
-                            }
-                        }
+                        rawMetrics.add(Utils.fromJson(obj, ResourceMetrics.class));
                     }
-                    aggregateMetrics(currentState, resourceQueryTask, rawMetricsForKey,
-                            inMemoryStats);
+                    aggregateMetrics(currentState, resourceQueryTask,
+                            groupRawMetrics(rollupMetricHolder, rawMetrics), inMemoryStats);
                 });
     }
 
+    /**
+     * Scans the raw metrics in the {@link ResourceMetricsStore}, instead of querying the
+     * {@link ResourceMetrics} documents.
+     */
+    private void getRawMetricsFromStore(SingleResourceStatsAggregationTaskState currentState,
+            QueryTask resourceQueryTask, Map<String, Set<String>> metricsToBeQueried,
+            Map<String, SortedMap<Long, List<TimeBin>>> inMemoryStats,
+            Set<RollupMetricHolder> rollupMetricHolder) {
+        ResourceMetricsStoreRequest scanRequest = new ResourceMetricsStoreRequest();
+        scanRequest.requestType = RequestType.SCAN;
+        scanRequest.metricKeysByResourceId = metricsToBeQueried;
+        scanRequest.beginMicrosByMetricKey = new HashMap<>();
+        scanRequest.resultLimit = RAW_METRICS_LIMIT;
+        for (Set<String> metricKeys : metricsToBeQueried.values()) {
+            for (String metricKey : metricKeys) {
+                Long beginMicros = getRawMetricsBeginMicros(currentState, metricKey);
+                if (beginMicros != null) {
+                    scanRequest.beginMicrosByMetricKey.put(metricKey, beginMicros);
+                }
+            }
+        }
+
+        OperationJoin.create(ResourceMetricsStoreService.createRequests(getHost(), scanRequest))
+                .setCompletion((ops, exs) -> {
+                    if (exs != null) {
+                        sendSelfFailurePatch(currentState,
+                                exs.values().iterator().next().getMessage());
+                        return;
+                    }
+                    List<ResourceMetrics> rawMetrics = ResourceMetricsStoreService
+                            .mergeResponses(ops.values(), RAW_METRICS_LIMIT);
+                    aggregateMetrics(currentState, resourceQueryTask,
+                            groupRawMetrics(rollupMetricHolder, rawMetrics), inMemoryStats);
+                })
+                .sendWith(this);
+    }
+
+    /**
+     * Returns the timestamp to read the raw metrics with the given key from, based on the
+     * earliest last rollup time of the key, or {@code null} to read all raw metrics. The bins
+     * ending at the last rollup time are complete, so they are not read again.
+     */
+    private Long getRawMetricsBeginMicros(SingleResourceStatsAggregationTaskState currentState,
+            String metricKey) {
+        Long range = null;
+        int binSize = 0;
+        for (Entry<String, Long> metricEntry : currentState.lastRollupTimeForMetric
+                .entrySet()) {
+            if (metricEntry.getKey().startsWith(metricKey)) {
+                if (range == null || range > metricEntry.getValue()) {
+                    binSize = lookupBinSize(metricEntry.getKey());
+                    range = metricEntry.getValue();
+                }
+            }
+        }
+        if (range == null || range == 0) {
+            return null;
+        }
+        return StatsUtil.computeIntervalBeginMicros(range, binSize);
+    }
+
+    /**
+     * Groups the raw metrics by the rollup metric keys they are rolled up into.
+     */
+    private Map<String, List<ResourceMetrics>> groupRawMetrics(
+            Set<RollupMetricHolder> rollupMetricHolder, List<ResourceMetrics> rawMetrics) {
+        Map<String, List<ResourceMetrics>> rawMetricsForKey = new HashMap<>();
+        if (rawMetrics == null) {
+            return rawMetricsForKey;
+        }
+        for (ResourceMetrics rawMetric : rawMetrics) {
+            for (RollupMetricHolder metric : rollupMetricHolder) {
+                for (String rawMetricKey : rawMetric.entries.keySet()) {
+                    if (!rawMetricKey.contains(stripRollupKey(metric.rollupKey))) {
+                        continue;
+                    }
+                    // we want to consider raw metrics with the specified key and the appropriate timestamp
+                    if ((metric.beginTimestampMicros == null ||
+                            rawMetric.timestampMicrosUtc >= metric.beginTimestampMicros)) {
+                        List<ResourceMetrics> rawMetricResultSet = rawMetricsForKey
+                                .get(metric.rollupKey);
+                        if (rawMetricResultSet == null) {
+                            rawMetricResultSet = new ArrayList<>();
+                            rawMetricsForKey.put(metric.rollupKey, rawMetricResultSet);
+                        }
+                        rawMetricResultSet.add(rawMetric);
+                    }
+                }
+            }
+        }
+        return rawMetricsForKey;
+    }
+
     private void aggregateMetrics(SingleResourceStatsAggregationTaskState currentState,
             QueryTask resourceQueryTask, Map<String, List<ResourceMetrics>> rawMetricsForKey,
             Map<String, SortedMap<Long, List<TimeBin>>> inMemoryStats) {
@@ -909,7 +988,7 @@ public class SingleResourceStatsAggregationTaskService extends
                 }
 
                 for (TimeBin timeBin : bins.getValue()) {
-                    updateBin(bin, timeBin, aggregationTypes);
+                    StatsUtil.mergeTimeBin(bin, timeBin, aggregationTypes);
                 }
 
                 timeBinMap.put(binId, bin);
@@ -994,6 +1073,24 @@ public class SingleResourceStatsAggregationTaskService extends
         }
     }
 
+    /**
+     * Returns the sorted ids, i.e. end times, of the bins to publish. Only the bins of closed time
+     * windows are published, the open ones are aggregated again by the next run. The bins up to
+     * the last rollup time have already been published.
+     */
+    static List<Long> getClosedBinIds(Collection<Long> binIds, Long lastRollupTime,
+            long nowMicros) {
+        long completedBinEnd = nowMicros - ROLLUP_COMPLETION_DELAY_MICROS;
+        List<Long> closedBinIds = new ArrayList<>();
+        for (Long binId : binIds) {
+            if (binId <= completedBinEnd && (lastRollupTime == null || binId > lastRollupTime)) {
+                closedBinIds.add(binId);
+            }
+        }
+        Collections.sort(closedBinIds);
+        return closedBinIds;
+    }
+
     /**
      * Publish aggregate metric values
      */
@@ -1009,13 +1106,16 @@ public class SingleResourceStatsAggregationTaskService extends
             if (currentState.aggregatedTimeBinMap == null) {
                 addLastRollupTimeForMissingKeys(currentState, publishedKeys, operations);
             } else {
+                long nowMicros = Utils.getNowMicrosUtc();
                 for (Entry<String, Map<Long, TimeBin>> aggregateEntries : currentState.aggregatedTimeBinMap
                         .entrySet()) {
                     Map<Long, TimeBin> aggrValue = aggregateEntries.getValue();
-                    List<Long> keys = new ArrayList<>();
-                    keys.addAll(aggrValue.keySet());
-                    // create list of operations sorted by the timebin
-                    Collections.sort(keys);
+                    List<Long> keys = getClosedBinIds(aggrValue.keySet(),
+                            currentState.lastRollupTimeForMetric.get(aggregateEntries.getKey()),
+                            nowMicros);
+                    if (keys.isEmpty()) {
+                        continue;
+                    }
                     Long latestTimeKey = null;
                     for (Long timeKey : keys) {
                         ResourceMetrics resourceMetrics = new ResourceMetrics();
@@ -1209,41 +1309,4 @@ public class SingleResourceStatsAggregationTaskService extends
         inputBin.count++;
         return inputBin;
     }
-
-    /**
-     * Update time bin based on given time bin value.
-     */
-    private TimeBin updateBin(TimeBin currentBin, TimeBin value,
-            Set<AggregationType> aggregationTypes) {
-        if (aggregationTypes.contains(AggregationType.MAX)) {
-            if (currentBin.max == null || currentBin.max < value.max) {
-                currentBin.max = value.max;
-            }
-        }
-
-        if (aggregationTypes.contains(AggregationType.MIN)) {
-            if (currentBin.min == null || currentBin.min > value.min) {
-                currentBin.min = value.min;
-            }
-        }
-
-        if (aggregationTypes.contains(AggregationType.AVG)) {
-            if (currentBin.avg == null) {
-                currentBin.avg = value.avg;
-            } else {
-                currentBin.avg = ((currentBin.avg * currentBin.count) + (value.avg * value.count)) /
-                        (currentBin.count + value.count);
-            }
-        }
-
-        if (aggregationTypes.contains(AggregationType.SUM)) {
-            if (currentBin.sum == null) {
-                currentBin.sum = value.sum;
-            } else {
-                currentBin.sum += value.sum;
-            }
-        }
-        currentBin.count += value.count;
-        return currentBin;
-    }
 }
@@ -13,6 +13,7 @@ package com.vmware.photon.controller.model.tasks.monitoring;
 
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.EnumSet;
 import java.util.HashMap;
@@ -28,6 +29,10 @@ import com.vmware.photon.controller.model.monitoring.InMemoryResourceMetricServi
 import com.vmware.photon.controller.model.monitoring.InMemoryResourceMetricService.InMemoryResourceMetric;
 import com.vmware.photon.controller.model.monitoring.ResourceMetricsService;
 import com.vmware.photon.controller.model.monitoring.ResourceMetricsService.ResourceMetrics;
+import com.vmware.photon.controller.model.monitoring.ResourceMetricsStore;
+import com.vmware.photon.controller.model.monitoring.ResourceMetricsStoreService;
+import com.vmware.photon.controller.model.monitoring.ResourceMetricsStoreService.RequestType;
+import com.vmware.photon.controller.model.monitoring.ResourceMetricsStoreService.ResourceMetricsStoreRequest;
 import com.vmware.photon.controller.model.query.QueryUtils;
 import com.vmware.photon.controller.model.resources.ComputeDescriptionService.ComputeDescription;
 import com.vmware.photon.controller.model.resources.ComputeService.ComputeStateWithDescription;
@@ -38,6 +43,7 @@ import com.vmware.photon.controller.model.util.ClusterUtil;
 import com.vmware.photon.controller.model.util.ClusterUtil.ServiceTypeCluster;
 import com.vmware.xenon.common.FactoryService;
 import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.OperationJoin;
 import com.vmware.xenon.common.OperationSequence;
 import com.vmware.xenon.common.Service;
 import com.vmware.xenon.common.ServiceDocument;
@@ -400,10 +406,18 @@ public class SingleResourceStatsCollectionTaskService
                 }
             }
         }
-        for (ResourceMetrics metrics : metricsList) {
-            operations.add(Operation.createPost(UriUtils.buildUri(
-                    ClusterUtil.getClusterUri(getHost(), ServiceTypeCluster.METRIC_SERVICE),
-                    ResourceMetricsService.FACTORY_LINK)).setBodyNoCloning(metrics));
+        if (ResourceMetricsStore.ENABLED) {
+            ResourceMetricsStoreRequest appendRequest = new ResourceMetricsStoreRequest();
+            appendRequest.requestType = RequestType.APPEND;
+            appendRequest.metrics = metricsList;
+            operations.addAll(ResourceMetricsStoreService.createRequests(getHost(),
+                    appendRequest));
+        } else {
+            for (ResourceMetrics metrics : metricsList) {
+                operations.add(Operation.createPost(UriUtils.buildUri(
+                        ClusterUtil.getClusterUri(getHost(), ServiceTypeCluster.METRIC_SERVICE),
+                        ResourceMetricsService.FACTORY_LINK)).setBodyNoCloning(metrics));
+            }
         }
         for (InMemoryResourceMetric metric : inMemoryMetricsList) {
             operations.add(Operation.createPost(getHost(), InMemoryResourceMetricService.FACTORY_LINK)
@@ -556,6 +570,11 @@ public class SingleResourceStatsCollectionTaskService
         String statsAdapterLink = getAdapterLinkFromURI(patchUri);
         String lastSuccessfulRunMetricKey = getLastCollectionMetricKeyForAdapterLink(
                 statsAdapterLink, false);
+        if (ResourceMetricsStore.ENABLED) {
+            populateLastCollectionTimeFromMetricsStore(currentState, computeStatsRequest,
+                    patchUri, lastSuccessfulRunMetricKey);
+            return;
+        }
         Query.Builder builder = Query.Builder.create();
         builder.addKindFieldClause(ResourceMetrics.class);
         builder.addFieldClause(ServiceDocument.FIELD_NAME_SELF_LINK,
@@ -601,6 +620,41 @@ public class SingleResourceStatsCollectionTaskService
                 });
     }
 
+    /**
+     * Looks up the latest sample of the last successful run metric in the resource metrics store
+     * and sets its timestamp in the compute stats request.
+     */
+    private void populateLastCollectionTimeFromMetricsStore(
+            SingleResourceStatsCollectionTaskState currentState,
+            ComputeStatsRequest computeStatsRequest, URI patchUri,
+            String lastSuccessfulRunMetricKey) {
+        ResourceMetricsStoreRequest scanRequest = new ResourceMetricsStoreRequest();
+        scanRequest.requestType = RequestType.SCAN;
+        scanRequest.latestOnly = true;
+        scanRequest.metricKeysByResourceId = new HashMap<>();
+        scanRequest.metricKeysByResourceId.put(
+                UriUtils.getLastPathSegment(currentState.computeLink),
+                Collections.singleton(lastSuccessfulRunMetricKey));
+        OperationJoin.create(ResourceMetricsStoreService.createRequests(getHost(), scanRequest))
+                .setCompletion((ops, exs) -> {
+                    if (exs != null) {
+                        logSevere(() -> String.format("Could not get the last collection time"
+                                + " from the metrics store: %s",
+                                Utils.toString(exs.values().iterator().next())));
+                        sendStatsRequestToAdapter(currentState, patchUri, computeStatsRequest);
+                        return;
+                    }
+                    List<ResourceMetrics> metrics = ResourceMetricsStoreService
+                            .mergeResponses(ops.values(), null);
+                    if (!metrics.isEmpty()) {
+                        computeStatsRequest.lastCollectionTimeMicrosUtc =
+                                metrics.get(0).timestampMicrosUtc;
+                    }
+                    sendStatsRequestToAdapter(currentState, patchUri, computeStatsRequest);
+                })
+                .sendWith(this);
+    }
+
     /**
      * Sends the Stats request to the Stats adapter
      */
@@ -12,8 +12,11 @@
 package com.vmware.photon.controller.model.tasks.monitoring;
 
 import java.util.Arrays;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
+import com.vmware.xenon.common.ServiceStats.TimeSeriesStats.AggregationType;
+import com.vmware.xenon.common.ServiceStats.TimeSeriesStats.TimeBin;
 import com.vmware.xenon.common.UriUtils;
 
 /**
@@ -81,6 +84,55 @@ public class StatsUtil {
         return (timestampMicros + TimeUnit.MILLISECONDS.toMicros(bucketDurationMillis));
     }
 
+    /**
+     * Merges the running aggregates of the source time bin into the target time bin in constant
+     * time, as if the samples of both bins were added to the target one by one. The source bin is
+     * expected to hold the later samples.
+     */
+    public static TimeBin mergeTimeBin(TimeBin target, TimeBin source,
+            Set<AggregationType> aggregationTypes) {
+        if (aggregationTypes.contains(AggregationType.MAX) && source.max != null) {
+            if (target.max == null || target.max < source.max) {
+                target.max = source.max;
+            }
+        }
+
+        if (aggregationTypes.contains(AggregationType.MIN) && source.min != null) {
+            if (target.min == null || target.min > source.min) {
+                target.min = source.min;
+            }
+        }
+
+        if (aggregationTypes.contains(AggregationType.AVG) && source.avg != null) {
+            if (target.avg == null) {
+                target.avg = source.avg;
+                target.var = source.var;
+            } else {
+                double count = target.count + source.count;
+                double delta = source.avg - target.avg;
+                if (target.var != null && source.var != null) {
+                    target.var = target.var + source.var
+                            + delta * delta * target.count * source.count / count;
+                }
+                target.avg = ((target.avg * target.count) + (source.avg * source.count)) / count;
+            }
+        }
+
+        if (aggregationTypes.contains(AggregationType.SUM) && source.sum != null) {
+            if (target.sum == null) {
+                target.sum = source.sum;
+            } else {
+                target.sum += source.sum;
+            }
+        }
+
+        if (source.latest != null) {
+            target.latest = source.latest;
+        }
+        target.count += source.count;
+        return target;
+    }
+
     private static class MetricKeyComponents {
         public String resourceId;
         @SuppressWarnings("unused")
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.photon.controller.model.monitoring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.vmware.xenon.common.Utils;
+
+public class ResourceMetricsStoreTest {
+    private static final String RESOURCE_ID = "resource";
+    private static final String METRIC_KEY = "CPUUtilizationPercent";
+
+    private static final double[] VALUES = { 0.0, 0.0, -0.0, 1.5, -1.5, Math.PI, Math.E,
+            Double.MAX_VALUE, Double.MIN_VALUE, -Double.MAX_VALUE, 1e-300, 42, 42, 42.000001,
+            Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 0.1 + 0.2, 7 };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private long startMicros;
+    private List<long[]> samples;
+
+    @Before
+    public void setUp() {
+        // irregular deltas of either sign across more than one segment, older samples included
+        this.startMicros = Utils.getNowMicrosUtc() - ResourceMetricsStore.SEGMENT_DURATION_MICROS
+                - TimeUnit.HOURS.toMicros(6);
+        long[] deltas = { 0, TimeUnit.MINUTES.toMicros(1), TimeUnit.MINUTES.toMicros(1),
+                TimeUnit.MINUTES.toMicros(1) + 17, 1, TimeUnit.HOURS.toMicros(5), -3,
+                TimeUnit.SECONDS.toMicros(30), TimeUnit.HOURS.toMicros(20), 123456789, 1, 1,
+                TimeUnit.MINUTES.toMicros(5), -TimeUnit.MINUTES.toMicros(2), 999, 1,
+                TimeUnit.HOURS.toMicros(1), 5 };
+        this.samples = new ArrayList<>();
+        long timestamp = this.startMicros;
+        for (int i = 0; i < VALUES.length; i++) {
+            timestamp += deltas[i];
+            this.samples.add(new long[] { timestamp, Double.doubleToRawLongBits(VALUES[i]) });
+        }
+    }
+
+    @Test
+    public void testScan() {
+        ResourceMetricsStore store = newStore();
+        append(store, this.samples);
+        assertSamples(this.samples, scan(store));
+    }
+
+    @Test
+    public void testFlushAndLoad() {
+        ResourceMetricsStore store = newStore();
+        append(store, this.samples);
+        store.append(RESOURCE_ID, "other", this.startMicros, 1);
+        store.flush();
+
+        ResourceMetricsStore loaded = newStore();
+        loaded.load();
+        assertSamples(this.samples, scan(loaded));
+        assertSamples(samplesOf(new long[] { this.startMicros, Double.doubleToRawLongBits(1) }),
+                scan(loaded, RESOURCE_ID, "other"));
+
+        long[] latest = new long[2];
+        loaded.latest(RESOURCE_ID, METRIC_KEY, (timestampMicros, value) -> {
+            latest[0] = timestampMicros;
+            latest[1] = Double.doubleToRawLongBits(value);
+        });
+        long[] expectedLatest = this.samples.get(this.samples.size() - 1);
+        assertEquals(expectedLatest[0], latest[0]);
+        assertEquals(expectedLatest[1], latest[1]);
+
+        assertEquals(store.getStats().sampleCount, loaded.getStats().sampleCount);
+        assertEquals(store.getStats().encodedBytes, loaded.getStats().encodedBytes);
+    }
+
+    @Test
+    public void testAppendAfterLoad() {
+        ResourceMetricsStore store = newStore();
+        List<long[]> first = this.samples.subList(0, VALUES.length / 2);
+        List<long[]> second = this.samples.subList(VALUES.length / 2, VALUES.length);
+        append(store, first);
+        store.flush();
+
+        // the column encoding continues from the saved state
+        ResourceMetricsStore loaded = newStore();
+        loaded.load();
+        append(loaded, second);
+        loaded.flush();
+        assertSamples(this.samples, scan(loaded));
+
+        ResourceMetricsStore reloaded = newStore();
+        reloaded.load();
+        assertSamples(this.samples, scan(reloaded));
+    }
+
+    @Test
+    public void testScanRange() {
+        ResourceMetricsStore store = newStore();
+        append(store, this.samples);
+        long beginMicros = this.samples.get(5)[0];
+        long endMicros = this.samples.get(10)[0];
+
+        List<long[]> expected = new ArrayList<>();
+        for (long[] sample : this.samples) {
+            if (sample[0] >= beginMicros && sample[0] < endMicros) {
+                expected.add(sample);
+            }
+        }
+        List<long[]> actual = new ArrayList<>();
+        store.scan(RESOURCE_ID, METRIC_KEY, beginMicros, endMicros,
+                (timestampMicros, value) -> actual.add(
+                        new long[] { timestampMicros, Double.doubleToRawLongBits(value) }));
+        assertFalse(expected.isEmpty());
+        assertSamples(expected, actual);
+    }
+
+    @Test
+    public void testNaNIsSkipped() {
+        ResourceMetricsStore store = newStore();
+        store.append(RESOURCE_ID, METRIC_KEY, this.startMicros, Double.NaN);
+        store.append(RESOURCE_ID, METRIC_KEY, this.startMicros + 1, 2);
+        assertSamples(samplesOf(
+                new long[] { this.startMicros + 1, Double.doubleToRawLongBits(2) }),
+                scan(store));
+    }
+
+    private ResourceMetricsStore newStore() {
+        return new ResourceMetricsStore(null, this.folder.getRoot().toPath().resolve("store"));
+    }
+
+    private static void append(ResourceMetricsStore store, List<long[]> samples) {
+        for (long[] sample : samples) {
+            store.append(RESOURCE_ID, METRIC_KEY, sample[0], Double.longBitsToDouble(sample[1]));
+        }
+    }
+
+    private static List<long[]> scan(ResourceMetricsStore store) {
+        return scan(store, RESOURCE_ID, METRIC_KEY);
+    }
+
+    private static List<long[]> scan(ResourceMetricsStore store, String resourceId,
+            String metricKey) {
+        List<long[]> result = new ArrayList<>();
+        store.scan(resourceId, metricKey, Long.MIN_VALUE, Long.MAX_VALUE,
+                (timestampMicros, value) -> result.add(
+                        new long[] { timestampMicros, Double.doubleToRawLongBits(value) }));
+        return result;
+    }
+
+    private static List<long[]> samplesOf(long[]... samples) {
+        List<long[]> result = new ArrayList<>();
+        for (long[] sample : samples) {
+            result.add(sample);
+        }
+        return result;
+    }
+
+    /**
+     * Compares the samples in segment order, so only the order within a segment is kept.
+     */
+    private static void assertSamples(List<long[]> expected, List<long[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        List<long[]> sortedExpected = sortBySegment(expected);
+        for (int i = 0; i < actual.size(); i++) {
+            assertEquals("timestamp of sample " + i, sortedExpected.get(i)[0], actual.get(i)[0]);
+            assertEquals("value of sample " + i, sortedExpected.get(i)[1], actual.get(i)[1]);
+        }
+    }
+
+    private static List<long[]> sortBySegment(List<long[]> samples) {
+        List<long[]> sorted = new ArrayList<>(samples);
+        // stable, so samples keep their append order within a segment
+        sorted.sort((a, b) -> Long.compare(segmentOf(a[0]), segmentOf(b[0])));
+        return sorted;
+    }
+
+    private static long segmentOf(long timestampMicros) {
+        return timestampMicros - Math.floorMod(timestampMicros,
+                ResourceMetricsStore.SEGMENT_DURATION_MICROS);
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.photon.controller.model.tasks.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.photon.controller.model.PhotonModelServices;
+import com.vmware.photon.controller.model.resources.ComputeService;
+import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
+import com.vmware.photon.controller.model.resources.ResourcePoolService;
+import com.vmware.photon.controller.model.resources.ResourcePoolService.ResourcePoolState;
+import com.vmware.photon.controller.model.tasks.helpers.ResourcePoolQueryHelper.QueryResult;
+import com.vmware.xenon.common.DeferredResult;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.common.test.TestRequestSender;
+import com.vmware.xenon.common.test.VerificationHost;
+
+public class ResourcePoolMembershipIndexTest {
+
+    private VerificationHost host;
+    private TestRequestSender sender;
+    private StatelessService indexService;
+    private String poolLink;
+
+    @Before
+    public void setUp() throws Throwable {
+        this.host = VerificationHost.create(0);
+        this.host.start();
+        PhotonModelServices.startServices(this.host);
+        this.host.waitForServiceAvailable(PhotonModelServices.LINKS);
+        this.host.addPrivilegedService(ResourcePoolMembershipIndexService.class);
+        this.indexService = (StatelessService) this.host.startServiceAndWait(
+                ResourcePoolMembershipIndexService.class,
+                ResourcePoolMembershipIndexService.SELF_LINK);
+        this.sender = this.host.getTestRequestSender();
+
+        this.poolLink = createPool();
+        createCompute(this.poolLink);
+    }
+
+    @After
+    public void tearDown() {
+        this.host.tearDown();
+    }
+
+    @Test
+    public void testDisabledByDefault() throws Throwable {
+        assertFalse(ResourcePoolMembershipIndex.ENABLED);
+        assertNull(ResourcePoolMembershipIndex.getInstance(this.host));
+
+        // the helper runs the resource pool queries
+        QueryResult result = query(ResourcePoolQueryHelper.createForResourcePool(this.host,
+                this.poolLink));
+        assertEquals(1, result.resourcesPools.get(this.poolLink).computeStateLinks.size());
+    }
+
+    @Test
+    public void testSync() throws Throwable {
+        ResourcePoolMembershipIndex index = newIndex(
+                ResourcePoolMembershipIndex.UPDATE_MARGIN_MICROS, TimeUnit.HOURS.toMicros(1));
+        ResourcePoolMembershipIndex.Snapshot snapshot = waitForLoad(index);
+        assertEquals(1, snapshot.getComputeLinks(this.poolLink).size());
+
+        // updates since the load are applied by the next sync
+        String computeLink = createCompute(this.poolLink);
+        String otherComputeLink = createCompute(null);
+        String otherPoolLink = createPool();
+        snapshot = sync(index);
+        assertEquals(2, snapshot.getComputeLinks(this.poolLink).size());
+        assertTrue(snapshot.getComputeLinks(this.poolLink).contains(computeLink));
+        assertTrue(snapshot.getComputeLinks(otherPoolLink).isEmpty());
+        assertEquals(3, snapshot.allComputeLinks.size());
+        assertEquals(Collections.singleton(this.poolLink),
+                snapshot.getResourcePoolLinks(computeLink));
+        assertTrue(snapshot.getResourcePoolLinks(otherComputeLink).isEmpty());
+
+        // moved to another pool
+        ComputeState patch = new ComputeState();
+        patch.resourcePoolLink = otherPoolLink;
+        this.sender.sendAndWait(Operation.createPatch(this.host, computeLink).setBody(patch));
+        snapshot = sync(index);
+        assertFalse(snapshot.getComputeLinks(this.poolLink).contains(computeLink));
+        assertEquals(Collections.singleton(otherPoolLink),
+                snapshot.getResourcePoolLinks(computeLink));
+    }
+
+    @Test
+    public void testDeletion() throws Throwable {
+        ResourcePoolMembershipIndex index = newIndex(
+                ResourcePoolMembershipIndex.UPDATE_MARGIN_MICROS, TimeUnit.HOURS.toMicros(1));
+        String computeLink = createCompute(this.poolLink);
+        ResourcePoolMembershipIndex.Snapshot snapshot = waitForLoad(index);
+        assertTrue(snapshot.getComputeLinks(this.poolLink).contains(computeLink));
+
+        this.sender.sendAndWait(Operation.createDelete(this.host, computeLink));
+        snapshot = sync(index);
+        assertFalse(snapshot.getComputeLinks(this.poolLink).contains(computeLink));
+        assertFalse(snapshot.allComputeLinks.contains(computeLink));
+
+        this.sender.sendAndWait(Operation.createDelete(this.host, this.poolLink));
+        snapshot = sync(index);
+        assertNull(snapshot.getComputeLinks(this.poolLink));
+    }
+
+    @Test
+    public void testUpdateMarginAndReload() throws Throwable {
+        long syncedAheadMicros = TimeUnit.SECONDS.toMicros(30);
+        ResourcePoolMembershipIndex withMargin = newIndex(TimeUnit.MINUTES.toMicros(1),
+                TimeUnit.HOURS.toMicros(1));
+        ResourcePoolMembershipIndex withoutMargin = newIndex(0, TimeUnit.HOURS.toMicros(1));
+        ResourcePoolMembershipIndex reloaded = newIndex(0, 0);
+        ResourcePoolMembershipIndex.Snapshot[] snapshots = { waitForLoad(withMargin),
+                waitForLoad(withoutMargin), waitForLoad(reloaded) };
+
+        // the compute is indexed after the sync time, as if its update was indexed late
+        for (ResourcePoolMembershipIndex.Snapshot snapshot : snapshots) {
+            snapshot.advance(Utils.getSystemNowMicrosUtc() + syncedAheadMicros);
+        }
+        String computeLink = createCompute(this.poolLink);
+
+        assertTrue(sync(withMargin).getComputeLinks(this.poolLink).contains(computeLink));
+        assertFalse(sync(withoutMargin).getComputeLinks(this.poolLink).contains(computeLink));
+
+        // missed until the next reload
+        this.host.waitFor("Index was not reloaded", () -> {
+            ResourcePoolMembershipIndex.Snapshot snapshot = sync(reloaded);
+            return snapshot != snapshots[2]
+                    && snapshot.getComputeLinks(this.poolLink).contains(computeLink);
+        });
+    }
+
+    @Test
+    public void testQueryHelper() throws Throwable {
+        String otherPoolLink = createPool();
+        String computeLink = createCompute(otherPoolLink);
+        String otherComputeLink = createCompute(null);
+        QueryResult expected = query(ResourcePoolQueryHelper.create(this.host));
+
+        ResourcePoolMembershipIndex index = newIndex(
+                ResourcePoolMembershipIndex.UPDATE_MARGIN_MICROS, TimeUnit.HOURS.toMicros(1));
+        waitForLoad(index);
+        ResourcePoolMembershipIndex.register(this.host, index);
+        try {
+            QueryResult result = query(ResourcePoolQueryHelper.create(this.host));
+            assertEquals(expected.resourcesPools.keySet(), result.resourcesPools.keySet());
+            for (String rpLink : Arrays.asList(this.poolLink, otherPoolLink)) {
+                assertEquals(expected.resourcesPools.get(rpLink).computeStateLinks,
+                        result.resourcesPools.get(rpLink).computeStateLinks);
+            }
+            assertEquals(expected.rpLinksByComputeLink, result.rpLinksByComputeLink);
+            assertEquals(new HashSet<>(Arrays.asList(otherPoolLink)),
+                    result.rpLinksByComputeLink.get(computeLink));
+            assertTrue(result.rpLinksByComputeLink.get(otherComputeLink).isEmpty());
+
+            // computes queried with the additional clauses
+            ResourcePoolQueryHelper helper = ResourcePoolQueryHelper.createForComputes(this.host,
+                    Collections.singleton(computeLink));
+            helper.setExpandComputes(true);
+            result = query(helper);
+            assertEquals(Collections.singleton(otherPoolLink), result.resourcesPools.keySet());
+            assertNotNull(result.computesByLink.get(computeLink));
+        } finally {
+            ResourcePoolMembershipIndex.unregister(this.host, index);
+        }
+    }
+
+    private ResourcePoolMembershipIndex newIndex(long updateMarginMicros,
+            long reloadIntervalMicros) {
+        return new ResourcePoolMembershipIndex(this.indexService, updateMarginMicros,
+                reloadIntervalMicros);
+    }
+
+    private ResourcePoolMembershipIndex.Snapshot waitForLoad(ResourcePoolMembershipIndex index) {
+        ResourcePoolMembershipIndex.Snapshot[] snapshot = new ResourcePoolMembershipIndex.Snapshot[1];
+        this.host.waitFor("Index was not loaded", () -> (snapshot[0] = sync(index)) != null);
+        return snapshot[0];
+    }
+
+    private ResourcePoolMembershipIndex.Snapshot sync(ResourcePoolMembershipIndex index) {
+        return join(index.sync());
+    }
+
+    private QueryResult query(ResourcePoolQueryHelper helper) {
+        QueryResult result = join(helper.query());
+        assertNull(result.error);
+        return result;
+    }
+
+    private String createPool() {
+        ResourcePoolState pool = new ResourcePoolState();
+        pool.name = UUID.randomUUID().toString();
+        return this.sender.sendAndWait(
+                Operation.createPost(this.host, ResourcePoolService.FACTORY_LINK).setBody(pool),
+                ResourcePoolState.class).documentSelfLink;
+    }
+
+    private String createCompute(String resourcePoolLink) {
+        ComputeState compute = new ComputeState();
+        compute.name = UUID.randomUUID().toString();
+        compute.descriptionLink = "/resources/compute-descriptions/test";
+        compute.resourcePoolLink = resourcePoolLink;
+        return this.sender.sendAndWait(
+                Operation.createPost(this.host, ComputeService.FACTORY_LINK).setBody(compute),
+                ComputeState.class).documentSelfLink;
+    }
+
+    private static <T> T join(DeferredResult<T> deferredResult) {
+        try {
+            return deferredResult.toCompletionStage().toCompletableFuture()
+                    .get(30, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.photon.controller.model.tasks.monitoring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class SingleResourceStatsAggregationTaskServiceTest {
+    private static final long HOUR_MICROS = TimeUnit.HOURS.toMicros(1);
+
+    @Test
+    public void testOpenBinsAreNotPublished() {
+        long binEnd = 100 * HOUR_MICROS;
+        List<Long> binIds = Arrays.asList(binEnd, binEnd + HOUR_MICROS);
+
+        // the window has ended, but within the completion delay
+        long now = binEnd + SingleResourceStatsAggregationTaskService
+                .ROLLUP_COMPLETION_DELAY_MICROS - 1;
+        assertTrue(SingleResourceStatsAggregationTaskService
+                .getClosedBinIds(binIds, null, now).isEmpty());
+        // still open
+        assertTrue(SingleResourceStatsAggregationTaskService
+                .getClosedBinIds(binIds, null, binEnd - 1).isEmpty());
+    }
+
+    @Test
+    public void testClosedBinIsPublishedOnce() {
+        long binEnd = 100 * HOUR_MICROS;
+        long closedAt = binEnd + SingleResourceStatsAggregationTaskService
+                .ROLLUP_COMPLETION_DELAY_MICROS;
+        List<Long> binIds = Arrays.asList(binEnd + HOUR_MICROS, binEnd, binEnd - HOUR_MICROS);
+
+        // the earlier bins have been published by a previous run
+        Long lastRollupTime = binEnd - HOUR_MICROS;
+        List<Long> published = SingleResourceStatsAggregationTaskService
+                .getClosedBinIds(binIds, lastRollupTime, closedAt);
+        assertEquals(Collections.singletonList(binEnd), published);
+
+        // the next runs see the published bin again, e.g. aggregated from raw metrics
+        lastRollupTime = published.get(published.size() - 1);
+        assertTrue(SingleResourceStatsAggregationTaskService
+                .getClosedBinIds(binIds, lastRollupTime, closedAt + 1).isEmpty());
+        assertEquals(Collections.singletonList(binEnd + HOUR_MICROS),
+                SingleResourceStatsAggregationTaskService.getClosedBinIds(binIds,
+                        lastRollupTime, closedAt + HOUR_MICROS));
+    }
+
+    @Test
+    public void testClosedBinsArePublishedInOrder() {
+        long binEnd = 100 * HOUR_MICROS;
+        List<Long> binIds = Arrays.asList(binEnd + 2 * HOUR_MICROS, binEnd, binEnd + HOUR_MICROS);
+
+        assertEquals(Arrays.asList(binEnd, binEnd + HOUR_MICROS),
+                SingleResourceStatsAggregationTaskService.getClosedBinIds(binIds, 0L,
+                        binEnd + HOUR_MICROS
+                                + SingleResourceStatsAggregationTaskService
+                                        .ROLLUP_COMPLETION_DELAY_MICROS));
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.photon.controller.model.tasks.monitoring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.EnumSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.vmware.xenon.common.ServiceStats.TimeSeriesStats;
+import com.vmware.xenon.common.ServiceStats.TimeSeriesStats.AggregationType;
+import com.vmware.xenon.common.ServiceStats.TimeSeriesStats.TimeBin;
+
+public class StatsUtilTest {
+    private static final double DELTA = 1e-9;
+    private static final long BIN_DURATION_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    @Test
+    public void testMergeTimeBinMatchesSequentialAdd() {
+        Random random = new Random(42);
+        double[] values = new double[100];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextDouble() * 1000 - 500;
+        }
+
+        for (int split : new int[] { 1, 37, 50, 99 }) {
+            TimeSeriesStats sequential = newStats();
+            TimeSeriesStats first = newStats();
+            TimeSeriesStats second = newStats();
+            for (int i = 0; i < values.length; i++) {
+                sequential.add(timestamp(i), values[i], 1);
+                (i < split ? first : second).add(timestamp(i), values[i], 1);
+            }
+
+            TimeBin merged = StatsUtil.mergeTimeBin(copy(bin(first)), bin(second),
+                    EnumSet.allOf(AggregationType.class));
+            assertBinEquals(bin(sequential), merged);
+        }
+    }
+
+    @Test
+    public void testMergeTimeBinIntoEmptyBin() {
+        TimeSeriesStats stats = newStats();
+        for (int i = 0; i < 10; i++) {
+            stats.add(timestamp(i), i * i, 1);
+        }
+
+        TimeBin merged = StatsUtil.mergeTimeBin(new TimeBin(), bin(stats),
+                EnumSet.allOf(AggregationType.class));
+        assertBinEquals(bin(stats), merged);
+    }
+
+    @Test
+    public void testMergeTimeBinKeepsOnlyRequestedAggregations() {
+        TimeSeriesStats first = newStats();
+        TimeSeriesStats second = newStats();
+        first.add(timestamp(0), 1, 1);
+        second.add(timestamp(1), 3, 1);
+
+        TimeBin merged = StatsUtil.mergeTimeBin(new TimeBin(), bin(first),
+                EnumSet.of(AggregationType.MAX));
+        StatsUtil.mergeTimeBin(merged, bin(second), EnumSet.of(AggregationType.MAX));
+        assertEquals(3, merged.max, DELTA);
+        assertEquals(2, merged.count, DELTA);
+        assertEquals(3, merged.latest, DELTA);
+        assertNull(merged.min);
+        assertNull(merged.avg);
+        assertNull(merged.var);
+        assertNull(merged.sum);
+    }
+
+    private static void assertBinEquals(TimeBin expected, TimeBin actual) {
+        assertEquals(expected.count, actual.count, DELTA);
+        assertEquals(expected.min, actual.min, DELTA);
+        assertEquals(expected.max, actual.max, DELTA);
+        assertEquals(expected.sum, actual.sum, DELTA * Math.abs(expected.sum));
+        assertEquals(expected.avg, actual.avg, DELTA * Math.abs(expected.avg));
+        // the sum of the squared differences from the mean, M2
+        assertEquals(expected.var, actual.var, DELTA * expected.var);
+        assertEquals(expected.latest, actual.latest, DELTA);
+    }
+
+    private static TimeSeriesStats newStats() {
+        return new TimeSeriesStats(1, BIN_DURATION_MILLIS, EnumSet.allOf(AggregationType.class));
+    }
+
+    private static long timestamp(int i) {
+        // all samples fall in the same bin
+        return TimeUnit.HOURS.toMicros(1000) + TimeUnit.SECONDS.toMicros(i);
+    }
+
+    private static TimeBin bin(TimeSeriesStats stats) {
+        assertEquals(1, stats.bins.size());
+        return stats.bins.values().iterator().next();
+    }
+
+    private static TimeBin copy(TimeBin bin) {
+        TimeBin copy = new TimeBin();
+        copy.avg = bin.avg;
+        copy.var = bin.var;
+        copy.min = bin.min;
+        copy.max = bin.max;
+        copy.sum = bin.sum;
+        copy.latest = bin.latest;
+        copy.count = bin.count;
+        return copy;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.xenon.services.rdbms;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.ServiceDocumentDescription;
+import com.vmware.xenon.services.common.QueryFilter;
+import com.vmware.xenon.services.common.QueryTask;
+import com.vmware.xenon.services.common.QueryTask.Query;
+import com.vmware.xenon.services.common.QueryTask.QuerySpecification;
+
+/**
+ * Per update cost of matching a document against the active continuous queries, evaluating every
+ * query filter versus evaluating only the candidates returned by {@link PostgresActiveQueryIndex}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ActiveQueryMatchingBenchmark {
+
+    private static final int KIND_COUNT = 20;
+    private static final int PARENT_COUNT = 100;
+    private static final int DOCUMENT_COUNT = 1024;
+
+    public static class BenchmarkState extends ServiceDocument {
+        public String name;
+        public String parentLink;
+    }
+
+    @Param({ "10", "100", "1000", "10000" })
+    public int activeQueryCount;
+
+    private final List<QueryTask> activeQueries = new ArrayList<>();
+    private final PostgresActiveQueryIndex index = new PostgresActiveQueryIndex();
+    private final BenchmarkState[] documents = new BenchmarkState[DOCUMENT_COUNT];
+    private ServiceDocumentDescription description;
+    private int next;
+
+    @Setup
+    public void setup() throws Exception {
+        this.description = ServiceDocumentDescription.Builder.create()
+                .buildDescription(BenchmarkState.class);
+
+        Random random = new Random(0);
+        for (int i = 0; i < this.activeQueryCount; i++) {
+            Query.Builder builder = Query.Builder.create()
+                    .addFieldClause(ServiceDocument.FIELD_NAME_KIND,
+                            kind(random.nextInt(KIND_COUNT)));
+            switch (i % 4) {
+            case 0:
+                // kind only, e.g. watchers of a whole factory
+                break;
+            case 1:
+            case 2:
+                builder.addFieldClause("parentLink", parentLink(random.nextInt(PARENT_COUNT)));
+                break;
+            default:
+                builder.addFieldClause(ServiceDocument.FIELD_NAME_SELF_LINK,
+                        "/resources/" + random.nextInt(DOCUMENT_COUNT));
+                break;
+            }
+
+            QueryTask task = new QueryTask();
+            task.documentSelfLink = "/core/query-tasks/" + i;
+            task.querySpec = new QuerySpecification();
+            task.querySpec.query = builder.build();
+            task.querySpec.context.filter = QueryFilter.create(task.querySpec.query);
+            this.activeQueries.add(task);
+            this.index.add(task);
+        }
+
+        for (int i = 0; i < DOCUMENT_COUNT; i++) {
+            BenchmarkState document = new BenchmarkState();
+            document.documentSelfLink = "/resources/" + i;
+            document.documentKind = kind(random.nextInt(KIND_COUNT));
+            document.parentLink = parentLink(random.nextInt(PARENT_COUNT));
+            document.name = "name-" + i;
+            this.documents[i] = document;
+        }
+    }
+
+    private static String kind(int i) {
+        return "com:vmware:benchmark:Kind" + i;
+    }
+
+    private static String parentLink(int i) {
+        return "/resources/compute/host-" + i;
+    }
+
+    private BenchmarkState nextDocument() {
+        return this.documents[this.next++ & (DOCUMENT_COUNT - 1)];
+    }
+
+    @Benchmark
+    public int evaluateAll() {
+        BenchmarkState document = nextDocument();
+        int matches = 0;
+        for (QueryTask task : this.activeQueries) {
+            if (task.querySpec.context.filter.evaluate(document, this.description)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    @Benchmark
+    public int evaluateCandidates() {
+        BenchmarkState document = nextDocument();
+        int matches = 0;
+        for (QueryTask task : this.index.getCandidates(document, this.description)) {
+            if (task.querySpec.context.filter.evaluate(document, this.description)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+}
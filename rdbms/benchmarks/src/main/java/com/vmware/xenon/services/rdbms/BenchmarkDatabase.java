@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.xenon.services.rdbms;
+
+import java.io.IOException;
+import java.util.Properties;
+import javax.sql.DataSource;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+
+/**
+ * Postgres database for the round-trip benchmarks. An embedded Postgres is started for every
+ * benchmark fork, unless an external server is given with the postgres.server system property,
+ * see {@link PostgresHostUtils} for the connection properties. The benchmarks recreate the tables
+ * of the documents they use, so an external server must point to a scratch database.
+ */
+final class BenchmarkDatabase implements AutoCloseable {
+
+    private final EmbeddedPostgres embeddedPostgres;
+    private final DataSource dataSource;
+
+    private BenchmarkDatabase(EmbeddedPostgres embeddedPostgres, DataSource dataSource) {
+        this.embeddedPostgres = embeddedPostgres;
+        this.dataSource = dataSource;
+    }
+
+    static BenchmarkDatabase start() throws IOException {
+        Properties props = PostgresHostUtils.getDataSourceProperties();
+        EmbeddedPostgres embeddedPostgres = null;
+        if (System.getProperty("postgres.server") == null) {
+            embeddedPostgres = EmbeddedPostgres.builder().start();
+            props.setProperty("dataSource.serverName", "localhost");
+            props.setProperty("dataSource.portNumber",
+                    String.valueOf(embeddedPostgres.getPort()));
+            props.setProperty("dataSource.databaseName", "postgres");
+            props.setProperty("dataSource.user", "postgres");
+            props.setProperty("dataSource.password", "postgres");
+        }
+        return new BenchmarkDatabase(embeddedPostgres,
+                PostgresHostUtils.createDataSource(props));
+    }
+
+    DataSource getDataSource() {
+        return this.dataSource;
+    }
+
+    @Override
+    public void close() throws IOException {
+        PostgresHostUtils.closeDataSource(this.dataSource);
+        if (this.embeddedPostgres != null) {
+            this.embeddedPostgres.close();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.xenon.services.rdbms;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import com.vmware.admiral.compute.container.ContainerFactoryService;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState.PowerState;
+import com.vmware.admiral.compute.container.PortBinding;
+import com.vmware.admiral.compute.container.ServiceNetwork;
+import com.vmware.photon.controller.model.resources.ComputeDescriptionService.ComputeDescription.ComputeType;
+import com.vmware.photon.controller.model.resources.ComputeService;
+import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
+import com.vmware.photon.controller.model.resources.ComputeService.LifecycleState;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Representative Admiral documents for the rdbms benchmarks. Containers and compute hosts are the
+ * largest and most frequently updated documents Admiral stores, the document size mostly depends
+ * on the number of custom properties, ports, environment variables and networks.
+ */
+public final class BenchmarkDocuments {
+
+    public enum DocumentType {
+        CONTAINER(ContainerFactoryService.SELF_LINK, ContainerState.class),
+        COMPUTE(ComputeService.FACTORY_LINK, ComputeState.class);
+
+        final String factoryLink;
+        final Class<? extends ServiceDocument> type;
+
+        DocumentType(String factoryLink, Class<? extends ServiceDocument> type) {
+            this.factoryLink = factoryLink;
+            this.type = type;
+        }
+    }
+
+    public enum DocumentSize {
+        /** A freshly provisioned container or host, about 1 KB */
+        SMALL(2, 1, 2, 1),
+        /** A typical application container or host, about 5 KB */
+        MEDIUM(20, 4, 20, 2),
+        /** A container with a large environment, a host with all the Docker info, about 50 KB */
+        LARGE(200, 32, 200, 8);
+
+        final int customPropertyCount;
+        final int portCount;
+        final int envCount;
+        final int networkCount;
+
+        DocumentSize(int customPropertyCount, int portCount, int envCount, int networkCount) {
+            this.customPropertyCount = customPropertyCount;
+            this.portCount = portCount;
+            this.envCount = envCount;
+            this.networkCount = networkCount;
+        }
+    }
+
+    private BenchmarkDocuments() {
+    }
+
+    static ServiceDocument create(DocumentType type, DocumentSize size, int i) {
+        ServiceDocument document = type == DocumentType.CONTAINER
+                ? container(size, i)
+                : compute(size, i);
+        document.documentSelfLink = UriUtils.buildUriPath(type.factoryLink, "document-" + i);
+        document.documentKind = Utils.buildKind(type.type);
+        document.documentVersion = 1;
+        document.documentUpdateTimeMicros = Utils.getNowMicrosUtc();
+        document.documentUpdateAction = "POST";
+        document.documentOwner = "benchmark-host";
+        document.documentAuthPrincipalLink = "/core/authz/system-user";
+        return document;
+    }
+
+    static ContainerState container(DocumentSize size, int i) {
+        ContainerState state = new ContainerState();
+        state.id = "b1f0c0a4f3e5" + String.format("%052d", i);
+        state.names = Arrays.asList("wordpress-mcm" + i);
+        state.image = "registry.hub.docker.com/library/wordpress:4.9";
+        state.command = new String[] { "apache2-foreground" };
+        state.descriptionLink = "/resources/container-descriptions/wordpress-" + (i % 10);
+        state.compositeComponentLink = "/resources/composite-components/app-" + (i % 100);
+        state.parentLink = "/resources/compute/host-" + (i % 50);
+        state.groupResourcePlacementLink = "/resources/group-placements/default-placement";
+        state.address = "10.0." + (i % 250) + ".1";
+        state.adapterManagementReference = URI.create("http://localhost:8282/adapters/docker");
+        state.powerState = PowerState.RUNNING;
+        state.status = "Up 2 hours";
+        state.created = state.started = 1577836800000L + i;
+        state.memoryLimit = 4L * 1024 * 1024 * 1024;
+        state.cpuShares = 1024;
+        state.system = false;
+        state.tenantLinks = Arrays.asList("/tenants/project/default", "/tenants/organization/org",
+                "/users/admin@local");
+        state.volumes = new String[] { "/var/www/html:/var/www/html" };
+
+        state.customProperties = new HashMap<>();
+        for (int j = 0; j < size.customPropertyCount; j++) {
+            state.customProperties.put("__property" + j, "value-" + i + "-" + j);
+        }
+        state.ports = new ArrayList<>();
+        for (int j = 0; j < size.portCount; j++) {
+            PortBinding port = new PortBinding();
+            port.containerPort = String.valueOf(8000 + j);
+            port.hostPort = String.valueOf(32000 + j);
+            port.hostIp = "0.0.0.0";
+            port.protocol = "tcp";
+            state.ports.add(port);
+        }
+        state.env = new String[size.envCount];
+        for (int j = 0; j < size.envCount; j++) {
+            state.env[j] = "WORDPRESS_VARIABLE_" + j + "=value-" + i + "-" + j;
+        }
+        state.networks = new HashMap<>();
+        for (int j = 0; j < size.networkCount; j++) {
+            ServiceNetwork network = new ServiceNetwork();
+            network.name = "network-" + j;
+            network.aliases = new String[] { "wordpress", "wordpress-mcm" + i };
+            network.ipv4_address = "172.18." + j + "." + (i % 250);
+            state.networks.put(network.name, network);
+        }
+        return state;
+    }
+
+    static ComputeState compute(DocumentSize size, int i) {
+        ComputeState state = new ComputeState();
+        state.id = "host-" + i;
+        state.name = "docker-host-" + i;
+        state.address = "https://10.1." + (i % 250) + ".1:2376";
+        state.descriptionLink = "/resources/compute-descriptions/docker-host";
+        state.resourcePoolLink = "/resources/pools/default-placement-zone";
+        state.adapterManagementReference = URI.create("http://localhost:8282/adapters/docker-host");
+        state.powerState = ComputeService.PowerState.ON;
+        state.lifecycleState = LifecycleState.READY;
+        state.type = ComputeType.VM_HOST;
+        state.cpuCount = 8L;
+        state.totalMemoryBytes = 32L * 1024 * 1024 * 1024;
+        state.creationTimeMicros = 1577836800000000L + i;
+        state.tenantLinks = Arrays.asList("/tenants/project/default", "/tenants/organization/org");
+        state.tagLinks = new HashSet<>(Arrays.asList("/resources/tags/location-" + (i % 5)));
+        state.diskLinks = new ArrayList<>();
+        state.networkInterfaceLinks = new ArrayList<>();
+        for (int j = 0; j < size.networkCount; j++) {
+            state.diskLinks.add("/resources/disks/disk-" + i + "-" + j);
+            state.networkInterfaceLinks.add("/resources/network-interfaces/nic-" + i + "-" + j);
+        }
+
+        state.customProperties = new HashMap<>();
+        state.customProperties.put("__adapterDockerType", "API");
+        state.customProperties.put("__containers", String.valueOf(i % 100));
+        for (int j = 0; j < size.customPropertyCount + size.envCount; j++) {
+            state.customProperties.put("__property" + j, "value-" + i + "-" + j);
+        }
+        return state;
+    }
+}
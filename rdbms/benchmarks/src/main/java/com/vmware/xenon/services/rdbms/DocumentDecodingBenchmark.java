@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.xenon.services.rdbms;
+
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.ServiceDocumentDescription;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.rdbms.BenchmarkDocuments.DocumentSize;
+import com.vmware.xenon.services.rdbms.BenchmarkDocuments.DocumentType;
+import com.vmware.xenon.services.rdbms.PostgresSchemaManager.TableDescription;
+
+/**
+ * Cost of decoding a result row of {@link PostgresServiceDocumentDao} into the
+ * {@link PostgresDocumentStoredFieldVisitor} and into the service document, without the database.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DocumentDecodingBenchmark {
+
+    @Param
+    public DocumentType documentType;
+
+    @Param
+    public DocumentSize documentSize;
+
+    private final PostgresDocumentStoredFieldVisitor visitor =
+            new PostgresDocumentStoredFieldVisitor();
+    private PostgresServiceDocumentDao dao;
+    private TableDescription tableDescription;
+    private ResultSet row;
+    private String link;
+
+    @Setup
+    public void setup() {
+        ServiceHost host = new ServiceHost() {
+        };
+        this.dao = new PostgresServiceDocumentDao(host, null, null);
+        this.dao.getPostgresSchemaManager().addFactory(this.documentType.factoryLink,
+                this.documentType.type, ServiceDocumentDescription.Builder.create()
+                        .buildDescription(this.documentType.type));
+        this.tableDescription = this.dao.getPostgresSchemaManager()
+                .getTableDescriptionForFactoryLink(this.documentType.factoryLink);
+
+        ServiceDocument document = BenchmarkDocuments.create(this.documentType,
+                this.documentSize, 0);
+        this.link = document.documentSelfLink;
+        this.row = singleColumnRow(Utils.toJson(document));
+    }
+
+    /**
+     * Result row with only the data column, as read by the DAO
+     */
+    private static ResultSet singleColumnRow(String data) {
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                new Class<?>[] { ResultSet.class }, (proxy, method, args) -> {
+                    if (method.getName().equals("getString")) {
+                        return data;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    @Benchmark
+    public PostgresDocumentStoredFieldVisitor loadDoc() throws SQLException {
+        this.visitor.reset();
+        this.dao.loadDoc(this.visitor, this.row);
+        return this.visitor;
+    }
+
+    @Benchmark
+    public PostgresDocumentStoredFieldVisitor loadDocFields() throws SQLException {
+        this.visitor.reset();
+        this.dao.loadDocFields(this.visitor, this.row);
+        return this.visitor;
+    }
+
+    @Benchmark
+    public ServiceDocument loadDocAndState() throws SQLException {
+        this.visitor.reset();
+        this.dao.loadDoc(this.visitor, this.row);
+        return this.dao.getStateFromPostgresDocument(this.tableDescription, this.visitor,
+                this.link);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.xenon.services.rdbms;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.rdbms.BenchmarkDocuments.DocumentSize;
+import com.vmware.xenon.services.rdbms.BenchmarkDocuments.DocumentType;
+
+/**
+ * Cost of the JSON serialization done for every document written to and read from Postgres: the
+ * document is serialized on upsert, and deserialized through a JSON tree on load.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DocumentSerializationBenchmark {
+
+    @Param
+    public DocumentType documentType;
+
+    @Param
+    public DocumentSize documentSize;
+
+    private ServiceDocument document;
+    private String json;
+    private JsonObject jsonObject;
+
+    @Setup
+    public void setup() {
+        this.document = BenchmarkDocuments.create(this.documentType, this.documentSize, 0);
+        this.json = Utils.toJson(this.document);
+        this.jsonObject = Utils.fromJson(this.json, JsonObject.class);
+    }
+
+    @Benchmark
+    public String toJson() {
+        return Utils.toJson(this.document);
+    }
+
+    @Benchmark
+    public JsonObject fromJsonToTree() {
+        return Utils.fromJson(this.json, JsonObject.class);
+    }
+
+    @Benchmark
+    public ServiceDocument fromTreeToDocument() {
+        return Utils.fromJson(this.jsonObject, this.documentType.type);
+    }
+
+    @Benchmark
+    public ServiceDocument fromJsonToDocument() {
+        return Utils.fromJson(this.json, this.documentType.type);
+    }
+}
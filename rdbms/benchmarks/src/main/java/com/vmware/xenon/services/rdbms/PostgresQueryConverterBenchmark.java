@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.xenon.services.rdbms;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vmware.admiral.compute.container.ContainerFactoryService;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState;
+import com.vmware.xenon.common.ServiceDocumentDescription;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.services.common.QueryTask.Query;
+import com.vmware.xenon.services.common.QueryTask.Query.Occurance;
+import com.vmware.xenon.services.rdbms.PostgresSchemaManager.TableDescription;
+
+/**
+ * Cost of converting the query shapes Admiral sends most often, with different values on every
+ * call, with and without the compiled query cache of {@link PostgresQueryConverter}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PostgresQueryConverterBenchmark {
+
+    private static final String FACTORY_LINK = ContainerFactoryService.SELF_LINK;
+    private static final int QUERY_COUNT = 1024;
+
+    public enum QueryShape {
+        /** Containers of a host */
+        PARENT_LINK,
+        /** Containers of a description in a project */
+        DESCRIPTION_LINK_AND_TENANT,
+        /** Containers with one of a few ids */
+        ID_IN,
+        /** Containers with a custom property, not in a given power state */
+        CUSTOM_PROPERTY_AND_NOT_POWER_STATE
+    }
+
+    @Param
+    public QueryShape shape;
+
+    private final Query[] queries = new Query[QUERY_COUNT];
+    private TableDescription tableDescription;
+    private int next;
+
+    @Setup
+    public void setup() {
+        ServiceHost host = new ServiceHost() {
+        };
+        PostgresSchemaManager schemaManager = new PostgresSchemaManager(host);
+        schemaManager.addFactory(FACTORY_LINK, ContainerState.class,
+                ServiceDocumentDescription.Builder.create()
+                        .buildDescription(ContainerState.class));
+        this.tableDescription = schemaManager.getTableDescriptionForFactoryLink(FACTORY_LINK);
+
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            Query.Builder builder = Query.Builder.create().addKindFieldClause(
+                    ContainerState.class);
+            switch (this.shape) {
+            case PARENT_LINK:
+                builder.addFieldClause("parentLink", "/resources/compute/host-" + i);
+                break;
+            case DESCRIPTION_LINK_AND_TENANT:
+                builder.addFieldClause("descriptionLink",
+                        "/resources/container-descriptions/" + i)
+                        .addCollectionItemClause("tenantLinks", "/tenants/" + (i % 10));
+                break;
+            case ID_IN:
+                Query ids = new Query();
+                for (int j = 0; j < 4; j++) {
+                    ids.addBooleanClause(Query.Builder.create(Occurance.SHOULD_OCCUR)
+                            .addFieldClause("id", "container-" + i + "-" + j).build());
+                }
+                builder.addClause(ids);
+                break;
+            case CUSTOM_PROPERTY_AND_NOT_POWER_STATE:
+            default:
+                builder.addCompositeFieldClause("customProperties", "__composition",
+                        "composition-" + i)
+                        .addFieldClause("powerState", "RETIRED", Occurance.MUST_NOT_OCCUR);
+                break;
+            }
+            this.queries[i] = builder.build();
+        }
+    }
+
+    private Query nextQuery() {
+        return this.queries[this.next++ & (QUERY_COUNT - 1)];
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend =
+            "-Dxenon.PostgresQueryConverter.compiledQueryCacheMaxEntries=1000")
+    public String convert() {
+        return PostgresQueryConverter.convert(nextQuery(), null, this.tableDescription);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend =
+            "-Dxenon.PostgresQueryConverter.compiledQueryCacheMaxEntries=0")
+    public String convertWithoutCache() {
+        return PostgresQueryConverter.convert(nextQuery(), null, this.tableDescription);
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.xenon.services.rdbms;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.ServiceDocumentDescription;
+import com.vmware.xenon.common.ServiceDocumentQueryResult;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.services.common.QueryTask;
+import com.vmware.xenon.services.common.QueryTask.Query;
+import com.vmware.xenon.services.common.QueryTask.QuerySpecification.QueryOption;
+import com.vmware.xenon.services.rdbms.BenchmarkDocuments.DocumentSize;
+import com.vmware.xenon.services.rdbms.BenchmarkDocuments.DocumentType;
+
+/**
+ * Latency of upserting, loading and querying documents through {@link PostgresServiceDocumentDao}
+ * against a real Postgres, see {@link BenchmarkDatabase}. The table holds resultSetSize documents,
+ * all of them are returned by the query.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PostgresRoundTripBenchmark {
+
+    @Param
+    public DocumentType documentType;
+
+    @Param
+    public DocumentSize documentSize;
+
+    @Param({ "10", "100", "1000" })
+    public int resultSetSize;
+
+    private BenchmarkDatabase database;
+    private PostgresServiceDocumentDao dao;
+    private ServiceDocumentDescription description;
+    private ServiceDocument[] documents;
+    private String tableName;
+    private int next;
+
+    @Setup
+    public void setup() throws Exception {
+        this.database = BenchmarkDatabase.start();
+        ServiceHost host = new ServiceHost() {
+        };
+        this.dao = new PostgresServiceDocumentDao(host, null, this.database.getDataSource());
+        this.description = ServiceDocumentDescription.Builder.create()
+                .buildDescription(this.documentType.type);
+
+        // start from an empty table, the database can be an external one
+        this.dao.getPostgresSchemaManager().addFactory(this.documentType.factoryLink,
+                this.documentType.type, this.description);
+        this.tableName = this.dao.getPostgresSchemaManager()
+                .getTableNameForFactoryLink(this.documentType.factoryLink);
+        dropTable(this.database.getDataSource(), this.tableName);
+        this.dao.initForDocument(this.documentType.factoryLink, this.documentType.type,
+                this.description);
+
+        this.documents = new ServiceDocument[this.resultSetSize];
+        for (int i = 0; i < this.resultSetSize; i++) {
+            this.documents[i] = BenchmarkDocuments.create(this.documentType, this.documentSize,
+                    i);
+            this.dao.saveDocument(this.documents[i], this.description, false);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        try {
+            dropTable(this.database.getDataSource(), this.tableName);
+        } finally {
+            this.database.close();
+        }
+    }
+
+    private static void dropTable(DataSource ds, String tableName) throws SQLException {
+        try (Connection conn = ds.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DROP TABLE IF EXISTS " + tableName);
+        }
+    }
+
+    private ServiceDocument nextDocument() {
+        return this.documents[this.next++ % this.resultSetSize];
+    }
+
+    @Benchmark
+    public ServiceDocument upsert() throws SQLException {
+        ServiceDocument document = nextDocument();
+        document.documentVersion++;
+        document.documentUpdateAction = "PATCH";
+        this.dao.saveDocument(document, this.description, false);
+        return document;
+    }
+
+    @Benchmark
+    public ServiceDocument load() throws SQLException {
+        return this.dao.loadDocument(nextDocument().documentSelfLink);
+    }
+
+    @Benchmark
+    public ServiceDocument upsertAndLoad() throws SQLException {
+        return this.dao.loadDocument(upsert().documentSelfLink);
+    }
+
+    @Benchmark
+    public ServiceDocumentQueryResult queryExpandContent() throws Exception {
+        QueryTask task = QueryTask.Builder.createDirectTask()
+                .setQuery(Query.Builder.create()
+                        .addKindFieldClause(this.documentType.type)
+                        .build())
+                .addOptions(EnumSet.of(QueryOption.EXPAND_CONTENT))
+                .build();
+        // defaults set by the query task service
+        task.querySpec.resultLimit = Integer.MAX_VALUE;
+        return this.dao.queryDocuments(Operation.createGet(null), task);
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.xenon.services.rdbms;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import com.vmware.xenon.common.ReflectionUtils;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.ServiceDocumentDescription;
+import com.vmware.xenon.common.ServiceDocumentDescription.PropertyDescription;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.services.common.QueryTask;
+import com.vmware.xenon.services.common.QueryTask.Query;
+import com.vmware.xenon.services.common.QueryTask.Query.Occurance;
+import com.vmware.xenon.services.common.QueryTask.QueryTerm;
+import com.vmware.xenon.services.common.QueryTask.QueryTerm.MatchType;
+
+/**
+ * Index of the active continuous queries, used to find the queries that might match an updated
+ * document without evaluating every active query filter.
+ *
+ * Queries are partitioned by the document kinds they require and, within a kind, by the value of
+ * one top level property they require an exact match on (e.g. parentLink). Queries for which no
+ * such constraint can be derived are kept in the "any" partitions and are always candidates.
+ *
+ * The index never excludes a query that could match, the candidates still need to be evaluated
+ * against the query filter.
+ */
+final class PostgresActiveQueryIndex {
+
+    private static final String ANY_KIND = "";
+
+    private static final Pattern SIMPLE_PROPERTY_NAME = Pattern.compile("[A-Za-z0-9_]+");
+
+    private static final class Placement {
+        final String kind;
+        final String propertyName;
+        final String propertyValue;
+
+        Placement(String kind, String propertyName, String propertyValue) {
+            this.kind = kind;
+            this.propertyName = propertyName;
+            this.propertyValue = propertyValue;
+        }
+    }
+
+    private static final class KindPartition {
+        final Map<String, QueryTask> unkeyed = new ConcurrentHashMap<>();
+        // propertyName -> propertyValue -> query task link -> query task
+        final Map<String, Map<String, Map<String, QueryTask>>> keyed = new ConcurrentHashMap<>();
+
+        boolean isEmpty() {
+            return this.unkeyed.isEmpty() && this.keyed.isEmpty();
+        }
+    }
+
+    private final Map<String, KindPartition> partitions = new ConcurrentHashMap<>();
+    private final Map<String, List<Placement>> placementsByLink = new ConcurrentHashMap<>();
+
+    boolean isEmpty() {
+        return this.placementsByLink.isEmpty();
+    }
+
+    int size() {
+        return this.placementsByLink.size();
+    }
+
+    synchronized void add(QueryTask task) {
+        remove(task.documentSelfLink);
+
+        Query query = task.querySpec.query;
+        Set<String> kinds = query.occurance == Occurance.MUST_NOT_OCCUR ? null
+                : findRequiredKinds(query);
+        if (kinds == null) {
+            kinds = Collections.singleton(ANY_KIND);
+        }
+        QueryTerm keyTerm = findKeyTerm(query);
+
+        List<Placement> placements = new ArrayList<>(kinds.size());
+        for (String kind : kinds) {
+            KindPartition partition = this.partitions.computeIfAbsent(kind,
+                    k -> new KindPartition());
+            if (keyTerm == null) {
+                partition.unkeyed.put(task.documentSelfLink, task);
+                placements.add(new Placement(kind, null, null));
+            } else {
+                partition.keyed
+                        .computeIfAbsent(keyTerm.propertyName, k -> new ConcurrentHashMap<>())
+                        .computeIfAbsent(keyTerm.matchValue, k -> new ConcurrentHashMap<>())
+                        .put(task.documentSelfLink, task);
+                placements.add(new Placement(kind, keyTerm.propertyName, keyTerm.matchValue));
+            }
+        }
+        this.placementsByLink.put(task.documentSelfLink, placements);
+    }
+
+    synchronized QueryTask remove(String queryTaskLink) {
+        List<Placement> placements = this.placementsByLink.remove(queryTaskLink);
+        if (placements == null) {
+            return null;
+        }
+
+        QueryTask removed = null;
+        for (Placement placement : placements) {
+            KindPartition partition = this.partitions.get(placement.kind);
+            if (partition == null) {
+                continue;
+            }
+            if (placement.propertyName == null) {
+                removed = partition.unkeyed.remove(queryTaskLink);
+            } else {
+                Map<String, Map<String, QueryTask>> byValue = partition.keyed
+                        .get(placement.propertyName);
+                Map<String, QueryTask> tasks = byValue != null
+                        ? byValue.get(placement.propertyValue) : null;
+                if (tasks != null) {
+                    removed = tasks.remove(queryTaskLink);
+                    if (tasks.isEmpty()) {
+                        byValue.remove(placement.propertyValue);
+                    }
+                    if (byValue.isEmpty()) {
+                        partition.keyed.remove(placement.propertyName);
+                    }
+                }
+            }
+            if (partition.isEmpty()) {
+                this.partitions.remove(placement.kind);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Returns the active queries that might match the given document. The description is optional
+     * and is only used for faster property access.
+     */
+    Collection<QueryTask> getCandidates(ServiceDocument document,
+            ServiceDocumentDescription desc) {
+        List<QueryTask> candidates = new ArrayList<>();
+        addCandidates(this.partitions.get(ANY_KIND), document, desc, candidates);
+        if (document.documentKind != null) {
+            addCandidates(this.partitions.get(document.documentKind), document, desc,
+                    candidates);
+        }
+        return candidates;
+    }
+
+    private static void addCandidates(KindPartition partition, ServiceDocument document,
+            ServiceDocumentDescription desc, List<QueryTask> candidates) {
+        if (partition == null) {
+            return;
+        }
+        candidates.addAll(partition.unkeyed.values());
+
+        for (Map.Entry<String, Map<String, Map<String, QueryTask>>> e : partition.keyed
+                .entrySet()) {
+            Object value = getPropertyValue(document, desc, e.getKey());
+            if (value == null) {
+                // an exact term match can not match a missing value
+                continue;
+            }
+            if (value instanceof String) {
+                Map<String, QueryTask> tasks = e.getValue().get(value);
+                if (tasks != null) {
+                    candidates.addAll(tasks.values());
+                }
+                continue;
+            }
+            // not a string property, fall back to evaluating all queries on this property
+            for (Map<String, QueryTask> tasks : e.getValue().values()) {
+                candidates.addAll(tasks.values());
+            }
+        }
+    }
+
+    private static Object getPropertyValue(ServiceDocument document,
+            ServiceDocumentDescription desc, String propertyName) {
+        if (desc != null && desc.propertyDescriptions != null) {
+            PropertyDescription pd = desc.propertyDescriptions.get(propertyName);
+            if (pd != null) {
+                return ReflectionUtils.getPropertyValue(pd, document);
+            }
+        }
+
+        Field field = ReflectionUtils.getFieldIfExists(document.getClass(), propertyName);
+        if (field == null) {
+            return null;
+        }
+        try {
+            return field.get(document);
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the document kinds a document must have to match the given query, or null if the
+     * query does not restrict the kind. Mirrors the normal form used by QueryFilter: MUST_OCCUR
+     * clauses are required, SHOULD_OCCUR clauses only count when all clauses are SHOULD_OCCUR.
+     */
+    static Set<String> findRequiredKinds(Query query) {
+        if (query.term != null) {
+            if (ServiceDocument.FIELD_NAME_KIND.equals(query.term.propertyName)
+                    && isExactTerm(query.term)) {
+                return Collections.singleton(query.term.matchValue);
+            }
+            return null;
+        }
+
+        if (query.booleanClauses == null || query.booleanClauses.isEmpty()) {
+            return null;
+        }
+
+        boolean allShould = true;
+        for (Query clause : query.booleanClauses) {
+            Occurance occurance = clause.occurance != null ? clause.occurance
+                    : Occurance.MUST_OCCUR;
+            if (occurance == Occurance.MUST_OCCUR) {
+                Set<String> kinds = findRequiredKinds(clause);
+                if (kinds != null) {
+                    return kinds;
+                }
+            }
+            if (occurance != Occurance.SHOULD_OCCUR) {
+                allShould = false;
+            }
+        }
+
+        if (!allShould) {
+            return null;
+        }
+
+        Set<String> kinds = new HashSet<>();
+        for (Query clause : query.booleanClauses) {
+            Set<String> clauseKinds = findRequiredKinds(clause);
+            if (clauseKinds == null) {
+                return null;
+            }
+            kinds.addAll(clauseKinds);
+        }
+        return kinds;
+    }
+
+    /**
+     * Returns a required exact match term on a simple, non kind, property of the given query, or
+     * null if there is none
+     */
+    static QueryTerm findKeyTerm(Query query) {
+        if (query.occurance == Occurance.MUST_NOT_OCCUR) {
+            return null;
+        }
+        if (query.term != null) {
+            return isKeyTerm(query.term) ? query.term : null;
+        }
+        if (query.booleanClauses == null) {
+            return null;
+        }
+        for (Query clause : query.booleanClauses) {
+            Occurance occurance = clause.occurance != null ? clause.occurance
+                    : Occurance.MUST_OCCUR;
+            if (occurance == Occurance.MUST_OCCUR && clause.term != null
+                    && isKeyTerm(clause.term)) {
+                return clause.term;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isKeyTerm(QueryTerm term) {
+        return !ServiceDocument.FIELD_NAME_KIND.equals(term.propertyName)
+                && term.propertyName != null
+                && SIMPLE_PROPERTY_NAME.matcher(term.propertyName).matches()
+                && isExactTerm(term);
+    }
+
+    private static boolean isExactTerm(QueryTerm term) {
+        return term.range == null
+                && term.matchValue != null
+                && (term.matchType == null || term.matchType == MatchType.TERM)
+                && !term.matchValue.contains(UriUtils.URI_WILDCARD_CHAR);
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.xenon.services.rdbms;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.vmware.xenon.services.rdbms.PostgresSchemaManager.TableDescription;
+
+/**
+ * Bounded LRU cache of compiled queries, keyed by query shape. A query shape is the query tree
+ * with the term values replaced by value slots, see {@link PostgresQueryConverter}.
+ *
+ * A compiled query is the SQL condition generated for a shape, split at the value slots, so that
+ * the SQL for another query of the same shape is built by encoding its values into the slots,
+ * without reducing and converting the query again.
+ *
+ * This is a conversion cache only: the values are rendered as SQL literals, not bind parameters,
+ * so the statements sent to Postgres are the same as without the cache and are planned the same
+ * way. The cache is disabled unless compiledQueryCacheMaxEntries is set.
+ */
+final class PostgresCompiledQueryCache {
+
+    /**
+     * How a term value is encoded into the SQL condition
+     */
+    enum ValueEncoding {
+        /** SQL string literal content */
+        SQL,
+        /** SQL LIKE pattern content */
+        LIKE,
+        /** JSON string content, nested in a SQL string literal */
+        JSON_STRING,
+        /** JSON number, parsed as long */
+        LONG,
+        /** JSON number, parsed as double */
+        DOUBLE,
+        /** JSON boolean */
+        BOOLEAN;
+
+        /**
+         * Encodes the value as it is returned by the converter. Values nested in JSON are escaped
+         * again by the converter together with the surrounding JSON.
+         */
+        String encode(String value) {
+            switch (this) {
+            case LIKE:
+                return PostgresQueryConverter.escapeSqlLike(value);
+            case JSON_STRING:
+                return PostgresQueryConverter.escapeJsonString(value);
+            case LONG:
+                return String.valueOf(Long.parseLong(value));
+            case DOUBLE:
+                return String.valueOf(Double.parseDouble(value));
+            case BOOLEAN:
+                return String.valueOf(Boolean.parseBoolean(value));
+            case SQL:
+            default:
+                return PostgresQueryConverter.escapeSqlString(value);
+            }
+        }
+
+        /**
+         * Encodes the value as it appears in the final SQL condition
+         */
+        String encodeInTemplate(String value) {
+            if (this == JSON_STRING) {
+                return PostgresQueryConverter.escapeSqlString(encode(value));
+            }
+            return encode(value);
+        }
+    }
+
+    static final class CompiledQuery {
+        private final TableDescription tableDescription;
+        private final String[] segments;
+        private final int[] slots;
+        private final ValueEncoding[] encodings;
+        private final boolean[] lowerCase;
+        private final int length;
+
+        CompiledQuery(TableDescription tableDescription, String[] segments, int[] slots,
+                ValueEncoding[] encodings, boolean[] lowerCase) {
+            this.tableDescription = tableDescription;
+            this.segments = segments;
+            this.slots = slots;
+            this.encodings = encodings;
+            this.lowerCase = lowerCase;
+            int length = 0;
+            if (segments != null) {
+                for (String segment : segments) {
+                    length += segment.length();
+                }
+            }
+            this.length = length;
+        }
+
+        boolean isCacheable() {
+            return this.segments != null;
+        }
+
+        /**
+         * Returns the SQL condition for the given slot values, or null if a value can not be
+         * encoded, in which case the query needs to be converted instead
+         */
+        String render(List<String> values) {
+            StringBuilder sb = new StringBuilder(this.length + 16 * this.slots.length);
+            sb.append(this.segments[0]);
+            for (int i = 0; i < this.slots.length; i++) {
+                String value = values.get(this.slots[i]);
+                if (this.lowerCase[i]) {
+                    value = value.toLowerCase();
+                }
+                try {
+                    sb.append(this.encodings[i].encodeInTemplate(value));
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+                sb.append(this.segments[i + 1]);
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Marks a shape which can not be compiled, such queries are always converted
+     */
+    static final CompiledQuery NOT_CACHEABLE = new CompiledQuery(null, null, new int[0],
+            new ValueEncoding[0], new boolean[0]);
+
+    private final int maxEntries;
+    private final LinkedHashMap<String, CompiledQuery> entries = new LinkedHashMap<>(16, 0.75f,
+            true);
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong bypassCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    PostgresCompiledQueryCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    boolean isEnabled() {
+        return this.maxEntries > 0;
+    }
+
+    /**
+     * Returns the compiled query for the given shape and table, or null if the shape was not
+     * compiled yet
+     */
+    CompiledQuery get(String shapeKey, TableDescription td) {
+        CompiledQuery compiled;
+        synchronized (this.entries) {
+            compiled = this.entries.get(shapeKey);
+        }
+        // table descriptions can be registered again, do not use queries compiled for another one
+        if (compiled == null
+                || (compiled.isCacheable() && compiled.tableDescription != td)) {
+            this.missCount.incrementAndGet();
+            return null;
+        }
+        if (compiled.isCacheable()) {
+            this.hitCount.incrementAndGet();
+        } else {
+            this.bypassCount.incrementAndGet();
+        }
+        return compiled;
+    }
+
+    void put(String shapeKey, CompiledQuery compiled) {
+        synchronized (this.entries) {
+            this.entries.put(shapeKey, compiled);
+            Iterator<Map.Entry<String, CompiledQuery>> it = this.entries.entrySet().iterator();
+            while (it.hasNext() && this.entries.size() > this.maxEntries) {
+                it.next();
+                it.remove();
+                this.evictionCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Records a query which can not be cached at all, e.g. a query with range terms
+     */
+    void recordBypass() {
+        this.bypassCount.incrementAndGet();
+    }
+
+    void clear() {
+        synchronized (this.entries) {
+            this.entries.clear();
+        }
+    }
+
+    int size() {
+        synchronized (this.entries) {
+            return this.entries.size();
+        }
+    }
+
+    long getHitCount() {
+        return this.hitCount.get();
+    }
+
+    long getMissCount() {
+        return this.missCount.get();
+    }
+
+    long getBypassCount() {
+        return this.bypassCount.get();
+    }
+
+    long getEvictionCount() {
+        return this.evictionCount.get();
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.xenon.services.rdbms;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Bounded LRU cache of deserialized documents, keyed by documentSelfLink. The cache is bounded by
+ * both entry count and the total size of the serialized JSON of the cached documents.
+ *
+ * Writes and deletes leave a marker behind, so that a concurrent load which read an older version
+ * from the database cannot put it back in the cache. Each marker carries the version written, if
+ * known, and a write sequence number; a load is only cached if no write to the same document
+ * happened since the load started, see {@link #startLoad()}. Markers are kept outside the LRU
+ * and dropped once every load started before them has ended, see {@link #endLoad(long)}.
+ *
+ * The cache only sees the writes of this node. Callers validate a cached document against the
+ * version stored in the database before using it, see {@link #isCurrent}.
+ *
+ * Cached documents are never handed out directly, callers always get a clone.
+ */
+final class PostgresDocumentCache {
+
+    private static final class Entry {
+        final ServiceDocument document;
+        final int weight;
+
+        Entry(ServiceDocument document, int weight) {
+            this.document = document;
+            this.weight = weight;
+        }
+    }
+
+    private static final class Marker {
+        final long version;
+        final long writeSequence;
+
+        Marker(long version, long writeSequence) {
+            this.version = version;
+            this.writeSequence = writeSequence;
+        }
+    }
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /** Markers in write sequence order */
+    private final LinkedHashMap<String, Marker> markers = new LinkedHashMap<>();
+    /** Number of loads in flight by the write sequence they started at */
+    private final TreeMap<Long, Integer> loads = new TreeMap<>();
+    private long totalBytes;
+    private long writeSequence;
+    private long clearSequence;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    PostgresDocumentCache(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    boolean isEnabled() {
+        return this.maxEntries > 0 && this.maxBytes > 0;
+    }
+
+    /**
+     * Returns a clone of the cached document, or null if the document is not cached or has expired
+     */
+    ServiceDocument get(String selfLink, long nowMicros) {
+        ServiceDocument document = null;
+        synchronized (this.entries) {
+            Entry entry = this.entries.get(selfLink);
+            if (entry != null) {
+                long expiration = entry.document.documentExpirationTimeMicros;
+                if (expiration != 0 && expiration <= nowMicros) {
+                    remove(selfLink);
+                } else {
+                    document = entry.document;
+                }
+            }
+        }
+
+        if (document == null) {
+            this.missCount.incrementAndGet();
+            return null;
+        }
+        this.hitCount.incrementAndGet();
+        return Utils.clone(document);
+    }
+
+    /**
+     * Returns whether the given cached document is the version stored in the database, written by
+     * this or another node
+     */
+    static boolean isCurrent(ServiceDocument cached, long storedVersion,
+            long storedUpdateTimeMicros) {
+        return cached.documentVersion == storedVersion
+                && cached.documentUpdateTimeMicros == storedUpdateTimeMicros;
+    }
+
+    /**
+     * Returns the write sequence number to pass to {@link #put} for a load started now. Every load
+     * started must be ended with {@link #endLoad(long)}.
+     */
+    long startLoad() {
+        synchronized (this.entries) {
+            this.loads.merge(this.writeSequence, 1, Integer::sum);
+            return this.writeSequence;
+        }
+    }
+
+    /**
+     * Ends a load started with {@link #startLoad()} and drops the markers no load in flight
+     * started before
+     */
+    void endLoad(long loadSequence) {
+        synchronized (this.entries) {
+            this.loads.computeIfPresent(loadSequence, (k, count) -> count > 1 ? count - 1 : null);
+            long oldestLoad = this.loads.isEmpty() ? Long.MAX_VALUE : this.loads.firstKey();
+            Iterator<Marker> it = this.markers.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().writeSequence > oldestLoad) {
+                    break;
+                }
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Caches the given document, loaded from the database, unless a newer version is known or the
+     * document has been written or deleted since the load started
+     */
+    void put(String selfLink, ServiceDocument document, int weight, long loadSequence) {
+        if (weight > this.maxBytes) {
+            return;
+        }
+        synchronized (this.entries) {
+            if (loadSequence < this.clearSequence) {
+                return;
+            }
+            Marker marker = this.markers.get(selfLink);
+            if (marker != null && (marker.version > document.documentVersion
+                    || marker.writeSequence > loadSequence)) {
+                return;
+            }
+            Entry current = this.entries.get(selfLink);
+            if (current != null && current.document.documentVersion > document.documentVersion) {
+                return;
+            }
+            replace(selfLink, new Entry(document, weight));
+            evict();
+        }
+    }
+
+    /**
+     * Drops the cached document and remembers the given version as the latest, so that older
+     * versions are not cached anymore
+     */
+    void invalidate(String selfLink, long version) {
+        synchronized (this.entries) {
+            Marker current = this.markers.remove(selfLink);
+            if (current != null && current.version > version) {
+                version = current.version;
+            }
+            mark(selfLink, version);
+        }
+    }
+
+    /**
+     * Drops the cached document after a delete or a write whose version is not known to be newer,
+     * e.g. a forced update. Loads started before are not cached, whatever version they read.
+     */
+    void invalidateRemoved(String selfLink) {
+        synchronized (this.entries) {
+            this.markers.remove(selfLink);
+            mark(selfLink, Long.MIN_VALUE);
+        }
+    }
+
+    void remove(String selfLink) {
+        synchronized (this.entries) {
+            Entry removed = this.entries.remove(selfLink);
+            if (removed != null) {
+                this.totalBytes -= removed.weight;
+            }
+        }
+    }
+
+    /**
+     * Drops all cached documents. Loads in flight are not cached.
+     */
+    void clear() {
+        synchronized (this.entries) {
+            this.entries.clear();
+            this.totalBytes = 0;
+            this.clearSequence = ++this.writeSequence;
+        }
+    }
+
+    private void mark(String selfLink, long version) {
+        remove(selfLink);
+        long sequence = ++this.writeSequence;
+        if (!this.loads.isEmpty()) {
+            // re-inserted, so that the markers stay in write sequence order
+            this.markers.put(selfLink, new Marker(version, sequence));
+        }
+    }
+
+    private void replace(String selfLink, Entry entry) {
+        Entry previous = this.entries.put(selfLink, entry);
+        if (previous != null) {
+            this.totalBytes -= previous.weight;
+        }
+        this.totalBytes += entry.weight;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> it = this.entries.entrySet().iterator();
+        while (it.hasNext()
+                && (this.entries.size() > this.maxEntries || this.totalBytes > this.maxBytes)) {
+            Entry eldest = it.next().getValue();
+            it.remove();
+            this.totalBytes -= eldest.weight;
+            this.evictionCount.incrementAndGet();
+        }
+    }
+
+    int size() {
+        synchronized (this.entries) {
+            return this.entries.size();
+        }
+    }
+
+    int getMarkerCount() {
+        synchronized (this.entries) {
+            return this.markers.size();
+        }
+    }
+
+    long getSizeBytes() {
+        synchronized (this.entries) {
+            return this.totalBytes;
+        }
+    }
+
+    long getHitCount() {
+        return this.hitCount.get();
+    }
+
+    long getMissCount() {
+        return this.missCount.get();
+    }
+
+    long getEvictionCount() {
+        return this.evictionCount.get();
+    }
+}
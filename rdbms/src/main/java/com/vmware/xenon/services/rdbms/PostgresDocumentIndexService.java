@@ -19,17 +19,23 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 import javax.sql.DataSource;
 
 import com.vmware.xenon.common.NamedThreadFactory;
@@ -95,6 +101,54 @@ public class PostgresDocumentIndexService extends StatelessService {
             10 * Service.OPERATION_QUEUE_DEFAULT_LIMIT
     );
 
+    /**
+     * When enabled, index updates are drained from the update queue in batches and written in a
+     * single transaction, see {@link #handleGroupCommitUpdateRequest(Operation)}
+     */
+    public static final boolean IS_GROUP_COMMIT_ENABLED = XenonConfiguration.bool(
+            PostgresDocumentIndexService.class,
+            "isGroupCommitEnabled",
+            false
+    );
+
+    public static final int GROUP_COMMIT_BATCH_SIZE = XenonConfiguration.integer(
+            PostgresDocumentIndexService.class,
+            "groupCommitBatchSize",
+            100
+    );
+
+    public static final long GROUP_COMMIT_LINGER_MICROS = XenonConfiguration.number(
+            PostgresDocumentIndexService.class,
+            "groupCommitLingerMicros",
+            0
+    );
+
+    private static final long GROUP_COMMIT_POLL_INTERVAL_NANOS = TimeUnit.MICROSECONDS
+            .toNanos(50);
+
+    /**
+     * When enabled, expired documents are deleted per table with batched DELETE ... RETURNING
+     * statements, processing the tables in parallel, see
+     * {@link #applyDocumentExpirationPolicyInBulk(long)}
+     */
+    public static final boolean IS_BULK_EXPIRATION_ENABLED = XenonConfiguration.bool(
+            PostgresDocumentIndexService.class,
+            "isBulkExpirationEnabled",
+            false
+    );
+
+    public static final int EXPIRATION_THREAD_COUNT = XenonConfiguration.integer(
+            PostgresDocumentIndexService.class,
+            "expirationThreadCount",
+            4
+    );
+
+    public static final int EXPIRATION_BATCH_SIZE = XenonConfiguration.integer(
+            PostgresDocumentIndexService.class,
+            "expirationBatchSize",
+            500
+    );
+
     public static final int MIN_QUERY_RESULT_LIMIT = 1000;
 
     public static final int DEFAULT_QUERY_RESULT_LIMIT = 10000;
@@ -177,6 +231,12 @@ public class PostgresDocumentIndexService extends StatelessService {
     public static final String STAT_NAME_MAINTENANCE_DOCUMENT_EXPIRATION_DURATION_MICROS =
             "maintenanceDocumentExpirationDurationMicros";
 
+    public static final String STAT_NAME_GROUP_COMMIT_BATCH_SIZE = "groupCommitBatchSize";
+
+    public static final String STAT_NAME_GROUP_COMMIT_DURATION_MICROS = "groupCommitDurationMicros";
+
+    public static final String STAT_NAME_GROUP_COMMIT_FAILURE_COUNT = "groupCommitFailureCount";
+
     public static final String STAT_NAME_DOCUMENT_KIND_QUERY_COUNT_FORMAT = "documentKindQueryCount-%s";
 
     public static final String STAT_NAME_NON_DOCUMENT_KIND_QUERY_COUNT = "nonDocumentKindQueryCount";
@@ -207,8 +267,15 @@ public class PostgresDocumentIndexService extends StatelessService {
 
     protected Map<String, QueryTask> activeQueries = new ConcurrentHashMap<>();
 
+    /**
+     * Active queries partitioned by document kind and required term values, used to find the
+     * queries to evaluate for an update
+     */
+    private final PostgresActiveQueryIndex activeQueryIndex = new PostgresActiveQueryIndex();
+
     private ExecutorService privateIndexingExecutor;
     private ExecutorService privateQueryExecutor;
+    private ExecutorService privateExpirationExecutor;
 
     private final RoundRobinOperationQueue queryQueue = new RoundRobinOperationQueue(
             "index-service-query", QUERY_QUEUE_DEPTH);
@@ -275,6 +342,12 @@ public class PostgresDocumentIndexService extends StatelessService {
                 new NamedThreadFactory(getUri() + "/updates"));
         this.privateIndexingExecutor = TracingExecutor.create(es, getHost().getTracer());
 
+        if (IS_BULK_EXPIRATION_ENABLED) {
+            es = Executors.newFixedThreadPool(EXPIRATION_THREAD_COUNT,
+                    new NamedThreadFactory(getUri() + "/expiration"));
+            this.privateExpirationExecutor = TracingExecutor.create(es, getHost().getTracer());
+        }
+
         post.complete();
     }
 
@@ -442,6 +515,14 @@ public class PostgresDocumentIndexService extends StatelessService {
         if (op == null) {
             return;
         }
+        if (IS_GROUP_COMMIT_ENABLED && isUpdateIndexRequest(op)) {
+            handleGroupCommitUpdateRequest(op);
+            return;
+        }
+        processUpdateOperation(op);
+    }
+
+    private void processUpdateOperation(Operation op) {
         OperationContext originalContext = OperationContext.getOperationContext();
         try {
             this.writerSync.acquire();
@@ -476,6 +557,135 @@ public class PostgresDocumentIndexService extends StatelessService {
         }
     }
 
+    private static boolean isUpdateIndexRequest(Operation op) {
+        return op.getAction() == Action.POST && op.getBodyRaw() instanceof UpdateIndexRequest;
+    }
+
+    /**
+     * Drains up to {@link #GROUP_COMMIT_BATCH_SIZE} index updates from the update queue, waiting at
+     * most {@link #GROUP_COMMIT_LINGER_MICROS} for more updates to arrive, and writes them in a
+     * single transaction. Each operation is still completed on its own. Draining stops at the first
+     * operation that is not an index update, which is then processed after the batch to keep the
+     * queue order.
+     */
+    private void handleGroupCommitUpdateRequest(Operation firstOp) {
+        List<Operation> batch = new ArrayList<>();
+        batch.add(firstOp);
+
+        Operation nextOp = null;
+        long lingerDeadlineNanos = System.nanoTime()
+                + TimeUnit.MICROSECONDS.toNanos(GROUP_COMMIT_LINGER_MICROS);
+        while (batch.size() < GROUP_COMMIT_BATCH_SIZE) {
+            Operation op = pollUpdateOperation();
+            if (op == null) {
+                if (System.nanoTime() >= lingerDeadlineNanos) {
+                    break;
+                }
+                LockSupport.parkNanos(GROUP_COMMIT_POLL_INTERVAL_NANOS);
+                continue;
+            }
+            if (!isUpdateIndexRequest(op)) {
+                nextOp = op;
+                break;
+            }
+            batch.add(op);
+        }
+
+        OperationContext originalContext = OperationContext.getOperationContext();
+        try {
+            this.writerSync.acquire();
+            groupCommit(batch);
+        } catch (Exception e) {
+            checkFailureAndRecover(e);
+            for (Operation op : batch) {
+                op.fail(e);
+            }
+        } finally {
+            OperationContext.setFrom(originalContext);
+            this.writerSync.release();
+        }
+
+        if (nextOp != null) {
+            processUpdateOperation(nextOp);
+        }
+    }
+
+    private void groupCommit(List<Operation> batch) {
+        List<Operation> pendingOps = new ArrayList<>(batch.size());
+        List<UpdateIndexRequest> pendingRequests = new ArrayList<>(batch.size());
+        for (Operation op : batch) {
+            OperationContext.setFrom(op);
+            UpdateIndexRequest r = validateUpdateIndexRequest(op);
+            if (r == null) {
+                continue;
+            }
+
+            if (isForceIndexUpdate(op) || !this.dao.isBatchable(r.document)) {
+                // flush preceding updates first, to keep per document version ordering
+                flushGroupCommit(pendingOps, pendingRequests);
+                updateIndexNoThrow(op);
+                continue;
+            }
+
+            r.document.documentDescription = null;
+            pendingOps.add(op);
+            pendingRequests.add(r);
+        }
+        flushGroupCommit(pendingOps, pendingRequests);
+    }
+
+    private void flushGroupCommit(List<Operation> ops, List<UpdateIndexRequest> requests) {
+        if (ops.isEmpty()) {
+            return;
+        }
+
+        List<ServiceDocument> documents = new ArrayList<>(requests.size());
+        for (UpdateIndexRequest r : requests) {
+            documents.add(r.document);
+        }
+
+        long startNanos = System.nanoTime();
+        try {
+            this.dao.saveDocuments(documents);
+        } catch (Exception e) {
+            adjustStat(STAT_NAME_GROUP_COMMIT_FAILURE_COUNT, 1);
+            logWarning("Group commit of %d updates failed, retrying one by one: %s",
+                    ops.size(), e.toString());
+            for (Operation op : ops) {
+                OperationContext.setFrom(op);
+                updateIndexNoThrow(op);
+            }
+            ops.clear();
+            requests.clear();
+            return;
+        }
+
+        long durationNanos = System.nanoTime() - startNanos;
+        setTimeSeriesHistogramStat(STAT_NAME_GROUP_COMMIT_BATCH_SIZE,
+                AGGREGATION_TYPE_AVG_MAX, ops.size());
+        setTimeSeriesHistogramStat(STAT_NAME_GROUP_COMMIT_DURATION_MICROS,
+                AGGREGATION_TYPE_AVG_MAX, TimeUnit.NANOSECONDS.toMicros(durationNanos));
+
+        for (int i = 0; i < ops.size(); i++) {
+            Operation op = ops.get(i);
+            UpdateIndexRequest r = requests.get(i);
+            OperationContext.setFrom(op);
+            op.setBodyNoCloning(null).complete();
+            applyActiveQueries(op, r.document, r.description);
+        }
+        ops.clear();
+        requests.clear();
+    }
+
+    private void updateIndexNoThrow(Operation op) {
+        try {
+            updateIndex(op);
+        } catch (Exception e) {
+            checkFailureAndRecover(e);
+            op.fail(e);
+        }
+    }
+
     private void handleQueryTaskPatch(Operation op, QueryTask task) throws Exception {
         if (task.querySpec.options.contains(QueryOption.CONTINUOUS)) {
             if (handleContinuousQueryTaskPatch(op, task, task.querySpec)) {
@@ -512,6 +722,7 @@ public class PostgresDocumentIndexService extends StatelessService {
             clonedTask.querySpec.context.filter = QueryFilter.create(qs.query);
             clonedTask.querySpec.context.subjectLink = getSubject(op);
             this.activeQueries.put(task.documentSelfLink, clonedTask);
+            this.activeQueryIndex.add(clonedTask);
             adjustTimeSeriesStat(STAT_NAME_ACTIVE_QUERY_FILTERS, AGGREGATION_TYPE_SUM,
                     1);
             logInfo("Activated continuous query task: %s", task.documentSelfLink);
@@ -519,6 +730,7 @@ public class PostgresDocumentIndexService extends StatelessService {
         case CANCELLED:
         case FAILED:
         case FINISHED:
+            this.activeQueryIndex.remove(task.documentSelfLink);
             if (this.activeQueries.remove(task.documentSelfLink) != null) {
                 adjustTimeSeriesStat(STAT_NAME_ACTIVE_QUERY_FILTERS, AGGREGATION_TYPE_SUM,
                         -1);
@@ -777,61 +989,81 @@ public class PostgresDocumentIndexService extends StatelessService {
 
         this.privateIndexingExecutor.shutdown();
         this.privateQueryExecutor.shutdown();
+        if (this.privateExpirationExecutor != null) {
+            this.privateExpirationExecutor.shutdown();
+        }
         getHost().stopService(this);
         delete.complete();
     }
 
     protected void updateIndex(Operation updateOp) throws Exception {
-        UpdateIndexRequest r = updateOp.getBody(UpdateIndexRequest.class);
+        UpdateIndexRequest r = validateUpdateIndexRequest(updateOp);
+        if (r == null) {
+            return;
+        }
         ServiceDocument s = r.document;
         ServiceDocumentDescription desc = r.description;
 
+        boolean forceIndexUpdate = isForceIndexUpdate(updateOp);
+
+        s.documentDescription = null;
+        dao.saveDocument(s, desc, forceIndexUpdate);
+
+        if (forceIndexUpdate) {
+            // Delete all previous versions from the index.
+            adjustStat(STAT_NAME_FORCED_UPDATE_DOCUMENT_DELETE_COUNT, 1);
+        }
+
+        // Use time AFTER index was updated to be sure that it can be compared
+        // against the time the searcher was updated and have this change
+        // be reflected in the new searcher. If the start time would be used,
+        // it is possible to race with updating the searcher and NOT have this
+        // change be reflected in the searcher.
+        updateOp.setBodyNoCloning(null).complete();
+        applyActiveQueries(updateOp, s, desc);
+    }
+
+    private static boolean isForceIndexUpdate(Operation updateOp) {
+        return updateOp.getAction() == Action.POST
+                && updateOp.hasPragmaDirective(Operation.PRAGMA_DIRECTIVE_FORCE_INDEX_UPDATE);
+    }
+
+    /**
+     * Returns the update request of the given operation, or fails the operation and returns null
+     * if the request is not valid
+     */
+    private UpdateIndexRequest validateUpdateIndexRequest(Operation updateOp) {
+        UpdateIndexRequest r = updateOp.getBody(UpdateIndexRequest.class);
+        ServiceDocument s = r.document;
+
         if (updateOp.isRemote()) {
             updateOp.fail(new IllegalStateException("Remote requests not allowed"));
-            return;
+            return null;
         }
 
         if (s == null) {
             updateOp.fail(new IllegalArgumentException("document is required"));
-            return;
+            return null;
         }
 
-        String link = s.documentSelfLink;
-        if (link == null) {
+        if (s.documentSelfLink == null) {
             updateOp.fail(new IllegalArgumentException(
                     "documentSelfLink is required"));
-            return;
+            return null;
         }
 
         if (s.documentUpdateAction == null) {
             updateOp.fail(new IllegalArgumentException(
                     "documentUpdateAction is required"));
-            return;
+            return null;
         }
 
-        if (desc == null) {
+        if (r.description == null) {
             updateOp.fail(new IllegalArgumentException("description is required"));
-            return;
-        }
-
-        boolean forceIndexUpdate = updateOp.getAction() == Action.POST
-                && updateOp.hasPragmaDirective(Operation.PRAGMA_DIRECTIVE_FORCE_INDEX_UPDATE);
-
-        s.documentDescription = null;
-        dao.saveDocument(s, desc, forceIndexUpdate);
-
-        if (forceIndexUpdate) {
-            // Delete all previous versions from the index.
-            adjustStat(STAT_NAME_FORCED_UPDATE_DOCUMENT_DELETE_COUNT, 1);
+            return null;
         }
 
-        // Use time AFTER index was updated to be sure that it can be compared
-        // against the time the searcher was updated and have this change
-        // be reflected in the new searcher. If the start time would be used,
-        // it is possible to race with updating the searcher and NOT have this
-        // change be reflected in the searcher.
-        updateOp.setBodyNoCloning(null).complete();
-        applyActiveQueries(updateOp, s, desc);
+        return r;
     }
 
     /**
@@ -860,18 +1092,23 @@ public class PostgresDocumentIndexService extends StatelessService {
         }
 
         applyActiveQueries(postOrDelete, state, null);
+        stopExpiredService(state.documentSelfLink, state);
+    }
 
+    private void stopExpiredService(String link, ServiceDocument state) {
         // remove service, if its running
         // Broadcasting delete to all nodes, to make sure owner node stop the service
         // TODO: Find better solution, all nodes query for expiration and stop if service owner?
         // TODO: Consider skipping delete for IMMUTABLE and non-periodic services, since they will
         // stop on idle
         // TODO: Why handleDelete is not called? Noticed same behavior with lucene
-        Operation delete = Operation.createDelete(this, state.documentSelfLink)
-                .setBodyNoCloning(state)
+        Operation delete = Operation.createDelete(this, link)
                 .disableFailureLogging(true)
                 .addPragmaDirective(Operation.PRAGMA_DIRECTIVE_NO_INDEX_UPDATE)
                 .setReferer(getUri());
+        if (state != null) {
+            delete.setBodyNoCloning(state);
+        }
         getHost().broadcastRequest(ServiceUriPaths.DEFAULT_NODE_SELECTOR, false, delete);
     }
 
@@ -973,7 +1210,11 @@ public class PostgresDocumentIndexService extends StatelessService {
 
     private void expireServicesAsOwner(Operation maintOp, long deadline) {
         try {
-            applyDocumentExpirationPolicy(deadline);
+            if (IS_BULK_EXPIRATION_ENABLED) {
+                applyDocumentExpirationPolicyInBulk(deadline);
+            } else {
+                applyDocumentExpirationPolicy(deadline);
+            }
         } catch (Throwable e) {
             logWarning("Expiration failed: %s", e);
         }
@@ -1112,9 +1353,76 @@ public class PostgresDocumentIndexService extends StatelessService {
         return expired;
     }
 
+    /**
+     * Expires documents of all tables in parallel on the expiration executor, until the deadline.
+     * Each table is processed in batches of {@link #EXPIRATION_BATCH_SIZE} documents, up to the
+     * expired document search threshold per table. Documents are only loaded when there are
+     * active continuous queries to notify.
+     */
+    private void applyDocumentExpirationPolicyInBulk(long deadline) throws Exception {
+        long now = Utils.getNowMicrosUtc();
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (TableDescription tableDescription : this.dao.getPostgresSchemaManager()
+                .getTableDescriptions()) {
+            tasks.add(() -> expireDocumentsInBulk(tableDescription, now, deadline,
+                    expiredDocumentSearchThreshold, EXPIRATION_BATCH_SIZE));
+        }
+
+        long timeoutMicros = deadline - Utils.getSystemNowMicrosUtc();
+        if (tasks.isEmpty() || timeoutMicros <= 0) {
+            return;
+        }
+
+        List<Future<Integer>> results = this.privateExpirationExecutor.invokeAll(tasks,
+                timeoutMicros, TimeUnit.MICROSECONDS);
+        for (Future<Integer> result : results) {
+            if (result.isCancelled()) {
+                continue;
+            }
+            try {
+                result.get();
+            } catch (ExecutionException e) {
+                logWarning("Expiration failed: %s", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Deletes up to {@code limit} documents of the table expired at {@code now}, in batches of
+     * at most {@code batchSize} documents, until the deadline. Running services of the expired
+     * documents are stopped, whether their state is returned or not.
+     */
+    int expireDocumentsInBulk(TableDescription tableDescription, long now, long deadline,
+            int limit, int batchSize) throws Exception {
+        int expired = 0;
+        while (expired < limit && Utils.getSystemNowMicrosUtc() < deadline
+                && !getHost().isStopping()) {
+            int count = Math.min(batchSize, limit - expired);
+            boolean includeState = !this.activeQueryIndex.isEmpty();
+            Operation dummyDelete = Operation.createDelete(null);
+            int deleted = this.dao.deleteExpiredDocuments(tableDescription, now, count,
+                    includeState, (link, state) -> {
+                        adjustTimeSeriesStat(STAT_NAME_SERVICE_DELETE_COUNT,
+                                AGGREGATION_TYPE_SUM, 1);
+                        adjustTimeSeriesStat(STAT_NAME_DOCUMENT_EXPIRATION_COUNT,
+                                AGGREGATION_TYPE_SUM, 1);
+                        logFine("%s expired", link);
+                        if (state != null) {
+                            applyActiveQueries(dummyDelete, state, null);
+                        }
+                        stopExpiredService(link, state);
+                    });
+            expired += deleted;
+            if (deleted < count) {
+                break;
+            }
+        }
+        return expired;
+    }
+
     private void applyActiveQueries(Operation op, ServiceDocument latestState,
             ServiceDocumentDescription desc) {
-        if (this.activeQueries.isEmpty()) {
+        if (this.activeQueryIndex.isEmpty()) {
             return;
         }
 
@@ -1130,15 +1438,12 @@ public class PostgresDocumentIndexService extends StatelessService {
         // same context as the operation that updated the index
         OperationContext.setFrom(op);
 
-        // TODO Optimize. We currently traverse each query independently. We can collapse the queries
-        // and evaluate clauses keeping track which clauses applied, then skip any queries accordingly.
-
-        for (Entry<String, QueryTask> taskEntry : this.activeQueries.entrySet()) {
+        // Only evaluate the queries that can match the document kind and required term values
+        for (QueryTask activeTask : this.activeQueryIndex.getCandidates(latestState, desc)) {
             if (getHost().isStopping()) {
                 break;
             }
 
-            QueryTask activeTask = taskEntry.getValue();
             QueryFilter filter = activeTask.querySpec.context.filter;
             if (desc == null) {
                 if (!QueryFilterUtils.evaluate(filter, latestState, getHost())) {
@@ -12,7 +12,9 @@
 package com.vmware.xenon.services.rdbms;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -28,12 +30,16 @@ import com.vmware.xenon.common.ServiceDocumentDescription;
 import com.vmware.xenon.common.ServiceDocumentDescription.PropertyIndexingOption;
 import com.vmware.xenon.common.UriUtils;
 import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.common.config.XenonConfiguration;
 import com.vmware.xenon.services.common.QueryTask;
 import com.vmware.xenon.services.common.QueryTask.Query;
 import com.vmware.xenon.services.common.QueryTask.Query.Occurance;
 import com.vmware.xenon.services.common.QueryTask.QuerySpecification;
 import com.vmware.xenon.services.common.QueryTask.QuerySpecification.QueryOption;
 import com.vmware.xenon.services.common.QueryTask.QuerySpecification.QueryRuntimeContext;
+import com.vmware.xenon.services.common.QueryTask.QueryTerm.MatchType;
+import com.vmware.xenon.services.rdbms.PostgresCompiledQueryCache.CompiledQuery;
+import com.vmware.xenon.services.rdbms.PostgresCompiledQueryCache.ValueEncoding;
 import com.vmware.xenon.services.rdbms.PostgresSchemaManager.ColumnDescription;
 import com.vmware.xenon.services.rdbms.PostgresSchemaManager.TableDescription;
 
@@ -64,11 +70,95 @@ final class PostgresQueryConverter {
         }
     }
 
+    /**
+     * Records the value slots while a query shape is compiled
+     */
+    private static final class QueryCompiler {
+        private static final char SLOT_START = '\u0000';
+        private static final char SLOT_END = '\u0001';
+
+        private final Map<QueryTask.QueryTerm, Integer> slotsByTerm;
+        private final List<Integer> slots = new ArrayList<>();
+        private final List<ValueEncoding> encodings = new ArrayList<>();
+        private final List<Boolean> lowerCase = new ArrayList<>();
+        private boolean failed;
+
+        QueryCompiler(Map<QueryTask.QueryTerm, Integer> slotsByTerm) {
+            this.slotsByTerm = slotsByTerm;
+        }
+
+        String slot(QueryTask.QueryTerm term, boolean lowerCase, ValueEncoding encoding) {
+            Integer slot = this.slotsByTerm.get(term);
+            if (slot == null) {
+                // value of a term that is not part of the shape, should not happen
+                this.failed = true;
+                return encoding.encode(lowerCase ? term.matchValue.toLowerCase()
+                        : term.matchValue);
+            }
+            int index = this.slots.size();
+            this.slots.add(slot);
+            this.encodings.add(encoding);
+            this.lowerCase.add(lowerCase);
+            return SLOT_START + Integer.toString(index) + SLOT_END;
+        }
+
+        CompiledQuery compile(TableDescription td, String sql) {
+            if (this.failed) {
+                return PostgresCompiledQueryCache.NOT_CACHEABLE;
+            }
+
+            // not every recorded value ends up in the SQL, collect the ones that do
+            List<String> segmentList = new ArrayList<>();
+            List<Integer> indexes = new ArrayList<>();
+            int start = 0;
+            int slotStart;
+            while ((slotStart = sql.indexOf(SLOT_START, start)) >= 0) {
+                int slotEnd = sql.indexOf(SLOT_END, slotStart);
+                if (slotEnd < 0) {
+                    return PostgresCompiledQueryCache.NOT_CACHEABLE;
+                }
+                segmentList.add(sql.substring(start, slotStart));
+                indexes.add(Integer.parseInt(sql.substring(slotStart + 1, slotEnd)));
+                start = slotEnd + 1;
+            }
+            segmentList.add(sql.substring(start));
+
+            int count = indexes.size();
+            String[] segments = segmentList.toArray(new String[count + 1]);
+            int[] slots = new int[count];
+            ValueEncoding[] encodings = new ValueEncoding[count];
+            boolean[] lowerCase = new boolean[count];
+            for (int i = 0; i < count; i++) {
+                int index = indexes.get(i);
+                slots[i] = this.slots.get(index);
+                encodings[i] = this.encodings.get(index);
+                lowerCase[i] = this.lowerCase.get(index);
+            }
+
+            return new CompiledQuery(td, segments, slots, encodings, lowerCase);
+        }
+    }
+
     static final String SQL_TRUE = "TRUE";
     static final String SQL_FALSE = "FALSE";
 
+    /**
+     * Maximum number of query shapes kept in the compiled query cache, 0 (the default) disables
+     * the cache. The cache only saves the conversion to SQL, the generated SQL still has the
+     * values inlined, so Postgres plans every statement as before.
+     */
+    private static final int COMPILED_QUERY_CACHE_MAX_ENTRIES = XenonConfiguration.integer(
+            PostgresQueryConverter.class,
+            "compiledQueryCacheMaxEntries",
+            0);
+
     private static final StringBuilderThreadLocal builderPerThread = new StringBuilderThreadLocal();
 
+    private static final ThreadLocal<QueryCompiler> compilerPerThread = new ThreadLocal<>();
+
+    private static final PostgresCompiledQueryCache compiledQueryCache =
+            new PostgresCompiledQueryCache(COMPILED_QUERY_CACHE_MAX_ENTRIES);
+
     private static final QueryTask.QueryTerm QUERY_TERM_TRUE;
     private static final QueryTask.QueryTerm QUERY_TERM_FALSE;
 
@@ -88,6 +178,182 @@ final class PostgresQueryConverter {
     }
 
     static String convert(Query query, QueryRuntimeContext context, TableDescription td) {
+        return convert(query, context, td, compiledQueryCache);
+    }
+
+    static String convert(Query query, QueryRuntimeContext context, TableDescription td,
+            PostgresCompiledQueryCache cache) {
+        // Queries searching across tables resolve columns through the runtime context
+        if (cache.isEnabled() && (context == null || context.nativeSearcher == null)) {
+            String sql = convertCompiled(query, context, td, cache);
+            if (sql != null) {
+                return sql;
+            }
+        }
+
+        return convertQuery(query, context, td);
+    }
+
+    static PostgresCompiledQueryCache getCompiledQueryCache() {
+        return compiledQueryCache;
+    }
+
+    /**
+     * Converts the query using the compiled query of its shape, compiling the shape if needed.
+     * Returns null if the query can not be converted this way.
+     */
+    private static String convertCompiled(Query query, QueryRuntimeContext context,
+            TableDescription td, PostgresCompiledQueryCache cache) {
+        Map<String, Integer> valueSlots = new HashMap<>();
+        List<String> values = new ArrayList<>();
+        StringBuilder key = new StringBuilder(128).append(td.getTableName()).append('|');
+        // the runtime context collects the kind scope while converting
+        key.append(context != null ? 'c' : 'n');
+        if (!appendShapeKey(key, query, td, valueSlots, values, null)) {
+            cache.recordBypass();
+            return null;
+        }
+        String shapeKey = key.toString();
+
+        CompiledQuery compiled = cache.get(shapeKey, td);
+        if (compiled != null) {
+            return compiled.isCacheable() ? compiled.render(values) : null;
+        }
+
+        // Slots are assigned per term instance, walk the shape again to collect them
+        Map<QueryTask.QueryTerm, Integer> slotsByTerm = new IdentityHashMap<>();
+        appendShapeKey(new StringBuilder(), query, td, new HashMap<>(), new ArrayList<>(),
+                slotsByTerm);
+
+        QueryCompiler compiler = new QueryCompiler(slotsByTerm);
+        compilerPerThread.set(compiler);
+        try {
+            compiled = compiler.compile(td, convertQuery(query, context, td));
+        } catch (RuntimeException e) {
+            // let the regular conversion report the failure
+            return null;
+        } finally {
+            compilerPerThread.remove();
+        }
+
+        String sql = convertQuery(query, context, td);
+        if (compiled.isCacheable()) {
+            String rendered = compiled.render(values);
+            if (rendered != null && !rendered.equals(sql)) {
+                logger.warning(() -> String.format("Compiled query mismatch, not caching %s",
+                        shapeKey));
+                compiled = PostgresCompiledQueryCache.NOT_CACHEABLE;
+            }
+        }
+        cache.put(shapeKey, compiled);
+        return sql;
+    }
+
+    /**
+     * Appends the shape of the query to the key and collects the distinct term values of the
+     * query in slot order. Every value dependent decision taken while reducing and converting a
+     * query is part of the key, so that queries of the same shape convert to the same SQL, except
+     * for the values. Returns false if the query has no cacheable shape.
+     *
+     * <p>The query is validated and completed with the defaults as {@link #reduceQuery} does, so
+     * that a query converted from the cache is left as a converted one.
+     */
+    private static boolean appendShapeKey(StringBuilder key, Query query, TableDescription td,
+            Map<String, Integer> valueSlots, List<String> values,
+            Map<QueryTask.QueryTerm, Integer> slotsByTerm) {
+        if (query.occurance == null) {
+            query.occurance = Occurance.MUST_OCCUR;
+        }
+        key.append(query.occurance.ordinal());
+
+        if (query.booleanClauses != null) {
+            if (query.term != null || query.booleanClauses.isEmpty()) {
+                return false;
+            }
+            key.append('[');
+            for (Query clause : query.booleanClauses) {
+                if (!appendShapeKey(key, clause, td, valueSlots, values, slotsByTerm)) {
+                    return false;
+                }
+            }
+            key.append(']');
+            return true;
+        }
+
+        QueryTask.QueryTerm term = query.term;
+        if (term == null || term.propertyName == null || term.matchValue == null
+                || term.range != null) {
+            return false;
+        }
+        if (term.matchType == null) {
+            term.matchType = MatchType.TERM;
+        }
+
+        // Wildcard and phrase conversions depend on the content of the value
+        MatchType matchType = term.matchType;
+        if (matchType != MatchType.TERM && matchType != MatchType.PREFIX) {
+            return false;
+        }
+
+        boolean isSelfLink = term.propertyName.equals(ServiceDocument.FIELD_NAME_SELF_LINK);
+        boolean isKind = term.propertyName.equals(ServiceDocument.FIELD_NAME_KIND);
+        if ((isSelfLink || isKind) && matchType != MatchType.TERM) {
+            return false;
+        }
+
+        key.append('(').append(matchType.ordinal());
+        appendKeyString(key, term.propertyName);
+        if (isKind) {
+            // kind terms are reduced to TRUE or FALSE, depending on the table
+            appendKeyString(key, term.matchValue);
+            key.append(')');
+            return true;
+        }
+
+        if (isSelfLink) {
+            String factoryLink = td.getFactoryLink();
+            key.append(factoryLink != null && term.matchValue.startsWith(factoryLink)
+                    ? 'f' : 'o');
+        }
+        if (term.matchValue.equals(UriUtils.URI_WILDCARD_CHAR)) {
+            key.append('*');
+        } else if (term.matchValue.isEmpty()) {
+            key.append('e');
+        }
+
+        // equal values share the same slot, duplicated clauses are removed when reduced
+        Integer slot = valueSlots.get(term.matchValue);
+        if (slot == null) {
+            slot = values.size();
+            valueSlots.put(term.matchValue, slot);
+            values.add(term.matchValue);
+        }
+        if (slotsByTerm != null) {
+            slotsByTerm.put(term, slot);
+        }
+        key.append('$').append(slot).append(')');
+        return true;
+    }
+
+    private static void appendKeyString(StringBuilder key, String s) {
+        key.append(s.length()).append(':').append(s);
+    }
+
+    /**
+     * Returns the SQL literal content of the term value, or a value slot if a query shape is being
+     * compiled
+     */
+    private static String literal(QueryTask.QueryTerm term, boolean lowerCase,
+            ValueEncoding encoding) {
+        QueryCompiler compiler = compilerPerThread.get();
+        if (compiler != null) {
+            return compiler.slot(term, lowerCase, encoding);
+        }
+        return encoding.encode(lowerCase ? term.matchValue.toLowerCase() : term.matchValue);
+    }
+
+    private static String convertQuery(Query query, QueryRuntimeContext context,
+            TableDescription td) {
         query = reduceQuery(query, td);
 
         try {
@@ -303,22 +569,20 @@ final class PostgresQueryConverter {
             // return String.format("%s @> '\"%s\"'", wrapNativeField(query.term.propertyName, cd),
             // escapeJsonString(query.term.matchValue));
             return String.format("%s ? '%s'", wrapNativeField(query.term.propertyName, cd),
-                    escapeSqlString(query.term.matchValue));
+                    literal(query.term, false, ValueEncoding.SQL));
         }
 
         String stringField = wrapStringField(query.term.propertyName, cd);
-        String stringValue = query.term.matchValue;
 
         if (isCaseInsensitive) {
             stringField = String.format("LOWER(%s)", stringField);
-            stringValue = stringValue.toLowerCase();
         }
 
         if (isTextIndexingOption(cd)) {
             // Is text field
             // TODO: use postgres text indexing?
             return String.format("%s LIKE '%%%s%%' ESCAPE '\\'", stringField,
-                    escapeSqlLike(stringValue));
+                    literal(query.term, isCaseInsensitive, ValueEncoding.LIKE));
         }
 
         if (query.term.propertyName.contains(
@@ -331,7 +595,8 @@ final class PostgresQueryConverter {
             if (isCaseInsensitive) {
                 select = String.format("LOWER(%s)", select);
             }
-            return String.format("'%s' IN (SELECT %s)", escapeSqlString(stringValue), select);
+            return String.format("'%s' IN (SELECT %s)",
+                    literal(query.term, isCaseInsensitive, ValueEncoding.SQL), select);
         }
 
         // TODO: Need to support case insensitive in MAP
@@ -347,7 +612,9 @@ final class PostgresQueryConverter {
             }
         }
 
-        return String.format("%s = '%s'", stringField, escapeSqlString(stringValue));
+        // the field is still compared in lower case for maps
+        return String.format("%s = '%s'", stringField,
+                literal(query.term, isCaseInsensitive(cd), ValueEncoding.SQL));
     }
 
     private static String toJsonContainsCondition(Query query, ColumnDescription cd) {
@@ -381,13 +648,13 @@ final class PostgresQueryConverter {
         try {
             switch (typeName) {
             case LONG:
-                sb.append(Long.parseLong(query.term.matchValue));
+                sb.append(literal(query.term, false, ValueEncoding.LONG));
                 break;
             case BOOLEAN:
-                sb.append(Boolean.parseBoolean(query.term.matchValue));
+                sb.append(literal(query.term, false, ValueEncoding.BOOLEAN));
                 break;
             case DOUBLE:
-                sb.append(Double.parseDouble(query.term.matchValue));
+                sb.append(literal(query.term, false, ValueEncoding.DOUBLE));
                 break;
             case STRING:
             case InternetAddressV4:
@@ -400,7 +667,8 @@ final class PostgresQueryConverter {
             case COLLECTION:
             case MAP:
             default:
-                sb.append("\"").append(escapeJsonString(query.term.matchValue)).append("\"");
+                sb.append("\"").append(literal(query.term, false, ValueEncoding.JSON_STRING))
+                        .append("\"");
             }
         } catch (Throwable e) {
             logger.warning(String.format("Failed to convert %s: %s", typeName, e));
@@ -451,9 +719,9 @@ final class PostgresQueryConverter {
         }
 
         // when searching in collection we use the string representation of the collection's json
-        String escapedPrefix = escapeSqlLike(stringValue);
+        String escapedPrefix = literal(query.term, isCaseInsensitive, ValueEncoding.LIKE);
         if (isCollectionField(query)) {
-            if (escapedPrefix.isEmpty()) {
+            if (stringValue.isEmpty()) {
                 return String.format(
                         "EXISTS(SELECT FROM jsonb_array_elements(%s) value WHERE value IS NOT NULL)",
                         wrapNativeField(query.term.propertyName, cd));
@@ -624,17 +892,14 @@ final class PostgresQueryConverter {
                             values = new StringBuilder(q.term.matchValue.length()
                                     + next.term.matchValue.length() + 10);
                             values.append('\'')
-                                    .append(escapeSqlString(
-                                            isCaseInsensitive ? q.term.matchValue.toLowerCase()
-                                                    : q.term.matchValue))
+                                    .append(literal(q.term, isCaseInsensitive,
+                                            ValueEncoding.SQL))
                                     .append('\'');
                             valueCount = 1;
                         }
 
                         values.append(',').append('\'')
-                                .append(escapeSqlString(
-                                        isCaseInsensitive ? next.term.matchValue.toLowerCase()
-                                                : next.term.matchValue))
+                                .append(literal(next.term, isCaseInsensitive, ValueEncoding.SQL))
                                 .append('\'');
                         valueCount++;
                         index++;
@@ -932,7 +1197,7 @@ final class PostgresQueryConverter {
                 .contains(PropertyIndexingOption.TEXT);
     }
 
-    private static String escapeJsonString(String s) {
+    static String escapeJsonString(String s) {
         return s.replace("'", "''")
                 .replace("\\", "\\\\")
                 .replace("\"", "\\\"");
@@ -17,6 +17,7 @@ import static com.vmware.xenon.services.rdbms.PostgresQueryConverter.isSqlTrue;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.StringReader;
 import java.lang.management.ManagementFactory;
 import java.lang.reflect.Field;
 import java.net.URI;
@@ -33,6 +34,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -43,6 +45,7 @@ import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -53,6 +56,8 @@ import javax.sql.DataSource;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 import com.vmware.xenon.common.NodeSelectorService.SelectOwnerResponse;
 import com.vmware.xenon.common.Operation;
@@ -81,6 +86,7 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
             .getLogger(PostgresServiceDocumentDao.class.getName());
 
     private static final String RESOURCE_PER_DOCUMENT_TABLE_TEMPLATE = "sql/per_document_table_template.sql";
+    private static final String RESOURCE_PER_DOCUMENT_TABLE_EXPIRATION_INDEX_TEMPLATE = "sql/per_document_table_expiration_index_template.sql";
     private static final String SQL_TEMPLATE_VAR_TABLE_NAME = "\\$tableName";
 
     private boolean isDetailedLoggingEnabled = XenonConfiguration.bool(
@@ -100,6 +106,14 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
             "isSoftDeleteEnabled",
             true);
 
+    /**
+     * When enabled, a partial index of the expiring documents is created for every document table
+     */
+    private static final boolean IS_EXPIRATION_INDEX_ENABLED = XenonConfiguration.bool(
+            PostgresServiceDocumentDao.class,
+            "isExpirationIndexEnabled",
+            false);
+
     private static final String DUMP_QUERY_DIRECTORY = XenonConfiguration.string(
             PostgresServiceDocumentDao.class,
             "dumpQueryDirectory",
@@ -110,6 +124,28 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
             "logSlowQueriesThresholdSeconds",
             0));
 
+    /**
+     * Maximum number of documents kept in the read-through document cache, 0 disables the cache
+     */
+    private static final int DOCUMENT_CACHE_MAX_ENTRIES = XenonConfiguration.integer(
+            PostgresServiceDocumentDao.class,
+            "documentCacheMaxEntries",
+            0);
+
+    private static final long DOCUMENT_CACHE_MAX_BYTES = XenonConfiguration.number(
+            PostgresServiceDocumentDao.class,
+            "documentCacheMaxBytes",
+            64 * 1024 * 1024);
+
+    /**
+     * When enabled, EXPAND_CONTENT query results are built directly from the jsonb content of the
+     * rows, without deserializing every row into its service document type and back
+     */
+    private static final boolean IS_EXPAND_CONTENT_PASS_THROUGH_ENABLED = XenonConfiguration.bool(
+            PostgresServiceDocumentDao.class,
+            "isExpandContentPassThroughEnabled",
+            false);
+
     private static final String DOCUMENTS_WITHOUT_RESULTS = "DocumentsWithoutResults";
 
     private static final String SQL_UPSERT;
@@ -146,6 +182,8 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
     private final Service service;
     private final DataSource ds;
     private final PostgresSchemaManager schemaManager;
+    private final PostgresDocumentCache documentCache = new PostgresDocumentCache(
+            DOCUMENT_CACHE_MAX_ENTRIES, DOCUMENT_CACHE_MAX_BYTES);
 
     // Used as a filename prefix when saving query information to filesystem. The time-based prefix
     // is used to avoid overriding files on node restart.
@@ -176,6 +214,34 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
         TableDescription desc = this.schemaManager.getTableDescriptionForFactoryLink(factoryLink);
         if (desc != null) {
             ensureTableExists(desc);
+            if (IS_EXPIRATION_INDEX_ENABLED) {
+                ensureExpirationIndexExists(desc);
+            }
+        }
+    }
+
+    private void ensureExpirationIndexExists(TableDescription desc) {
+        String sqlCreateIndexTemplate;
+        try {
+            sqlCreateIndexTemplate = PostgresHostUtils.getResourceAsString(
+                    PostgresServiceDocumentDao.class.getClassLoader(),
+                    RESOURCE_PER_DOCUMENT_TABLE_EXPIRATION_INDEX_TEMPLATE);
+        } catch (IOException e) {
+            logger.severe(() -> String.format("Error reading SQL resource: %s", e));
+            throw new AssertionError(e);
+        }
+
+        String tableName = desc.getTableName();
+        String createIndexStatement = sqlCreateIndexTemplate.replaceAll(
+                SQL_TEMPLATE_VAR_TABLE_NAME, tableName);
+
+        try (Connection conn = this.ds.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(createIndexStatement);
+            logger.info(() -> String.format("Created expiration index for table %s", tableName));
+        } catch (SQLException e) {
+            // Not fatal, expiration still works without the index
+            logger.warning(() -> String.format("Cannot create expiration index for table %s: %s",
+                    tableName, e.getMessage()));
         }
     }
 
@@ -228,8 +294,25 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
      * will be filtered given the REAL latest version, not the latest version subject to the
      * resource group query. This means older versions of a document will NOT appear in the query
      * result if the user is not authorized to see the newer version.
+     *
+     * Loaded documents are kept in the document cache, if enabled, until a newer version is saved or
+     * the document is deleted. Cached documents are only returned if their version and update time
+     * match the stored row, which other nodes may have written.
      */
     public ServiceDocument loadDocument(String selfLink) throws SQLException {
+        if (!this.documentCache.isEnabled()) {
+            return loadDocument(selfLink, 0);
+        }
+        long loadSequence = this.documentCache.startLoad();
+        try {
+            return loadDocument(selfLink, loadSequence);
+        } finally {
+            this.documentCache.endLoad(loadSequence);
+        }
+    }
+
+    private ServiceDocument loadDocument(String selfLink, long loadSequence)
+            throws SQLException {
         TableDescription tableDescription = this.schemaManager
                 .getTableDescriptionForDocumentSelfLink(selfLink);
         if (tableDescription == null) {
@@ -238,6 +321,23 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
             return null;
         }
 
+        if (this.documentCache.isEnabled()) {
+            ServiceDocument cached = this.documentCache.get(selfLink,
+                    Utils.getSystemNowMicrosUtc());
+            if (cached != null) {
+                // other nodes write to the same rows, so the cached version is checked first
+                Boolean current = isCachedDocumentCurrent(tableDescription, selfLink, cached);
+                if (current == null) {
+                    this.documentCache.remove(selfLink);
+                    return null;
+                }
+                if (current) {
+                    return cached;
+                }
+                this.documentCache.remove(selfLink);
+            }
+        }
+
         String sql = String
                 .format("SELECT data FROM %s WHERE documentselflink = ? AND (documentexpirationtimemicros = 0 OR documentexpirationtimemicros > ?)",
                         tableDescription.getTableName());
@@ -278,7 +378,39 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
             return null;
         }
 
-        return getStateFromPostgresDocument(tableDescription, visitor, selfLink);
+        ServiceDocument state = getStateFromPostgresDocument(tableDescription, visitor, selfLink);
+        if (state != null && this.documentCache.isEnabled()) {
+            this.documentCache.put(selfLink, state, visitor.jsonSerializedState.length(),
+                    loadSequence);
+            return Utils.clone(state);
+        }
+        return state;
+    }
+
+    /**
+     * Returns whether the cached document is the version stored in the database, or null if the
+     * document is not stored anymore
+     */
+    private Boolean isCachedDocumentCurrent(TableDescription tableDescription, String selfLink,
+            ServiceDocument cached) throws SQLException {
+        String sql = String.format("SELECT documentversion, documentupdatetimemicros FROM %s"
+                + " WHERE documentselflink = ? AND (documentexpirationtimemicros = 0"
+                + " OR documentexpirationtimemicros > ?)", tableDescription.getTableName());
+        try (Connection conn = this.ds.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, selfLink);
+            stmt.setLong(2, Utils.getSystemNowMicrosUtc());
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                return PostgresDocumentCache.isCurrent(cached, rs.getLong(1), rs.getLong(2));
+            }
+        } catch (SQLException e) {
+            logger.severe(String.format("SQL loadDocument version check failed: %s : %s",
+                    selfLink, e));
+            throw e;
+        }
     }
 
     public void saveDocument(ServiceDocument sd, ServiceDocumentDescription sdd,
@@ -305,6 +437,7 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
                     PreparedStatement delStmt = conn.prepareStatement(sql)) {
                 delStmt.setString(1, sd.documentSelfLink);
                 delStmt.executeUpdate();
+                this.documentCache.invalidate(sd.documentSelfLink, sd.documentVersion);
                 // TODO: Need to call service delete
             } catch (Exception e) {
                 logger.severe(String
@@ -342,7 +475,15 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
             stmt.setString(8, sd.documentAuthPrincipalLink);
             stmt.setString(9, sd.documentUpdateAction);
 
-            if (stmt.executeUpdate() == 0) {
+            int rows = stmt.executeUpdate();
+            if (forceIndexUpdate) {
+                // forced updates can go back in version
+                this.documentCache.invalidateRemoved(sd.documentSelfLink);
+            } else {
+                this.documentCache.invalidate(sd.documentSelfLink, sd.documentVersion);
+            }
+
+            if (rows == 0) {
                 // TODO: Fail operation?
                 logger.log(Level.WARNING, String.format(
                         "Ignored SQL upsert: %s : ver=%s documentOwner=%s : most probably a newer version is already stored",
@@ -360,12 +501,117 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
         }
     }
 
+    /**
+     * Returns true if the given document can be written through
+     * {@link #saveDocuments(List)}. Hard deletes (soft delete disabled) are not batched and must go
+     * through {@link #saveDocument(ServiceDocument, ServiceDocumentDescription, boolean)}.
+     */
+    boolean isBatchable(ServiceDocument sd) {
+        return this.isSoftDeleteEnabled
+                || !Action.DELETE.name().equals(sd.documentUpdateAction);
+    }
+
+    /**
+     * Upserts the given documents in a single transaction, grouping them per table and using JDBC
+     * batching. The relative order of documents with the same self link is preserved, so version
+     * ordering is the same as saving them one by one. Within a table, documents are written in self
+     * link order to avoid lock ordering deadlocks between concurrent batches.
+     *
+     * The whole batch is rolled back on failure and the exception is re-thrown, so the caller can
+     * retry the documents individually.
+     */
+    public void saveDocuments(List<ServiceDocument> documents) throws SQLException {
+        Map<String, List<ServiceDocument>> documentsByTable = new HashMap<>();
+        for (ServiceDocument sd : documents) {
+            String tableName = this.schemaManager
+                    .getTableNameForDocumentSelfLink(sd.documentSelfLink);
+            if (tableName == null) {
+                throw new IllegalArgumentException("Cannot determine SQL table name for document: "
+                        + sd.documentSelfLink);
+            }
+            documentsByTable.computeIfAbsent(tableName, k -> new ArrayList<>()).add(sd);
+        }
+
+        // Stable sort, documents with the same self link keep their relative (version) order
+        Comparator<ServiceDocument> bySelfLink = Comparator.comparing(sd -> sd.documentSelfLink);
+        List<String> tableNames = new ArrayList<>(documentsByTable.keySet());
+        Collections.sort(tableNames);
+
+        try (Connection conn = this.ds.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                for (String tableName : tableNames) {
+                    List<ServiceDocument> tableDocuments = documentsByTable.get(tableName);
+                    tableDocuments.sort(bySelfLink);
+                    saveDocuments(conn, tableName, tableDocuments);
+                }
+                conn.commit();
+                for (ServiceDocument sd : documents) {
+                    this.documentCache.invalidate(sd.documentSelfLink, sd.documentVersion);
+                }
+            } catch (SQLException | RuntimeException e) {
+                try {
+                    conn.rollback();
+                } catch (Exception ignore) {
+                    // Ignore
+                }
+                logger.severe(String.format("Failed SQL batch upsert of %d documents: %s",
+                        documents.size(), Utils.toString(e)));
+                throw e;
+            } finally {
+                try {
+                    conn.setAutoCommit(true);
+                } catch (Exception ignore) {
+                    // Ignore
+                }
+            }
+        }
+    }
+
+    private void saveDocuments(Connection conn, String tableName, List<ServiceDocument> documents)
+            throws SQLException {
+        String sql = String.format(SQL_UPSERT, tableName);
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (ServiceDocument sd : documents) {
+                stmt.setString(1, Utils.toJson(sd));
+                stmt.setString(2, sd.documentSelfLink);
+                stmt.setLong(3, sd.documentVersion);
+                stmt.setString(4, sd.documentKind);
+                stmt.setLong(5, sd.documentExpirationTimeMicros);
+                stmt.setLong(6, sd.documentUpdateTimeMicros);
+                stmt.setString(7, sd.documentTransactionId);
+                stmt.setString(8, sd.documentAuthPrincipalLink);
+                stmt.setString(9, sd.documentUpdateAction);
+                stmt.addBatch();
+            }
+
+            // Trim large buffers from staying in the indexing service thread pool
+            Utils.getBuilder();
+
+            int[] results = stmt.executeBatch();
+            for (int i = 0; i < results.length; i++) {
+                ServiceDocument sd = documents.get(i);
+                if (results[i] == 0) {
+                    logger.log(Level.WARNING, String.format(
+                            "Ignored SQL upsert: %s : ver=%s documentOwner=%s : most probably a newer version is already stored",
+                            sd.documentSelfLink, sd.documentVersion, sd.documentOwner));
+                } else if (isDetailedLoggingEnabled) {
+                    logger.info(String.format(
+                            "SQL batch upsert: %s : ver=%s documentOwner=%s documentExpirationTimeMicros=%s table=%s",
+                            sd.documentSelfLink, sd.documentVersion, sd.documentOwner,
+                            sd.documentExpirationTimeMicros, tableName));
+                }
+            }
+        }
+    }
+
     public void deleteDocument(Connection conn, String tableName, String documentSelfLink)
             throws SQLException {
         String sql = String.format("DELETE FROM %s WHERE documentselflink = ?", tableName);
         try (PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setString(1, documentSelfLink);
             int rows = stmt.executeUpdate();
+            this.documentCache.invalidateRemoved(documentSelfLink);
             if (isDetailedLoggingEnabled) {
                 logger.info(() -> String.format("SQL delete: %s from %s, rows=%d",
                         documentSelfLink, tableName, rows));
@@ -377,6 +623,77 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
         }
     }
 
+    /**
+     * Deletes up to {@code limit} documents of the given table that expired before {@code nowMicros}
+     * with a single DELETE ... RETURNING statement and passes each deleted self link to the
+     * consumer. The deleted document state is only loaded if {@code includeState} is set,
+     * otherwise the consumer gets a null state.
+     *
+     * Rows locked by a concurrent expiration are skipped.
+     *
+     * @return the number of deleted documents
+     */
+    public int deleteExpiredDocuments(TableDescription tableDescription, long nowMicros, int limit,
+            boolean includeState, BiConsumer<String, ServiceDocument> consumer)
+            throws SQLException {
+        String tableName = tableDescription.getTableName();
+        String sql = String.format("DELETE FROM %1$s WHERE documentselflink IN ("
+                        + "SELECT documentselflink FROM %1$s"
+                        + " WHERE documentexpirationtimemicros BETWEEN 1 AND ?"
+                        + " ORDER BY documentexpirationtimemicros LIMIT ? FOR UPDATE SKIP LOCKED)"
+                        + " RETURNING %2$s",
+                tableName, includeState ? "data,documentselflink" : "documentselflink");
+
+        List<String> links = new ArrayList<>();
+        List<ServiceDocument> states = new ArrayList<>();
+        try (Connection conn = this.ds.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setLong(1, nowMicros);
+            stmt.setInt(2, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                PostgresDocumentStoredFieldVisitor visitor = null;
+                while (rs.next()) {
+                    if (!includeState) {
+                        links.add(rs.getString(1));
+                        states.add(null);
+                        continue;
+                    }
+
+                    String link = rs.getString(2);
+                    ServiceDocument state = null;
+                    try {
+                        if (visitor == null) {
+                            visitor = new PostgresDocumentStoredFieldVisitor();
+                        } else {
+                            visitor.reset();
+                        }
+                        loadDoc(visitor, rs);
+                        state = getStateFromPostgresDocument(tableDescription, visitor, link);
+                    } catch (Exception e) {
+                        logger.warning(() -> String.format("Error getting state for %s: %s",
+                                link, e));
+                    }
+                    links.add(link);
+                    states.add(state);
+                }
+            }
+        } catch (SQLException e) {
+            logger.severe(String.format("Failed SQL expiration delete from %s : %s", tableName,
+                    e));
+            throw e;
+        }
+
+        for (int i = 0; i < links.size(); i++) {
+            String link = links.get(i);
+            this.documentCache.invalidateRemoved(link);
+            if (isDetailedLoggingEnabled) {
+                logger.info(() -> String.format("SQL expired: %s from %s", link, tableName));
+            }
+            consumer.accept(link, states.get(i));
+        }
+        return links.size();
+    }
+
     @SuppressWarnings("unchecked")
     public ServiceDocumentQueryResult queryDocuments(Operation op, QueryTask task)
             throws Exception {
@@ -723,6 +1040,47 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
         }
     }
 
+    /**
+     * Same as {@link #loadDoc(PostgresDocumentStoredFieldVisitor, ResultSet)} but only scans the
+     * top level fields of the document, without building a JSON tree for the whole document. The
+     * tree is still available on demand through the visitor.
+     */
+    void loadDocFields(PostgresDocumentStoredFieldVisitor visitor, ResultSet rs)
+            throws SQLException {
+        String data = rs.getString(1);
+        visitor.jsonSerializedState = data;
+
+        try (JsonReader reader = new JsonReader(new StringReader(data))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                JsonToken token = reader.peek();
+                if (token == JsonToken.STRING) {
+                    visitor.stringField(name, reader.nextString());
+                } else if (token == JsonToken.NUMBER) {
+                    visitor.longField(name, parseLong(reader.nextString()));
+                } else {
+                    reader.skipValue();
+                }
+            }
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            throw new SQLException("Invalid document content: " + e.getMessage(), e);
+        }
+
+        if (isDetailedLoggingEnabled) {
+            logger.fine(
+                    () -> String.format("Load document %s: %s", visitor.documentSelfLink, data));
+        }
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return (long) Double.parseDouble(value);
+        }
+    }
+
     ServiceDocument getStateFromPostgresDocument(TableDescription tableDescription,
             PostgresDocumentStoredFieldVisitor visitor, String link) {
         JsonObject jsonObject = visitor.getAsJsonObject();
@@ -1285,8 +1643,18 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
             String nodeSelectorPath,
             boolean populateResponse) throws Exception {
 
-        JsonObject lastDocVisited = null;
+        boolean hasDocVisited = false;
         final boolean hasCountOption = options.contains(QueryOption.COUNT);
+        final boolean expandContent = options.contains(QueryOption.EXPAND_CONTENT);
+        final boolean builtInContentOnly = options
+                .contains(QueryOption.EXPAND_BUILTIN_CONTENT_ONLY);
+        // Pass the jsonb content of the rows through, instead of deserializing every row into its
+        // service document type and serializing it back to JSON
+        final boolean passThroughContent = IS_EXPAND_CONTENT_PASS_THROUGH_ENABLED
+                && expandContent && !builtInContentOnly;
+        // The full JSON tree of a row is only needed for expanded results
+        final boolean needsJsonTree = populateResponse && !hasCountOption
+                && (expandContent || options.contains(QueryOption.EXPAND_SELECTED_FIELDS));
 
         rsp.documentLinks.clear();
 
@@ -1306,11 +1674,13 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
             }
 
             visitor.reset();
-            loadDoc(visitor, rs);
+            if (needsJsonTree) {
+                loadDoc(visitor, rs);
+            } else {
+                loadDocFields(visitor, rs);
+            }
+            hasDocVisited = true;
             final String link = visitor.documentSelfLink;
-            final String json = visitor.jsonSerializedState;
-
-            lastDocVisited = visitor.getAsJsonObject();
 
             if (hasCountOption || !populateResponse) {
                 // count unique instances of this link
@@ -1320,23 +1690,23 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
 
             ServiceDocument state = null;
 
-            if (options.contains(QueryOption.EXPAND_CONTENT)
+            if (!passThroughContent && (expandContent
                     || options.contains(QueryOption.OWNER_SELECTION)
-                    || options.contains(QueryOption.EXPAND_SELECTED_FIELDS)) {
+                    || options.contains(QueryOption.EXPAND_SELECTED_FIELDS))) {
                 state = getStateFromPostgresDocument(null, visitor, link);
             }
 
             if (options.contains(QueryOption.OWNER_SELECTION)) {
-                if (!processQueryResultsForOwnerSelection(json, state, nodeSelectorPath)) {
+                if (!processQueryResultsForOwnerSelection(link, nodeSelectorPath)) {
                     continue;
                 }
             }
 
             rsp.documentLinks.add(link);
 
-            if (options.contains(QueryOption.EXPAND_CONTENT)) {
+            if (expandContent) {
                 Object o;
-                if (options.contains(QueryOption.EXPAND_BUILTIN_CONTENT_ONLY)) {
+                if (builtInContentOnly) {
                     if (state == null) {
                         o = visitor.getServiceDocumentBuiltInContentOnly();
                     } else {
@@ -1345,6 +1715,8 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
                         o = stateClone;
                     }
                 } else if (state == null) {
+                    // Either pass through or unknown document kind, return the JSON tree the row
+                    // was parsed into, it is added to the response as is
                     o = visitor.getAsJsonObject();
                 } else {
                     // More efficient to return same JSON object given to visitor, but there can be
@@ -1382,7 +1754,8 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
         if (isDetailedLoggingEnabled) {
             logger.info(() -> String.format("Processed %s documents", rsp.documentCount));
         }
-        return lastDocVisited;
+        // The last row is only needed to build the pagination clause of the next page
+        return hasDocVisited ? visitor.getAsJsonObject() : null;
     }
 
     private JsonObject toJsonObject(ServiceDocument state) {
@@ -1452,14 +1825,8 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
         return state;
     }
 
-    private boolean processQueryResultsForOwnerSelection(String json, ServiceDocument state,
+    private boolean processQueryResultsForOwnerSelection(String documentSelfLink,
             String nodeSelectorPath) {
-        String documentSelfLink;
-        if (state == null) {
-            documentSelfLink = Utils.fromJson(json, ServiceDocument.class).documentSelfLink;
-        } else {
-            documentSelfLink = state.documentSelfLink;
-        }
         // when node-selector is not specified via query, use the one for index-service which may be
         // null
         if (nodeSelectorPath == null) {
@@ -1649,6 +2016,50 @@ final class PostgresServiceDocumentDao implements PostgresServiceDocumentDaoMXBe
         this.isDetailedLoggingEnabled = enabled;
     }
 
+    public int getDocumentCacheSize() {
+        return this.documentCache.size();
+    }
+
+    public long getDocumentCacheSizeBytes() {
+        return this.documentCache.getSizeBytes();
+    }
+
+    public long getDocumentCacheHitCount() {
+        return this.documentCache.getHitCount();
+    }
+
+    public long getDocumentCacheMissCount() {
+        return this.documentCache.getMissCount();
+    }
+
+    public long getDocumentCacheEvictionCount() {
+        return this.documentCache.getEvictionCount();
+    }
+
+    public void clearDocumentCache() {
+        this.documentCache.clear();
+    }
+
+    public int getCompiledQueryCacheSize() {
+        return PostgresQueryConverter.getCompiledQueryCache().size();
+    }
+
+    public long getCompiledQueryCacheHitCount() {
+        return PostgresQueryConverter.getCompiledQueryCache().getHitCount();
+    }
+
+    public long getCompiledQueryCacheMissCount() {
+        return PostgresQueryConverter.getCompiledQueryCache().getMissCount();
+    }
+
+    public long getCompiledQueryCacheBypassCount() {
+        return PostgresQueryConverter.getCompiledQueryCache().getBypassCount();
+    }
+
+    public void clearCompiledQueryCache() {
+        PostgresQueryConverter.getCompiledQueryCache().clear();
+    }
+
     public long getLogSlowQueryThresholdSeconds() {
         return TimeUnit.MICROSECONDS.toSeconds(this.logSlowQueryThresholdMicros);
     }
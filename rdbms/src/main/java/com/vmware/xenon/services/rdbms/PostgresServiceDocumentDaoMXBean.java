@@ -19,4 +19,26 @@ public interface PostgresServiceDocumentDaoMXBean {
     long getLogSlowQueryThresholdSeconds();
 
     void setLogSlowQueryThresholdSeconds(long seconds);
+
+    int getDocumentCacheSize();
+
+    long getDocumentCacheSizeBytes();
+
+    long getDocumentCacheHitCount();
+
+    long getDocumentCacheMissCount();
+
+    long getDocumentCacheEvictionCount();
+
+    void clearDocumentCache();
+
+    int getCompiledQueryCacheSize();
+
+    long getCompiledQueryCacheHitCount();
+
+    long getCompiledQueryCacheMissCount();
+
+    long getCompiledQueryCacheBypassCount();
+
+    void clearCompiledQueryCache();
 }
@@ -0,0 +1,8 @@
+-- template for creating a partial index of the expiring documents of a document table, used by
+-- the bulk document expiration
+-- required variables:
+--   $tableName - the name of the document table
+
+CREATE INDEX IF NOT EXISTS $tableName_idx_expiring
+    ON $tableName USING btree (documentexpirationtimemicros)
+    WHERE documentexpirationtimemicros > 0
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.xenon.services.rdbms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.xenon.common.FactoryService;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.rdbms.test.PostgresBasicReusableHostTestCase;
+import com.vmware.xenon.rdbms.test.TestService;
+import com.vmware.xenon.rdbms.test.TestService.TestState;
+import com.vmware.xenon.rdbms.test.TestUtils;
+import com.vmware.xenon.services.common.ServiceUriPaths;
+import com.vmware.xenon.services.rdbms.PostgresSchemaManager.TableDescription;
+
+/**
+ * Runs against Postgres, see {@link com.vmware.xenon.rdbms.test.PostgresVerificationHost}.
+ */
+public class PostgresBulkExpirationTest extends PostgresBasicReusableHostTestCase {
+    private static final int DOCUMENT_COUNT = 10;
+
+    private PostgresDocumentIndexService indexService;
+    private TableDescription tableDescription;
+    private long expirationMicros;
+
+    @Before
+    public void setUp() throws Throwable {
+        if (this.host.getServiceStage(TestService.FACTORY_LINK) == null) {
+            this.host.startServiceAndWait(FactoryService.create(TestService.class),
+                    TestService.FACTORY_LINK, null);
+        }
+        this.indexService = (PostgresDocumentIndexService) TestUtils.findService(this.host,
+                ServiceUriPaths.CORE_DOCUMENT_INDEX);
+        this.tableDescription = this.indexService.getDao().getPostgresSchemaManager()
+                .getTableDescriptionForFactoryLink(TestService.FACTORY_LINK);
+        assertNotNull(this.tableDescription);
+
+        // far enough in the future for the maintenance of the index not to expire them
+        this.expirationMicros = Utils.fromNowMicrosUtc(TimeUnit.HOURS.toMicros(1));
+        expireAll();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        expireAll();
+    }
+
+    @Test
+    public void testBatchLimits() throws Throwable {
+        createDocuments(DOCUMENT_COUNT);
+        long now = this.expirationMicros + 1;
+
+        // the limit is kept across batches
+        assertEquals(5, expire(now, farDeadline(), 5, 2));
+        // more batches than needed, the last one is partial
+        assertEquals(DOCUMENT_COUNT - 5, expire(now, farDeadline(), DOCUMENT_COUNT, 3));
+        assertEquals(0, expire(now, farDeadline(), DOCUMENT_COUNT, 3));
+    }
+
+    @Test
+    public void testNotExpiredDocumentsAreKept() throws Throwable {
+        createDocuments(DOCUMENT_COUNT);
+        assertEquals(0, expire(this.expirationMicros - 1, farDeadline(), DOCUMENT_COUNT, 3));
+        assertEquals(DOCUMENT_COUNT,
+                expire(this.expirationMicros, farDeadline(), DOCUMENT_COUNT, 3));
+    }
+
+    @Test
+    public void testDeadline() throws Throwable {
+        List<String> links = createDocuments(DOCUMENT_COUNT);
+        long now = this.expirationMicros + 1;
+
+        // nothing is expired past the deadline
+        assertEquals(0, expire(now, Utils.getSystemNowMicrosUtc() - 1, DOCUMENT_COUNT, 3));
+        for (String link : links) {
+            assertNotNull(this.host.getServiceStage(link));
+        }
+        assertEquals(DOCUMENT_COUNT, expire(now, farDeadline(), DOCUMENT_COUNT, 3));
+    }
+
+    @Test
+    public void testRunningServicesAreStoppedWithoutState() throws Throwable {
+        List<String> links = createDocuments(DOCUMENT_COUNT);
+        for (String link : links) {
+            assertNotNull(this.host.getServiceStage(link));
+        }
+
+        // no continuous queries are active, so the rows are deleted without their data
+        assertEquals(DOCUMENT_COUNT,
+                expire(this.expirationMicros + 1, farDeadline(), DOCUMENT_COUNT, 3));
+
+        this.host.waitFor("Expired services were not stopped", () -> {
+            for (String link : links) {
+                if (this.host.getServiceStage(link) != null) {
+                    return false;
+                }
+            }
+            return true;
+        });
+    }
+
+    private List<String> createDocuments(int count) {
+        List<String> links = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            TestState state = new TestState();
+            state.firstName = "expiring-" + i;
+            state.documentExpirationTimeMicros = this.expirationMicros;
+            TestState created = this.sender.sendAndWait(
+                    Operation.createPost(this.host, TestService.FACTORY_LINK).setBody(state),
+                    TestState.class);
+            links.add(created.documentSelfLink);
+        }
+        return links;
+    }
+
+    private int expire(long now, long deadline, int limit, int batchSize) throws Exception {
+        return this.indexService.expireDocumentsInBulk(this.tableDescription, now, deadline,
+                limit, batchSize);
+    }
+
+    private void expireAll() throws Exception {
+        expire(Long.MAX_VALUE, farDeadline(), Integer.MAX_VALUE,
+                PostgresDocumentIndexService.EXPIRATION_BATCH_SIZE);
+    }
+
+    private static long farDeadline() {
+        return Utils.fromNowMicrosUtc(TimeUnit.MINUTES.toMicros(1));
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.xenon.services.rdbms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.vmware.xenon.common.ServiceDocument;
+
+public class PostgresDocumentCacheTest {
+    private static final String LINK = "/documents/a";
+
+    @Test
+    public void testPutAndGet() {
+        PostgresDocumentCache cache = new PostgresDocumentCache(10, 1000);
+        long load = cache.startLoad();
+        ServiceDocument document = document(LINK, 1);
+        cache.put(LINK, document, 10, load);
+        cache.endLoad(load);
+
+        ServiceDocument cached = cache.get(LINK, 0);
+        assertNotNull(cached);
+        assertNotSame(document, cached);
+        assertEquals(1, cached.documentVersion);
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testStaleLoadIsNotCached() {
+        PostgresDocumentCache cache = new PostgresDocumentCache(10, 1000);
+        long staleLoad = cache.startLoad();
+        // written while the load reads the previous version
+        cache.invalidate(LINK, 2);
+        cache.put(LINK, document(LINK, 1), 10, staleLoad);
+        assertNull(cache.get(LINK, 0));
+
+        // a load started after the write is cached
+        long load = cache.startLoad();
+        cache.put(LINK, document(LINK, 2), 10, load);
+        assertEquals(2, cache.get(LINK, 0).documentVersion);
+
+        cache.endLoad(staleLoad);
+        cache.endLoad(load);
+        assertEquals(0, cache.getMarkerCount());
+    }
+
+    @Test
+    public void testStaleLoadAfterDeleteIsNotCached() {
+        PostgresDocumentCache cache = new PostgresDocumentCache(10, 1000);
+        long load = cache.startLoad();
+        cache.put(LINK, document(LINK, 1), 10, load);
+        cache.endLoad(load);
+
+        long staleLoad = cache.startLoad();
+        cache.invalidateRemoved(LINK);
+        assertNull(cache.get(LINK, 0));
+        cache.put(LINK, document(LINK, 5), 10, staleLoad);
+        assertNull(cache.get(LINK, 0));
+        cache.endLoad(staleLoad);
+    }
+
+    @Test
+    public void testMarkersAreNotEvicted() {
+        PostgresDocumentCache cache = new PostgresDocumentCache(2, 1000);
+        long staleLoad = cache.startLoad();
+        cache.invalidate(LINK, 2);
+
+        // fill the cache over its bounds while the stale load is in flight
+        for (int i = 0; i < 5; i++) {
+            long load = cache.startLoad();
+            cache.put("/documents/other-" + i, document("/documents/other-" + i, 1), 10, load);
+            cache.endLoad(load);
+        }
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getMarkerCount());
+
+        cache.put(LINK, document(LINK, 1), 10, staleLoad);
+        assertNull(cache.get(LINK, 0));
+
+        // the marker is dropped once no load started before it is in flight
+        cache.endLoad(staleLoad);
+        assertEquals(0, cache.getMarkerCount());
+    }
+
+    @Test
+    public void testNoMarkerWithoutLoadsInFlight() {
+        PostgresDocumentCache cache = new PostgresDocumentCache(10, 1000);
+        cache.invalidate(LINK, 1);
+        cache.invalidateRemoved("/documents/b");
+        assertEquals(0, cache.getMarkerCount());
+    }
+
+    @Test
+    public void testByteBound() {
+        PostgresDocumentCache cache = new PostgresDocumentCache(10, 100);
+        long load = cache.startLoad();
+        cache.put("/documents/1", document("/documents/1", 1), 40, load);
+        cache.put("/documents/2", document("/documents/2", 1), 40, load);
+        assertEquals(80, cache.getSizeBytes());
+
+        // the least recently used document is evicted
+        cache.get("/documents/1", 0);
+        cache.put("/documents/3", document("/documents/3", 1), 40, load);
+        assertEquals(80, cache.getSizeBytes());
+        assertNotNull(cache.get("/documents/1", 0));
+        assertNull(cache.get("/documents/2", 0));
+        assertEquals(1, cache.getEvictionCount());
+
+        // a document larger than the bound is not cached
+        cache.put("/documents/4", document("/documents/4", 1), 101, load);
+        assertNull(cache.get("/documents/4", 0));
+        assertEquals(80, cache.getSizeBytes());
+
+        cache.remove("/documents/1");
+        assertEquals(40, cache.getSizeBytes());
+        cache.endLoad(load);
+    }
+
+    @Test
+    public void testExpiredDocumentIsDropped() {
+        PostgresDocumentCache cache = new PostgresDocumentCache(10, 1000);
+        long load = cache.startLoad();
+        ServiceDocument document = document(LINK, 1);
+        document.documentExpirationTimeMicros = 100;
+        cache.put(LINK, document, 10, load);
+        cache.endLoad(load);
+
+        assertNotNull(cache.get(LINK, 99));
+        assertNull(cache.get(LINK, 100));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getSizeBytes());
+    }
+
+    @Test
+    public void testClearDropsLoadsInFlight() {
+        PostgresDocumentCache cache = new PostgresDocumentCache(10, 1000);
+        long staleLoad = cache.startLoad();
+        cache.clear();
+        cache.put(LINK, document(LINK, 1), 10, staleLoad);
+        assertNull(cache.get(LINK, 0));
+        cache.endLoad(staleLoad);
+    }
+
+    @Test
+    public void testIsCurrent() {
+        ServiceDocument cached = document(LINK, 3);
+        cached.documentUpdateTimeMicros = 1000;
+        assertTrue(PostgresDocumentCache.isCurrent(cached, 3, 1000));
+        // written by another node
+        assertFalse(PostgresDocumentCache.isCurrent(cached, 4, 2000));
+        // forced update to the same version
+        assertFalse(PostgresDocumentCache.isCurrent(cached, 3, 2000));
+    }
+
+    private static ServiceDocument document(String selfLink, long version) {
+        ServiceDocument document = new ServiceDocument();
+        document.documentSelfLink = selfLink;
+        document.documentVersion = version;
+        return document;
+    }
+}
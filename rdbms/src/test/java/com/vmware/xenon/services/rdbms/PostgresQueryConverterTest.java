@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.xenon.services.rdbms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.test.VerificationHost;
+import com.vmware.xenon.rdbms.test.TestService;
+import com.vmware.xenon.services.common.QueryTask.Query;
+import com.vmware.xenon.services.common.QueryTask.Query.Occurance;
+import com.vmware.xenon.services.common.QueryTask.QuerySpecification;
+import com.vmware.xenon.services.common.QueryTask.QuerySpecification.QueryOption;
+import com.vmware.xenon.services.common.QueryTask.QueryTerm;
+import com.vmware.xenon.services.common.QueryTask.QueryTerm.MatchType;
+import com.vmware.xenon.services.rdbms.PostgresSchemaManager.TableDescription;
+
+public class PostgresQueryConverterTest {
+    private static final PostgresCompiledQueryCache NO_CACHE = new PostgresCompiledQueryCache(0);
+
+    private TableDescription td;
+    private PostgresCompiledQueryCache cache;
+
+    @Before
+    public void setUp() {
+        PostgresSchemaManager schemaManager = new PostgresSchemaManager(VerificationHost.create());
+        schemaManager.addFactory(TestService.class);
+        this.td = schemaManager.getTableDescriptionForFactoryLink(TestService.FACTORY_LINK);
+        this.cache = new PostgresCompiledQueryCache(16);
+    }
+
+    @Test
+    public void testSameShape() {
+        for (int i = 0; i < 3; i++) {
+            assertConvert(query("first-" + i, "Last-" + i, TestService.FACTORY_LINK + "/" + i),
+                    null);
+        }
+        assertEquals(1, this.cache.size());
+        assertEquals(2, this.cache.getHitCount());
+    }
+
+    @Test
+    public void testSameShapeDifferentOptions() {
+        QuerySpecification expanded = new QuerySpecification();
+        expanded.options = EnumSet.of(QueryOption.EXPAND_CONTENT);
+        expanded.query = query("first", "last", TestService.FACTORY_LINK + "/a");
+        assertConvert(expanded.query, expanded.context);
+
+        // the defaults are not set in the query, the conversion sets them on a cache hit too
+        QuerySpecification counted = new QuerySpecification();
+        counted.options = EnumSet.of(QueryOption.COUNT, QueryOption.INCLUDE_ALL_VERSIONS);
+        counted.query = query("other", "Other", TestService.FACTORY_LINK + "/b");
+        for (Query clause : counted.query.booleanClauses) {
+            clause.occurance = null;
+            clause.term.matchType = null;
+        }
+        String sql = PostgresQueryConverter.convert(counted.query, counted.context, this.td,
+                this.cache);
+        assertEquals(1, this.cache.getHitCount());
+        for (Query clause : counted.query.booleanClauses) {
+            assertEquals(Occurance.MUST_OCCUR, clause.occurance);
+            assertEquals(MatchType.TERM, clause.term.matchType);
+        }
+        assertEquals(PostgresQueryConverter.convert(
+                query("other", "Other", TestService.FACTORY_LINK + "/b"), counted.context,
+                this.td, NO_CACHE), sql);
+
+        // without a runtime context the shape is compiled again
+        assertConvert(query("first", "last", TestService.FACTORY_LINK + "/a"), null);
+        assertEquals(2, this.cache.size());
+    }
+
+    @Test
+    public void testInvalidQueryOfCachedShape() {
+        QuerySpecification spec = new QuerySpecification();
+        spec.query = query("first", "last", TestService.FACTORY_LINK + "/a");
+        assertConvert(spec.query, spec.context);
+
+        Query invalid = query("first", "last", TestService.FACTORY_LINK + "/a");
+        invalid.booleanClauses.get(0).booleanClauses = new ArrayList<>();
+        try {
+            PostgresQueryConverter.convert(invalid, spec.context, this.td, this.cache);
+            fail("term and booleanClauses are mutually exclusive");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(0, this.cache.getHitCount());
+    }
+
+    private void assertConvert(Query query, QuerySpecification.QueryRuntimeContext context) {
+        String expected = PostgresQueryConverter.convert(copy(query), context, this.td, NO_CACHE);
+        assertEquals(expected,
+                PostgresQueryConverter.convert(query, context, this.td, this.cache));
+    }
+
+    private static Query query(String firstName, String lastName, String selfLink) {
+        Query query = new Query();
+        query.booleanClauses = new ArrayList<>();
+        query.booleanClauses.add(term("firstName", firstName));
+        query.booleanClauses.add(term("lastName", lastName));
+        query.booleanClauses.add(term(ServiceDocument.FIELD_NAME_SELF_LINK, selfLink));
+        return query;
+    }
+
+    private static Query term(String propertyName, String matchValue) {
+        Query query = new Query();
+        query.occurance = Occurance.MUST_OCCUR;
+        query.term = new QueryTerm();
+        query.term.propertyName = propertyName;
+        query.term.matchValue = matchValue;
+        query.term.matchType = MatchType.TERM;
+        return query;
+    }
+
+    private static Query copy(Query query) {
+        Query copy = new Query();
+        copy.occurance = query.occurance;
+        if (query.booleanClauses != null) {
+            copy.booleanClauses = new ArrayList<>();
+            for (Query clause : query.booleanClauses) {
+                copy.booleanClauses.add(copy(clause));
+            }
+        }
+        if (query.term != null) {
+            copy.term = new QueryTerm();
+            copy.term.propertyName = query.term.propertyName;
+            copy.term.matchValue = query.term.matchValue;
+            copy.term.matchType = query.term.matchType;
+        }
+        return copy;
+    }
+}
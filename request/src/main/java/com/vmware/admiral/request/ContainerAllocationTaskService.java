@@ -130,6 +130,9 @@ public class ContainerAllocationTaskService extends
             static final Set<SubStage> SUBSCRIPTION_SUB_STAGES = new HashSet<>(
                     Arrays.asList(BUILD_RESOURCES_LINKS, START_PROVISIONING, COMPLETED));
 
+            static final Set<SubStage> CHECKPOINT_SUB_STAGES = new HashSet<>(
+                    Arrays.asList(HOST_ALLOCATED, PROVISIONING));
+
         }
 
         /**
@@ -209,6 +212,7 @@ public class ContainerAllocationTaskService extends
         super.toggleOption(ServiceOption.OWNER_SELECTION, true);
         super.transientSubStages = SubStage.TRANSIENT_SUB_STAGES;
         super.subscriptionSubStages = EnumSet.copyOf(SubStage.SUBSCRIPTION_SUB_STAGES);
+        super.checkpointSubStages = SubStage.CHECKPOINT_SUB_STAGES;
     }
 
     @Override
@@ -19,7 +19,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CancellationException;
 import java.util.function.Consumer;
@@ -147,6 +149,11 @@ public class ContainerPortsAllocationTaskService
             return;
         }
 
+        // group the requests by profile, so that the ports of all containers on a host are
+        // allocated with a single PATCH
+        Map<HostPortProfileService.HostPortProfileState,
+                List<HostPortProfileService.HostPortProfileReservationRequest>> requestsByProfile =
+                        new LinkedHashMap<>();
         for (ContainerService.ContainerState containerState : containerStates) {
             HostPortProfileService.HostPortProfileState profile = hostPortProfileStates
                     .stream()
@@ -164,26 +171,36 @@ public class ContainerPortsAllocationTaskService
                 completeSubTasksCounter(taskCallback, null);
                 continue;
             }
+            requestsByProfile.computeIfAbsent(profile, p -> new ArrayList<>())
+                    .add(hostPortProfileRequest);
+        }
+
+        requestsByProfile.forEach((profile, requests) -> {
+            HostPortProfileService.HostPortProfileReservationRequest batchRequest =
+                    new HostPortProfileService.HostPortProfileReservationRequest();
+            batchRequest.containerRequests = requests;
 
             // allocate ports
             sendRequest(Operation
                     .createPatch(getHost(), profile.documentSelfLink)
-                    .setBody(hostPortProfileRequest)
+                    .setBody(batchRequest)
                     .setCompletion(
                             (op, ex) -> {
                                 if (ex != null) {
-                                    completeSubTasksCounter(taskCallback, ex);
+                                    requests.forEach(
+                                            r -> completeSubTasksCounter(taskCallback, ex));
                                     return;
                                 }
                                 // update cached host port profile state
                                 HostPortProfileService.HostPortProfileState result =
                                         op.getBody(
                                                 HostPortProfileService.HostPortProfileState.class);
-                                profile.reservedPorts.putAll(result.reservedPorts);
-                                completeSubTasksCounter(taskCallback, null);
+                                profile.allocatedPortRanges = result.allocatedPortRanges;
+                                profile.reservedPorts = result.reservedPorts;
+                                requests.forEach(r -> completeSubTasksCounter(taskCallback, null));
                             }));
             proceedTo(ContainerPortsAllocationTaskState.SubStage.ALLOCATING_PORTS);
-        }
+        });
     }
 
     private HostPortProfileService.HostPortProfileReservationRequest createHostPortProfileRequest(
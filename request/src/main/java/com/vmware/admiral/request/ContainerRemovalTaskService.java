@@ -40,6 +40,7 @@ import com.vmware.admiral.common.util.ServiceDocumentQuery;
 import com.vmware.admiral.common.util.ServiceUtils;
 import com.vmware.admiral.compute.container.ContainerHostDataCollectionService;
 import com.vmware.admiral.compute.container.ContainerHostDataCollectionService.ContainerHostDataCollectionState;
+import com.vmware.admiral.compute.container.ContainerLogService;
 import com.vmware.admiral.compute.container.ContainerService.ContainerState;
 import com.vmware.admiral.compute.container.HostPortProfileService;
 import com.vmware.admiral.request.ContainerRemovalTaskService.ContainerRemovalTaskState.SubStage;
@@ -479,6 +480,11 @@ public class ContainerRemovalTaskService
                         // https://www.pivotaltracker.com/n/projects/1471320/stories/143794415
                         sendRequest(Operation.createDelete(this, UriUtils.buildUriPath(
                                 LogService.FACTORY_LINK, Service.getId(cs.documentSelfLink))));
+                        // the stored logs are dropped on the node owning the container link
+                        sendRequest(Operation.createDelete(UriUtils.buildUri(getHost(),
+                                ContainerLogService.SELF_LINK, UriUtils.buildUriQuery(
+                                        ContainerLogService.CONTAINER_ID_QUERY_PARAM,
+                                        Service.getId(cs.documentSelfLink)))));
                         if (state.resourceLinks.containsAll(resourcesSharingDesc)
                                 && (state.customProperties != null && !state.customProperties
                                         .containsKey(CONTAINER_REDEPLOYMENT_CUSTOM_PROP))) {
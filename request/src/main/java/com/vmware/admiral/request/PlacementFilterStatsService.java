@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2020 VMware, Inc. All Rights Reserved.
+ *
+ * This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ * You may not use this product except in compliance with the License.
+ *
+ * This product may include a number of subcomponents with separate copyright notices
+ * and license terms. Your use of these subcomponents is subject to the terms and
+ * conditions of the subcomponent's license, as noted in the LICENSE file.
+ */
+
+package com.vmware.admiral.request;
+
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+import com.vmware.admiral.common.ManagementUriParts;
+import com.vmware.admiral.common.util.AssertUtil;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceStats.ServiceStat;
+import com.vmware.xenon.common.ServiceStats.TimeSeriesStats;
+import com.vmware.xenon.common.ServiceStats.TimeSeriesStats.AggregationType;
+import com.vmware.xenon.common.StatelessService;
+
+/**
+ * Keeps the time spent in every host selection filter by the placement tasks of this node, as the
+ * {@code <Filter>DurationMicros} stats with the average and maximum duration per minute of the
+ * last hour. The placement tasks are short-lived, so their own stats would be gone with them.
+ */
+public class PlacementFilterStatsService extends StatelessService {
+    public static final String SELF_LINK = ManagementUriParts.REQUEST_PLACEMENT_FILTER_STATS;
+
+    public static final String FILTER_DURATION_STAT_SUFFIX = "DurationMicros";
+
+    private static final int STATS_BIN_COUNT = 60;
+    private static final long STATS_BIN_DURATION_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    public static class FilterDuration {
+        public String filterName;
+        public long durationMicros;
+    }
+
+    public PlacementFilterStatsService() {
+        super.toggleOption(ServiceOption.INSTRUMENTATION, true);
+    }
+
+    @Override
+    public void handlePatch(Operation patch) {
+        FilterDuration body = patch.getBody(FilterDuration.class);
+        AssertUtil.assertNotEmpty(body.filterName, "filterName");
+
+        ServiceStat stat = getStat(body.filterName + FILTER_DURATION_STAT_SUFFIX);
+        synchronized (stat) {
+            if (stat.timeSeriesStats == null) {
+                stat.timeSeriesStats = new TimeSeriesStats(STATS_BIN_COUNT,
+                        STATS_BIN_DURATION_MILLIS,
+                        EnumSet.of(AggregationType.AVG, AggregationType.MAX));
+            }
+        }
+        setStat(stat, body.durationMicros);
+        patch.complete();
+    }
+}
@@ -20,9 +20,11 @@ import static com.vmware.xenon.common.ServiceDocumentDescription.PropertyUsageOp
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Queue;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
@@ -44,10 +46,12 @@ import com.vmware.admiral.compute.container.CompositeComponentRegistry;
 import com.vmware.admiral.compute.container.CompositeComponentRegistry.ComponentMeta;
 import com.vmware.admiral.compute.container.CompositeDescriptionFactoryService;
 import com.vmware.admiral.compute.container.CompositeDescriptionService.CompositeDescription;
+import com.vmware.admiral.request.PlacementFilterStatsService.FilterDuration;
 import com.vmware.admiral.request.PlacementHostSelectionTaskService.PlacementHostSelectionTaskState.SubStage;
 import com.vmware.admiral.request.allocation.filter.AffinityFilters;
 import com.vmware.admiral.request.allocation.filter.HostSelectionFilter;
 import com.vmware.admiral.request.allocation.filter.HostSelectionFilter.HostSelection;
+import com.vmware.admiral.request.allocation.filter.HostSelectionFilter.HostSelectionFilterCompletion;
 import com.vmware.admiral.request.allocation.filter.HostSelectionFilter.HostSelectionFilterException;
 import com.vmware.admiral.service.common.AbstractTaskStatefulService;
 import com.vmware.admiral.service.common.ServiceTaskCallback.ServiceTaskCallbackResponse;
@@ -56,9 +60,11 @@ import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
 import com.vmware.photon.controller.model.resources.ComputeService.PowerState;
 import com.vmware.photon.controller.model.tasks.helpers.ResourcePoolQueryHelper;
 import com.vmware.photon.controller.model.tasks.helpers.ResourcePoolQueryHelper.QueryResult;
+import com.vmware.xenon.common.DeferredResult;
 import com.vmware.xenon.common.LocalizableValidationException;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.Utils;
 import com.vmware.xenon.services.common.QueryTask;
 import com.vmware.xenon.services.common.QueryTask.QuerySpecification;
 
@@ -305,7 +311,10 @@ public class PlacementHostSelectionTaskService
         try {
             final AffinityFilters filters = AffinityFilters.build(getHost(),
                     description.getServiceDocument());
-            filter(state, filteredByMemory, filters.getQueue());
+            Queue<HostSelectionFilter> queue = filters.getQueue();
+            Map<HostSelectionFilter, DeferredResult<Map<String, HostSelection>>> prefiltered =
+                    prefilter(state, filteredByMemory, queue);
+            filter(state, filteredByMemory, queue, prefiltered);
         } catch (Exception e) {
             failTask(null, e);
         }
@@ -373,32 +382,124 @@ public class PlacementHostSelectionTaskService
 
     }
 
+    /**
+     * Starts all active host independent filters at once on a snapshot of the candidate hosts, so
+     * that their queries don't wait for the filters ahead of them in the queue.
+     */
     @SuppressWarnings({ "rawtypes", "unchecked" })
-    private void filter(final PlacementHostSelectionTaskState state,
+    private Map<HostSelectionFilter, DeferredResult<Map<String, HostSelection>>> prefilter(
+            final PlacementHostSelectionTaskState state,
             final Map<String, HostSelection> hostSelectionMap,
             final Queue<HostSelectionFilter> filters) {
+        Map<HostSelectionFilter, DeferredResult<Map<String, HostSelection>>> prefiltered =
+                new HashMap<>();
+        if (isNoSelection(hostSelectionMap)) {
+            return prefiltered;
+        }
+
+        for (HostSelectionFilter filter : filters) {
+            if (!filter.isActive() || !filter.isHostIndependent()) {
+                continue;
+            }
+            DeferredResult<Map<String, HostSelection>> result = new DeferredResult<>();
+            prefiltered.put(filter, result);
+            try {
+                runFilter(state, filter, new LinkedHashMap<>(hostSelectionMap),
+                        (filteredHostSelectionMap, e) -> {
+                            if (e != null) {
+                                result.fail(e);
+                            } else {
+                                result.complete(filteredHostSelectionMap);
+                            }
+                        });
+            } catch (Throwable e) {
+                result.fail(e);
+            }
+        }
+        return prefiltered;
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private void filter(final PlacementHostSelectionTaskState state,
+            final Map<String, HostSelection> hostSelectionMap,
+            final Queue<HostSelectionFilter> filters,
+            final Map<HostSelectionFilter, DeferredResult<Map<String, HostSelection>>> prefiltered) {
         if (isNoSelection(hostSelectionMap)) {
             failTask(null, new LocalizableValidationException("No suitable host available",
                     "request.placement.compute.missing"));
             return;
-        } else {
-            final HostSelectionFilter filter = filters.poll();
-            if (filter == null) {
-                complete(state, hostSelectionMap);
-            } else {
-                filter.filter(state, hostSelectionMap, (filteredHostSelectionMap, e) -> {
-                    if (e != null) {
-                        if (e instanceof HostSelectionFilterException) {
-                            failTask("Allocation Filter Error: " + e.getMessage(), null);
-                        } else {
-                            failTask("Allocation Filter Exception", e);
-                        }
-                        return;
-                    }
-                    filter(state, filteredHostSelectionMap, filters);
-                });
+        }
+
+        final HostSelectionFilter filter = filters.poll();
+        if (filter == null) {
+            complete(state, hostSelectionMap);
+            return;
+        }
+
+        HostSelectionFilterCompletion callback = (filteredHostSelectionMap, e) -> {
+            if (e != null) {
+                if (e instanceof HostSelectionFilterException) {
+                    failTask("Allocation Filter Error: " + e.getMessage(), null);
+                } else {
+                    failTask("Allocation Filter Exception", e);
+                }
+                return;
             }
+            filter(state, filteredHostSelectionMap, filters, prefiltered);
+        };
+
+        DeferredResult<Map<String, HostSelection>> prefilteredResult = prefiltered.get(filter);
+        if (prefilteredResult == null) {
+            runFilter(state, filter, hostSelectionMap, callback);
+            return;
         }
+
+        prefilteredResult.whenComplete((prefilteredHostSelectionMap, e) -> {
+            if (e == null) {
+                Map<String, HostSelection> filteredHostSelectionMap = hostSelectionMap.entrySet()
+                        .stream()
+                        .filter(entry -> prefilteredHostSelectionMap.containsKey(entry.getKey()))
+                        .collect(Collectors.toMap(Entry::getKey, Entry::getValue,
+                                (v1, v2) -> v1, LinkedHashMap::new));
+                if (!filteredHostSelectionMap.isEmpty()) {
+                    callback.complete(filteredHostSelectionMap, null);
+                    return;
+                }
+            }
+            // let the filter itself fail the way it would have on the remaining hosts
+            runFilter(state, filter, hostSelectionMap, callback);
+        });
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private void runFilter(final PlacementHostSelectionTaskState state,
+            final HostSelectionFilter filter,
+            final Map<String, HostSelection> hostSelectionMap,
+            final HostSelectionFilterCompletion callback) {
+        long startTime = Utils.getSystemNowMicrosUtc();
+        filter.filter(state, hostSelectionMap, (filteredHostSelectionMap, e) -> {
+            publishFilterDuration(filter, Utils.getSystemNowMicrosUtc() - startTime);
+            callback.complete(filteredHostSelectionMap, e);
+        });
+    }
+
+    /**
+     * Sends the time spent in the given filter to the {@link PlacementFilterStatsService} of this
+     * node, to see which affinity rules dominate the placement.
+     */
+    @SuppressWarnings("rawtypes")
+    private void publishFilterDuration(HostSelectionFilter filter, long durationMicros) {
+        FilterDuration body = new FilterDuration();
+        body.filterName = filter.getClass().getSimpleName();
+        body.durationMicros = durationMicros;
+        sendRequest(Operation.createPatch(this, PlacementFilterStatsService.SELF_LINK)
+                .setBodyNoCloning(body)
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        logFine("Failed to publish the duration of %s: %s", body.filterName,
+                                Utils.toString(e));
+                    }
+                }));
     }
 
     private void complete(final PlacementHostSelectionTaskState state,
@@ -100,6 +100,7 @@ import com.vmware.admiral.request.pks.PKSClusterResizeTaskService;
 import com.vmware.admiral.request.pks.PKSClusterResizeTaskService.PKSClusterResizeTaskState;
 import com.vmware.admiral.request.utils.RequestUtils;
 import com.vmware.admiral.service.common.AbstractTaskStatefulService;
+import com.vmware.admiral.service.common.RequestTrackerUpdateAggregator;
 import com.vmware.admiral.service.common.ServiceTaskCallback;
 import com.vmware.admiral.service.common.ServiceTaskCallback.ServiceTaskCallbackResponse;
 import com.vmware.admiral.service.common.TaskServiceDocument;
@@ -372,13 +373,14 @@ public class RequestBrokerService extends
         requestStatus.name = name;
         requestStatus.documentSelfLink = state.requestTrackerLink;
         requestStatus.taskInfo = new TaskState();
-        Operation.createPatch(getHost(), state.requestTrackerLink)
-                .setBodyNoCloning(requestStatus)
-                .setCompletion((o, e) -> {
+        // sent with the task updates, to not overtake the name of a parent composition
+        RequestTrackerUpdateAggregator.getInstance(getHost())
+                .update(this, state.requestTrackerLink, requestStatus)
+                .whenComplete((o, e) -> {
                     if (e != null) {
                         logFine("Couldn't set name to the request status because of: %s", e.getMessage());
                     }
-                }).sendWith(this);
+                });
 
     }
 
@@ -30,6 +30,7 @@ import com.vmware.admiral.common.util.UriUtilsExtended;
 import com.vmware.admiral.compute.ResourceType;
 import com.vmware.admiral.request.composition.CompositionGraph.ResourceNode;
 import com.vmware.admiral.request.composition.CompositionSubTaskService;
+import com.vmware.admiral.service.common.AbstractTaskStatefulService.TaskStatusState;
 import com.vmware.admiral.service.common.DefaultSubStage;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.ServiceDocument;
@@ -53,8 +54,7 @@ public class RequestStatusService extends StatefulService {
             TimeUnit.DAYS.toMinutes(7)));
     private static final int MAX_STATE_SIZE = 1024 * 224;
 
-    public static class RequestStatus extends
-            com.vmware.admiral.service.common.AbstractTaskStatefulService.TaskStatusState {
+    public static class RequestStatus extends TaskStatusState {
 
         public static final String FIELD_NAME_REQUEST_PROGRESS_BY_COMPONENT =
                 "requestProgressByComponent";
@@ -118,10 +118,25 @@ public class RequestStatusService extends StatefulService {
 
         if (body.components != null) {
             handleUpdateComponents(state, body);
+            handleUpdateFields(state, body);
+        } else if (body.updates != null) {
+            // coalesced updates of several tasks, see RequestTrackerUpdateAggregator. The batch
+            // holds the first name and resource links reported by the tasks
+            handleUpdateFields(state, body);
+            for (TaskStatusState update : body.updates) {
+                handleUpdateProgress(state, update);
+                handleUpdateFields(state, update);
+            }
         } else {
             handleUpdateProgress(state, body);
+            handleUpdateFields(state, body);
         }
 
+        setState(patch, state);
+        patch.complete();
+    }
+
+    private void handleUpdateFields(RequestStatus state, TaskStatusState body) {
         if (state.name == null && body.name != null) {
             state.name = body.name;
         }
@@ -132,19 +147,16 @@ public class RequestStatusService extends StatefulService {
                 || willChangeToK8s(state, body)) {
             state.resourceLinks = body.resourceLinks;
         }
-
-        setState(patch, state);
-        patch.complete();
     }
 
-    private boolean willChangeToK8s(RequestStatus state, RequestStatus body) {
+    private boolean willChangeToK8s(RequestStatus state, TaskStatusState body) {
         return state.resourceLinks != null
                 && state.resourceLinks.stream().anyMatch( l -> l.contains(ManagementUriParts.COMPOSITE_COMPONENT))
                 && body.resourceLinks != null
                 && body.resourceLinks.stream().anyMatch(l -> l.contains(ManagementUriParts.KUBERNETES_DEPLOYMENTS));
     }
 
-    private void handleUpdateProgress(RequestStatus state, RequestStatus body) {
+    private void handleUpdateProgress(RequestStatus state, TaskStatusState body) {
         state.phase = body.phase;
         String component = DEFAULT_COMPONENT_NAME;
         String requestId = getSelfId();
@@ -159,7 +171,8 @@ public class RequestStatusService extends StatefulService {
             state.component = null;
         }
 
-        if (state.progress == 100) {
+        int previousProgress = state.progress;
+        if (previousProgress == 100) {
             if (DefaultSubStage.ERROR.name().equals(body.subStage) ||
                     TaskStage.FAILED.name().equals(body.subStage) ||
                     TaskState.isFailed(body.taskInfo)) {
@@ -195,12 +208,13 @@ public class RequestStatusService extends StatefulService {
             }
         }
 
-        // average progress of all tasks
-        state.progress = (int) state.requestProgressByComponent.values().stream()
+        // average progress of all tasks, never going back
+        int progress = (int) state.requestProgressByComponent.values().stream()
                 .flatMap((m) -> m.values().stream())
                 .mapToDouble(Number::intValue)
                 .average()
                 .orElse(0);
+        state.progress = Math.max(previousProgress, progress);
 
         logFine("Request progress: %d, task progress: %s", state.progress,
                 state.requestProgressByComponent);
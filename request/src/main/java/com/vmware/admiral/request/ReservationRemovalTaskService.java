@@ -15,6 +15,7 @@ import static com.vmware.xenon.common.ServiceDocumentDescription.PropertyIndexin
 import static com.vmware.xenon.common.ServiceDocumentDescription.PropertyUsageOption.REQUIRED;
 import static com.vmware.xenon.common.ServiceDocumentDescription.PropertyUsageOption.SINGLE_ASSIGNMENT;
 
+import com.vmware.admiral.compute.container.GroupResourcePlacementReservationLedger;
 import com.vmware.admiral.compute.container.GroupResourcePlacementService.GroupResourcePlacementState;
 import com.vmware.admiral.compute.container.GroupResourcePlacementService.ResourcePlacementReservationRequest;
 import com.vmware.admiral.service.common.AbstractTaskStatefulService;
@@ -96,14 +97,14 @@ public class ReservationRemovalTaskService
                 reservationRequest.resourceCount, reservationRequest.resourceDescriptionLink,
                 Service.getId(groupPlacementState.documentSelfLink));
 
-        sendRequest(Operation.createPatch(this, groupPlacementState.documentSelfLink)
-                .setBody(reservationRequest)
-                .setCompletion((o, e) -> {
+        GroupResourcePlacementReservationLedger.getInstance(getHost())
+                .reserve(groupPlacementState.documentSelfLink, reservationRequest)
+                .whenComplete((placement, e) -> {
                     if (e != null) {
                         failTask("Failure releasing group placement", e);
                         return;
                     }
                     complete();
-                }));
+                });
     }
 }
@@ -41,6 +41,7 @@ import com.vmware.admiral.compute.container.CompositeComponentRegistry;
 import com.vmware.admiral.compute.container.CompositeComponentRegistry.ComponentMeta;
 import com.vmware.admiral.compute.container.CompositeDescriptionFactoryService;
 import com.vmware.admiral.compute.container.CompositeDescriptionService.CompositeDescription;
+import com.vmware.admiral.compute.container.GroupResourcePlacementReservationLedger;
 import com.vmware.admiral.compute.container.GroupResourcePlacementService.GroupResourcePlacementState;
 import com.vmware.admiral.compute.container.GroupResourcePlacementService.ResourcePlacementReservationRequest;
 import com.vmware.admiral.request.PlacementHostSelectionTaskService.PlacementHostSelectionTaskState;
@@ -84,6 +85,9 @@ public class ReservationTaskService
 
             static final Set<SubStage> TRANSIENT_SUB_STAGES = new HashSet<>(
                     Arrays.asList(PLACEMENT, PLACEMENT_GLOBAL, ALLOCATING_RESOURCE_POOL));
+
+            static final Set<SubStage> CHECKPOINT_SUB_STAGES = new HashSet<>(
+                    Arrays.asList(ALLOCATING_RESOURCE_POOL));
         }
 
         /** (Required) The description that defines the requested resource. */
@@ -120,6 +124,7 @@ public class ReservationTaskService
         super.toggleOption(ServiceOption.REPLICATION, true);
         super.toggleOption(ServiceOption.OWNER_SELECTION, true);
         super.transientSubStages = SubStage.TRANSIENT_SUB_STAGES;
+        super.checkpointSubStages = SubStage.CHECKPOINT_SUB_STAGES;
     }
 
     @Override
@@ -516,10 +521,9 @@ public class ReservationTaskService
                 reservationRequest.resourceCount, reservationRequest.resourceDescriptionLink,
                 Service.getId(placementLink));
 
-        sendRequest(Operation
-                .createPatch(this, placementLink)
-                .setBody(reservationRequest)
-                .setCompletion((o, e) -> {
+        GroupResourcePlacementReservationLedger.getInstance(getHost())
+                .reserve(placementLink, reservationRequest)
+                .whenComplete((placement, e) -> {
                     if (e != null) {
                         logWarning("Failure reserving group placement: %s. Retrying with the next"
                                 + " one...", e.getMessage());
@@ -527,8 +531,6 @@ public class ReservationTaskService
                         return;
                     }
 
-                    GroupResourcePlacementState placement = o
-                            .getBody(GroupResourcePlacementState.class);
                     complete(s -> {
                         s.customProperties = mergeCustomProperties(state.customProperties,
                                 placement.customProperties);
@@ -536,7 +538,7 @@ public class ReservationTaskService
                         s.resourcePoolsPerGroupPlacementLinks =
                                 state.resourcePoolsPerGroupPlacementLinks;
                     });
-                }));
+                });
     }
 
     private void getContainerDescription(String resourceDescriptionLink,
@@ -18,8 +18,7 @@ import java.util.Map;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 
-import com.vmware.admiral.common.util.QueryUtil;
-import com.vmware.admiral.common.util.ServiceDocumentQuery;
+import com.vmware.admiral.compute.ContainerHostUtil;
 import com.vmware.admiral.compute.container.CompositeComponentFactoryService;
 import com.vmware.admiral.compute.container.ContainerDescriptionService.ContainerDescription;
 import com.vmware.admiral.compute.container.ContainerService.ContainerState;
@@ -27,7 +26,7 @@ import com.vmware.admiral.request.PlacementHostSelectionTaskService.PlacementHos
 import com.vmware.admiral.request.utils.RequestUtils;
 import com.vmware.xenon.common.ServiceHost;
 import com.vmware.xenon.common.UriUtils;
-import com.vmware.xenon.services.common.QueryTask;
+import com.vmware.xenon.services.common.QueryTask.Query;
 
 /**
  * A filter implementing {@link HostSelectionFilter} in order to provide host selection in case the
@@ -80,32 +79,30 @@ public class ClusterAntiAffinityHostFilter
     protected void findContainers(final PlacementHostSelectionTaskState state,
             final Map<String, HostSelection> hostSelectionMap,
             final HostSelectionFilterCompletion callback) {
-        final QueryTask q = QueryUtil.buildPropertyQuery(ContainerState.class,
-                ContainerState.FIELD_NAME_DESCRIPTION_LINK,
-                desc.documentSelfLink,
-                ContainerState.FIELD_NAME_COMPOSITE_COMPONENT_LINK,
-                UriUtils.buildUriPath(CompositeComponentFactoryService.SELF_LINK, state.contextId));
-        QueryUtil.addListValueClause(q, ContainerState.FIELD_NAME_PARENT_LINK, hostSelectionMap.keySet());
-
-        q.querySpec.resultLimit = ServiceDocumentQuery.DEFAULT_QUERY_RESULT_LIMIT;
-        QueryUtil.addExpandOption(q);
-
-        new ServiceDocumentQuery<ContainerState>(host, ContainerState.class)
-                .query(q,
-                        (r) -> {
-                            if (r.hasException()) {
-                                host.log(
-                                        Level.WARNING,
-                                        "Exception while selecting containers with contextId [%s] during cluster node filtering. Error: [%s]",
-                                        state.contextId, r.getException().getMessage());
-                                callback.complete(null, r.getException());
-                            } else if (r.hasResult()) {
-                                HostSelection hostSelection = hostSelectionMap.get(r.getResult().parentLink);
-                                hostSelection.resourceCount += 1;
-                            } else {
-                                completeFilter(state, hostSelectionMap, callback);
-                            }
-                        });
+        Query clusterNodes = Query.Builder.create()
+                .addFieldClause(ContainerState.FIELD_NAME_DESCRIPTION_LINK,
+                        desc.documentSelfLink)
+                .addFieldClause(ContainerState.FIELD_NAME_COMPOSITE_COMPONENT_LINK,
+                        UriUtils.buildUriPath(CompositeComponentFactoryService.SELF_LINK,
+                                state.contextId))
+                .build();
+
+        // Only the number of cluster nodes per host is needed, not the containers themselves.
+        ContainerHostUtil.countContainersPerHost(host, hostSelectionMap.keySet(), clusterNodes)
+                .whenComplete((counts, ex) -> {
+                    if (ex != null) {
+                        host.log(
+                                Level.WARNING,
+                                "Exception while selecting containers with contextId [%s] during cluster node filtering. Error: [%s]",
+                                state.contextId, ex.getMessage());
+                        callback.complete(null, ex);
+                        return;
+                    }
+                    counts.forEach((hostLink, count) -> hostSelectionMap
+                            .get(hostLink).resourceCount = count.intValue());
+
+                    completeFilter(state, hostSelectionMap, callback);
+                });
     }
 
     private void completeFilter(final PlacementHostSelectionTaskState state,
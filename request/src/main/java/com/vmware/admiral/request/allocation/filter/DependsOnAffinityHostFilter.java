@@ -48,6 +48,11 @@ public class DependsOnAffinityHostFilter implements
         return dependsOn != null && dependsOn.length > 0;
     }
 
+    @Override
+    public boolean isHostIndependent() {
+        return true;
+    }
+
     @Override
     public Map<String, AffinityConstraint> getAffinityConstraints() {
         return isActive() ?
@@ -42,6 +42,15 @@ public class DeploymentPolicyAffinityFilter
         return deploymentPolicyId != null && !deploymentPolicyId.isEmpty();
     }
 
+    /**
+     * A host is kept if it has the deployment policy. Only if no host has it, all hosts are kept,
+     * and that is the case in which the filter runs again on the remaining hosts.
+     */
+    @Override
+    public boolean isHostIndependent() {
+        return true;
+    }
+
     @Override
     public Map<String, AffinityConstraint> getAffinityConstraints() {
         return Collections.emptyMap();
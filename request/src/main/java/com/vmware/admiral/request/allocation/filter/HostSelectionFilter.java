@@ -40,6 +40,17 @@ public interface HostSelectionFilter<T> extends AffinityFilter {
     void filter(T state, Map<String, HostSelection> hostSelectionMap,
             HostSelectionFilterCompletion callback);
 
+    /**
+     * Whether the filter keeps or drops every host on its own, regardless of the other hosts in
+     * the selection. Filtering a subset of the hosts then gives the same hosts as narrowing down
+     * the result of filtering all hosts to that subset, unless nothing is left of that result,
+     * so such a filter may run on all candidate hosts concurrently with the filters ahead of it.
+     * When nothing is left, the filter runs again on the subset.
+     */
+    default boolean isHostIndependent() {
+        return false;
+    }
+
     /**
      * Completion callback interface used when the filter is completed.
      */
@@ -20,13 +20,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 
-import com.vmware.admiral.common.util.QueryUtil;
-import com.vmware.admiral.common.util.ServiceDocumentQuery;
+import com.vmware.admiral.compute.ContainerHostUtil;
 import com.vmware.admiral.compute.ElasticPlacementZoneConfigurationService;
 import com.vmware.admiral.compute.ElasticPlacementZoneConfigurationService.ElasticPlacementZoneConfigurationState;
 import com.vmware.admiral.compute.ElasticPlacementZoneService;
 import com.vmware.admiral.compute.container.ContainerDescriptionService.ContainerDescription;
-import com.vmware.admiral.compute.container.ContainerService.ContainerState;
 import com.vmware.admiral.request.PlacementHostSelectionTaskService;
 import com.vmware.admiral.request.PlacementHostSelectionTaskService.PlacementHostSelectionTaskState;
 import com.vmware.admiral.request.ReservationTaskFactoryService;
@@ -34,7 +32,6 @@ import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.ServiceHost;
 import com.vmware.xenon.common.UriUtils;
 import com.vmware.xenon.common.Utils;
-import com.vmware.xenon.services.common.QueryTask;
 
 /**
 *
@@ -124,31 +121,23 @@ public class SpreadAffinityHostFilter implements
             Map<String, HostSelection> hostSelectionMap,
             HostSelectionFilterCompletion callback) {
 
-        QueryTask.Query.Builder queryBuilder = QueryTask.Query.Builder.create()
-                .addKindFieldClause(ContainerState.class)
-                .addInClause(ContainerState.FIELD_NAME_PARENT_LINK, hostSelectionMap.keySet());
-
-        QueryTask q = QueryTask.Builder.create().setQuery(queryBuilder.build()).build();
-        q.querySpec.resultLimit = ServiceDocumentQuery.DEFAULT_QUERY_RESULT_LIMIT;
-        QueryUtil.addExpandOption(q);
-
-        new ServiceDocumentQuery<>(host, ContainerState.class).query(q, (r) -> {
-            if (r.hasException()) {
-                host.log(Level.WARNING,
-                        "Exception while quering containers during 'Spread' filtering."
-                                + "Error: [%s]",
-                        r.getException().getMessage());
-                callback.complete(null, r.getException());
-                return;
-            } else if (r.hasResult()) {
-                HostSelection hostSelection = hostSelectionMap
-                        .get(r.getResult().parentLink);
-                hostSelection.resourceCount += 1;
-            } else {
-                // Return the host with minimum number of containers.
-                completeFilter(hostSelectionMap, callback);
-            }
-        });
+        // Only the number of containers per host is needed, not the containers themselves.
+        ContainerHostUtil.countContainersPerHost(host, hostSelectionMap.keySet())
+                .whenComplete((counts, ex) -> {
+                    if (ex != null) {
+                        host.log(Level.WARNING,
+                                "Exception while counting containers during 'Spread' filtering."
+                                        + "Error: [%s]",
+                                ex.getMessage());
+                        callback.complete(null, ex);
+                        return;
+                    }
+                    counts.forEach((hostLink, count) -> hostSelectionMap
+                            .get(hostLink).resourceCount = count.intValue());
+
+                    // Return the host with minimum number of containers.
+                    completeFilter(hostSelectionMap, callback);
+                });
     }
 
     private void completeFilter(Map<String, HostSelection> hostSelectionMap,
@@ -103,6 +103,9 @@ public class CompositionSubTaskService
             static final Set<SubStage> TRANSIENT_SUB_STAGES = new HashSet<>(
                     Arrays.asList(ALLOCATING, EXECUTING));
 
+            static final Set<SubStage> CHECKPOINT_SUB_STAGES = new HashSet<>(
+                    Arrays.asList(NOTIFY));
+
         }
 
         public String compositeDescriptionLink;
@@ -173,6 +176,7 @@ public class CompositionSubTaskService
         super.toggleOption(ServiceOption.REPLICATION, true);
         super.toggleOption(ServiceOption.OWNER_SELECTION, true);
         super.transientSubStages = SubStage.TRANSIENT_SUB_STAGES;
+        super.checkpointSubStages = SubStage.CHECKPOINT_SUB_STAGES;
     }
 
     @Override
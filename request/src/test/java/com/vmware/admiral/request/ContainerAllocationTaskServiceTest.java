@@ -61,6 +61,7 @@ import com.vmware.photon.controller.model.resources.ComputeDescriptionService;
 import com.vmware.photon.controller.model.resources.ComputeDescriptionService.ComputeDescription;
 import com.vmware.photon.controller.model.resources.ComputeDescriptionService.ComputeDescription.ComputeType;
 import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
+import com.vmware.xenon.common.FactoryService;
 import com.vmware.xenon.common.Service.Action;
 import com.vmware.xenon.common.UriUtils;
 import com.vmware.xenon.common.test.TestContext;
@@ -125,6 +126,31 @@ public class ContainerAllocationTaskServiceTest extends RequestBaseTest {
 
     }
 
+    @Test
+    public void testNonCheckpointSubStagesAreNotPersisted() throws Throwable {
+        ContainerAllocationTaskState persistedTask = allocate(createContainerAllocationTask());
+
+        // the same task with the non-checkpoint subStages applied in memory
+        String factoryLink = ContainerAllocationTaskFactoryService.SELF_LINK + "-in-memory";
+        host.startServiceAndWait(FactoryService.create(InMemoryContainerAllocationTaskService.class),
+                factoryLink, null);
+        ContainerAllocationTaskState inMemoryTask = doPost(createContainerAllocationTask(),
+                factoryLink);
+        inMemoryTask = waitForTaskSuccess(inMemoryTask.documentSelfLink,
+                ContainerAllocationTaskState.class);
+
+        host.log("Persisted versions per allocated container: %d in memory, %d persisted",
+                inMemoryTask.documentVersion, persistedTask.documentVersion);
+        assertTrue(inMemoryTask.documentVersion < persistedTask.documentVersion);
+    }
+
+    public static class InMemoryContainerAllocationTaskService
+            extends ContainerAllocationTaskService {
+        public InMemoryContainerAllocationTaskService() {
+            super.inMemorySubStages = true;
+        }
+    }
+
     @Test
     public void testAllocationTaskServiceLifeCycleFailed() throws Throwable {
         // create allocation task:
@@ -906,8 +932,8 @@ public class ContainerAllocationTaskServiceTest extends RequestBaseTest {
         // get latest ports
         hostPortProfileState = getDocument(HostPortProfileService.HostPortProfileState.class,
                 hostPortProfileState.documentSelfLink);
-        Set<String> reservedPorts = hostPortProfileState.reservedPorts == null ? new HashSet<>() :
-                hostPortProfileState.reservedPorts
+        Set<String> reservedPorts =
+                HostPortProfileService.getReservedPorts(hostPortProfileState)
                         .entrySet()
                         .stream()
                         .filter(p -> containerState.documentSelfLink.equals(p.getValue()))
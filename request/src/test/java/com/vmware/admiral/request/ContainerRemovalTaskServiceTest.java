@@ -953,7 +953,7 @@ public class ContainerRemovalTaskServiceTest extends RequestBaseTest {
         hostPortProfileState = getDocument(HostPortProfileService.HostPortProfileState.class,
                 hostPortProfileState.documentSelfLink);
         // ports allocated
-        assertTrue(hostPortProfileState.reservedPorts
+        assertTrue(HostPortProfileService.getReservedPorts(hostPortProfileState)
                 .entrySet()
                 .stream()
                 .allMatch(p -> documentLink.equals(p.getValue())));
@@ -970,7 +970,7 @@ public class ContainerRemovalTaskServiceTest extends RequestBaseTest {
         hostPortProfileState = getDocument(HostPortProfileService.HostPortProfileState.class,
                 hostPortProfileState.documentSelfLink);
         // ports allocated
-        assertTrue(hostPortProfileState.reservedPorts
+        assertTrue(HostPortProfileService.getReservedPorts(hostPortProfileState)
                 .entrySet()
                 .stream()
                 .noneMatch(p -> documentLink.equals(p.getValue())));
@@ -12,6 +12,7 @@
 package com.vmware.admiral.request;
 
 import static org.hamcrest.CoreMatchers.anyOf;
+import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.nullValue;
@@ -20,6 +21,7 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThat;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.UUID;
@@ -36,7 +38,9 @@ import com.vmware.admiral.compute.container.ContainerDescriptionService;
 import com.vmware.admiral.compute.container.ContainerDescriptionService.ContainerDescription;
 import com.vmware.admiral.compute.container.ContainerFactoryService;
 import com.vmware.admiral.compute.container.ContainerService.ContainerState;
+import com.vmware.admiral.compute.container.ContainerService.ContainerState.PowerState;
 import com.vmware.admiral.request.PlacementHostSelectionTaskService.PlacementHostSelectionTaskState;
+import com.vmware.admiral.request.allocation.filter.ExposedPortsHostFilter;
 import com.vmware.admiral.request.util.TestRequestStateFactory;
 import com.vmware.admiral.service.common.ServiceTaskCallback;
 import com.vmware.photon.controller.model.resources.ComputeService;
@@ -44,6 +48,9 @@ import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.Service;
 import com.vmware.xenon.common.Service.Action;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.ServiceStats;
+import com.vmware.xenon.common.ServiceStats.ServiceStat;
 import com.vmware.xenon.common.UriUtils;
 
 public class PlacementHostSelectionTaskServiceTest extends RequestBaseTest {
@@ -308,6 +315,45 @@ public class PlacementHostSelectionTaskServiceTest extends RequestBaseTest {
         }
     }
 
+    @Test
+    public void testExposedPortsFilteredTogetherWithAffinity() throws Throwable {
+        String hostLink = initialHostLinks.get(0);
+        String otherHostLink = initialHostLinks.get(1);
+
+        ContainerDescription desc1 = TestRequestStateFactory.createContainerDescription();
+        desc1 = storeDescription(desc1);
+        createContainer(desc1, hostLink);
+
+        ContainerDescription portsDesc = TestRequestStateFactory
+                .createContainerDescriptionWithPortBindingsHostPortSet();
+        portsDesc.name = "ports-holder";
+        portsDesc = storeDescription(portsDesc);
+        createContainerWithPorts(portsDesc, otherHostLink);
+
+        ContainerDescription desc = TestRequestStateFactory
+                .createContainerDescriptionWithPortBindingsHostPortSet();
+        desc.affinity = new String[] { desc1.name };
+        desc = storeDescription(desc);
+
+        PlacementHostSelectionTaskState placementTask = createHostPlacementTask(
+                desc.documentSelfLink, resourceCount, false);
+        assertEquals(hostLink, placementTask.hostSelections.iterator().next().hostLink);
+
+        waitFor(() -> {
+            ServiceStats stats = getDocument(ServiceStats.class, UriUtils.buildUriPath(
+                    PlacementFilterStatsService.SELF_LINK, ServiceHost.SERVICE_URI_SUFFIX_STATS));
+            ServiceStat stat = stats.entries.get(ExposedPortsHostFilter.class.getSimpleName()
+                    + PlacementFilterStatsService.FILTER_DURATION_STAT_SUFFIX);
+            return stat != null && stat.timeSeriesStats != null;
+        });
+
+        // the host required by the affinity exposes the same ports now
+        createContainerWithPorts(portsDesc, hostLink);
+        placementTask = createHostPlacementTask(desc.documentSelfLink, resourceCount, true);
+        assertThat(placementTask.taskInfo.failure.message,
+                containsString("No compute hosts found with unexposed ports"));
+    }
+
     private PlacementHostSelectionTaskState createHostPlacementTask(String containerDescLink,
             int resourceCount, boolean expectError) throws Throwable {
         PlacementHostSelectionTaskState placementTask = new PlacementHostSelectionTaskState();
@@ -379,6 +425,20 @@ public class PlacementHostSelectionTaskServiceTest extends RequestBaseTest {
         return container;
     }
 
+    private ContainerState createContainerWithPorts(ContainerDescription desc, String hostLink)
+            throws Throwable {
+        ContainerState container = new ContainerState();
+        container.descriptionLink = desc.documentSelfLink;
+        container.id = UUID.randomUUID().toString();
+        container.parentLink = hostLink;
+        container.powerState = PowerState.RUNNING;
+        container.ports = Arrays.asList(desc.portBindings);
+        container = doPost(container, ContainerFactoryService.SELF_LINK);
+        assertNotNull(container);
+        addForDeletion(container);
+        return container;
+    }
+
     private ContainerDescription storeDescription(ContainerDescription desc) throws Throwable {
         desc.documentSelfLink = UUID.randomUUID().toString();
         desc = doPost(desc, ContainerDescriptionService.FACTORY_LINK);
@@ -42,6 +42,8 @@ import com.vmware.admiral.request.composition.CompositionTaskFactoryService;
 import com.vmware.admiral.request.composition.CompositionTaskService.CompositionTaskState;
 import com.vmware.admiral.request.util.TestRequestStateFactory;
 import com.vmware.admiral.service.common.DefaultSubStage;
+import com.vmware.admiral.service.common.RequestTrackerUpdateAggregator;
+import com.vmware.admiral.service.common.RequestTrackerUpdateAggregator.UpdateStats;
 import com.vmware.admiral.service.test.MockDockerAdapterService;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.Service;
@@ -150,6 +152,42 @@ public class RequestStatusServiceTest extends RequestBaseTest {
                 requestStatus.resourceLinks.iterator().next());
     }
 
+    @Test
+    public void testLargeCompositionRequestStatusUpdates() throws Throwable {
+        groupPlacementState.maxNumberInstances = 100;
+        groupPlacementState = doPut(groupPlacementState);
+
+        ContainerDescription desc = TestRequestStateFactory.createContainerDescription("name1",
+                false, false);
+        desc._cluster = 100;
+        CompositeDescription compositeDesc = createCompositeDesc(desc);
+
+        UpdateStats before = RequestTrackerUpdateAggregator.getInstance(host).getStats();
+        long startMillis = System.currentTimeMillis();
+        RequestBrokerState request = TestRequestStateFactory.createRequestState(
+                ResourceType.COMPOSITE_COMPONENT_TYPE.getName(), compositeDesc.documentSelfLink);
+        request.tenantLinks = groupPlacementState.tenantLinks;
+        request = startRequest(request);
+        waitForRequestToComplete(request);
+        requestId = extractId(request.documentSelfLink);
+
+        waitFor(() -> {
+            RequestStatus status = getRequestStatus(requestId);
+            return TaskState.isFinished(status.taskInfo) && status.progress.intValue() == 100;
+        });
+        long durationMillis = System.currentTimeMillis() - startMillis;
+        UpdateStats after = RequestTrackerUpdateAggregator.getInstance(host).getStats();
+        RequestStatus requestStatus = getRequestStatus(requestId);
+
+        long updateCount = after.updateCount - before.updateCount;
+        long patchCount = after.patchCount - before.patchCount;
+        host.log("Request status of 100 containers: %d task updates sent in %d PATCHes,"
+                + " document version %d, completed in %d ms", updateCount, patchCount,
+                requestStatus.documentVersion, durationMillis);
+        assertTrue(patchCount < updateCount);
+        assertEquals(EXPECTED_LAST_PHASE, requestStatus.phase);
+    }
+
     @Test
     public void testRequestStatusShouldNotBeModifiedAfterCompletion() throws Throwable {
         ContainerDescription desc1 = TestRequestStateFactory.createContainerDescription("name1");
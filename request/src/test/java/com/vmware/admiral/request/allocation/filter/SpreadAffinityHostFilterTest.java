@@ -16,9 +16,11 @@ import static org.junit.Assert.assertTrue;
 
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 
+import com.vmware.admiral.compute.ContainerHostUtil;
 import com.vmware.admiral.compute.ElasticPlacementZoneConfigurationService;
 import com.vmware.admiral.compute.ElasticPlacementZoneConfigurationService.ElasticPlacementZoneConfigurationState;
 import com.vmware.admiral.compute.ElasticPlacementZoneService;
@@ -85,6 +87,32 @@ public class SpreadAffinityHostFilterTest extends BaseAffinityHostFilterTest {
 
     }
 
+    @Test
+    public void testSpreadFilterWithHostWithoutContainers() throws Throwable {
+        String firstHost = initialHostLinks.get(0);
+        String secondHost = initialHostLinks.get(1);
+        String thirdHost = initialHostLinks.get(2);
+
+        assignContainersToHost(firstHost, 2);
+        assignContainersToHost(thirdHost, 1);
+
+        // the containers are counted with a single query, hosts without containers included
+        Map<String, Long> counts = ContainerHostUtil
+                .countContainersPerHost(host, initialHostLinks)
+                .toCompletionStage().toCompletableFuture().get(30, TimeUnit.SECONDS);
+        assertEquals(3, counts.size());
+        assertEquals(Long.valueOf(3), counts.get(firstHost));
+        assertEquals(Long.valueOf(0), counts.get(secondHost));
+        assertEquals(Long.valueOf(2), counts.get(thirdHost));
+
+        updateEpzWithPlacementPolicy();
+        filter = new SpreadAffinityHostFilter(host, containerDesc);
+        Map<String, HostSelection> selected = filter();
+
+        assertEquals(1, selected.size());
+        assertTrue(selected.containsKey(secondHost));
+    }
+
     private void updateEpzWithPlacementPolicy() throws Throwable {
 
         // Create ElasticPlacementZoneState which follows SPREAD deployment policy.